@@ -0,0 +1,49 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.cli;
+
+import java.util.Iterator;
+
+import javax.annotation.Nonnull;
+
+import com.github.olivergondza.dumpling.model.ProcessRuntime;
+
+/**
+ * Runtime factory producing several runtimes from single locator.
+ *
+ * Command is invoked once for every runtime, {@link #createRuntime(String, ProcessStream)} provides the first one.
+ *
+ * @author ogondza
+ */
+public interface CliRuntimeSeriesFactory<RuntimeType extends ProcessRuntime<?, ?, ?>> extends CliRuntimeFactory<RuntimeType> {
+
+    /**
+     * Create runtimes from String locator.
+     *
+     * Runtimes are expected to be created lazily as the iterator advances.
+     *
+     * @param locator Factory specific resource locator.
+     */
+    @Nonnull Iterator<RuntimeType> createRuntimes(@Nonnull String locator, @Nonnull ProcessStream process) throws CommandFailedException;
+}
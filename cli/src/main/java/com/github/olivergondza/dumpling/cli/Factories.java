@@ -23,8 +23,14 @@
  */
 package com.github.olivergondza.dumpling.cli;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 import javax.annotation.Nonnull;
 
@@ -32,13 +38,16 @@ import com.github.olivergondza.dumpling.factory.IllegalRuntimeStateException;
 import com.github.olivergondza.dumpling.factory.JmxRuntimeFactory;
 import com.github.olivergondza.dumpling.factory.JmxRuntimeFactory.FailedToInitializeJmxConnection;
 import com.github.olivergondza.dumpling.factory.PidRuntimeFactory;
+import com.github.olivergondza.dumpling.factory.SnapshotFactory;
 import com.github.olivergondza.dumpling.factory.ThreadDumpFactory;
+import com.github.olivergondza.dumpling.factory.ThreadDumpFollower;
+import com.github.olivergondza.dumpling.factory.ThreadDumpIterator;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
 import com.github.olivergondza.dumpling.model.jmx.JmxRuntime;
 
 final /*package*/ class Factories {
 
-    final /*package*/ static class ThreadDump implements CliRuntimeFactory<ThreadDumpRuntime> {
+    final /*package*/ static class ThreadDump implements CliRuntimeSeriesFactory<ThreadDumpRuntime> {
         @Override
         public @Nonnull String getKind() {
             return "threaddump";
@@ -46,7 +55,7 @@ final /*package*/ class Factories {
 
         @Override
         public String getDescription() {
-            return "Parse threaddrump from file, or standard input when '-' provided as a locator.";
+            return "Parse threaddrump from file, or standard input when '-' provided as a locator. Input compressed using gzip, xz or zip is decoded transparently, command is run for every threaddump of zip archive.";
         }
 
         @Override
@@ -61,6 +70,156 @@ final /*package*/ class Factories {
             }
 
             try {
+                return factory.fromMappedFile(new File(locator));
+            } catch (IOException ex) {
+                throw new CommandFailedException(ex);
+            } catch (IllegalRuntimeStateException ex) {
+                throw new CommandFailedException(ex);
+            }
+        }
+
+        @Override
+        public @Nonnull Iterator<ThreadDumpRuntime> createRuntimes(
+                @Nonnull String locator, @Nonnull ProcessStream process
+        ) throws CommandFailedException {
+            ThreadDumpFactory factory = new ThreadDumpFactory();
+
+            final ThreadDumpIterator dumps;
+            try {
+                dumps = "-".equals(locator)
+                        ? factory.fromArchive(process.in())
+                        : factory.fromArchive(new File(locator))
+                ;
+            } catch (IOException ex) {
+                throw new CommandFailedException(ex);
+            } catch (IllegalRuntimeStateException ex) {
+                throw new CommandFailedException(ex);
+            }
+
+            return new Iterator<ThreadDumpRuntime>() {
+                @Override
+                public boolean hasNext() {
+                    try {
+                        return dumps.hasNext();
+                    } catch (IllegalRuntimeStateException ex) {
+                        throw new CommandFailedException(ex);
+                    }
+                }
+
+                @Override
+                public ThreadDumpRuntime next() {
+                    return dumps.next();
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    final /*package*/ static class ThreadDumps implements CliRuntimeSeriesFactory<ThreadDumpRuntime> {
+        @Override
+        public @Nonnull String getKind() {
+            return "threaddumps";
+        }
+
+        @Override
+        public String getDescription() {
+            return "Parse all threaddumps from log file, or standard input when '-' provided as a locator. Command is run for every threaddump.";
+        }
+
+        @Override
+        public @Nonnull ThreadDumpRuntime createRuntime(
+                @Nonnull String locator, @Nonnull ProcessStream process
+        ) throws CommandFailedException {
+            ThreadDumpIterator dumps = iterate(locator, process);
+            try {
+                if (!dumps.hasNext()) throw new CommandFailedException("No threaddump found in " + locator);
+
+                return dumps.next();
+            } catch (IllegalRuntimeStateException ex) {
+                throw new CommandFailedException(ex);
+            } finally {
+                closeQuietly(dumps);
+            }
+        }
+
+        @Override
+        public @Nonnull Iterator<ThreadDumpRuntime> createRuntimes(
+                @Nonnull String locator, @Nonnull final ProcessStream process
+        ) throws CommandFailedException {
+            final ThreadDumpIterator dumps = iterate(locator, process);
+
+            return new Iterator<ThreadDumpRuntime>() {
+                @Override
+                public boolean hasNext() {
+                    try {
+                        return dumps.hasNext();
+                    } catch (IllegalRuntimeStateException ex) {
+                        throw new CommandFailedException(ex);
+                    }
+                }
+
+                @Override
+                public ThreadDumpRuntime next() {
+                    ThreadDumpRuntime runtime = dumps.next();
+                    // Identify the threaddump the command output belongs to
+                    for (String line: runtime.getHeader()) {
+                        process.err().println(line);
+                    }
+                    return runtime;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        private static @Nonnull ThreadDumpIterator iterate(
+                @Nonnull String locator, @Nonnull ProcessStream process
+        ) throws CommandFailedException {
+            ThreadDumpFactory factory = new ThreadDumpFactory();
+
+            if ("-".equals(locator)) {
+                // Read stdin
+                return factory.iterate(process.in());
+            }
+
+            try {
+                return factory.iterate(new File(locator));
+            } catch (IOException ex) {
+                throw new CommandFailedException(ex);
+            }
+        }
+    }
+
+    final /*package*/ static class Snapshot implements CliRuntimeFactory<ThreadDumpRuntime> {
+        @Override
+        public @Nonnull String getKind() {
+            return "snapshot";
+        }
+
+        @Override
+        public String getDescription() {
+            return "Load runtime from binary snapshot file, or standard input when '-' provided as a locator. See 'snapshot' command.";
+        }
+
+        @Override
+        public @Nonnull ThreadDumpRuntime createRuntime(
+                @Nonnull String locator, @Nonnull ProcessStream process
+        ) throws CommandFailedException {
+            SnapshotFactory factory = new SnapshotFactory();
+
+            try {
+                if ("-".equals(locator)) {
+                    // Read stdin
+                    return factory.fromStream(process.in());
+                }
+
                 return factory.fromFile(new File(locator));
             } catch (IOException ex) {
                 throw new CommandFailedException(ex);
@@ -70,6 +229,102 @@ final /*package*/ class Factories {
         }
     }
 
+    final /*package*/ static class Follow implements CliRuntimeSeriesFactory<ThreadDumpRuntime> {
+        private static final long POLL_INTERVAL = 1000;
+
+        @Override
+        public @Nonnull String getKind() {
+            return "follow";
+        }
+
+        @Override
+        public String getDescription() {
+            return "Follow threaddumps appended to log file, like 'tail -f'. Command is run for every threaddump written after the invocation until interrupted.";
+        }
+
+        @Override
+        public @Nonnull ThreadDumpRuntime createRuntime(
+                @Nonnull String locator, @Nonnull ProcessStream process
+        ) throws CommandFailedException {
+            ThreadDumpFollower follower = follow(locator);
+            try {
+                for (;;) {
+                    List<ThreadDumpRuntime> runtimes = follower.poll();
+                    if (!runtimes.isEmpty()) return runtimes.get(0);
+
+                    Thread.sleep(POLL_INTERVAL);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new CommandFailedException("Interrupted waiting for threaddump in " + locator, ex);
+            } catch (IOException ex) {
+                throw new CommandFailedException(ex);
+            } catch (IllegalRuntimeStateException ex) {
+                throw new CommandFailedException(ex);
+            } finally {
+                closeQuietly(follower);
+            }
+        }
+
+        @Override
+        public @Nonnull Iterator<ThreadDumpRuntime> createRuntimes(
+                @Nonnull String locator, @Nonnull final ProcessStream process
+        ) throws CommandFailedException {
+            final ThreadDumpFollower follower = follow(locator);
+
+            return new Iterator<ThreadDumpRuntime>() {
+                private final Deque<ThreadDumpRuntime> pending = new ArrayDeque<ThreadDumpRuntime>();
+
+                @Override
+                public boolean hasNext() {
+                    try {
+                        while (pending.isEmpty()) {
+                            pending.addAll(follower.poll());
+                            if (pending.isEmpty()) Thread.sleep(POLL_INTERVAL);
+                        }
+                        return true;
+                    } catch (InterruptedException ex) {
+                        // Stop following
+                        Thread.currentThread().interrupt();
+                        closeQuietly(follower);
+                        return false;
+                    } catch (IOException ex) {
+                        closeQuietly(follower);
+                        throw new CommandFailedException(ex);
+                    } catch (IllegalRuntimeStateException ex) {
+                        closeQuietly(follower);
+                        throw new CommandFailedException(ex);
+                    }
+                }
+
+                @Override
+                public ThreadDumpRuntime next() {
+                    if (!hasNext()) throw new NoSuchElementException();
+
+                    ThreadDumpRuntime runtime = pending.removeFirst();
+                    // Identify the threaddump the command output belongs to
+                    for (String line: runtime.getHeader()) {
+                        process.err().println(line);
+                    }
+                    return runtime;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        private static @Nonnull ThreadDumpFollower follow(@Nonnull String locator) throws CommandFailedException {
+            try {
+                return new ThreadDumpFactory().follow(new File(locator), false);
+            } catch (IOException ex) {
+                throw new CommandFailedException(ex);
+            }
+        }
+    }
+
     final /*package*/ static class Jmx implements CliRuntimeFactory<JmxRuntime> {
         @Override
         public @Nonnull String getKind() {
@@ -129,4 +384,10 @@ final /*package*/ class Factories {
             }
         }
     }
+
+    private static void closeQuietly(@Nonnull Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ex) {} // Ignore
+    }
 }
@@ -25,6 +25,7 @@ package com.github.olivergondza.dumpling.cli;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
@@ -64,10 +65,13 @@ public class Main {
     }
 
     /*package*/ int run(@Nonnull String[] args, @Nonnull final ProcessStream system) {
+        final List<ProcessRuntimeOptionHandler> runtimeOptions = new ArrayList<ProcessRuntimeOptionHandler>();
         OptionHandlerRegistry.getRegistry().registerHandler(CliCommand.class, CliCommandOptionHandler.class);
         OptionHandlerRegistry.getRegistry().registerHandler(ProcessRuntime.class, new OptionHandlerRegistry.OptionHandlerFactory() {
             public OptionHandler<?> getHandler(CmdLineParser parser, OptionDef o, Setter setter) {
-                return new ProcessRuntimeOptionHandler(parser, o, setter, system);
+                ProcessRuntimeOptionHandler handler = new ProcessRuntimeOptionHandler(parser, o, setter, system);
+                runtimeOptions.add(handler);
+                return handler;
             }
         });
 
@@ -76,7 +80,14 @@ public class Main {
         try {
             parser.parseArgument(args);
 
-            return handler.run(system);
+            int exitCode = handler.run(system);
+            // Rerun the command for the rest of the runtimes from series
+            for (ProcessRuntimeOptionHandler option: runtimeOptions) {
+                while (option.nextRuntime()) {
+                    exitCode = Math.max(exitCode, handler.run(system));
+                }
+            }
+            return exitCode;
         } catch (CmdLineException ex) {
 
             system.err().println(ex.getMessage());
@@ -95,6 +106,8 @@ public class Main {
     public static class ProcessRuntimeOptionHandler extends OptionHandler<ProcessRuntime<?, ?, ?>> {
 
         private final @Nonnull ProcessStream streams;
+        // Runtimes to be processed once the command is done with the current one
+        private @CheckForNull Iterator<? extends ProcessRuntime<?, ?, ?>> series;
 
         public ProcessRuntimeOptionHandler(CmdLineParser parser, OptionDef option, Setter<? super ProcessRuntime<?, ?, ?>> setter, ProcessStream streams) {
             super(parser, option, setter);
@@ -138,7 +151,14 @@ public class Main {
 
             if (locator.isEmpty()) throw new UnknownRuntimeKind(owner, "No locator provided for scheme: " + scheme);
 
-            ProcessRuntime<?, ?, ?> runtime = factory.createRuntime(locator, streams);
+            ProcessRuntime<?, ?, ?> runtime;
+            if (factory instanceof CliRuntimeSeriesFactory) {
+                series = ((CliRuntimeSeriesFactory<?>) factory).createRuntimes(locator, streams);
+                if (!series.hasNext()) throw new CommandFailedException("No runtime found in " + locator);
+                runtime = series.next();
+            } else {
+                runtime = factory.createRuntime(locator, streams);
+            }
             if (runtime == null) throw new AssertionError(factory.getClass() + " failed to create runtime");
 
             setter.addValue(runtime);
@@ -146,6 +166,18 @@ public class Main {
             return 1;
         }
 
+        /**
+         * Advance to the next runtime of the series, if any.
+         *
+         * @return true if there is another runtime for command to process.
+         */
+        /*package*/ boolean nextRuntime() throws CmdLineException {
+            if (series == null || !series.hasNext()) return false;
+
+            setter.addValue(series.next());
+            return true;
+        }
+
         private @Nonnull String namedParameter(String name, Parameters params, int index) throws CmdLineException {
             try {
                 return params.getParameter(index);
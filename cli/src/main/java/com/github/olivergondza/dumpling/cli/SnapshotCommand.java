@@ -0,0 +1,80 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.cli;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.Option;
+
+import com.github.olivergondza.dumpling.factory.SnapshotFactory;
+import com.github.olivergondza.dumpling.model.ProcessRuntime;
+
+/**
+ * Convert runtime to binary snapshot.
+ *
+ * @author ogondza
+ */
+public class SnapshotCommand implements CliCommand {
+
+    @Option(name = "-i", aliases = {"--in"}, usage = "Input for process runtime")
+    private ProcessRuntime<?, ?, ?> runtime;
+
+    @Option(name = "-o", aliases = {"--out"}, usage = "File to write the snapshot to, standard output by default")
+    private File file;
+
+    // Command is rerun for every runtime of a series while snapshot holds just one
+    private boolean written = false;
+
+    @Override
+    public String getName() {
+        return "snapshot";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Store runtime as binary snapshot";
+    }
+
+    @Override
+    public int run(ProcessStream process) throws CmdLineException {
+        if (written) throw new CommandFailedException(
+                "Snapshot can hold single runtime only, input provides several. Only the first one was written"
+        );
+        written = true;
+
+        SnapshotFactory factory = new SnapshotFactory();
+        try {
+            if (file == null) {
+                factory.write(runtime, process.out());
+            } else {
+                factory.write(runtime, file);
+            }
+        } catch (IOException ex) {
+            throw new CommandFailedException("Unable to write snapshot: " + ex.getMessage(), ex);
+        }
+        return 0;
+    }
+}
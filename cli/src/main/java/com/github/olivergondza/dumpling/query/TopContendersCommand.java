@@ -41,6 +41,13 @@ public final class TopContendersCommand implements CliCommand {
     @Option(name = "--show-stack-traces", usage = "List stack traces of all threads involved")
     private boolean showStackTraces = false;
 
+    private int limit = Integer.MAX_VALUE;
+    @Option(name = "--limit", usage = "Report given number of threads blocking the most threads only")
+    public void setLimit(int limit) throws CmdLineException {
+        if (limit < 1) throw new CmdLineException("Limit must be positive. " + limit + " given.");
+        this.limit = limit;
+    }
+
     @Override
     public String getName() {
         return "top-contenders";
@@ -54,7 +61,7 @@ public final class TopContendersCommand implements CliCommand {
     @Override
     public int run(@Nonnull ProcessStream process) throws CmdLineException {
         @SuppressWarnings({"unchecked", "rawtypes"})
-        Result<?, ?, ?> result = new Result(runtime.getThreads(), showStackTraces);
+        Result<?, ?, ?> result = new Result(runtime.getThreads(), showStackTraces, limit);
         result.printInto(process.out());
         return result.exitCode();
     }
@@ -27,6 +27,9 @@ package com.github.olivergondza.dumpling.cli;
 import com.github.olivergondza.dumpling.DisposeRule;
 import com.github.olivergondza.dumpling.TestThread;
 import com.github.olivergondza.dumpling.Util;
+import com.github.olivergondza.dumpling.factory.SnapshotFactory;
+import com.github.olivergondza.dumpling.factory.ThreadDumpFactory;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
 import org.junit.Rule;
 import org.junit.experimental.theories.DataPoints;
 import org.junit.experimental.theories.Theories;
@@ -112,6 +115,21 @@ public class GroovyRuntimeTest {
         assertLoadThreaddump(command, i, "D.load.threaddump(D.args[0]).threads.where(nameIs('blocked_thread'));%n");
     }
 
+    @Theory
+    public void loadSnapshot(String command, AbstractCliTest i) throws Exception {
+        File snapshot = File.createTempFile("dumpling", ".snap");
+        snapshot.deleteOnExit();
+        ThreadDumpRuntime runtime = new ThreadDumpFactory().fromStream(Util.resource("jstack/producer-consumer.log"));
+        new SnapshotFactory().write(runtime, snapshot);
+
+        i.stdin("D.load.snapshot(D.args[0]).threads.where(nameIs('blocked_thread'));%n");
+        i.run(command, snapshot.getAbsolutePath());
+
+        assertThat(i, i.reportedNoError());
+        assertThat(i.out.toString(), i.containsString("\"blocked_thread\""));
+        assertThat(i, i.succeeded());
+    }
+
     private void assertLoadThreaddump(String command, AbstractCliTest i, String script) throws Exception {
         File file = Util.asFile(Util.resource("jstack/producer-consumer.log"));
         i.stdin(script);
@@ -215,6 +233,16 @@ public class GroovyRuntimeTest {
         assertThat(i, i.succeeded());
     }
 
+    @Theory
+    public void groovyGrepWithPredicate(String command, AbstractCliTest i) {
+        i.stdin("def threads = D.load.jvm.threads; def stacks = threads.grep(evaluatingClass('java.lang.Thread')); assert stacks == threads.where(evaluatingClass('java.lang.Thread')); assert stacks.size() > 0; println stacks.class%n");
+        i.run(command);
+
+        assertThat(i, i.reportedNoError());
+        assertThat(i.out.toString(), i.containsString("class com.github.olivergondza.dumpling.model.jvm.JvmThreadSet"));
+        assertThat(i, i.succeeded());
+    }
+
     @Theory
     public void groovyFindAll(String command, AbstractCliTest i) {
         i.stdin("def threads = D.load.jvm.threads; assert threads == threads.findAll(); println threads.getClass()%n");
@@ -256,6 +284,16 @@ public class GroovyRuntimeTest {
         assertThat(i, i.succeeded());
     }
 
+    @Theory
+    public void groovyLookupByIdentifier(String command, AbstractCliTest i) {
+        i.stdin("def rt = D.load.jvm; def t = rt.threads.toList()[0]; assert rt.threads.byId(t.id) == t; assert rt.byNid(42) == null; print rt.byId(t.id).getClass()%n");
+        i.run(command);
+
+        assertThat(i, i.reportedNoError());
+        assertThat(i.out.toString(), i.containsString("class com.github.olivergondza.dumpling.model.jvm.JvmThread"));
+        assertThat(i, i.succeeded());
+    }
+
     @Theory
     public void groovyIntersectDifferentRuntime(String command, AbstractCliTest i) {
         i.stdin("D.load.jvm.threads.intersect(D.load.jvm.threads)%n");
@@ -323,6 +361,7 @@ public class GroovyRuntimeTest {
         assertThat(i, i.reportedNoError());
         assertThat(i.out.toString(), i.containsString("D.args: java.util.List%n  CLI arguments passed to the script"));
         assertThat(i.out.toString(), i.containsString("D.load.threaddump(String): com.github.olivergondza.dumpling.model.ProcessRuntime"));
+        assertThat(i.out.toString(), i.containsString("D.load.snapshot(String): com.github.olivergondza.dumpling.model.ProcessRuntime"));
         assertThat(i, i.succeeded());
     }
 }
@@ -0,0 +1,94 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.cli;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import com.github.olivergondza.dumpling.Util;
+
+public class SnapshotCommandTest extends AbstractCliTest {
+
+    @Test
+    public void cli() throws Exception {
+        String log = Util.asFile(Util.resource("jstack/deadlock.log")).getAbsolutePath();
+        File snapshot = File.createTempFile("dumpling", ".snap");
+        snapshot.deleteOnExit();
+
+        run("snapshot", "--in", "threaddump:" + log, "--out", snapshot.getAbsolutePath());
+        assertThat(this, succeeded());
+        assertThat(err.toString(), equalTo(""));
+
+        run("threaddump", "--in", "threaddump:" + log);
+        String expected = out.toString();
+
+        run("threaddump", "--in", "snapshot:" + snapshot.getAbsolutePath());
+        assertThat(this, succeeded());
+        assertThat(out.toString(), equalTo(expected));
+
+        stdin(snapshot);
+        run("threaddump", "--in", "snapshot:-");
+        assertThat(this, succeeded());
+        assertThat(out.toString(), equalTo(expected));
+    }
+
+    @Test
+    public void rejectSeries() throws Exception {
+        String log = Util.asFile(Util.resource("jstack/concatenated.log")).getAbsolutePath();
+        File snapshot = File.createTempFile("dumpling", ".snap");
+        snapshot.deleteOnExit();
+
+        run("snapshot", "--in", "threaddumps:" + log, "--out", snapshot.getAbsolutePath());
+        assertThat(exitValue, not(equalTo(0)));
+        assertThat(err.toString(), containsString("Snapshot can hold single runtime only, input provides several"));
+
+        run("threaddump", "--in", "threaddump:" + Util.asFile(Util.resource("jstack/blocking-chain.log")).getAbsolutePath());
+        String expected = out.toString();
+
+        run("threaddump", "--in", "snapshot:" + snapshot.getAbsolutePath());
+        assertThat(this, succeeded());
+        assertThat(out.toString(), equalTo(expected));
+
+        run("snapshot", "--in", "threaddumps:" + log);
+        assertThat(exitValue, not(equalTo(0)));
+        assertThat(err.toString(), containsString("Snapshot can hold single runtime only, input provides several"));
+    }
+
+    @Test
+    public void invalidSnapshot() throws Exception {
+        run("threaddump", "--in", "snapshot:" + Util.asFile(Util.resource("jstack/deadlock.log")).getAbsolutePath());
+        assertThat(err.toString(), containsString("Not a dumpling snapshot"));
+    }
+
+    @Test
+    public void hasHelp() {
+        run("help", "snapshot");
+        assertThat(out.toString(), containsString("Snapshot is loaded considerably faster than threaddump text"));
+    }
+}
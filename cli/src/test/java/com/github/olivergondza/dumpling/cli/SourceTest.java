@@ -30,6 +30,12 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.startsWith;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -106,6 +112,103 @@ public class SourceTest extends AbstractCliTest {
         assertThat(exitValue, equalTo(0));
     }
 
+    @Test
+    public void concatenatedThreaddumps() throws Exception {
+        String log = Util.asFile(Util.resource("jstack/concatenated.log")).getAbsolutePath();
+        run("threaddump", "--in", "threaddumps:" + log);
+
+        assertThat(exitValue, equalTo(0));
+        assertThat(err.toString(), containsString("2014-08-23 21:40:03%n"));
+        assertThat(err.toString(), containsString("2014-08-24 09:36:21%n"));
+        assertThat(err.toString(), containsString("2014-06-30 20:54:52%n"));
+        assertThat(out.toString(), containsString("\"blocked0\""));
+        assertThat(out.toString(), containsString("\"blocked_thread\""));
+
+        String fromFile = out.toString();
+        stdin(Util.resource("jstack/concatenated.log"));
+        run("threaddump", "--in", "threaddumps:-");
+        assertThat(exitValue, equalTo(0));
+        assertThat(out.toString(), equalTo(fromFile));
+    }
+
+    @Test
+    public void compressedThreaddump() throws Exception {
+        File gzip = File.createTempFile("dumpling", ".log.gz");
+        gzip.deleteOnExit();
+        OutputStream compressed = new GZIPOutputStream(new FileOutputStream(gzip));
+        compressed.write(Util.asString(Util.resource("jstack/deadlock.log")).getBytes());
+        compressed.close();
+
+        run("threaddump", "--in", "threaddump:" + Util.asFile(Util.resource("jstack/deadlock.log")).getAbsolutePath());
+        String plain = out.toString();
+
+        run("threaddump", "--in", "threaddump:" + gzip.getAbsolutePath());
+        assertThat(err.toString(), equalTo(""));
+        assertThat(exitValue, equalTo(0));
+        assertThat(out.toString(), equalTo(plain));
+
+        stdin(gzip);
+        run("threaddump", "--in", "threaddump:-");
+        assertThat(exitValue, equalTo(0));
+        assertThat(out.toString(), equalTo(plain));
+    }
+
+    @Test
+    public void zipArchive() throws Exception {
+        File zip = File.createTempFile("dumpling", ".zip");
+        zip.deleteOnExit();
+        ZipOutputStream archive = new ZipOutputStream(new FileOutputStream(zip));
+        archive.putNextEntry(new ZipEntry("blocking-chain.log"));
+        archive.write(Util.asString(Util.resource("jstack/blocking-chain.log")).getBytes());
+        archive.putNextEntry(new ZipEntry("producer-consumer.log"));
+        archive.write(Util.asString(Util.resource("jstack/producer-consumer.log")).getBytes());
+        archive.close();
+
+        run("threaddump", "--in", "threaddump:" + zip.getAbsolutePath());
+        assertThat(err.toString(), equalTo(""));
+        assertThat(exitValue, equalTo(0));
+        assertThat(out.toString(), containsString("\"blocked0\""));
+        assertThat(out.toString(), containsString("\"owning_thread\""));
+    }
+
+    @Test
+    public void followLog() throws Exception {
+        final File log = File.createTempFile("dumpling", ".log");
+        log.deleteOnExit();
+
+        Thread cli = new Thread("dumpling-cli") {
+            @Override public void run() {
+                SourceTest.this.run("threaddump", "--in", "follow:" + log.getAbsolutePath());
+            }
+        };
+        cli.start();
+
+        byte[] dump = Util.asString(Util.resource("jstack/deadlock.log")).getBytes();
+        // Threaddumps written before the log is open are not reported, keep appending until noticed
+        for (int i = 0; i < 50 && (err == null || !err.toString().contains("1970-01-01 11:22:33")); i++) {
+            FileOutputStream appender = new FileOutputStream(log, true);
+            appender.write(dump);
+            appender.close();
+            Thread.sleep(200);
+        }
+
+        cli.interrupt();
+        cli.join(10000);
+
+        assertThat(err.toString(), containsString("1970-01-01 11:22:33%n"));
+        assertThat(out.toString(), containsString("\"Handling GET /hudson/job/some_job/ : ajp-127.0.0.1-8009-133\""));
+        assertThat(exitValue, equalTo(0));
+    }
+
+    @Test
+    public void noConcatenatedThreaddumps() {
+        stdin("No threaddump here%n");
+        run("threaddump", "--in", "threaddumps:-");
+        assertThat(out.toString(), equalTo(""));
+        assertThat(err.toString(), containsString("No runtime found in -"));
+        assertThat(exitValue, not(equalTo(0)));
+    }
+
     @Test
     public void illegalPid() {
         run("groovy", "--in", "process:not_a_pid");
@@ -0,0 +1,79 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.query;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+import com.github.olivergondza.dumpling.Util;
+import com.github.olivergondza.dumpling.cli.AbstractCliTest;
+
+public class LockContentionTest extends AbstractCliTest {
+
+    private final String logPath = Util.asFile(Util.resource("jstack/contention.log")).getAbsolutePath();
+
+    @Test
+    public void cliQuery() throws Exception {
+        run("lock-contention", "--in", "threaddump:" + logPath);
+        assertThat(err.toString(), equalTo(""));
+        assertThat(out.toString(), containsString(
+                "* <0x7d74de4c0> (a java.lang.Object): 3 waiters%n" +
+                "  Owner: \"producer\" prio=10 tid=0x7ff5a02e2000 nid=4567%n" +
+                "  Blocked (3):%n" +
+                "    \"consumerC\" prio=10 tid=0x7ff5a02ef000 nid=4570%n"
+        ));
+        assertThat(out.toString(), containsString(
+                "* <0x7d70055c0> (a java.lang.ref.ReferenceQueue$Lock): 1 waiters%n" +
+                "  Waiting (1):%n" +
+                "    \"Finalizer\" daemon prio=10 tid=0x7ff5a0141800 nid=4561%n"
+        ));
+        assertThat(out.toString(), containsString("Lock classes:%n* java.lang.Object: 1 locks; Blocked: 3; Waiting: 0; Parked: 0%n"));
+        assertThat(out.toString(), containsString("%nContended locks: 3; Waiting threads: 5%n"));
+        assertThat(exitValue, equalTo(3)); // Number of contended locks
+    }
+
+    @Test
+    public void porcelain() throws Exception {
+        run("lock-contention", "--porcelain", "--in", "threaddump:" + logPath);
+        assertThat(err.toString(), equalTo(""));
+        assertThat(out.toString(), containsString(
+                "lock\tjava.lang.Object\t0x7d74de4c0\t3\t3\t0\t0\t\"producer\" prio=10 tid=0x00007ff5a02e2000 nid=0x11d7%n" +
+                "lock\tjava.lang.ref.ReferenceQueue$Lock\t0x7d70055c0\t1\t0\t1\t0\t%n"
+        ));
+        assertThat(out.toString(), containsString("class\tjava.lang.Object\t1\t3\t3\t0\t0%n"));
+        assertThat(out.toString(), not(containsString("Contended locks")));
+        assertThat(exitValue, equalTo(3));
+    }
+
+    @Test
+    public void hasHelp() throws Exception {
+        run("help", "lock-contention");
+        assertThat(err.toString(), equalTo(""));
+        assertThat(out.toString(), containsString("Porcelain output"));
+        assertThat(exitValue, equalTo(0));
+    }
+}
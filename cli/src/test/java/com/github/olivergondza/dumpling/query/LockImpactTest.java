@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.query;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+import com.github.olivergondza.dumpling.Util;
+import com.github.olivergondza.dumpling.cli.AbstractCliTest;
+
+public class LockImpactTest extends AbstractCliTest {
+
+    private final String logPath = Util.asFile(Util.resource("jstack/contention.log")).getAbsolutePath();
+
+    @Test
+    public void cliQuery() throws Exception {
+        run("lock-impact", "--in", "threaddump:" + logPath);
+        assertThat(err.toString(), equalTo(""));
+        assertListing(out.toString());
+        assertThat(out.toString(), not(containsString("%n\"consumerA\" prio=10 tid=0x7ff5a02e2800 nid=4568%n")));
+        assertThat(exitValue, equalTo(1)); // Number of blocking threads
+    }
+
+    @Test
+    public void cliQueryTraces() throws Exception {
+        run("lock-impact", "--show-stack-traces", "--limit", "1", "--in", "threaddump:" + logPath);
+        assertThat(err.toString(), equalTo(""));
+        assertListing(out.toString());
+        assertThat(out.toString(), containsString("%n\"producer\" prio=10 tid=0x7ff5a02e2000 nid=4567%n"));
+        assertThat(exitValue, equalTo(1));
+    }
+
+    @Test
+    public void invalidLimit() throws Exception {
+        run("lock-impact", "--limit", "0", "--in", "threaddump:" + logPath);
+        assertThat(err.toString(), containsString("Limit must be positive. 0 given."));
+        assertThat(exitValue, not(equalTo(0)));
+    }
+
+    @Test
+    public void hasHelp() throws Exception {
+        run("help", "lock-impact");
+        assertThat(err.toString(), equalTo(""));
+        assertThat(out.toString(), containsString("Longest chain: length of the longest wait chain"));
+        assertThat(exitValue, equalTo(0));
+    }
+
+    private void assertListing(String out) {
+        assertThat(out, containsString("Threads:%n* \"producer\" prio=10 tid=0x7ff5a02e2000 nid=4567%n"));
+        assertThat(out, containsString("Locks:%n* <0x7d74de4c0> (a java.lang.Object)%n  Held by \"producer\" prio=10 tid=0x7ff5a02e2000 nid=4567%n"));
+        assertThat(out, containsString("  Blocked: 3; Directly: 3; Longest chain: 1%n"));
+        assertThat(out, containsString("%nBlocking threads: 1; Blocking locks: 1; Blocked threads: 3%n"));
+    }
+}
@@ -46,6 +46,18 @@ public class TopContendersTest extends AbstractCliTest {
         assertThat(exitValue, equalTo(1)); // Number of blocking threads
     }
 
+    @Test
+    public void cliQueryLimit() throws Exception {
+        run("top-contenders", "--limit", "1", "--in", "threaddump:" + logPath);
+        assertThat(err.toString(), equalTo(""));
+        assertListing(out.toString());
+        assertThat(exitValue, equalTo(1));
+
+        run("top-contenders", "--limit", "0", "--in", "threaddump:" + logPath);
+        assertThat(err.toString(), containsString("Limit must be positive. 0 given."));
+        assertThat(exitValue, not(equalTo(0)));
+    }
+
     @Test
     public void toStringNoTraces() throws Exception {
         ThreadDumpRuntime runtime = new ThreadDumpFactory().fromStream(Util.resource("jstack/contention.log"));
@@ -0,0 +1,446 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.factory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Compression of threaddump input detected by its magic bytes.
+ *
+ * Input is decoded on a separate thread while the parser consumes it. JDK provides no xz decoder so the <tt>xz</tt>
+ * binary is invoked for that purpose, the same way jstack is by {@link PidRuntimeFactory}.
+ *
+ * @author ogondza
+ */
+/*package*/ enum Compression {
+    NONE(),
+    GZIP(0x1f, 0x8b),
+    ZIP('P', 'K', 0x03, 0x04),
+    XZ(0xfd, '7', 'z', 'X', 'Z', 0x00);
+
+    private static final int MAGIC_LENGTH = 6;
+    private static final int BUFFER = 1 << 16;
+
+    private final @Nonnull byte[] magic;
+
+    Compression(int... magic) {
+        this.magic = new byte[magic.length];
+        for (int i = 0; i < magic.length; i++) {
+            this.magic[i] = (byte) magic[i];
+        }
+    }
+
+    /**
+     * Detect compression of the input without consuming it.
+     */
+    /*package*/ static @Nonnull Compression detect(@Nonnull BufferedInputStream in) throws IOException {
+        in.mark(MAGIC_LENGTH);
+        try {
+            return detect(in, MAGIC_LENGTH);
+        } finally {
+            in.reset();
+        }
+    }
+
+    /*package*/ static @Nonnull Compression detect(@Nonnull File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            return detect(in, MAGIC_LENGTH);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static @Nonnull Compression detect(@Nonnull InputStream in, int length) throws IOException {
+        byte[] head = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int count = in.read(head, read, length - read);
+            if (count == -1) break;
+            read += count;
+        }
+
+        for (Compression compression: values()) {
+            if (compression == NONE || compression.magic.length > read) continue;
+            if (Arrays.equals(compression.magic, Arrays.copyOf(head, compression.magic.length))) return compression;
+        }
+        return NONE;
+    }
+
+    /*package*/ static @Nonnull BufferedInputStream buffered(@Nonnull InputStream in) {
+        return in instanceof BufferedInputStream
+                ? (BufferedInputStream) in
+                : new BufferedInputStream(in, BUFFER)
+        ;
+    }
+
+    /**
+     * Decoded content of single threaddump.
+     *
+     * Zip archive is expected to contain exactly one threaddump, use {@link #entries(BufferedInputStream)} to enumerate
+     * all of them.
+     */
+    /*package*/ @Nonnull InputStream decode(@Nonnull BufferedInputStream in) throws IOException {
+        switch (this) {
+            case NONE:
+                return in;
+            case GZIP:
+                return new Decoder(new GZIPInputStream(in, BUFFER));
+            case XZ:
+                return XzProcess.start(in);
+            case ZIP:
+                ZipInputStream zip = new ZipInputStream(in);
+                if (nextFile(zip) == null) {
+                    zip.close();
+                    throw new IOException("No threaddump found in zip archive");
+                }
+                return new Decoder(new SingleEntry(zip));
+            default:
+                throw new AssertionError(this);
+        }
+    }
+
+    /**
+     * Threaddumps of a zip archive, one per entry.
+     */
+    /*package*/ static @Nonnull ThreadDumpIterator.Dumps entries(@Nonnull BufferedInputStream in) {
+        return new Entries(new ZipInputStream(in));
+    }
+
+    private static @CheckForNull ZipEntry nextFile(@Nonnull ZipInputStream zip) throws IOException {
+        for (;;) {
+            ZipEntry entry = zip.getNextEntry();
+            if (entry == null || !entry.isDirectory()) return entry;
+        }
+    }
+
+    private static void closeQuietly(@Nonnull Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ex) {} // Ignore
+    }
+
+    /**
+     * Stream decoded on a separate thread.
+     *
+     * Decoded chunks are handed over through a bounded queue so the decoder runs ahead of the parser by at most
+     * {@link #QUEUE} chunks. Failure to decode is reported to the reader once it consumes all the chunks decoded before.
+     * Source is closed by the decoding thread once exhausted, or when the stream is closed.
+     */
+    /*package*/ static final class Decoder extends InputStream {
+        private static final int QUEUE = 8;
+        private static final byte[] EOF = new byte[0];
+
+        private final @Nonnull BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<byte[]>(QUEUE);
+        private final @Nonnull Thread thread;
+        private volatile boolean closed = false;
+        // Written before EOF is queued
+        private volatile @CheckForNull IOException failure;
+
+        private @CheckForNull byte[] chunk;
+        private int position = 0;
+        private boolean eof = false;
+
+        /*package*/ Decoder(@Nonnull final InputStream source) {
+            thread = new Thread(new Runnable() {
+                @Override public void run() {
+                    decode(source);
+                }
+            }, "Dumpling decoder");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void decode(@Nonnull InputStream source) {
+            try {
+                try {
+                    while (!closed) {
+                        byte[] buffer = new byte[BUFFER];
+                        int length = source.read(buffer);
+                        if (length == -1) break;
+                        if (length > 0) chunks.put(length == BUFFER ? buffer : Arrays.copyOf(buffer, length));
+                    }
+                } catch (IOException ex) {
+                    failure = ex;
+                } finally {
+                    closeQuietly(source);
+                }
+                chunks.put(EOF);
+            } catch (InterruptedException ex) {
+                // Abandoned, nobody is going to read the rest
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] buffer = chunk();
+            if (buffer == null) return -1;
+            return buffer[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+
+            byte[] buffer = chunk();
+            if (buffer == null) return -1;
+
+            int count = Math.min(len, buffer.length - position);
+            System.arraycopy(buffer, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return chunk == null ? 0 : chunk.length - position;
+        }
+
+        private @CheckForNull byte[] chunk() throws IOException {
+            if (closed) throw new IOException("Stream closed");
+            if (chunk != null && position < chunk.length) return chunk;
+
+            if (!eof) {
+                try {
+                    chunk = chunks.take();
+                    position = 0;
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for decoded input");
+                }
+                if (chunk != EOF) return chunk;
+
+                chunk = null;
+                eof = true;
+            }
+
+            IOException ex = failure;
+            if (ex != null) throw new IOException("Unable to decode input: " + ex.getMessage(), ex);
+            return null;
+        }
+
+        /**
+         * Stop decoding and wait for the decoding thread to release the source.
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+
+            closed = true;
+            chunk = null;
+            try {
+                while (thread.isAlive()) {
+                    // Unblock the decoder waiting for space in the queue
+                    chunks.clear();
+                    thread.join(10);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for decoder to terminate");
+            }
+        }
+    }
+
+    /**
+     * The only file entry of zip archive.
+     */
+    private static final class SingleEntry extends FilterInputStream {
+        private boolean verified = false;
+
+        private SingleEntry(@Nonnull ZipInputStream zip) {
+            super(zip);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read == -1) verify();
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read == -1) verify();
+            return read;
+        }
+
+        private void verify() throws IOException {
+            if (verified) return;
+
+            verified = true;
+            ZipEntry next = nextFile((ZipInputStream) in);
+            if (next != null) throw new IOException(
+                    "Zip archive contains several threaddumps, use ThreadDumpFactory.fromArchive() to process them all"
+            );
+        }
+    }
+
+    private static final class Entries implements ThreadDumpIterator.Dumps {
+        private final @Nonnull ZipInputStream zip;
+        private @CheckForNull Decoder entry;
+
+        private Entries(@Nonnull ZipInputStream zip) {
+            this.zip = zip;
+        }
+
+        @Override
+        public @CheckForNull ThreadDumpParser.Source next() throws IOException {
+            if (entry != null) {
+                // Entries are read in sequence, make sure the previous one is released
+                entry.close();
+                entry = null;
+            }
+
+            if (nextFile(zip) == null) return null;
+
+            final ZipInputStream zip = this.zip;
+            entry = new Decoder(new FilterInputStream(zip) {
+                @Override public void close() throws IOException {
+                    zip.closeEntry();
+                }
+            });
+            return new ThreadDumpParser.ReaderSource(new InputStreamReader(entry));
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (entry != null) entry.close();
+            } finally {
+                zip.close();
+            }
+        }
+    }
+
+    /**
+     * Output of <tt>xz</tt> process fed by a separate thread.
+     */
+    private static final class XzProcess extends FilterInputStream {
+        private final @Nonnull Process process;
+        private boolean verified = false;
+
+        private XzProcess(@Nonnull Process process) {
+            super(process.getInputStream());
+            this.process = process;
+        }
+
+        private static @Nonnull XzProcess start(@Nonnull final InputStream compressed) throws IOException {
+            final Process process;
+            try {
+                process = new ProcessBuilder("xz", "--decompress", "--stdout").start();
+            } catch (IOException ex) {
+                closeQuietly(compressed);
+                throw new IOException("Unable to invoke xz to decompress input: " + ex.getMessage(), ex);
+            }
+
+            Thread feeder = new Thread(new Runnable() {
+                @Override public void run() {
+                    OutputStream out = process.getOutputStream();
+                    try {
+                        byte[] buffer = new byte[BUFFER];
+                        int length;
+                        while ((length = compressed.read(buffer)) != -1) {
+                            out.write(buffer, 0, length);
+                        }
+                    } catch (IOException ex) {
+                        // Either the input is broken or xz terminated, reported by its exit code
+                    } finally {
+                        closeQuietly(compressed);
+                        closeQuietly(out);
+                    }
+                }
+            }, "Dumpling xz feeder");
+            feeder.setDaemon(true);
+            feeder.start();
+
+            return new XzProcess(process);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read == -1) verify();
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read == -1) verify();
+            return read;
+        }
+
+        private void verify() throws IOException {
+            if (verified) return;
+
+            verified = true;
+            int ret;
+            try {
+                ret = process.waitFor();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for xz to terminate");
+            }
+            if (ret == 0) return;
+
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            InputStream errorStream = process.getErrorStream();
+            byte[] buffer = new byte[1024];
+            int length;
+            while ((length = errorStream.read(buffer)) != -1) {
+                err.write(buffer, 0, length);
+            }
+            throw new IOException("xz failed with code " + ret + ": " + err.toString().trim());
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                process.destroy();
+            }
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.factory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Bounded pool of {@link StackTraceElement}s keyed by frame text.
+ *
+ * Frame text is the part of threaddump line that follows the <tt>at </tt> prefix, like
+ * <tt>java.lang.Thread.run(Thread.java:745)</tt>. The same frames repeat across threads and threaddumps a lot so parsers
+ * share the pool to tokenize every frame once and to keep a single element instance for all the traces it appears in.
+ *
+ * The pool is safe to be used by any number of parsers concurrently. It is split into segments, each evicting its least
+ * recently used frames once full. Lines repeated within a single threaddump are deduplicated by the parser before
+ * consulting the pool so the statistics reflect reuse across threaddumps and concurrent parsers.
+ *
+ * @author ogondza
+ * @see ThreadDumpFactory#framePool(FrameInternPool)
+ */
+public final class FrameInternPool {
+
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final int MAX_SEGMENTS = 16;
+
+    private static final FrameInternPool SHARED = new FrameInternPool(DEFAULT_CAPACITY);
+
+    /**
+     * Pool shared by all {@link ThreadDumpFactory} instances unless configured otherwise.
+     */
+    public static @Nonnull FrameInternPool shared() {
+        return SHARED;
+    }
+
+    private final int capacity;
+    private final @Nonnull Segment[] segments;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param capacity Maximal number of frames retained, 0 to tokenize every frame.
+     */
+    public FrameInternPool(@Nonnegative int capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("Negative capacity: " + capacity);
+
+        int segmentCount = 1;
+        while (segmentCount < MAX_SEGMENTS && segmentCount * 2 <= capacity) {
+            segmentCount *= 2;
+        }
+
+        this.capacity = capacity;
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            // Distribute the remainder so segment capacities add up to the pool capacity
+            segments[i] = new Segment(capacity / segmentCount + (i < capacity % segmentCount ? 1 : 0));
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get element for frame text.
+     *
+     * @param frame Frame text, its hash code and equality must be consistent with {@link String}.
+     * @return Pooled element or null if not present.
+     */
+    /*package*/ @CheckForNull StackTraceElement get(@Nonnull CharSequence frame) {
+        StackTraceElement element = segment(frame).get(frame);
+        (element == null ? misses : hits).incrementAndGet();
+        return element;
+    }
+
+    /**
+     * Add element tokenized from frame text to the pool.
+     *
+     * @return The element that is pooled for the frame, it differs from the one provided if it was added concurrently.
+     */
+    /*package*/ @Nonnull StackTraceElement put(@Nonnull String frame, @Nonnull StackTraceElement element) {
+        return segment(frame).put(frame, element);
+    }
+
+    /**
+     * Number of frames currently pooled.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment: segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Remove all frames from the pool. Statistics are preserved.
+     */
+    public void clear() {
+        for (Segment segment: segments) {
+            segment.clear();
+        }
+    }
+
+    public @Nonnull Stats getStats() {
+        return new Stats(hits.get(), misses.get(), evictions.get(), size(), capacity);
+    }
+
+    private @Nonnull Segment segment(@Nonnull CharSequence frame) {
+        int hash = frame.hashCode();
+        hash ^= hash >>> 16;
+        return segments[hash & (segments.length - 1)];
+    }
+
+    @Override
+    public String toString() {
+        return "FrameInternPool" + getStats();
+    }
+
+    private final class Segment {
+        private final int capacity;
+        private final LinkedHashMap<String, StackTraceElement> frames;
+
+        private Segment(final int capacity) {
+            this.capacity = capacity;
+            this.frames = new LinkedHashMap<String, StackTraceElement>(16, 0.75F, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, StackTraceElement> eldest) {
+                    if (size() <= Segment.this.capacity) return false;
+
+                    evictions.incrementAndGet();
+                    return true;
+                }
+            };
+        }
+
+        private synchronized @CheckForNull StackTraceElement get(@Nonnull CharSequence frame) {
+            return frames.get(frame);
+        }
+
+        private synchronized @Nonnull StackTraceElement put(@Nonnull String frame, @Nonnull StackTraceElement element) {
+            if (capacity == 0) return element;
+
+            StackTraceElement existing = frames.get(frame);
+            if (existing != null) return existing;
+
+            frames.put(frame, element);
+            return element;
+        }
+
+        private synchronized int size() {
+            return frames.size();
+        }
+
+        private synchronized void clear() {
+            frames.clear();
+        }
+    }
+
+    /**
+     * Snapshot of pool statistics.
+     */
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int size;
+        private final int capacity;
+
+        private Stats(long hits, long misses, long evictions, int size, int capacity) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+            this.capacity = capacity;
+        }
+
+        /**
+         * Number of lookups that found the frame pooled.
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * Number of lookups that had to tokenize the frame.
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * Number of frames removed to make space for others.
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        /**
+         * Ratio of lookups that found the frame pooled, 0 when there were none.
+         */
+        public double getHitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "[hits=%d, misses=%d, evictions=%d, size=%d/%d]", hits, misses, evictions, size, capacity
+            );
+        }
+    }
+}
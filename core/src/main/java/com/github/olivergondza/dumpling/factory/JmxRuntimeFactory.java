@@ -57,6 +57,7 @@ import javax.management.remote.JMXConnector;
 import javax.management.remote.JMXConnectorFactory;
 import javax.management.remote.JMXServiceURL;
 
+import com.github.olivergondza.dumpling.model.StackTrie;
 import com.github.olivergondza.dumpling.model.ThreadStatus;
 import com.github.olivergondza.dumpling.model.jmx.JmxRuntime;
 import com.github.olivergondza.dumpling.model.jmx.JmxThread;
@@ -122,10 +123,11 @@ public final class JmxRuntimeFactory {
     private @Nonnull JmxRuntime extractRuntime(@Nonnull MBeanServerConnection connection) {
         final List<ThreadInfo> threads = getRemoteThreads(connection);
         HashSet<JmxThread.Builder> builders = new HashSet<JmxThread.Builder>(threads.size());
+        StackTrie stackTrie = new StackTrie();
 
         for (ThreadInfo thread: threads) {
             JmxThread.Builder builder = new JmxThread.Builder();
-            final ThreadStatus status = fillThreadInfoData(thread, builder);
+            final ThreadStatus status = fillThreadInfoData(thread, builder, stackTrie);
 
             final LockInfo lockInfo = thread.getLockInfo();
             if (lockInfo != null) {
@@ -41,6 +41,7 @@ import java.util.Set;
 import javax.annotation.Nonnull;
 
 import com.github.olivergondza.dumpling.model.ProcessRuntime;
+import com.github.olivergondza.dumpling.model.StackTrie;
 import com.github.olivergondza.dumpling.model.ThreadLock;
 import com.github.olivergondza.dumpling.model.ThreadStatus;
 import com.github.olivergondza.dumpling.model.jvm.JvmRuntime;
@@ -78,6 +79,7 @@ public class JvmRuntimeFactory {
         Map<Long, ThreadInfo> infos = infos();
 
         HashSet<JvmThread.Builder> state = new HashSet<JvmThread.Builder>(threads.size());
+        StackTrie stackTrie = new StackTrie();
 
         for (Thread thread: threads) {
             ThreadInfo info = infos.get(thread.getId());
@@ -88,7 +90,7 @@ public class JvmRuntimeFactory {
                     .setDaemon(thread.isDaemon())
                     .setPriority(thread.getPriority())
             ;
-            final ThreadStatus status = fillThreadInfoData(info, builder);
+            final ThreadStatus status = fillThreadInfoData(info, builder, stackTrie);
 
             LockInfo lockInfo = info.getLockInfo();
             if (lockInfo != null) {
@@ -31,6 +31,7 @@ import java.util.List;
 
 import javax.annotation.Nonnull;
 
+import com.github.olivergondza.dumpling.model.StackTrie;
 import com.github.olivergondza.dumpling.model.ThreadLock;
 import com.github.olivergondza.dumpling.model.ThreadStatus;
 import com.github.olivergondza.dumpling.model.mxbean.MXBeanThread;
@@ -42,10 +43,10 @@ import com.github.olivergondza.dumpling.model.mxbean.MXBeanThread;
  */
 /*package*/ class MXBeanFactoryUtils {
 
-    /*package*/ static ThreadStatus fillThreadInfoData(ThreadInfo thread, MXBeanThread.Builder<?> builder) {
+    /*package*/ static ThreadStatus fillThreadInfoData(ThreadInfo thread, MXBeanThread.Builder<?> builder, StackTrie stackTrie) {
         builder.setName(thread.getThreadName())
                 .setId(thread.getThreadId())
-                .setStacktrace(thread.getStackTrace())
+                .setStacktrace(stackTrie.trace(thread.getStackTrace()))
                 .setAcquiredMonitors(getMonitors(thread))
                 .setAcquiredSynchronizers(getSynchronizers(thread))
         ;
@@ -0,0 +1,501 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.factory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import com.github.olivergondza.dumpling.model.ProcessRuntime;
+import com.github.olivergondza.dumpling.model.ProcessThread;
+import com.github.olivergondza.dumpling.model.StackTrace;
+import com.github.olivergondza.dumpling.model.StackTrie;
+import com.github.olivergondza.dumpling.model.ThreadLock;
+import com.github.olivergondza.dumpling.model.ThreadLock.Monitor;
+import com.github.olivergondza.dumpling.model.ThreadStatus;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
+import com.github.olivergondza.dumpling.model.mxbean.MXBeanRuntime;
+
+/**
+ * Store {@link ProcessRuntime} in compact binary snapshot and load it back.
+ *
+ * Loading the snapshot is considerably faster than parsing the threaddump as strings, stack frames, stack traces and
+ * locks are stored once in constant pools the thread records refer to by index. Runtime of any kind can be stored, it
+ * is always loaded as {@link ThreadDumpRuntime} preserving what its threaddump shows - thread groups or modules of the
+ * stack frames are not stored.
+ *
+ * <h2>Format</h2>
+ *
+ * All numbers are unsigned LEB128 varints, signed ones zigzag encoded, references are indexes to the pools.
+ *
+ * <pre>
+ * magic "DMPS", version
+ * strings: count, (length, UTF-8 bytes)*
+ * header: count, string*
+ * frames: count, (class string, method string, file string + 1 or 0, signed line)*
+ * traces: count, (depth, frame*)*
+ * locks: count, (class string, signed id)*
+ * threads: count, (name string, status string, flags, [signed id], [signed nid], [signed tid], [signed priority],
+ *          trace, [waiting to lock], [waiting on lock], monitors: count, (lock, depth)*, synchronizers: count, lock*)*
+ * </pre>
+ *
+ * @author ogondza
+ */
+public class SnapshotFactory {
+
+    // "DMPS"
+    private static final int MAGIC = 0x444d5053;
+    private static final int VERSION = 1;
+
+    // Thread record flags
+    private static final int DAEMON = 1;
+    private static final int HAS_ID = 2;
+    private static final int HAS_NID = 4;
+    private static final int HAS_TID = 8;
+    private static final int HAS_PRIORITY = 16;
+    private static final int WAITING_TO_LOCK = 32;
+    private static final int WAITING_ON_LOCK = 64;
+
+    /**
+     * Load runtime from snapshot file.
+     *
+     * @throws IOException File could not be read.
+     * @throws IllegalRuntimeStateException The file is not a valid snapshot.
+     */
+    public @Nonnull ThreadDumpRuntime fromFile(@Nonnull File snapshot) throws IOException {
+        FileInputStream fis = new FileInputStream(snapshot);
+        try {
+            return read(readAll(fis, (int) Math.min(snapshot.length(), Integer.MAX_VALUE - 8)));
+        } finally {
+            fis.close();
+        }
+    }
+
+    /**
+     * Load runtime from snapshot read from stream.
+     *
+     * Stream is closed once read.
+     *
+     * @throws IllegalRuntimeStateException The stream can not be read or it is not a valid snapshot.
+     */
+    public @Nonnull ThreadDumpRuntime fromStream(@Nonnull InputStream stream) {
+        try {
+            return read(readAll(stream, 8192));
+        } catch (IOException ex) {
+            throw new IllegalRuntimeStateException("Unable to read snapshot: %s", ex.getMessage());
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException ex) {} // Ignore
+        }
+    }
+
+    /**
+     * Write snapshot of the runtime to file.
+     *
+     * @throws IOException File could not be written.
+     */
+    public void write(@Nonnull ProcessRuntime<?, ?, ?> runtime, @Nonnull File snapshot) throws IOException {
+        FileOutputStream fos = new FileOutputStream(snapshot);
+        try {
+            write(runtime, fos);
+        } finally {
+            fos.close();
+        }
+    }
+
+    /**
+     * Write snapshot of the runtime to stream.
+     *
+     * Stream is flushed but not closed.
+     *
+     * @throws IOException Stream could not be written.
+     */
+    public void write(@Nonnull ProcessRuntime<?, ?, ?> runtime, @Nonnull OutputStream stream) throws IOException {
+        List<String> header = getHeader(runtime);
+
+        Pool<String> strings = new Pool<String>();
+        Pool<StackTraceElement> frames = new Pool<StackTraceElement>();
+        Pool<StackTrace> traces = new Pool<StackTrace>();
+        Pool<ThreadLock> locks = new Pool<ThreadLock>();
+        for (String line: header) {
+            strings.ref(line);
+        }
+        for (ProcessThread<?, ?, ?> thread: runtime.getThreads()) {
+            strings.ref(thread.getName());
+            strings.ref(thread.getStatus().name());
+            if (traces.ref(thread.getStackTrace()) == traces.size() - 1) {
+                for (StackTraceElement element: thread.getStackTrace().getElements()) {
+                    if (frames.ref(element) == frames.size() - 1) {
+                        strings.ref(element.getClassName());
+                        strings.ref(element.getMethodName());
+                        if (element.getFileName() != null) {
+                            strings.ref(element.getFileName());
+                        }
+                    }
+                }
+            }
+            lock(thread.getWaitingToLock(), locks, strings);
+            lock(thread.getWaitingOnLock(), locks, strings);
+            for (Monitor monitor: thread.getMonitors()) {
+                lock(monitor.getLock(), locks, strings);
+            }
+            for (ThreadLock synchronizer: thread.getAcquiredSynchronizers()) {
+                lock(synchronizer, locks, strings);
+            }
+        }
+
+        Output out = new Output(stream);
+        out.writeVarInt(MAGIC);
+        out.writeVarInt(VERSION);
+
+        out.writeVarInt(strings.size());
+        for (String string: strings.values) {
+            out.writeString(string);
+        }
+
+        out.writeVarInt(header.size());
+        for (String line: header) {
+            out.writeVarInt(strings.ref(line));
+        }
+
+        out.writeVarInt(frames.size());
+        for (StackTraceElement element: frames.values) {
+            out.writeVarInt(strings.ref(element.getClassName()));
+            out.writeVarInt(strings.ref(element.getMethodName()));
+            String fileName = element.getFileName();
+            out.writeVarInt(fileName == null ? 0 : strings.ref(fileName) + 1);
+            out.writeSignedVarLong(element.getLineNumber());
+        }
+
+        out.writeVarInt(traces.size());
+        for (StackTrace trace: traces.values) {
+            List<StackTraceElement> elements = trace.getElements();
+            out.writeVarInt(elements.size());
+            for (StackTraceElement element: elements) {
+                out.writeVarInt(frames.ref(element));
+            }
+        }
+
+        out.writeVarInt(locks.size());
+        for (ThreadLock lock: locks.values) {
+            out.writeVarInt(strings.ref(lock.getClassName()));
+            out.writeSignedVarLong(lock.getId());
+        }
+
+        out.writeVarInt(runtime.getThreads().size());
+        for (ProcessThread<?, ?, ?> thread: runtime.getThreads()) {
+            Long id = thread.getId();
+            Long nid = thread.getNid();
+            Long tid = thread.getTid();
+            Integer priority = thread.getPriority();
+            ThreadLock waitingToLock = thread.getWaitingToLock();
+            ThreadLock waitingOnLock = thread.getWaitingOnLock();
+
+            int flags = 0;
+            if (thread.isDaemon()) flags |= DAEMON;
+            if (id != null) flags |= HAS_ID;
+            if (nid != null) flags |= HAS_NID;
+            if (tid != null) flags |= HAS_TID;
+            if (priority != null) flags |= HAS_PRIORITY;
+            if (waitingToLock != null) flags |= WAITING_TO_LOCK;
+            if (waitingOnLock != null) flags |= WAITING_ON_LOCK;
+
+            out.writeVarInt(strings.ref(thread.getName()));
+            out.writeVarInt(strings.ref(thread.getStatus().name()));
+            out.writeVarInt(flags);
+            if (id != null) out.writeSignedVarLong(id);
+            if (nid != null) out.writeSignedVarLong(nid);
+            if (tid != null) out.writeSignedVarLong(tid);
+            if (priority != null) out.writeSignedVarLong(priority);
+            out.writeVarInt(traces.ref(thread.getStackTrace()));
+            if (waitingToLock != null) out.writeVarInt(locks.ref(waitingToLock));
+            if (waitingOnLock != null) out.writeVarInt(locks.ref(waitingOnLock));
+
+            List<Monitor> monitors = thread.getMonitors();
+            out.writeVarInt(monitors.size());
+            for (Monitor monitor: monitors) {
+                out.writeVarInt(locks.ref(monitor.getLock()));
+                out.writeVarInt(monitor.getDepth());
+            }
+
+            Set<ThreadLock> synchronizers = thread.getAcquiredSynchronizers();
+            out.writeVarInt(synchronizers.size());
+            for (ThreadLock synchronizer: synchronizers) {
+                out.writeVarInt(locks.ref(synchronizer));
+            }
+        }
+
+        out.flush();
+    }
+
+    private static void lock(@CheckForNull ThreadLock lock, @Nonnull Pool<ThreadLock> locks, @Nonnull Pool<String> strings) {
+        if (lock == null) return;
+
+        locks.ref(lock);
+        strings.ref(lock.getClassName());
+    }
+
+    private static @Nonnull List<String> getHeader(@Nonnull ProcessRuntime<?, ?, ?> runtime) {
+        if (runtime instanceof ThreadDumpRuntime) return ((ThreadDumpRuntime) runtime).getHeader();
+        if (runtime instanceof MXBeanRuntime) return ((MXBeanRuntime<?, ?, ?>) runtime).getHeader();
+
+        return Collections.emptyList();
+    }
+
+    private @Nonnull ThreadDumpRuntime read(@Nonnull byte[] data) {
+        Input in = new Input(data);
+        if (in.readVarInt() != MAGIC) throw new IllegalRuntimeStateException("Not a dumpling snapshot");
+        int version = in.readVarInt();
+        if (version != VERSION) throw new IllegalRuntimeStateException("Unsupported snapshot version %d", version);
+
+        try {
+            String[] strings = new String[in.readCount()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = in.readString();
+            }
+
+            int headerCount = in.readCount();
+            List<String> header = new ArrayList<String>(headerCount);
+            for (int i = 0; i < headerCount; i++) {
+                header.add(strings[in.readVarInt()]);
+            }
+
+            StackTraceElement[] frames = new StackTraceElement[in.readCount()];
+            for (int i = 0; i < frames.length; i++) {
+                String className = strings[in.readVarInt()];
+                String methodName = strings[in.readVarInt()];
+                int fileName = in.readVarInt();
+                frames[i] = new StackTraceElement(
+                        className, methodName, fileName == 0 ? null : strings[fileName - 1], (int) in.readSignedVarLong()
+                );
+            }
+
+            StackTrie trie = new StackTrie();
+            StackTrace[] traces = new StackTrace[in.readCount()];
+            for (int i = 0; i < traces.length; i++) {
+                StackTraceElement[] elements = new StackTraceElement[in.readCount()];
+                for (int j = 0; j < elements.length; j++) {
+                    elements[j] = frames[in.readVarInt()];
+                }
+                traces[i] = trie.trace(elements);
+            }
+
+            ThreadLock[] locks = new ThreadLock[in.readCount()];
+            for (int i = 0; i < locks.length; i++) {
+                locks[i] = new ThreadLock(strings[in.readVarInt()], in.readSignedVarLong());
+            }
+
+            Map<String, ThreadStatus> statuses = new HashMap<String, ThreadStatus>();
+            int threadCount = in.readCount();
+            Set<ThreadDumpThread.Builder> builders = new LinkedHashSet<ThreadDumpThread.Builder>(threadCount * 4 / 3 + 1);
+            for (int i = 0; i < threadCount; i++) {
+                ThreadDumpThread.Builder builder = new ThreadDumpThread.Builder();
+                builder.setName(strings[in.readVarInt()]);
+
+                String statusName = strings[in.readVarInt()];
+                ThreadStatus status = statuses.get(statusName);
+                if (status == null) {
+                    status = ThreadStatus.valueOf(statusName);
+                    statuses.put(statusName, status);
+                }
+                builder.setThreadStatus(status);
+
+                int flags = in.readVarInt();
+                builder.setDaemon((flags & DAEMON) != 0);
+                if ((flags & HAS_ID) != 0) builder.setId(in.readSignedVarLong());
+                if ((flags & HAS_NID) != 0) builder.setNid(in.readSignedVarLong());
+                if ((flags & HAS_TID) != 0) builder.setTid(in.readSignedVarLong());
+                if ((flags & HAS_PRIORITY) != 0) builder.setPriority((int) in.readSignedVarLong());
+                builder.setStacktrace(traces[in.readVarInt()]);
+                if ((flags & WAITING_TO_LOCK) != 0) builder.setWaitingToLock(locks[in.readVarInt()]);
+                if ((flags & WAITING_ON_LOCK) != 0) builder.setWaitingOnLock(locks[in.readVarInt()]);
+
+                int monitorCount = in.readCount();
+                if (monitorCount > 0) {
+                    List<Monitor> monitors = new ArrayList<Monitor>(monitorCount);
+                    for (int j = 0; j < monitorCount; j++) {
+                        monitors.add(new Monitor(locks[in.readVarInt()], in.readVarInt()));
+                    }
+                    builder.setAcquiredMonitors(monitors);
+                }
+
+                int synchronizerCount = in.readCount();
+                if (synchronizerCount > 0) {
+                    List<ThreadLock> synchronizers = new ArrayList<ThreadLock>(synchronizerCount);
+                    for (int j = 0; j < synchronizerCount; j++) {
+                        synchronizers.add(locks[in.readVarInt()]);
+                    }
+                    builder.setAcquiredSynchronizers(synchronizers);
+                }
+
+                builders.add(builder);
+            }
+
+            if (!in.isExhausted()) throw new IllegalRuntimeStateException("Trailing data in snapshot");
+
+            return new ThreadDumpRuntime(builders, header);
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            throw new IllegalRuntimeStateException("Corrupted snapshot: invalid reference %s", ex.getMessage());
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalRuntimeStateException("Corrupted snapshot: %s", ex.getMessage());
+        }
+    }
+
+    private static @Nonnull byte[] readAll(@Nonnull InputStream stream, int sizeHint) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(sizeHint, 32));
+        byte[] buffer = new byte[8192];
+        int len;
+        while ((len = stream.read(buffer)) != -1) {
+            out.write(buffer, 0, len);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Values in the order of their first reference.
+     */
+    private static final class Pool<T> {
+        private final @Nonnull Map<T, Integer> refs = new HashMap<T, Integer>();
+        private final @Nonnull List<T> values = new ArrayList<T>();
+
+        private int ref(@Nonnull T value) {
+            Integer ref = refs.get(value);
+            if (ref == null) {
+                ref = values.size();
+                refs.put(value, ref);
+                values.add(value);
+            }
+            return ref;
+        }
+
+        private int size() {
+            return values.size();
+        }
+    }
+
+    private static final class Output {
+        private final @Nonnull OutputStream out;
+
+        private Output(@Nonnull OutputStream out) {
+            this.out = new BufferedOutputStream(out, 1 << 16);
+        }
+
+        private void writeVarInt(int value) throws IOException {
+            writeVarLong(value & 0xFFFFFFFFL);
+        }
+
+        private void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        private void writeSignedVarLong(long value) throws IOException {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        private void writeString(@Nonnull String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private void flush() throws IOException {
+            out.flush();
+        }
+    }
+
+    private static final class Input {
+        private final @Nonnull byte[] data;
+        private int pos = 0;
+
+        private Input(@Nonnull byte[] data) {
+            this.data = data;
+        }
+
+        private byte readByte() {
+            if (pos == data.length) throw new IllegalRuntimeStateException("Truncated snapshot");
+            return data[pos++];
+        }
+
+        private int readVarInt() {
+            long value = readVarLong();
+            if ((value & ~0xFFFFFFFFL) != 0) throw new IllegalRuntimeStateException("Corrupted snapshot: number out of range");
+            return (int) value;
+        }
+
+        // Number of items to follow, each taking at least one byte
+        private int readCount() {
+            int count = readVarInt();
+            if (count < 0 || count > data.length - pos) throw new IllegalRuntimeStateException("Truncated snapshot");
+            return count;
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) return value;
+            }
+            throw new IllegalRuntimeStateException("Corrupted snapshot: number out of range");
+        }
+
+        private long readSignedVarLong() {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private @Nonnull String readString() {
+            int length = readCount();
+            String value = new String(data, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+
+        private boolean isExhausted() {
+            return pos == data.length;
+        }
+    }
+}
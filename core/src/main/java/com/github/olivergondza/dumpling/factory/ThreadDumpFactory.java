@@ -23,13 +23,17 @@
  */
 package com.github.olivergondza.dumpling.factory;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
-import java.math.BigInteger;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -38,15 +42,18 @@ import java.util.List;
 import java.util.Scanner;
 import java.util.Set;
 import java.util.StringTokenizer;
-import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
 import com.github.olivergondza.dumpling.model.ProcessRuntime;
 import com.github.olivergondza.dumpling.model.StackTrace;
+import com.github.olivergondza.dumpling.model.StackTrie;
 import com.github.olivergondza.dumpling.model.ThreadLock;
 import com.github.olivergondza.dumpling.model.ThreadLock.Monitor;
 import com.github.olivergondza.dumpling.model.ThreadStatus;
@@ -86,7 +93,20 @@ public class ThreadDumpFactory {
             Pattern.DOTALL
     );
 
+    // Values of ASCII hex digits, -1 for other characters
+    private static final byte[] HEX_DIGITS = new byte[128];
+    static {
+        for (char c = 0; c < HEX_DIGITS.length; c++) {
+            HEX_DIGITS[c] = (byte) Character.digit(c, 16);
+        }
+    }
+
     private boolean failOnErrors = false;
+    private boolean streamingParser = false;
+    private int parallelism = 1;
+    private boolean lazyStackTraces = false;
+    private @Nonnull FrameInternPool framePool = FrameInternPool.shared();
+    private @CheckForNull StackTrie stackTrie = null;
 
     /**
      * Historically, dumpling tolerates some of the errors silently.
@@ -98,9 +118,83 @@ public class ThreadDumpFactory {
         return this;
     }
 
+    /**
+     * Parse threaddump in a single pass using hand-written tokenizer instead of regular expressions.
+     *
+     * Both parsers produce the same runtime, the streaming one is considerably faster and produces less garbage for
+     * large threaddumps.
+     */
+    public ThreadDumpFactory streamingParser(boolean streamingParser) {
+        this.streamingParser = streamingParser;
+        return this;
+    }
+
+    /**
+     * Parse threads using given number of worker threads.
+     *
+     * Threads are parsed on dedicated {@link ForkJoinPool} while the input is being read. The runtime is identical to
+     * the one parsed sequentially. Value greater than 1 implies {@link #streamingParser(boolean)}.
+     *
+     * @param parallelism Number of worker threads, 1 for sequential parsing.
+     */
+    public ThreadDumpFactory parallelism(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Defer tokenizing stack frames until the trace is accessed.
+     *
+     * Thread state, locks and monitor depths are extracted during parsing, but frames other than the innermost one are
+     * kept as lines of the original threaddump until {@link com.github.olivergondza.dumpling.model.StackTrace} elements
+     * are requested. This speeds up queries that do not inspect stack traces considerably. Implies
+     * {@link #streamingParser(boolean)}.
+     */
+    public ThreadDumpFactory lazyStackTraces(boolean lazyStackTraces) {
+        this.lazyStackTraces = lazyStackTraces;
+        return this;
+    }
+
+    /**
+     * Use given pool to intern stack frames.
+     *
+     * Factories use {@link FrameInternPool#shared()} by default.
+     */
+    public ThreadDumpFactory framePool(@Nonnull FrameInternPool framePool) {
+        this.framePool = framePool;
+        return this;
+    }
+
+    /**
+     * Share stack traces of all the runtimes created through given trie.
+     *
+     * By default, every runtime gets its own trie, including those iterated from a log or followed. Sharing the trie
+     * deduplicates stack traces repeated across threaddumps of a series, but the trie retains every distinct stack trace
+     * ever added so the memory is no longer bounded by a single threaddump.
+     *
+     * @param stackTrie Trie to use, null for default.
+     */
+    public ThreadDumpFactory stackTrie(@CheckForNull StackTrie stackTrie) {
+        this.stackTrie = stackTrie;
+        return this;
+    }
+
+    /**
+     * Trie to use for a runtime.
+     */
+    /*package*/ @Nonnull StackTrie stackTrie() {
+        StackTrie stackTrie = this.stackTrie;
+        return stackTrie == null ? new StackTrie() : stackTrie;
+    }
+
     /**
      * Create runtime from thread dump.
      *
+     * Threaddump compressed using gzip, xz or zip is decoded transparently. Zip archive is expected to contain single
+     * threaddump, see {@link #fromArchive(File)}.
+     *
      * @throws IOException File could not be loaded.
      */
     public @Nonnull ThreadDumpRuntime fromFile(@Nonnull File threadDump) throws IOException {
@@ -112,10 +206,101 @@ public class ThreadDumpFactory {
         }
     }
 
+    /**
+     * Create runtime from thread dump file mapped into memory.
+     *
+     * The file is scanned in place using streaming parser so only the strings retained by the model are allocated.
+     * Falls back to {@link #fromFile(File)} for files that can not be mapped like pipes or devices, or when platform
+     * encoding can not be scanned bytewise, as well as for compressed files.
+     *
+     * @throws IOException File could not be loaded.
+     */
+    public @Nonnull ThreadDumpRuntime fromMappedFile(@Nonnull File threadDump) throws IOException {
+        Charset charset = Charset.defaultCharset();
+        if (!isMappable(threadDump, charset)) return fromFile(threadDump);
+
+        FileChannel channel = FileChannel.open(threadDump.toPath(), StandardOpenOption.READ);
+        try {
+            return parse(new ThreadDumpParser.MappedSource(channel, charset));
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Report content of the threaddump to the listener instead of creating runtime.
+     *
+     * Threaddump is processed using streaming parser, memory mapped when possible, honoring all the options of the
+     * factory. The listener is invoked on the calling thread.
+     *
+     * @throws IOException File could not be loaded.
+     * @throws IllegalRuntimeStateException The file is not a valid threaddump.
+     */
+    public void parse(@Nonnull File threadDump, @Nonnull ThreadDumpListener listener) throws IOException {
+        Charset charset = Charset.defaultCharset();
+        if (!isMappable(threadDump, charset)) {
+            FileInputStream fis = new FileInputStream(threadDump);
+            try {
+                parse(fis, listener);
+                return;
+            } finally {
+                fis.close();
+            }
+        }
+
+        FileChannel channel = FileChannel.open(threadDump.toPath(), StandardOpenOption.READ);
+        try {
+            parse(new ThreadDumpParser.MappedSource(channel, charset), listener);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Report content of the threaddump to the listener instead of creating runtime.
+     *
+     * @throws IllegalRuntimeStateException The stream can not be read or it is not a valid threaddump.
+     * @see #parse(File, ThreadDumpListener)
+     */
+    public void parse(@Nonnull InputStream threadDump, @Nonnull ThreadDumpListener listener) {
+        InputStreamReader reader = new InputStreamReader(decode(threadDump));
+        try {
+            parse(new ThreadDumpParser.ReaderSource(reader), listener);
+        } catch (IOException ex) {
+            throw new IllegalRuntimeStateException("Unable to read threaddump: %s", ex.getMessage());
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException ex) {} // Ignore
+        }
+    }
+
+    /**
+     * Create runtime from thread dump read from stream, decoding compressed content transparently.
+     *
+     * Stream is closed once read.
+     *
+     * @see #fromFile(File)
+     */
     public @Nonnull ThreadDumpRuntime fromStream(@Nonnull InputStream stream) {
+        stream = decode(stream);
+        if (streamingParser || parallelism > 1 || lazyStackTraces) {
+            InputStreamReader reader = new InputStreamReader(stream);
+            try {
+                return parse(new ThreadDumpParser.ReaderSource(reader));
+            } catch (IOException ex) {
+                throw new IllegalRuntimeStateException("Unable to read threaddump: %s", ex.getMessage());
+            } finally {
+                try {
+                    reader.close();
+                } catch (IOException ex) {} // Ignore
+            }
+        }
+
         Set<ThreadDumpThread.Builder> threads = new LinkedHashSet<ThreadDumpThread.Builder>();
         List<String> header = new ArrayList<String>();
 
+        StackTrie stackTrie = stackTrie();
         Scanner scanner = new Scanner(stream);
         scanner.useDelimiter(THREAD_DELIMITER);
         try {
@@ -128,7 +313,7 @@ public class ThreadDumpFactory {
                     break;
                 }
 
-                ThreadDumpThread.Builder thread = thread(singleChunk);
+                ThreadDumpThread.Builder thread = thread(singleChunk, stackTrie);
                 if (thread != null) {
                     threads.add(thread);
                     continue;
@@ -151,6 +336,9 @@ public class ThreadDumpFactory {
                     LOG.warning(msg);
                 }
             }
+            // Scanner reports the input is exhausted when it fails to read
+            IOException ex = scanner.ioException();
+            if (ex != null) throw new IllegalRuntimeStateException("Unable to read threaddump: %s", ex.getMessage());
         } finally {
             scanner.close();
         }
@@ -162,6 +350,148 @@ public class ThreadDumpFactory {
         return new ThreadDumpRuntime(threads, header);
     }
 
+    /**
+     * Iterate threaddumps concatenated in a log file.
+     *
+     * File is memory mapped when possible. Compressed files are decoded transparently, every file of zip archive is
+     * considered a separate threaddump.
+     *
+     * @throws IOException File could not be opened.
+     * @see ThreadDumpIterator
+     */
+    public @Nonnull ThreadDumpIterator iterate(@Nonnull File log) throws IOException {
+        Charset charset = Charset.defaultCharset();
+        if (!isMappable(log, charset)) return iterate(new FileInputStream(log));
+
+        FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.READ);
+        try {
+            return new ThreadDumpIterator(this, new ThreadDumpParser.MappedSource(channel, charset), channel, failOnErrors);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Iterate threaddumps concatenated in a stream, like stdout log of a process that was sent <tt>SIGQUIT</tt> several
+     * times.
+     *
+     * @see ThreadDumpIterator
+     */
+    public @Nonnull ThreadDumpIterator iterate(@Nonnull InputStream log) {
+        BufferedInputStream in = Compression.buffered(log);
+        try {
+            Compression compression = Compression.detect(in);
+            if (compression == Compression.ZIP) {
+                return new ThreadDumpIterator(this, Compression.entries(in), failOnErrors);
+            }
+
+            InputStreamReader reader = new InputStreamReader(compression.decode(in));
+            return new ThreadDumpIterator(this, new ThreadDumpParser.ReaderSource(reader), reader, failOnErrors);
+        } catch (IOException ex) {
+            closeQuietly(in);
+            throw new IllegalRuntimeStateException("Unable to read threaddump: %s", ex.getMessage());
+        }
+    }
+
+    /**
+     * Follow threaddumps appended to a log file.
+     *
+     * @param fromStart Report threaddumps already present in the file, or only those appended later.
+     * @throws IOException File could not be opened.
+     * @see ThreadDumpFollower
+     */
+    public @Nonnull ThreadDumpFollower follow(@Nonnull File log, boolean fromStart) throws IOException {
+        return new ThreadDumpFollower(this, log, fromStart, failOnErrors);
+    }
+
+    /**
+     * Iterate threaddumps of zip archive, one per file.
+     *
+     * Other input, compressed or not, is considered a single threaddump so this can be used whenever the input might
+     * contain several threaddumps bundled together. Invalid archive entries are skipped unless
+     * {@link #failOnErrors(boolean)} is set, while invalid single threaddump is always reported.
+     *
+     * @throws IOException File could not be opened.
+     */
+    public @Nonnull ThreadDumpIterator fromArchive(@Nonnull File archive) throws IOException {
+        Charset charset = Charset.defaultCharset();
+        if (!isMappable(archive, charset)) return fromArchive(new FileInputStream(archive));
+
+        FileChannel channel = FileChannel.open(archive.toPath(), StandardOpenOption.READ);
+        try {
+            return ThreadDumpIterator.single(this, new ThreadDumpParser.MappedSource(channel, charset), channel);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Iterate threaddumps of zip archive read from stream.
+     *
+     * @see #fromArchive(File)
+     */
+    public @Nonnull ThreadDumpIterator fromArchive(@Nonnull InputStream archive) {
+        BufferedInputStream in = Compression.buffered(archive);
+        try {
+            Compression compression = Compression.detect(in);
+            if (compression == Compression.ZIP) {
+                return new ThreadDumpIterator(this, Compression.entries(in), failOnErrors);
+            }
+
+            InputStreamReader reader = new InputStreamReader(compression.decode(in));
+            return ThreadDumpIterator.single(this, new ThreadDumpParser.ReaderSource(reader), reader);
+        } catch (IOException ex) {
+            closeQuietly(in);
+            throw new IllegalRuntimeStateException("Unable to read threaddump: %s", ex.getMessage());
+        }
+    }
+
+    private static @Nonnull InputStream decode(@Nonnull InputStream stream) {
+        BufferedInputStream in = Compression.buffered(stream);
+        try {
+            return Compression.detect(in).decode(in);
+        } catch (IOException ex) {
+            closeQuietly(in);
+            throw new IllegalRuntimeStateException("Unable to read threaddump: %s", ex.getMessage());
+        }
+    }
+
+    private static boolean isMappable(@Nonnull File file, @Nonnull Charset charset) throws IOException {
+        return file.isFile()
+                && ThreadDumpParser.MappedSource.supports(charset)
+                && Compression.detect(file) == Compression.NONE
+        ;
+    }
+
+    private static void closeQuietly(@Nonnull InputStream in) {
+        try {
+            in.close();
+        } catch (IOException ex) {} // Ignore
+    }
+
+    /*package*/ @Nonnull ThreadDumpRuntime parse(@Nonnull ThreadDumpParser.Source source) throws IOException {
+        ThreadDumpParser.RuntimeBuilder builder = new ThreadDumpParser.RuntimeBuilder();
+        parse(source, builder);
+        return builder.runtime();
+    }
+
+    /*package*/ void parse(@Nonnull ThreadDumpParser.Source source, @Nonnull ThreadDumpListener listener) throws IOException {
+        ThreadDumpParser parser = new ThreadDumpParser(failOnErrors, lazyStackTraces, framePool, stackTrie());
+        if (parallelism == 1) {
+            parser.parse(source, listener);
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            parser.parse(source, pool, listener);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
     public @Nonnull ThreadDumpRuntime fromString(@Nonnull String runtime) {
         try {
             InputStream is = new ByteArrayInputStream(runtime.getBytes("UTF-8"));
@@ -177,7 +507,7 @@ public class ThreadDumpFactory {
         }
     }
 
-    private ThreadDumpThread.Builder thread(String singleThread) {
+    private ThreadDumpThread.Builder thread(String singleThread, StackTrie stackTrie) {
         Matcher matcher = THREAD_HEADER.matcher(singleThread);
         if (!matcher.find()) return null;
 
@@ -187,7 +517,7 @@ public class ThreadDumpFactory {
 
         final String trace = matcher.group(4);
         if (trace != null) {
-            builder = initStacktrace(builder, trace);
+            builder = initStacktrace(builder, trace, stackTrie);
         }
 
         String status = matcher.group(3);
@@ -199,7 +529,7 @@ public class ThreadDumpFactory {
         return fixup(builder, singleThread);
     }
 
-    private Builder initStacktrace(Builder builder, String trace) {
+    private Builder initStacktrace(Builder builder, String trace, StackTrie stackTrie) {
         ArrayList<StackTraceElement> traceElements = new ArrayList<StackTraceElement>();
 
         List<ThreadLock.Monitor> monitors = new ArrayList<ThreadLock.Monitor>();
@@ -261,13 +591,13 @@ public class ThreadDumpFactory {
 
         builder.setAcquiredMonitors(monitors);
         builder.setAcquiredSynchronizers(synchronizers);
-        builder.setStacktrace(new StackTrace(traceElements));
+        builder.setStacktrace(stackTrie.trace(traceElements));
         builder.setWaitingToLock(waitingToLock);
         builder.setWaitingOnLock(waitingOnLock);
         return builder;
     }
 
-    private Builder fixup(Builder builder, String wholeThread) {
+    /*package*/ static Builder fixup(Builder builder, Object wholeThread) {
         ThreadStatus status = builder.getThreadStatus();
         StackTraceElement innerFrame = builder.getStacktrace().getElement(0);
         ThreadLock waitingToLock = builder.getWaitingToLock(); // Block waiting on monitor
@@ -283,8 +613,7 @@ public class ThreadDumpFactory {
             }
             if (acquiredLocks.size() == 1) {
                 waitingOnLock = acquiredLocks.iterator().next();
-                LOG.fine("FIXUP: Adjust lock state from 'locked' to 'waiting on' when thread entering Object.wait()");
-                LOG.fine(wholeThread);
+                logFixup("FIXUP: Adjust lock state from 'locked' to 'waiting on' when thread entering Object.wait()", wholeThread);
             }
         }
 
@@ -296,8 +625,7 @@ public class ThreadDumpFactory {
 
             // 'waiting on' is reported even when blocked re-entering the monitor. Convert it from waitingOn to waitingTo
             if (builder.getThreadStatus().isBlocked()) {
-                LOG.fine("FIXUP: Adjust lock state from 'waiting on' to 'waiting to' when thread re-acquiring the monitor after Object.wait()");
-                LOG.fine(wholeThread);
+                logFixup("FIXUP: Adjust lock state from 'waiting on' to 'waiting to' when thread re-acquiring the monitor after Object.wait()", wholeThread);
                 waitingToLock = waitingOnLock;
                 waitingOnLock = null;
             }
@@ -308,8 +636,7 @@ public class ThreadDumpFactory {
             // Presumably when entering or leaving the parked state.
             // Remove the lock instead of fixing the thread status as there is
             // no general way to tell PARKED and PARKED_TIMED apart.
-            LOG.fine("FIXUP: Remove 'waiting to' lock declared on RUNNABLE thread");
-            LOG.fine(wholeThread);
+            logFixup("FIXUP: Remove 'waiting to' lock declared on RUNNABLE thread", wholeThread);
             waitingOnLock = null;
         }
 
@@ -318,13 +645,11 @@ public class ThreadDumpFactory {
         if (waitingToLock == null && status.isBlocked()) {
             Monitor monitor = getMonitorJustAcquired(monitors);
             if (monitor != null) {
-                LOG.fine("FIXUP: Adjust lock state from 'locked' to 'waiting to' on BLOCKED thread");
-                LOG.fine(wholeThread);
+                logFixup("FIXUP: Adjust lock state from 'locked' to 'waiting to' on BLOCKED thread", wholeThread);
                 waitingToLock = monitor.getLock();
                 monitors.remove(0);
             } else {
-                LOG.fine("FIXUP: Adjust thread state from 'BLOCKED' to 'RUNNABLE' when monitor is missing");
-                LOG.fine(wholeThread);
+                logFixup("FIXUP: Adjust thread state from 'BLOCKED' to 'RUNNABLE' when monitor is missing", wholeThread);
                 builder.setThreadStatus(status = ThreadStatus.RUNNABLE);
             }
         }
@@ -335,8 +660,16 @@ public class ThreadDumpFactory {
         return builder;
     }
 
+    // Thread text is rendered only when needed
+    private static void logFixup(String message, Object wholeThread) {
+        if (!LOG.isLoggable(Level.FINE)) return;
+
+        LOG.fine(message);
+        LOG.fine(wholeThread.toString());
+    }
+
     // get monitor acquired on current stackframe, null when it was acquired earlier or not monitor is held
-    private Monitor getMonitorJustAcquired(List<ThreadLock.Monitor> monitors) {
+    private static Monitor getMonitorJustAcquired(List<ThreadLock.Monitor> monitors) {
         if (monitors.isEmpty()) return null;
         Monitor monitor = monitors.get(0);
         if (monitor.getDepth() != 0) return null;
@@ -350,11 +683,11 @@ public class ThreadDumpFactory {
         return monitor;
     }
 
-    private static final WeakHashMap<String, StackTraceElement> traceElementCache = new WeakHashMap<String, StackTraceElement>();
     private StackTraceElement traceElement(String line) {
         if (!line.startsWith("\tat ") && !line.matches("(  )+at .*")) return null;
 
-        StackTraceElement cached = traceElementCache.get(line);
+        String frame = line.substring(line.indexOf("at ") + 3);
+        StackTraceElement cached = framePool.get(frame);
         if (cached != null) return cached;
 
         Matcher match = STACK_TRACE_ELEMENT_LINE.matcher(line);
@@ -374,11 +707,10 @@ public class ThreadDumpFactory {
         StackTraceElement element = StackTrace.element(
                 match.group(1), match.group(2), sourceFile, sourceLine
         );
-        traceElementCache.put(line, element);
-        return element;
+        return framePool.put(frame, element);
     }
 
-    private boolean filterMonitors(List<ThreadLock.Monitor> monitors, ThreadLock lock) {
+    private static boolean filterMonitors(List<ThreadLock.Monitor> monitors, ThreadLock lock) {
         return monitors.removeIf(m -> m.getLock().equals(lock));
     }
 
@@ -399,21 +731,58 @@ public class ThreadDumpFactory {
         }
     }
 
-    private long parseNid(String value) {
-        return value.startsWith("0x")
-                ? parseLong(value.substring(2))
-                : Long.parseLong(value) // Dumpling human readable output
+    /*package*/ static long parseNid(String value) {
+        return parseNid(value, 0, value.length());
+    }
+
+    /*package*/ static long parseNid(CharSequence value, int start, int end) {
+        return isHexPrefixed(value, start, end)
+                ? parseHex(value, start + 2, end)
+                : Long.parseLong(value.subSequence(start, end).toString()) // Dumpling human readable output
         ;
     }
 
     /*package*/ static long parseLong(String value) {
-        if (value.startsWith("0x")) {
+        return parseLong(value, 0, value.length());
+    }
+
+    /*package*/ static long parseLong(CharSequence value, int start, int end) {
+        if (isHexPrefixed(value, start, end)) {
             // Oracle JDK on OS X do not use prefix for tid - so we need to be able to read both
             // https://github.com/olivergondza/dumpling/issues/59
-            value = value.substring(2);
+            start += 2;
+        }
+
+        return parseHex(value, start, end);
+    }
+
+    private static boolean isHexPrefixed(CharSequence value, int start, int end) {
+        return end - start >= 2 && value.charAt(start) == '0' && value.charAt(start + 1) == 'x';
+    }
+
+    /**
+     * Parse hexadecimal number keeping its lowest 64 bits.
+     *
+     * Long.parseLong is unsuitable as the addresses can exceed signed long: https://github.com/olivergondza/dumpling/issues/71
+     * Equivalent to <tt>new BigInteger(value, 16).longValue()</tt>, without allocation.
+     */
+    /*package*/ static long parseHex(CharSequence value, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+            negative = value.charAt(i) == '-';
+            i++;
         }
+        if (i == end) throw new NumberFormatException("Zero length hex number: " + value.subSequence(start, end));
 
-        // Long.parseLong is faster but unsuitable in some cases: https://github.com/olivergondza/dumpling/issues/71
-        return new BigInteger(value, 16).longValue();
+        long result = 0;
+        for (; i < end; i++) {
+            char c = value.charAt(i);
+            int digit = c < HEX_DIGITS.length ? HEX_DIGITS[c] : Character.digit(c, 16);
+            if (digit == -1) throw new NumberFormatException("Illegal hex number: " + value.subSequence(start, end));
+
+            result = (result << 4) | digit; // Overflowing bits are discarded
+        }
+        return negative ? -result : result;
     }
 }
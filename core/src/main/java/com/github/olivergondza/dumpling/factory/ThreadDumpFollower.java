@@ -0,0 +1,292 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.factory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+
+/**
+ * Threaddumps appended to a log as they are written, like <tt>tail -f</tt>.
+ *
+ * Every {@link #poll()} reads only the bytes appended since the previous one and parses threaddumps completed in the
+ * meantime. Threaddump is considered complete once its <tt>JNI global references</tt> trailer is written or the next
+ * threaddump starts. Only the text of the threaddump being written is retained between polls.
+ *
+ * Log rotation is detected when the file is replaced by a different one, in which case the rest of the original file is
+ * read before the new one is followed from its start, or when it is truncated, in which case it is followed from its
+ * start again.
+ *
+ * Threaddumps that can not be parsed are skipped unless {@link ThreadDumpFactory#failOnErrors(boolean)} is set.
+ *
+ * @author ogondza
+ * @see ThreadDumpFactory#follow(File, boolean)
+ */
+public final class ThreadDumpFollower implements Closeable {
+
+    private static final Logger LOG = Logger.getLogger(ThreadDumpFollower.class.getName());
+
+    private static final String[] DUMP_TRAILERS = {"JNI global references", "JNI global refs"};
+
+    private final @Nonnull ThreadDumpFactory factory;
+    private final @Nonnull Path path;
+    private final @Nonnull Charset charset = Charset.defaultCharset();
+    private final boolean failOnErrors;
+    private final @Nonnull byte[] buffer = new byte[1 << 16];
+
+    // Not interruptible so interrupting the thread that follows does not close it
+    private @CheckForNull RandomAccessFile file;
+    private @CheckForNull Object fileKey;
+    private long position;
+
+    // Bytes of the line not terminated yet
+    private @Nonnull byte[] partialLine = new byte[256];
+    private int partialLength = 0;
+
+    // Threaddump being written, null when outside of threaddump
+    private @CheckForNull StringBuilder dump;
+    // Last line if it is a timestamp that can precede the header of the next threaddump
+    private @CheckForNull String timestamp;
+    private int timestampStart;
+
+    private volatile boolean closed = false;
+    private long pollInterval = 1000;
+
+    /*package*/ ThreadDumpFollower(
+            @Nonnull ThreadDumpFactory factory, @Nonnull File log, boolean fromStart, boolean failOnErrors
+    ) throws IOException {
+        this.factory = factory;
+        this.path = log.toPath();
+        this.failOnErrors = failOnErrors;
+
+        open();
+        if (!fromStart) {
+            position = file.length();
+        }
+    }
+
+    /**
+     * Time to wait between polls in {@link #follow(Consumer)}.
+     */
+    public ThreadDumpFollower pollInterval(long millis) {
+        if (millis < 0) throw new IllegalArgumentException("Negative poll interval: " + millis);
+        this.pollInterval = millis;
+        return this;
+    }
+
+    /**
+     * Read what was appended since the last poll.
+     *
+     * @return Threaddumps completed since the last poll, in order.
+     * @throws IOException Log could not be read.
+     * @throws IllegalRuntimeStateException Threaddump could not be parsed and the factory is configured to fail on errors.
+     */
+    public synchronized @Nonnull List<ThreadDumpRuntime> poll() throws IOException {
+        if (closed) return Collections.emptyList();
+
+        List<ThreadDumpRuntime> runtimes = new ArrayList<ThreadDumpRuntime>();
+        read(runtimes);
+
+        if (isReplaced()) {
+            // Rest of the original file was read already, nothing is going to be appended there
+            endOfFile(runtimes);
+            file.close();
+            open();
+            read(runtimes);
+        } else if (file.length() < position) {
+            LOG.fine("Log truncated, following from start: " + path);
+            reset();
+            read(runtimes);
+        }
+
+        return runtimes;
+    }
+
+    /**
+     * Report threaddumps to the callback as they are appended.
+     *
+     * Blocks polling the log until closed or interrupted.
+     *
+     * @throws IOException Log could not be read.
+     * @throws InterruptedException Interrupted while waiting for threaddumps.
+     */
+    public void follow(@Nonnull Consumer<? super ThreadDumpRuntime> callback) throws IOException, InterruptedException {
+        while (!closed) {
+            for (ThreadDumpRuntime runtime: poll()) {
+                callback.accept(runtime);
+            }
+            Thread.sleep(pollInterval);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+
+        closed = true;
+        dump = null;
+        if (file != null) file.close();
+    }
+
+    private void open() throws IOException {
+        file = new RandomAccessFile(path.toFile(), "r");
+        fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        reset();
+    }
+
+    private void reset() {
+        position = 0;
+        partialLength = 0;
+        dump = null;
+        timestamp = null;
+    }
+
+    /**
+     * The path points to a different file than the one being followed.
+     */
+    private boolean isReplaced() throws IOException {
+        // Not supported by the platform, only truncation is detected
+        if (fileKey == null) return false;
+
+        try {
+            return !fileKey.equals(Files.readAttributes(path, BasicFileAttributes.class).fileKey());
+        } catch (NoSuchFileException ex) {
+            return false; // Rotated but not recreated yet
+        }
+    }
+
+    private void read(@Nonnull List<ThreadDumpRuntime> runtimes) throws IOException {
+        for (;;) {
+            file.seek(position);
+            int read = file.read(buffer);
+            if (read <= 0) return;
+
+            position += read;
+            int start = 0;
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] != '\n') continue;
+
+                line(lineText(buffer, start, i), runtimes);
+                start = i + 1;
+            }
+            appendPartial(buffer, start, read);
+        }
+    }
+
+    private @Nonnull String lineText(@Nonnull byte[] bytes, int start, int end) {
+        String line;
+        if (partialLength == 0) {
+            line = new String(bytes, start, end - start, charset);
+        } else {
+            appendPartial(bytes, start, end);
+            line = new String(partialLine, 0, partialLength, charset);
+            partialLength = 0;
+        }
+
+        return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+    }
+
+    private void appendPartial(@Nonnull byte[] bytes, int start, int end) {
+        int length = end - start;
+        if (partialLength + length > partialLine.length) {
+            partialLine = Arrays.copyOf(partialLine, Math.max(partialLine.length * 2, partialLength + length));
+        }
+        System.arraycopy(bytes, start, partialLine, partialLength, length);
+        partialLength += length;
+    }
+
+    private void line(@Nonnull String line, @Nonnull List<ThreadDumpRuntime> runtimes) {
+        if (ThreadDumpIterator.isDumpHeader(line)) {
+            if (dump != null && timestamp != null) {
+                dump.setLength(timestampStart); // Belongs to the next threaddump
+            }
+            flush(runtimes);
+
+            dump = new StringBuilder();
+            if (timestamp != null) {
+                dump.append(timestamp).append('\n');
+            }
+            dump.append(line).append('\n');
+            timestamp = null;
+            return;
+        }
+
+        timestamp = ThreadDumpIterator.isTimestamp(line) ? line : null;
+        if (dump == null) return;
+
+        timestampStart = dump.length();
+        dump.append(line).append('\n');
+        for (String trailer: DUMP_TRAILERS) {
+            if (ThreadDumpIterator.startsWith(line, trailer)) {
+                flush(runtimes);
+                return;
+            }
+        }
+    }
+
+    private void endOfFile(@Nonnull List<ThreadDumpRuntime> runtimes) {
+        if (partialLength > 0) {
+            String line = new String(partialLine, 0, partialLength, charset);
+            partialLength = 0;
+            line(line, runtimes);
+        }
+        flush(runtimes);
+    }
+
+    /**
+     * Parse threaddump being written as complete.
+     */
+    private void flush(@Nonnull List<ThreadDumpRuntime> runtimes) {
+        if (dump == null) return;
+
+        String text = dump.toString();
+        dump = null;
+        try {
+            runtimes.add(factory.parse(new ThreadDumpParser.ReaderSource(new StringReader(text))));
+        } catch (IllegalRuntimeStateException ex) {
+            if (failOnErrors) throw ex;
+            LOG.warning("Skipping threaddump: " + ex.getMessage());
+        } catch (IOException ex) {
+            throw new AssertionError(ex); // Reading from string
+        }
+    }
+}
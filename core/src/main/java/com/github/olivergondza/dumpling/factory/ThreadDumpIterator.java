@@ -0,0 +1,292 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.factory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import com.github.olivergondza.dumpling.model.StackTrie;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+
+/**
+ * Lazily parsed threaddumps from a log containing several of them, or from an archive.
+ *
+ * Every threaddump starts with <tt>Full thread dump</tt> line, optionally preceded by timestamp line, and spans until
+ * the next one or the end of input. Both lines are preserved as a header of the runtime. Lines outside of threaddumps
+ * are ignored. Input is read once and only the threaddump being parsed is held in memory. Every file of zip archive is
+ * considered a separate threaddump.
+ *
+ * Threaddumps that can not be parsed are skipped unless {@link ThreadDumpFactory#failOnErrors(boolean)} is set. Input
+ * is closed once exhausted, or explicitly via {@link #close()}. Every runtime of the series gets its own trie unless
+ * shared one is configured via {@link ThreadDumpFactory#stackTrie(StackTrie)}.
+ *
+ * @author ogondza
+ * @see ThreadDumpFactory#iterate(java.io.InputStream)
+ * @see ThreadDumpFactory#iterate(java.io.File)
+ * @see ThreadDumpFactory#fromArchive(java.io.File)
+ */
+public final class ThreadDumpIterator implements Iterator<ThreadDumpRuntime>, Closeable {
+
+    private static final Logger LOG = Logger.getLogger(ThreadDumpIterator.class.getName());
+
+    private static final String DUMP_HEADER = "Full thread dump";
+
+    private final @Nonnull ThreadDumpFactory factory;
+    private final @Nonnull Dumps dumps;
+    private final boolean failOnErrors;
+
+    private @CheckForNull ThreadDumpRuntime next;
+    private boolean closed = false;
+
+    /*package*/ ThreadDumpIterator(
+            @Nonnull ThreadDumpFactory factory, @Nonnull ThreadDumpParser.Source lines, @Nonnull Closeable input, boolean failOnErrors
+    ) {
+        this(factory, new Log(lines, input), failOnErrors);
+    }
+
+    /*package*/ ThreadDumpIterator(@Nonnull ThreadDumpFactory factory, @Nonnull Dumps dumps, boolean failOnErrors) {
+        this.factory = factory;
+        this.dumps = dumps;
+        this.failOnErrors = failOnErrors;
+    }
+
+    /**
+     * Iterator of single threaddump failing on errors regardless of the configuration.
+     */
+    /*package*/ static @Nonnull ThreadDumpIterator single(
+            @Nonnull ThreadDumpFactory factory, @Nonnull final ThreadDumpParser.Source dump, @Nonnull final Closeable input
+    ) {
+        return new ThreadDumpIterator(factory, new Dumps() {
+            private boolean read = false;
+
+            @Override public @CheckForNull ThreadDumpParser.Source next() {
+                if (read) return null;
+
+                read = true;
+                return dump;
+            }
+
+            @Override public void close() throws IOException {
+                input.close();
+            }
+        }, true);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) return true;
+        if (closed) return false;
+
+        try {
+            for (;;) {
+                ThreadDumpParser.Source dump = dumps.next();
+                if (dump == null) {
+                    close();
+                    return false;
+                }
+
+                try {
+                    next = factory.parse(dump);
+                    return true;
+                } catch (IllegalRuntimeStateException ex) {
+                    if (failOnErrors) throw ex;
+                    LOG.warning("Skipping threaddump: " + ex.getMessage());
+                }
+            }
+        } catch (IOException ex) {
+            closeQuietly();
+            throw new IllegalRuntimeStateException("Unable to read threaddump: %s", ex.getMessage());
+        } catch (RuntimeException ex) {
+            closeQuietly();
+            throw ex;
+        }
+    }
+
+    @Override
+    public @Nonnull ThreadDumpRuntime next() {
+        if (!hasNext()) throw new NoSuchElementException();
+
+        ThreadDumpRuntime runtime = next;
+        next = null;
+        return runtime;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Sequential stream of remaining threaddumps, closing the stream closes the input.
+     */
+    public @Nonnull Stream<ThreadDumpRuntime> stream() {
+        Spliterator<ThreadDumpRuntime> spliterator = Spliterators.spliteratorUnknownSize(
+                this, Spliterator.ORDERED | Spliterator.NONNULL
+        );
+        return StreamSupport.stream(spliterator, false).onClose(new Runnable() {
+            @Override public void run() {
+                closeQuietly();
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+
+        closed = true;
+        next = null;
+        dumps.close();
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException ex) {} // Ignore
+    }
+
+    /**
+     * Threaddumps of the input in order, one {@link ThreadDumpParser.Source} each.
+     *
+     * Source returned is expected to be consumed before the next one is requested.
+     */
+    /*package*/ interface Dumps extends Closeable {
+        @CheckForNull ThreadDumpParser.Source next() throws IOException;
+    }
+
+    /**
+     * Threaddumps concatenated in a log.
+     */
+    private static final class Log implements Dumps {
+        private final @Nonnull ThreadDumpParser.Source lines;
+        private final @Nonnull Closeable input;
+
+        private Log(@Nonnull ThreadDumpParser.Source lines, @Nonnull Closeable input) {
+            this.lines = lines;
+            this.input = input;
+        }
+
+        @Override
+        public @CheckForNull ThreadDumpParser.Source next() throws IOException {
+            int headerLines;
+            while ((headerLines = dumpStart(lines)) == 0) {
+                if (lines.peek(0) == null) return null;
+                lines.advance();
+            }
+            return new Segment(lines, headerLines);
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+    /**
+     * Number of lines of threaddump header at current position, 0 when no threaddump starts here.
+     */
+    private static int dumpStart(@Nonnull ThreadDumpParser.Source lines) throws IOException {
+        CharSequence line = lines.peek(0);
+        if (line == null) return 0;
+        if (isDumpHeader(line)) return 1;
+
+        if (isTimestamp(line)) {
+            CharSequence next = lines.peek(1);
+            if (next != null && isDumpHeader(next)) return 2;
+        }
+
+        return 0;
+    }
+
+    /*package*/ static boolean isDumpHeader(@Nonnull CharSequence line) {
+        return startsWith(line, DUMP_HEADER);
+    }
+
+    // yyyy-MM-dd HH:mm:ss
+    /*package*/ static boolean isTimestamp(@Nonnull CharSequence line) {
+        String pattern = "dddd-dd-dd dd:dd:dd";
+        if (line.length() != pattern.length()) return false;
+
+        for (int i = 0; i < pattern.length(); i++) {
+            char expected = pattern.charAt(i);
+            char actual = line.charAt(i);
+            if (expected == 'd' ? actual < '0' || actual > '9' : actual != expected) return false;
+        }
+        return true;
+    }
+
+    /*package*/ static boolean startsWith(@Nonnull CharSequence line, @Nonnull String prefix) {
+        if (line.length() < prefix.length()) return false;
+
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line.charAt(i) != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Lines of single threaddump, ending where the next one starts.
+     */
+    private static final class Segment extends ThreadDumpParser.Source {
+        private final @Nonnull ThreadDumpParser.Source lines;
+        private int headerLines;
+        private @Nonnull String separator = "";
+
+        private Segment(@Nonnull ThreadDumpParser.Source lines, int headerLines) {
+            this.lines = lines;
+            this.headerLines = headerLines;
+        }
+
+        @Override
+        protected @CheckForNull CharSequence readLine() throws IOException {
+            CharSequence line = lines.peek(0);
+            if (line == null) return null;
+
+            if (headerLines > 0) {
+                headerLines--;
+            } else if (dumpStart(lines) != 0) {
+                return null;
+            }
+
+            separator = lines.separator(0);
+            lines.advance();
+            return line;
+        }
+
+        @Override
+        protected @Nonnull String separator() {
+            return separator;
+        }
+    }
+}
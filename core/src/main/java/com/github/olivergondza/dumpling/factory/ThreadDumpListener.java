@@ -0,0 +1,114 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.factory;
+
+import java.util.List;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import com.github.olivergondza.dumpling.model.StackTrace;
+import com.github.olivergondza.dumpling.model.ThreadLock;
+import com.github.olivergondza.dumpling.model.ThreadStatus;
+
+/**
+ * Receive content of threaddump as it is being parsed, without building the runtime.
+ *
+ * Events of every thread are reported in the following order: {@link #thread}, {@link #stackTrace} (reporting
+ * {@link #frame}s unless overridden), {@link #acquiredLock}s, {@link #waitingToLock}, {@link #waitingOnLock},
+ * {@link #ownableSynchronizer}s and {@link #threadEnd}. Threads are reported in the order of the threaddump and no
+ * reference to them is retained by the parser so arbitrarily large inputs can be processed in constant memory.
+ *
+ * The state reported is the same the {@link com.github.olivergondza.dumpling.model.dump.ThreadDumpThread} would have,
+ * including all the corrections of jstack inconsistencies. All the methods do nothing by default.
+ *
+ * @author ogondza
+ * @see ThreadDumpFactory#parse(java.io.File, ThreadDumpListener)
+ */
+public interface ThreadDumpListener {
+
+    /**
+     * Threaddump header, like JVM identification.
+     */
+    default void header(@Nonnull List<String> lines) {}
+
+    /**
+     * New thread started.
+     *
+     * @param id Java thread id, if present.
+     * @param tid Thread address, if present.
+     * @param nid Native thread id, if present.
+     * @param priority Java thread priority, if present.
+     */
+    default void thread(
+            @Nonnull String name, @CheckForNull Long id, @CheckForNull Long tid, @CheckForNull Long nid,
+            @CheckForNull Integer priority, boolean daemon, @Nonnull ThreadStatus status
+    ) {}
+
+    /**
+     * Stack trace of the thread.
+     *
+     * Reports individual {@link #frame}s by default. Traces of threaddumps parsed with
+     * {@link ThreadDumpFactory#lazyStackTraces(boolean)} are not resolved unless accessed.
+     */
+    default void stackTrace(@Nonnull StackTrace trace) {
+        int depth = 0;
+        for (StackTraceElement element: trace.getElements()) {
+            frame(element, depth++);
+        }
+    }
+
+    /**
+     * Stack frame of the thread, innermost first.
+     */
+    default void frame(@Nonnull StackTraceElement element, @Nonnegative int depth) {}
+
+    /**
+     * Monitor acquired by the thread.
+     *
+     * @param depth Stack depth of the frame the monitor was acquired in.
+     */
+    default void acquiredLock(@Nonnull ThreadLock lock, @Nonnegative int depth) {}
+
+    /**
+     * Monitor the thread is blocked on.
+     */
+    default void waitingToLock(@Nonnull ThreadLock lock) {}
+
+    /**
+     * Lock the thread is waiting on in {@link Object#wait()} or parked on.
+     */
+    default void waitingOnLock(@Nonnull ThreadLock lock) {}
+
+    /**
+     * Ownable synchronizer held by the thread.
+     */
+    default void ownableSynchronizer(@Nonnull ThreadLock lock) {}
+
+    /**
+     * All events of the current thread were reported.
+     */
+    default void threadEnd() {}
+}
@@ -0,0 +1,1357 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.factory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import com.github.olivergondza.dumpling.model.StackTrace;
+import com.github.olivergondza.dumpling.model.StackTrie;
+import com.github.olivergondza.dumpling.model.ThreadLock;
+import com.github.olivergondza.dumpling.model.ThreadStatus;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
+
+/**
+ * Single pass, line oriented threaddump parser.
+ *
+ * Replicates the chunking and matching rules of the regular expressions in {@link ThreadDumpFactory} with hand-written
+ * tokenizing so the input is read exactly once and no intermediate chunk strings are created.
+ *
+ * Stack traces can be resolved lazily: innermost frame, monitors and their depths are extracted while parsing but
+ * other frames are kept as lines of the original threaddump and tokenized when the trace is accessed.
+ *
+ * Not thread safe, a new instance is expected to be used for every threaddump. Thread chunks can be parsed on
+ * {@link ForkJoinPool} while the input is still being read, the runtime is assembled in the original order.
+ *
+ * @author ogondza
+ */
+/*package*/ final class ThreadDumpParser {
+
+    private static final Logger LOG = Logger.getLogger(ThreadDumpParser.class.getName());
+
+    private static final String THREAD_STATE = "java.lang.Thread.State: ";
+    private static final String OWNABLE_SYNCHRONIZERS = "Locked ownable synchronizers:";
+
+    // Number of chunks parsed by single fork/join task
+    private static final int BATCH_SIZE = 64;
+
+    // Marker for a valid frame that was not tokenized
+    private static final StackTraceElement UNRESOLVED = StackTrace.element("", "");
+
+    private final boolean failOnErrors;
+    private final boolean lazyStackTraces;
+    private final @Nonnull FrameInternPool framePool;
+    private final @Nonnull StackTrie stackTrie;
+
+    // Frames are repeated across threads a lot, no need to look them up in the pool more than once per threaddump
+    private final Map<CharSequence, FrameLine> frameLines;
+    // View of the frame text to look it up without creating a string
+    private final FrameText frameText = new FrameText();
+
+    // Lines and separators of chunk being processed
+    private final List<CharSequence> lines = new ArrayList<CharSequence>();
+    private final List<String> separators = new ArrayList<String>();
+    // Line terminator of the last chunk in the stream is considered its part, same as with the regex based tokenizer
+    private String chunkTerminator;
+
+    /*package*/ ThreadDumpParser(
+            boolean failOnErrors, boolean lazyStackTraces, @Nonnull FrameInternPool framePool, @Nonnull StackTrie stackTrie
+    ) {
+        this(failOnErrors, lazyStackTraces, framePool, stackTrie, new HashMap<CharSequence, FrameLine>());
+    }
+
+    private ThreadDumpParser(
+            boolean failOnErrors, boolean lazyStackTraces, @Nonnull FrameInternPool framePool,
+            @Nonnull StackTrie stackTrie, @Nonnull Map<CharSequence, FrameLine> frameLines
+    ) {
+        this.failOnErrors = failOnErrors;
+        this.lazyStackTraces = lazyStackTraces;
+        this.framePool = framePool;
+        this.stackTrie = stackTrie;
+        this.frameLines = frameLines;
+    }
+
+    /*package*/ @Nonnull ThreadDumpRuntime parse(@Nonnull Source source) throws IOException {
+        RuntimeBuilder builder = new RuntimeBuilder();
+        parse(source, builder);
+        return builder.runtime();
+    }
+
+    /*package*/ void parse(@Nonnull Source source, @Nonnull ThreadDumpListener listener) throws IOException {
+        List<String> header = new ArrayList<String>();
+        int threads = 0;
+
+        skipLeadingDelimiter(source);
+        while (source.peek(0) != null) {
+            readChunk(source);
+            if (isTrailer()) break;
+
+            ThreadDumpThread.Builder thread = thread();
+            if (thread != null) {
+                report(thread, listener);
+                threads++;
+            } else {
+                otherChunk(header, listener);
+            }
+        }
+
+        checkThreads(threads);
+    }
+
+    /**
+     * Parse thread chunks in parallel.
+     *
+     * Input is read and split into chunks on the calling thread while batches of chunks are parsed on the pool. Results
+     * are reported in the original order so the events, as well as the reported failure, are the same as when parsed
+     * sequentially.
+     */
+    /*package*/ void parse(
+            @Nonnull Source source, @Nonnull ForkJoinPool pool, @Nonnull ThreadDumpListener listener
+    ) throws IOException {
+        List<String> header = new ArrayList<String>();
+        int threads = 0;
+
+        // Limit number of chunks waiting in memory for the parsing to finish
+        int maxPending = pool.getParallelism() * 4;
+        Map<CharSequence, FrameLine> sharedFrameLines = new ConcurrentHashMap<CharSequence, FrameLine>();
+        ArrayDeque<ForkJoinTask<Object[]>> pending = new ArrayDeque<ForkJoinTask<Object[]>>();
+        try {
+            List<Snapshot> batch = new ArrayList<Snapshot>(BATCH_SIZE);
+            skipLeadingDelimiter(source);
+            while (source.peek(0) != null) {
+                readChunk(source);
+                if (isTrailer()) break;
+
+                batch.add(new Snapshot(lines, separators, chunkTerminator));
+                if (batch.size() == BATCH_SIZE) {
+                    pending.add(pool.submit(new Batch(failOnErrors, lazyStackTraces, framePool, stackTrie, sharedFrameLines, batch)));
+                    batch = new ArrayList<Snapshot>(BATCH_SIZE);
+                }
+
+                while (pending.size() > maxPending) {
+                    threads += collect(pending.remove().join(), listener, header);
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                pending.add(pool.submit(new Batch(failOnErrors, lazyStackTraces, framePool, stackTrie, sharedFrameLines, batch)));
+            }
+            while (!pending.isEmpty()) {
+                threads += collect(pending.remove().join(), listener, header);
+            }
+        } finally {
+            for (ForkJoinTask<Object[]> task: pending) {
+                task.cancel(false);
+            }
+        }
+
+        checkThreads(threads);
+    }
+
+    // Report batch results, returns number of threads
+    private int collect(Object[] results, ThreadDumpListener listener, List<String> header) {
+        int threads = 0;
+        for (Object result: results) {
+            if (result instanceof ThreadDumpThread.Builder) {
+                report((ThreadDumpThread.Builder) result, listener);
+                threads++;
+            } else if (result instanceof Snapshot) {
+                ((Snapshot) result).restore(this);
+                otherChunk(header, listener);
+            } else if (result instanceof Error) {
+                throw (Error) result;
+            } else {
+                throw (RuntimeException) result;
+            }
+        }
+        return threads;
+    }
+
+    private static void report(ThreadDumpThread.Builder thread, ThreadDumpListener listener) {
+        listener.thread(
+                thread.getName(), thread.getId(), thread.getTid(), thread.getNid(),
+                thread.getPriority(), thread.isDaemon(), thread.getThreadStatus()
+        );
+        listener.stackTrace(thread.getStacktrace());
+        for (ThreadLock.Monitor monitor: thread.getAcquiredMonitors()) {
+            listener.acquiredLock(monitor.getLock(), monitor.getDepth());
+        }
+        ThreadLock waitingToLock = thread.getWaitingToLock();
+        if (waitingToLock != null) {
+            listener.waitingToLock(waitingToLock);
+        }
+        ThreadLock waitingOnLock = thread.getWaitingOnLock();
+        if (waitingOnLock != null) {
+            listener.waitingOnLock(waitingOnLock);
+        }
+        for (ThreadLock synchronizer: thread.getAcquiredSynchronizers()) {
+            listener.ownableSynchronizer(synchronizer);
+        }
+        listener.threadEnd();
+    }
+
+    // Java until 8 vs. Java after 9
+    private boolean isTrailer() {
+        // Nothing interesting is expected after this point. Also, this is a convenient way to eliminate the
+        // deadlock report that is spread over several chunks
+        CharSequence first = lines.get(0);
+        return startsWith(first, 0, "JNI global references") || startsWith(first, 0, "JNI global refs");
+    }
+
+    // Process chunk that is not a thread
+    private void otherChunk(List<String> header, ThreadDumpListener listener) {
+        if (header.isEmpty()) { // Still reading header
+            int last = lines.size();
+            while (last > 0 && lines.get(last - 1).length() == 0) last--; // Trailing blank lines are not part of it
+            for (int i = 0; i < last; i++) {
+                header.add(lines.get(i).toString());
+            }
+            if (!header.isEmpty()) {
+                listener.header(Collections.unmodifiableList(header));
+            }
+            return;
+        }
+
+        // New info in Java 9
+        if (startsWith(lines.get(0), 0, "Threads class SMR info:")) return;
+
+        String msg = "Skipping unrecognized chunk: >>>" + chunkText() + "<<<";
+        if (failOnErrors) {
+            throw new IllegalRuntimeStateException(msg);
+        } else {
+            LOG.warning(msg);
+        }
+    }
+
+    private static void checkThreads(int threads) {
+        if (threads == 0) throw new IllegalRuntimeStateException(
+                "No threads found in threaddump"
+        );
+    }
+
+    // Chunks are delimited by blank line followed by non-whitespace or by line starting with quote. Leading delimiter is ignored.
+    private void skipLeadingDelimiter(Source source) throws IOException {
+        CharSequence first = source.peek(0);
+        if (first == null || first.length() != 0) return;
+
+        if (startsWithQuote(source.peek(1))) {
+            source.advance();
+        } else if (isBlankLineDelimiter(source.peek(1), source.peek(2))) {
+            source.advance();
+            source.advance();
+        }
+    }
+
+    private void readChunk(Source source) throws IOException {
+        lines.clear();
+        separators.clear();
+        chunkTerminator = "";
+        for (;;) {
+            lines.add(source.peek(0));
+            separators.add(source.separator(0));
+            source.advance();
+
+            CharSequence next = source.peek(0);
+            if (next == null) {
+                chunkTerminator = separators.get(separators.size() - 1);
+                return;
+            }
+            if (startsWithQuote(next)) return;
+            if (isBlankLineDelimiter(next, source.peek(1))) {
+                source.advance();
+                return;
+            }
+        }
+    }
+
+    private static boolean isBlankLineDelimiter(@CheckForNull CharSequence blank, @CheckForNull CharSequence next) {
+        if (blank == null || blank.length() != 0) return false;
+
+        return next == null || (next.length() != 0 && !isSpace(next.charAt(0)));
+    }
+
+    private static boolean startsWithQuote(@CheckForNull CharSequence line) {
+        return line != null && line.length() != 0 && line.charAt(0) == '"';
+    }
+
+    private @CheckForNull ThreadDumpThread.Builder thread() {
+        int chunkSize = lines.size();
+        CharSequence first = lines.get(0);
+        if (!startsWithQuote(first)) return null;
+
+        // Thread name can span several lines, it is terminated by the first quote followed by space and attributes
+        int headerLine = -1;
+        int nameEnd = -1;
+        for (int i = 0; i < chunkSize && headerLine == -1; i++) {
+            CharSequence line = lines.get(i);
+            int length = line.length();
+            for (int j = i == 0 ? 2 : 0; j + 2 < length; j++) {
+                if (line.charAt(j) == '"' && line.charAt(j + 1) == ' ' && line.charAt(j + 2) != '\r') {
+                    headerLine = i;
+                    nameEnd = j;
+                    break;
+                }
+            }
+        }
+        if (headerLine == -1) return null;
+
+        String name;
+        if (headerLine == 0) {
+            name = first.subSequence(1, nameEnd).toString();
+        } else {
+            StringBuilder sb = new StringBuilder();
+            sb.append(first, 1, first.length()).append(separators.get(0));
+            for (int i = 1; i < headerLine; i++) {
+                sb.append(lines.get(i)).append(separators.get(i));
+            }
+            sb.append(lines.get(headerLine), 0, nameEnd);
+            name = sb.toString();
+        }
+
+        ThreadDumpThread.Builder builder = new ThreadDumpThread.Builder();
+        builder.setName(name);
+
+        CharSequence headerText = lines.get(headerLine);
+        int attrsEnd = indexOf(headerText, '\r', nameEnd + 2);
+        initHeader(builder, headerText, nameEnd + 2, attrsEnd);
+
+        String status = null;
+        if (attrsEnd == headerText.length()) {
+            int stateLine = -1;
+            int stateStart = -1;
+            boolean whitespace = false;
+            for (int i = headerLine + 1; i < chunkSize; i++) {
+                CharSequence line = lines.get(i);
+                int pos = 0;
+                while (pos < line.length() && isSpace(line.charAt(pos))) pos++;
+                whitespace |= i > headerLine + 1 || pos > 0;
+                if (pos < line.length()) {
+                    if (whitespace && startsWith(line, pos, THREAD_STATE)) {
+                        stateLine = i;
+                        stateStart = pos + THREAD_STATE.length();
+                    }
+                    break;
+                }
+            }
+
+            if (stateLine != -1) {
+                CharSequence line = lines.get(stateLine);
+                int stateEnd = indexOf(line, '\r', stateStart);
+                if (stateEnd > stateStart) {
+                    status = line.subSequence(stateStart, stateEnd).toString();
+                    if (stateEnd == line.length() && stateLine + 1 < chunkSize) {
+                        initStacktrace(builder, stateLine + 1);
+                    }
+                }
+            }
+        }
+
+        if (status != null) {
+            builder.setThreadStatus(ThreadStatus.fromString(status, builder.getStacktrace().getHead()));
+        }
+
+        return ThreadDumpFactory.fixup(builder, new Chunk());
+    }
+
+    private void initHeader(ThreadDumpThread.Builder builder, CharSequence line, int start, int end) {
+        int pos = start;
+        while (pos < end) {
+            if (line.charAt(pos) == ' ') {
+                pos++;
+                continue;
+            }
+
+            int tokenEnd = pos;
+            while (tokenEnd < end && line.charAt(tokenEnd) != ' ') tokenEnd++;
+
+            if (tokenEnd - pos == 6 && startsWith(line, pos, "daemon")) builder.setDaemon(true);
+            else if (startsWith(line, pos, tokenEnd, "prio=")) builder.setPriority(Integer.parseInt(string(line, pos + 5, tokenEnd)));
+            else if (startsWith(line, pos, tokenEnd, "tid=")) builder.setTid(ThreadDumpFactory.parseLong(line, pos + 4, tokenEnd));
+            else if (startsWith(line, pos, tokenEnd, "nid=")) builder.setNid(ThreadDumpFactory.parseNid(line, pos + 4, tokenEnd));
+            else if (isNumber(line, pos, tokenEnd, "#")) builder.setId(Integer.parseInt(string(line, pos + 1, tokenEnd)));
+            else if (isNumber(line, pos, tokenEnd, "t@")) builder.setId(Integer.parseInt(string(line, pos + 2, tokenEnd)));
+
+            pos = tokenEnd;
+        }
+    }
+
+    // prefix followed by at least one digit
+    private static boolean isNumber(CharSequence line, int start, int end, String prefix) {
+        if (!startsWith(line, start, end, prefix)) return false;
+        int digits = start + prefix.length();
+        if (digits == end) return false;
+        for (int i = digits; i < end; i++) {
+            if (!isDigit(line.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    private void initStacktrace(ThreadDumpThread.Builder builder, int firstLine) {
+        int chunkSize = lines.size();
+        ArrayList<StackTraceElement> traceElements = new ArrayList<StackTraceElement>();
+        // Frames following the head when resolved lazily
+        ArrayList<FrameLine> lazyFrames = lazyStackTraces ? new ArrayList<FrameLine>() : null;
+
+        List<ThreadLock.Monitor> monitors = new ArrayList<ThreadLock.Monitor>();
+        List<ThreadLock> synchronizers = new ArrayList<ThreadLock>();
+        ThreadLock waitingToLock = null; // Block waiting on monitor
+        ThreadLock waitingOnLock = null; // in Object.wait()
+        int depth = -1;
+
+        for (int i = firstLine; i < chunkSize; i++) {
+            CharSequence line = lines.get(i);
+
+            if (lazyFrames != null && depth >= 0) {
+                FrameLine frame = frameLine(line, false);
+                if (frame != null) {
+                    lazyFrames.add(frame);
+                    depth++;
+                    continue;
+                }
+            } else {
+                // The innermost frame is always needed to identify thread status and the monitor just acquired
+                StackTraceElement elem = traceElement(line);
+                if (elem != null) {
+                    traceElements.add(elem);
+                    depth++;
+                    continue;
+                }
+            }
+
+            ThreadLock lock = acquiredLock(line);
+            if (lock != null) {
+                monitors.add(new ThreadLock.Monitor(lock, depth));
+                continue;
+            }
+
+            lock = waitingToLock(line);
+            if (lock != null) {
+                if (waitingToLock != null) throw new IllegalRuntimeStateException(
+                        "Waiting to lock reported several times per single thread >>>%n%s%n<<<%n", join(firstLine, chunkSize)
+                );
+                waitingToLock = lock;
+                continue;
+            }
+
+            lock = waitingOnLock(line);
+            if (lock != null) {
+                if (waitingOnLock != null) throw new IllegalRuntimeStateException(
+                        "Waiting on lock reported several times per single thread >>>%n%s%n<<<%n", join(firstLine, chunkSize)
+                );
+                waitingOnLock = lock;
+                continue;
+            }
+
+            if (indexOf(line, OWNABLE_SYNCHRONIZERS, 0) != -1) {
+                while (++i < chunkSize) {
+                    line = lines.get(i);
+
+                    if (isBlank(line)) continue;
+                    if (indexOf(line, "- None", 0) != -1) break;
+                    lock = ownableSynchronizer(line);
+                    if (lock != null) {
+                        synchronizers.add(lock);
+                    } else {
+                        throw new IllegalRuntimeStateException("Unable to parse ownable synchronizer: " + line);
+                    }
+                }
+            }
+        }
+
+        builder.setAcquiredMonitors(monitors);
+        builder.setAcquiredSynchronizers(synchronizers);
+        builder.setStacktrace(lazyFrames == null || lazyFrames.isEmpty()
+                ? stackTrie.trace(traceElements)
+                : stackTrie.lazy(depth + 1, traceElements.get(0), new Frames(framePool, traceElements.get(0), lazyFrames))
+        );
+        builder.setWaitingToLock(waitingToLock);
+        builder.setWaitingOnLock(waitingOnLock);
+    }
+
+    private @CheckForNull StackTraceElement traceElement(CharSequence line) {
+        FrameLine frame = frameLine(line, true);
+        return frame == null ? null : frame.resolve(framePool);
+    }
+
+    /**
+     * Get frame of the line, null if the line is not a frame.
+     *
+     * @param resolve Tokenize the frame eagerly, it is only validated otherwise.
+     */
+    private @CheckForNull FrameLine frameLine(CharSequence line, boolean resolve) {
+        int textStart = frameTextStart(line);
+        if (textStart == -1) return null;
+
+        // Lookup by text view, String is created on miss only
+        FrameLine cached = frameLines.get(frameText.of(line, textStart));
+        if (cached != null) return cached;
+
+        StackTraceElement element = resolve ? framePool.get(frameText) : null;
+        if (element == null) {
+            element = frame(line, textStart, resolve);
+            if (element == null) return null;
+        }
+
+        String text = string(line, textStart, line.length());
+        if (resolve) {
+            element = framePool.put(text, element);
+        }
+        FrameLine frame = new FrameLine(text, resolve ? element : null);
+        frameLines.put(text, frame);
+        return frame;
+    }
+
+    /**
+     * Offset of the frame text, -1 when the line is not a frame.
+     *
+     * The element tokenized depends on the frame text only, not on the prefix.
+     */
+    private static int frameTextStart(CharSequence line) {
+        if (startsWith(line, 0, "\tat ")) return 4;
+
+        // Even number of spaces followed by "at " on a single line
+        int length = line.length();
+        int spaces = 0;
+        while (spaces < length && line.charAt(spaces) == ' ') spaces++;
+        if (spaces == 0 || spaces % 2 != 0 || !startsWith(line, spaces, "at ")) return -1;
+
+        for (int i = spaces + 3; i < length; i++) {
+            if (isLineTerminator(line.charAt(i))) return -1;
+        }
+        return spaces + 3;
+    }
+
+    // Frame can be preceded by whatever ends with "at ", the first one that parses wins
+    private static @CheckForNull StackTraceElement frame(CharSequence line, int textStart, boolean resolve) {
+        StackTraceElement element = tokenizeFrame(line, textStart, resolve);
+        for (int at = indexOf(line, "at ", textStart); at != -1 && element == null; at = indexOf(line, "at ", at + 1)) {
+            element = tokenizeFrame(line, at + 3, resolve);
+        }
+        return element;
+    }
+
+    /**
+     * Tokenize <tt>declaring.Class.method([module/]File.java[:line])</tt>.
+     *
+     * Class name extends to the last dot of the frame that is followed by a method name and an opening paren.
+     *
+     * @param resolve false to only validate the frame, {@link #UNRESOLVED} is returned on success.
+     */
+    private static @CheckForNull StackTraceElement tokenizeFrame(CharSequence line, int start, boolean resolve) {
+        int length = line.length();
+        int end = start;
+        while (end < length && !isSpace(line.charAt(end))) end++;
+
+        for (int dot = end - 1; dot > start; dot--) {
+            if (line.charAt(dot) != '.') continue;
+
+            for (int paren = end - 1; paren > dot + 1; paren--) {
+                if (line.charAt(paren) != '(') continue;
+
+                StackTraceElement element = source(line, start, dot, paren, resolve);
+                if (element != null) return element;
+            }
+        }
+
+        return null;
+    }
+
+    private static @CheckForNull StackTraceElement source(
+            CharSequence line, int start, int dot, int paren, boolean resolve
+    ) {
+        int sourceStart = paren + 1;
+
+        // Optional module prefix: the longest that permits the rest to match
+        int terminator = sourceStart;
+        while (terminator < line.length() && !isLineTerminator(line.charAt(terminator))) terminator++;
+        for (int slash = terminator - 1; slash > sourceStart; slash--) {
+            if (line.charAt(slash) != '/') continue;
+
+            StackTraceElement element = fileAndLine(line, start, dot, paren, slash + 1, resolve);
+            if (element != null) return element;
+        }
+
+        return fileAndLine(line, start, dot, paren, sourceStart, resolve);
+    }
+
+    private static @CheckForNull StackTraceElement fileAndLine(
+            CharSequence line, int start, int dot, int paren, int fileStart, boolean resolve
+    ) {
+        int length = line.length();
+        for (int fileEnd = fileStart + 1; fileEnd < length; fileEnd++) {
+            if (line.charAt(fileEnd - 1) == ':') return null;
+
+            int sourceLine = -1;
+            char c = line.charAt(fileEnd);
+            if (c == ':') {
+                int digitsEnd = fileEnd + 1;
+                while (digitsEnd < length && isDigit(line.charAt(digitsEnd))) digitsEnd++;
+                if (digitsEnd == fileEnd + 1 || digitsEnd == length || line.charAt(digitsEnd) != ')') continue;
+
+                // Short numbers can not overflow, longer ones are parsed to fail the same way resolved frame would
+                sourceLine = resolve || digitsEnd - fileEnd > 9
+                        ? Integer.parseInt(string(line, fileEnd + 1, digitsEnd))
+                        : 0
+                ;
+            } else if (c != ')') {
+                continue;
+            }
+
+            if (!resolve) return UNRESOLVED;
+
+            String sourceFile = string(line, fileStart, fileEnd);
+            if (sourceLine == -1 && "Native Method".equals(sourceFile)) {
+                sourceFile = null;
+                sourceLine = -2; // Magic value for native methods
+            }
+
+            return StackTrace.element(
+                    string(line, start, dot), string(line, dot + 1, paren), sourceFile, sourceLine
+            );
+        }
+
+        return null;
+    }
+
+    private static @CheckForNull ThreadLock acquiredLock(CharSequence line) {
+        for (int i = indexOf(line, "- locked ", 0); i != -1; i = indexOf(line, "- locked ", i + 1)) {
+            ThreadLock lock = lock(line, i + 9);
+            if (lock != null) return lock;
+        }
+        return null;
+    }
+
+    private static @CheckForNull ThreadLock waitingToLock(CharSequence line) {
+        for (int i = indexOf(line, "- waiting to lock ", 0); i != -1; i = indexOf(line, "- waiting to lock ", i + 1)) {
+            ThreadLock lock = lock(line, i + 18);
+            if (lock != null) return lock;
+        }
+        return null;
+    }
+
+    // Oracle/OpenJdk puts unnecessary space after 'parking to wait for'
+    private static @CheckForNull ThreadLock waitingOnLock(CharSequence line) {
+        for (int i = indexOf(line, "- ", 0); i != -1; i = indexOf(line, "- ", i + 1)) {
+            if (startsWith(line, i + 2, "waiting on ")) {
+                ThreadLock lock = lock(line, i + 13);
+                if (lock != null) return lock;
+            }
+
+            if (startsWith(line, i + 2, "parking to wait for ")) {
+                int lockStart = i + 22;
+                ThreadLock lock = lockStart < line.length() && line.charAt(lockStart) == ' '
+                        ? lock(line, lockStart + 1)
+                        : lock(line, lockStart)
+                ;
+                if (lock != null) return lock;
+            }
+        }
+        return null;
+    }
+
+    private static @CheckForNull ThreadLock ownableSynchronizer(CharSequence line) {
+        for (int i = indexOf(line, "- ", 0); i != -1; i = indexOf(line, "- ", i + 1)) {
+            ThreadLock lock = startsWith(line, i + 2, "locked ")
+                    ? lock(line, i + 9)
+                    : null
+            ;
+            if (lock == null) {
+                lock = lock(line, i + 2);
+            }
+            if (lock != null) return lock;
+        }
+        return null;
+    }
+
+    /**
+     * Tokenize <tt>&lt;0x0123abc&gt; (a fully.qualified.ClassName)</tt>.
+     */
+    private static @CheckForNull ThreadLock lock(CharSequence line, int start) {
+        int length = line.length();
+        if (start >= length || line.charAt(start) != '<') return null;
+
+        int idStart = start + 1;
+        int idEnd = wordEnd(line, idStart);
+        // Optional prefix, unless it is the whole id
+        if (startsWith(line, idStart, "0x") && idEnd > idStart + 2) {
+            idStart += 2;
+        }
+        if (idEnd == start + 1 || !startsWith(line, idEnd, "> (a ")) return null;
+
+        int classStart = idEnd + 5;
+        int classEnd = indexOf(line, ')', classStart);
+        if (classEnd == classStart || classEnd == length) return null;
+
+        return new ThreadLock(string(line, classStart, classEnd), ThreadDumpFactory.parseLong(line, idStart, idEnd));
+    }
+
+    private static int wordEnd(CharSequence line, int start) {
+        int end = start;
+        while (end < line.length()) {
+            char c = line.charAt(end);
+            if (!isDigit(c) && !(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z') && c != '_') break;
+            end++;
+        }
+        return end;
+    }
+
+    private static boolean isBlank(CharSequence line) {
+        for (int i = 0; i < line.length(); i++) {
+            if (!isSpace(line.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    private String chunkText() {
+        return join(0, lines.size()) + chunkTerminator;
+    }
+
+    // Reconstruct original text for diagnostics
+    private String join(int from, int to) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            if (i != from) {
+                sb.append(separators.get(i - 1));
+            }
+            sb.append(lines.get(i));
+        }
+        return sb.toString();
+    }
+
+    private static String string(CharSequence line, int start, int end) {
+        return line.subSequence(start, end).toString();
+    }
+
+    private static boolean startsWith(CharSequence line, int offset, String prefix) {
+        return startsWith(line, offset, line.length(), prefix);
+    }
+
+    private static boolean startsWith(CharSequence line, int offset, int end, String prefix) {
+        int length = prefix.length();
+        if (offset < 0 || offset + length > end) return false;
+        for (int i = 0; i < length; i++) {
+            if (line.charAt(offset + i) != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    // Index of char or line length
+    private static int indexOf(CharSequence line, char c, int from) {
+        int length = line.length();
+        for (int i = from; i < length; i++) {
+            if (line.charAt(i) == c) return i;
+        }
+        return length;
+    }
+
+    private static int indexOf(CharSequence line, String str, int from) {
+        int last = line.length() - str.length();
+        for (int i = from; i <= last; i++) {
+            if (startsWith(line, i, str)) return i;
+        }
+        return -1;
+    }
+
+    // \s
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    // \d
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // Characters not matched by '.'
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /**
+     * Assemble runtime from reported threads.
+     */
+    /*package*/ static final class RuntimeBuilder implements ThreadDumpListener {
+        private final Set<ThreadDumpThread.Builder> threads = new LinkedHashSet<ThreadDumpThread.Builder>();
+        private List<String> header = Collections.emptyList();
+
+        private ThreadDumpThread.Builder thread;
+        private final List<ThreadLock.Monitor> monitors = new ArrayList<ThreadLock.Monitor>();
+        private final List<ThreadLock> synchronizers = new ArrayList<ThreadLock>();
+
+        @Override
+        public void header(@Nonnull List<String> lines) {
+            header = new ArrayList<String>(lines);
+        }
+
+        @Override
+        public void thread(
+                @Nonnull String name, @CheckForNull Long id, @CheckForNull Long tid, @CheckForNull Long nid,
+                @CheckForNull Integer priority, boolean daemon, @Nonnull ThreadStatus status
+        ) {
+            thread = new ThreadDumpThread.Builder();
+            thread.setName(name);
+            if (id != null) thread.setId(id);
+            if (tid != null) thread.setTid(tid);
+            if (nid != null) thread.setNid(nid);
+            thread.setPriority(priority);
+            thread.setDaemon(daemon);
+            thread.setThreadStatus(status);
+        }
+
+        @Override
+        public void stackTrace(@Nonnull StackTrace trace) {
+            thread.setStacktrace(trace); // Keep lazy traces unresolved
+        }
+
+        @Override
+        public void acquiredLock(@Nonnull ThreadLock lock, int depth) {
+            monitors.add(new ThreadLock.Monitor(lock, depth));
+        }
+
+        @Override
+        public void waitingToLock(@Nonnull ThreadLock lock) {
+            thread.setWaitingToLock(lock);
+        }
+
+        @Override
+        public void waitingOnLock(@Nonnull ThreadLock lock) {
+            thread.setWaitingOnLock(lock);
+        }
+
+        @Override
+        public void ownableSynchronizer(@Nonnull ThreadLock lock) {
+            synchronizers.add(lock);
+        }
+
+        @Override
+        public void threadEnd() {
+            thread.setAcquiredMonitors(new ArrayList<ThreadLock.Monitor>(monitors));
+            thread.setAcquiredSynchronizers(new ArrayList<ThreadLock>(synchronizers));
+            threads.add(thread);
+
+            thread = null;
+            monitors.clear();
+            synchronizers.clear();
+        }
+
+        /*package*/ @Nonnull ThreadDumpRuntime runtime() {
+            return new ThreadDumpRuntime(threads, header);
+        }
+    }
+
+    /**
+     * Chunk detached from the parser so it can be processed elsewhere.
+     */
+    private static final class Snapshot {
+        private final CharSequence[] lines;
+        private final String[] separators;
+        private final String terminator;
+
+        private Snapshot(List<CharSequence> lines, List<String> separators, String terminator) {
+            this.lines = lines.toArray(new CharSequence[lines.size()]);
+            this.separators = separators.toArray(new String[separators.size()]);
+            this.terminator = terminator;
+        }
+
+        private void restore(ThreadDumpParser parser) {
+            parser.lines.clear();
+            parser.lines.addAll(Arrays.asList(lines));
+            parser.separators.clear();
+            parser.separators.addAll(Arrays.asList(separators));
+            parser.chunkTerminator = terminator;
+        }
+    }
+
+    /**
+     * Parse batch of chunks into builders, chunks that are not threads and failures.
+     *
+     * Failures are returned rather than thrown as the fork/join framework would not rethrow the original instance.
+     */
+    private static final class Batch implements Callable<Object[]> {
+        private final boolean failOnErrors;
+        private final boolean lazyStackTraces;
+        private final FrameInternPool framePool;
+        private final StackTrie stackTrie;
+        private final Map<CharSequence, FrameLine> frameLines;
+        private final List<Snapshot> chunks;
+
+        private Batch(
+                boolean failOnErrors, boolean lazyStackTraces,
+                FrameInternPool framePool, StackTrie stackTrie, Map<CharSequence, FrameLine> frameLines, List<Snapshot> chunks
+        ) {
+            this.failOnErrors = failOnErrors;
+            this.lazyStackTraces = lazyStackTraces;
+            this.framePool = framePool;
+            this.stackTrie = stackTrie;
+            this.frameLines = frameLines;
+            this.chunks = chunks;
+        }
+
+        @Override
+        public Object[] call() {
+            ThreadDumpParser parser = new ThreadDumpParser(failOnErrors, lazyStackTraces, framePool, stackTrie, frameLines);
+            Object[] results = new Object[chunks.size()];
+            for (int i = 0; i < results.length; i++) {
+                Snapshot chunk = chunks.get(i);
+                chunk.restore(parser);
+                try {
+                    ThreadDumpThread.Builder thread = parser.thread();
+                    results[i] = thread == null ? chunk : thread;
+                } catch (Throwable ex) { // Only unchecked can be thrown here
+                    // Reported by reading thread once all preceding chunks are processed, nothing after failure is
+                    // going to be used
+                    results[i] = ex;
+                    return Arrays.copyOf(results, i + 1);
+                }
+            }
+            return results;
+        }
+    }
+
+    /**
+     * Stack frame of the threaddump, resolved on demand.
+     *
+     * Text is known to be a valid frame. Instances are shared by all the threads and traces the frame appears in.
+     */
+    private static final class FrameLine {
+        private final @Nonnull String text;
+        // Racing threads can resolve the frame more than once, the pool makes sure they agree on the instance
+        private volatile StackTraceElement element;
+
+        private FrameLine(@Nonnull String text, @CheckForNull StackTraceElement element) {
+            this.text = text;
+            this.element = element;
+        }
+
+        private @Nonnull StackTraceElement resolve(@Nonnull FrameInternPool framePool) {
+            StackTraceElement element = this.element;
+            if (element == null) {
+                element = framePool.get(text);
+                if (element == null) {
+                    element = frame(text, 0, true);
+                    assert element != null: text;
+                    element = framePool.put(text, element);
+                }
+                this.element = element;
+            }
+            return element;
+        }
+    }
+
+    /**
+     * Frames of lazily resolved stack trace.
+     */
+    private static final class Frames implements StackTrace.Resolver {
+        private final @Nonnull FrameInternPool framePool;
+        private final @Nonnull StackTraceElement head;
+        private final @Nonnull FrameLine[] lines;
+
+        private Frames(@Nonnull FrameInternPool framePool, @Nonnull StackTraceElement head, @Nonnull List<FrameLine> lines) {
+            this.framePool = framePool;
+            this.head = head;
+            this.lines = lines.toArray(new FrameLine[lines.size()]);
+        }
+
+        @Override
+        public @Nonnull StackTraceElement[] resolve() {
+            StackTraceElement[] elements = new StackTraceElement[lines.length + 1];
+            elements[0] = head;
+            for (int i = 0; i < lines.length; i++) {
+                elements[i + 1] = lines[i].resolve(framePool);
+            }
+            return elements;
+        }
+    }
+
+    /**
+     * Reusable view of a frame text in a line.
+     *
+     * Hash code and equality are consistent with {@link String} of the same content.
+     */
+    private static final class FrameText implements CharSequence {
+        private CharSequence line;
+        private int offset;
+
+        private @Nonnull FrameText of(@Nonnull CharSequence line, int offset) {
+            this.line = line;
+            this.offset = offset;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return line.length() - offset;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return line.charAt(offset + index);
+        }
+
+        @Override
+        public @Nonnull CharSequence subSequence(int start, int end) {
+            return line.subSequence(offset + start, offset + end);
+        }
+
+        @Override
+        public @Nonnull String toString() {
+            return line.subSequence(offset, line.length()).toString();
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 0;
+            for (int i = offset; i < line.length(); i++) {
+                hash = 31 * hash + line.charAt(i);
+            }
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (!(other instanceof CharSequence)) return false;
+
+            CharSequence that = (CharSequence) other;
+            int length = length();
+            if (that.length() != length) return false;
+            for (int i = 0; i < length; i++) {
+                if (that.charAt(i) != line.charAt(offset + i)) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Lazily rendered chunk text for diagnostic purposes.
+     */
+    private final class Chunk {
+        @Override
+        public String toString() {
+            return chunkText();
+        }
+    }
+
+    /**
+     * Lines of the threaddump with a lookahead of several lines.
+     *
+     * Lines are delimited with either <tt>\n</tt> or <tt>\r\n</tt>, standalone <tt>\r</tt> is preserved.
+     */
+    /*package*/ static abstract class Source {
+        private static final int LOOKAHEAD = 3;
+
+        private final CharSequence[] lines = new CharSequence[LOOKAHEAD];
+        private final String[] separators = new String[LOOKAHEAD];
+        private int head = 0;
+        private int buffered = 0;
+        private boolean eof = false;
+
+        /**
+         * Read next line.
+         *
+         * @return null at the end of input.
+         */
+        protected abstract @CheckForNull CharSequence readLine() throws IOException;
+
+        /**
+         * Line separator of the line read last, empty string when not terminated.
+         */
+        protected abstract @Nonnull String separator();
+
+        /*package*/ final @CheckForNull CharSequence peek(int offset) throws IOException {
+            assert offset < LOOKAHEAD;
+            while (buffered <= offset && !eof) {
+                CharSequence line = readLine();
+                if (line == null) {
+                    eof = true;
+                    break;
+                }
+                int slot = (head + buffered) % LOOKAHEAD;
+                lines[slot] = line;
+                separators[slot] = separator();
+                buffered++;
+            }
+
+            return offset < buffered ? lines[(head + offset) % LOOKAHEAD] : null;
+        }
+
+        /*package*/ final @Nonnull String separator(int offset) {
+            assert offset < buffered;
+            return separators[(head + offset) % LOOKAHEAD];
+        }
+
+        /*package*/ final void advance() {
+            assert buffered > 0;
+            lines[head] = null;
+            head = (head + 1) % LOOKAHEAD;
+            buffered--;
+        }
+    }
+
+    /**
+     * Lines read from {@link Reader}.
+     */
+    /*package*/ static final class ReaderSource extends Source {
+        private final @Nonnull Reader reader;
+        private final char[] buffer = new char[8192];
+        private int position = 0;
+        private int limit = 0;
+        private @Nonnull String separator = "";
+        private final StringBuilder line = new StringBuilder(256);
+
+        /*package*/ ReaderSource(@Nonnull Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        protected @CheckForNull CharSequence readLine() throws IOException {
+            line.setLength(0);
+            for (;;) {
+                if (position == limit) {
+                    limit = reader.read(buffer, 0, buffer.length);
+                    position = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        separator = "";
+                        return line.length() == 0 ? null : line.toString();
+                    }
+                }
+
+                int start = position;
+                while (position < limit && buffer[position] != '\n') position++;
+                line.append(buffer, start, position - start);
+
+                if (position < limit) { // Found the line end
+                    position++;
+                    int length = line.length();
+                    if (length > 0 && line.charAt(length - 1) == '\r') {
+                        line.setLength(length - 1);
+                        separator = "\r\n";
+                    } else {
+                        separator = "\n";
+                    }
+                    return line.toString();
+                }
+            }
+        }
+
+        @Override
+        protected @Nonnull String separator() {
+            return separator;
+        }
+    }
+
+    /**
+     * Lines of memory mapped file.
+     *
+     * ASCII lines are exposed as views into the mapping so strings are created only for the pieces model retains. Lines
+     * with other characters are decoded using the charset provided. Files larger than a single mapping are mapped in
+     * consecutive windows.
+     */
+    /*package*/ static final class MappedSource extends Source {
+        private static final int WINDOW = 1 << 28;
+
+        private final @Nonnull FileChannel channel;
+        private final @Nonnull Charset charset;
+        private final long size;
+        private final int window;
+
+        private MappedByteBuffer buffer;
+        private long bufferOffset = 0;
+        private int position = 0;
+        private @Nonnull String separator = "";
+
+        /*package*/ MappedSource(@Nonnull FileChannel channel, @Nonnull Charset charset) throws IOException {
+            this(channel, charset, WINDOW);
+        }
+
+        /*package*/ MappedSource(@Nonnull FileChannel channel, @Nonnull Charset charset, int window) throws IOException {
+            this.channel = channel;
+            this.charset = charset;
+            this.size = channel.size();
+            this.window = window;
+            map(0);
+        }
+
+        /**
+         * Whether lines encoded in charset can be scanned bytewise.
+         */
+        /*package*/ static boolean supports(@Nonnull Charset charset) {
+            byte[] ascii = new byte[128];
+            for (int i = 0; i < ascii.length; i++) {
+                ascii[i] = (byte) i;
+            }
+            return Arrays.equals(ascii, new String(ascii, StandardCharsets.US_ASCII).getBytes(charset));
+        }
+
+        private void map(long offset) throws IOException {
+            bufferOffset = offset;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(window, size - offset));
+        }
+
+        @Override
+        protected @CheckForNull CharSequence readLine() throws IOException {
+            int start = position;
+            boolean ascii = true;
+            for (;;) {
+                if (position == buffer.limit()) {
+                    if (bufferOffset + position == size) {
+                        separator = "";
+                        return start == position ? null : line(start, position, ascii);
+                    }
+
+                    if (start == 0) throw new IOException(
+                            "Line longer than " + window + " bytes at offset " + bufferOffset
+                    );
+
+                    // Continue the line in next window
+                    map(bufferOffset + start);
+                    position -= start;
+                    start = 0;
+                    continue;
+                }
+
+                byte b = buffer.get(position);
+                if (b == '\n') {
+                    int end = position++;
+                    if (end > start && buffer.get(end - 1) == '\r') {
+                        end--;
+                        separator = "\r\n";
+                    } else {
+                        separator = "\n";
+                    }
+                    return line(start, end, ascii);
+                }
+
+                if (b < 0) {
+                    ascii = false;
+                }
+                position++;
+            }
+        }
+
+        private @Nonnull CharSequence line(int start, int end, boolean ascii) {
+            if (ascii) return new ByteLine(buffer, start, end - start);
+
+            byte[] bytes = new byte[end - start];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(start + i);
+            }
+            return new String(bytes, charset);
+        }
+
+        @Override
+        protected @Nonnull String separator() {
+            return separator;
+        }
+    }
+
+    /**
+     * ASCII characters in a byte buffer.
+     *
+     * Hash code and equality are consistent with {@link String} of the same content so the view can be used to query
+     * hash based collections keyed by strings.
+     */
+    private static final class ByteLine implements CharSequence {
+        private final @Nonnull MappedByteBuffer buffer;
+        private final int offset;
+        private final int length;
+
+        private ByteLine(@Nonnull MappedByteBuffer buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) throw new IndexOutOfBoundsException(String.valueOf(index));
+            return (char) buffer.get(offset + index);
+        }
+
+        @Override
+        public @Nonnull CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) throw new IndexOutOfBoundsException(start + ", " + end);
+            return new ByteLine(buffer, offset + start, end - start);
+        }
+
+        @Override
+        public @Nonnull String toString() {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(offset + i);
+            }
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 0;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + buffer.get(offset + i);
+            }
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (!(other instanceof CharSequence)) return false;
+
+            CharSequence that = (CharSequence) other;
+            if (that.length() != length) return false;
+            for (int i = 0; i < length; i++) {
+                if (that.charAt(i) != buffer.get(offset + i)) return false;
+            }
+            return true;
+        }
+    }
+}
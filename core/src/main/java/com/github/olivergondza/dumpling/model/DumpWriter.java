@@ -0,0 +1,192 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.model;
+
+import java.io.PrintStream;
+import java.nio.CharBuffer;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import com.github.olivergondza.dumpling.model.ModelObject.Mode;
+
+/**
+ * Buffered writer of threaddumps.
+ *
+ * Formats numbers and locks by hand into a char buffer that is written to the stream in large chunks, instead of going
+ * through {@link PrintStream#format(String, Object...)} and synchronized {@link PrintStream} calls for every field and
+ * frame. Output is identical to the one produced by the {@link PrintStream} based methods.
+ *
+ * Not thread safe. Characters written are not guaranteed to reach the stream until {@link #flush()}.
+ *
+ * @author ogondza
+ */
+/*package*/ final class DumpWriter {
+
+    private static final String NL = System.getProperty("line.separator");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // Subclasses can append to the header using PrintStream API, see ProcessThread#printHeader(PrintStream, Mode)
+    private static final ClassValue<Boolean> CUSTOM_HEADER = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                return type.getMethod("printHeader", PrintStream.class, Mode.class).getDeclaringClass() != ProcessThread.class;
+            } catch (NoSuchMethodException ex) {
+                throw new AssertionError(ex);
+            }
+        }
+    };
+
+    private final @Nonnull PrintStream out;
+    private final @Nonnull Mode mode;
+    private final @Nonnull char[] buffer = new char[8192];
+    private int length = 0;
+    // Scratch space to format numbers in
+    private final @Nonnull char[] digits = new char[20];
+
+    /*package*/ DumpWriter(@Nonnull PrintStream out, @Nonnull Mode mode) {
+        this.out = out;
+        this.mode = mode;
+    }
+
+    /*package*/ @Nonnull Mode mode() {
+        return mode;
+    }
+
+    /*package*/ @Nonnull DumpWriter append(@CheckForNull String string) {
+        if (string == null) string = "null";
+
+        int len = string.length();
+        if (len > buffer.length - length) {
+            flush();
+            if (len > buffer.length) {
+                out.print(string);
+                return this;
+            }
+        }
+        string.getChars(0, len, buffer, length);
+        length += len;
+        return this;
+    }
+
+    /*package*/ @Nonnull DumpWriter append(char c) {
+        if (length == buffer.length) flush();
+        buffer[length++] = c;
+        return this;
+    }
+
+    /*package*/ @Nonnull DumpWriter newLine() {
+        return append(NL);
+    }
+
+    /*package*/ @Nonnull DumpWriter decimal(long value) {
+        if (value == Long.MIN_VALUE) return append(Long.toString(value));
+
+        boolean negative = value < 0;
+        if (negative) value = -value;
+
+        int pos = digits.length;
+        do {
+            digits[--pos] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        if (negative) digits[--pos] = '-';
+
+        return append(digits, pos);
+    }
+
+    /**
+     * Unsigned hexadecimal value, zero padded to given width.
+     */
+    /*package*/ @Nonnull DumpWriter hex(long value, int width) {
+        int pos = digits.length;
+        do {
+            digits[--pos] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        } while (value != 0);
+        while (digits.length - pos < width) {
+            digits[--pos] = '0';
+        }
+
+        return append(digits, pos);
+    }
+
+    private @Nonnull DumpWriter append(@Nonnull char[] chars, int from) {
+        int len = chars.length - from;
+        if (len > buffer.length - length) flush();
+        System.arraycopy(chars, from, buffer, length, len);
+        length += len;
+        return this;
+    }
+
+    /**
+     * @see ThreadLock#toString(PrintStream, Mode)
+     */
+    /*package*/ @Nonnull DumpWriter lock(@Nonnull ThreadLock lock) {
+        append("<0x").hex(lock.getId(), mode.isHuman() ? 0 : 16).append("> (a ");
+        return append(lock.getClassName()).append(')');
+    }
+
+    /**
+     * Print the same as {@link StackTraceElement#toString()} in Java 8.
+     *
+     * Module and class loader printed by Java 9+ can not be parsed at the moment.
+     */
+    /*package*/ @Nonnull DumpWriter frame(@Nonnull StackTraceElement element) {
+        append("\tat ").append(element.getClassName()).append('.').append(element.getMethodName());
+
+        String fileName = element.getFileName();
+        int lineNumber = element.getLineNumber();
+        if (element.isNativeMethod()) return append("(Native Method)");
+        if (fileName == null) return append("(Unknown Source)");
+
+        append('(').append(fileName);
+        if (lineNumber >= 0) {
+            append(':').decimal(lineNumber);
+        }
+        return append(')');
+    }
+
+    /*package*/ @Nonnull DumpWriter thread(@Nonnull ProcessThread<?, ?, ?> thread) {
+        if (CUSTOM_HEADER.get(thread.getClass())) {
+            flush();
+            thread.printHeader(out, mode);
+        } else {
+            thread.writeHeader(this);
+        }
+        thread.writeBody(this);
+        return this;
+    }
+
+    /**
+     * Write buffered characters to the stream.
+     */
+    /*package*/ void flush() {
+        if (length == 0) return;
+
+        out.append(CharBuffer.wrap(buffer, 0, length));
+        length = 0;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.model;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Content hashing for fingerprints of model objects.
+ *
+ * Values are mixed in xxHash64 fashion so the result depends on the content only, never on identity hash codes, and
+ * can be stored and compared across processes. Changing the algorithm invalidates stored fingerprints.
+ *
+ * @author ogondza
+ */
+/*package*/ final class Fingerprints {
+
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+    private static final long P5 = 0x27D4EB2F165667C5L;
+
+    /*package*/ static final long SEED = P5;
+
+    private Fingerprints() {}
+
+    /*package*/ static long add(long hash, long value) {
+        hash ^= Long.rotateLeft(value * P2, 31) * P1;
+        return Long.rotateLeft(hash, 27) * P1 + P4;
+    }
+
+    /*package*/ static long add(long hash, @CheckForNull String value) {
+        if (value == null) return add(hash, -1L);
+
+        int length = value.length();
+        hash = add(hash, length);
+        int i = 0;
+        for (; i + 4 <= length; i += 4) {
+            hash = add(hash, (long) value.charAt(i)
+                    | (long) value.charAt(i + 1) << 16
+                    | (long) value.charAt(i + 2) << 32
+                    | (long) value.charAt(i + 3) << 48
+            );
+        }
+        if (i < length) {
+            long tail = 0;
+            for (int shift = 0; i < length; i++, shift += 16) {
+                tail |= (long) value.charAt(i) << shift;
+            }
+            hash = add(hash, tail);
+        }
+        return hash;
+    }
+
+    /*package*/ static long add(long hash, @Nonnull StackTraceElement element) {
+        hash = add(hash, element.getClassName());
+        hash = add(hash, element.getMethodName());
+        hash = add(hash, element.getFileName());
+        return add(hash, element.getLineNumber());
+    }
+
+    /*package*/ static long add(long hash, @CheckForNull ThreadLock lock) {
+        if (lock == null) return add(hash, -1L);
+
+        hash = add(hash, lock.getClassName());
+        return add(hash, lock.getId());
+    }
+
+    /**
+     * Spread the bits of accumulated hash.
+     */
+    /*package*/ static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= P2;
+        hash ^= hash >>> 29;
+        hash *= P3;
+        return hash ^ (hash >>> 32);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Threads of a runtime by the classes and methods on their stacks.
+ *
+ * Every class and method is mapped to the threads evaluating it along with the depth of the innermost such frame so
+ * stack content queries are answered without scanning the stack traces.
+ *
+ * @author ogondza
+ */
+/*package*/ final class FrameIndex<ThreadType extends ProcessThread<?, ?, ?>> {
+
+    // All threads of the runtime, indexed by ProcessThread#getIndex()
+    private final @Nonnull List<ThreadType> threads;
+    private final @Nonnull Map<String, Postings> classes = new HashMap<String, Postings>();
+    private final @Nonnull Map<Method, Postings> methods = new HashMap<Method, Postings>();
+    // Class names in lexicographical order to be searched by prefix
+    private final @Nonnull String[] classNames;
+
+    /*package*/ FrameIndex(@Nonnull List<ThreadType> threads) {
+        this.threads = threads;
+
+        for (int i = 0; i < threads.size(); i++) {
+            int depth = 0;
+            for (StackTraceElement element: threads.get(i).getStackTrace().getElements()) {
+                String className = element.getClassName();
+                Postings postings = classes.get(className);
+                if (postings == null) {
+                    postings = new Postings();
+                    classes.put(className, postings);
+                }
+                postings.add(i, depth);
+
+                Method method = new Method(className, element.getMethodName());
+                postings = methods.get(method);
+                if (postings == null) {
+                    postings = new Postings();
+                    methods.put(method, postings);
+                }
+                postings.add(i, depth);
+
+                depth++;
+            }
+        }
+
+        classNames = classes.keySet().toArray(new String[classes.size()]);
+        Arrays.sort(classNames);
+    }
+
+    /**
+     * Threads evaluating the method.
+     *
+     * @param method Fully qualified method name like "java.net.SocketInputStream.socketRead0".
+     * @param maxDepth Consider frames up to this depth only, 0 being the innermost frame.
+     */
+    /*package*/ @Nonnull ThreadBitSet<ThreadType> evaluating(@Nonnull String method, @Nonnegative int maxDepth) {
+        int dot = method.lastIndexOf('.');
+        if (dot < 0) return ThreadBitSet.none(threads);
+
+        Postings postings = methods.get(new Method(method.substring(0, dot), method.substring(dot + 1)));
+        long[] words = new long[ThreadBitSet.wordCount(threads)];
+        if (postings != null) {
+            postings.addTo(words, maxDepth);
+        }
+        return ThreadBitSet.of(threads, words);
+    }
+
+    /**
+     * Threads evaluating methods of classes whose name starts with the prefix.
+     *
+     * @param prefix Class name prefix, typically a package name or a fully qualified class name.
+     */
+    /*package*/ @Nonnull ThreadBitSet<ThreadType> evaluatingClass(@Nonnull String prefix) {
+        long[] words = new long[ThreadBitSet.wordCount(threads)];
+        int i = Arrays.binarySearch(classNames, prefix);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        for (; i < classNames.length && classNames[i].startsWith(prefix); i++) {
+            classes.get(classNames[i]).addTo(words, Integer.MAX_VALUE);
+        }
+        return ThreadBitSet.of(threads, words);
+    }
+
+    private static final class Method {
+        private final @Nonnull String className;
+        private final @Nonnull String methodName;
+        private final int hash;
+
+        private Method(@Nonnull String className, @Nonnull String methodName) {
+            this.className = className;
+            this.methodName = methodName;
+            this.hash = 31 * className.hashCode() + methodName.hashCode();
+        }
+
+        @Override
+        public boolean equals(@CheckForNull Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Method)) return false;
+
+            Method other = (Method) o;
+            return hash == other.hash && className.equals(other.className) && methodName.equals(other.methodName);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Threads, in the order of the runtime, with the depth of the innermost frame matched.
+     */
+    private static final class Postings {
+        private int[] threads = new int[2];
+        private int[] depths = new int[2];
+        private int size = 0;
+
+        private void add(int thread, int depth) {
+            // Frames are added from the innermost one so the first one of the thread is kept
+            if (size > 0 && threads[size - 1] == thread) return;
+
+            if (size == threads.length) {
+                threads = Arrays.copyOf(threads, size * 2);
+                depths = Arrays.copyOf(depths, size * 2);
+            }
+            threads[size] = thread;
+            depths[size] = depth;
+            size++;
+        }
+
+        private void addTo(@Nonnull long[] words, int maxDepth) {
+            for (int i = 0; i < size; i++) {
+                if (depths[i] > maxDepth) continue;
+
+                int thread = threads[i];
+                words[thread >>> 6] |= 1L << thread;
+            }
+        }
+    }
+}
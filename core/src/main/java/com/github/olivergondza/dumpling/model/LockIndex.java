@@ -0,0 +1,201 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import com.github.olivergondza.dumpling.factory.IllegalRuntimeStateException;
+
+/**
+ * Owners and waiters of the locks in a runtime.
+ *
+ * Built once per runtime so the blocking relations between threads are resolved without scanning all the threads.
+ * Threads resolved are reported as {@link ThreadBitSet}s of the runtime.
+ *
+ * @author ogondza
+ */
+/*package*/ final class LockIndex<ThreadType extends ProcessThread<?, ?, ?>> {
+
+    private final @Nonnull Map<ThreadLock, ThreadType> monitorOwners = new HashMap<ThreadLock, ThreadType>();
+    private final @Nonnull Map<ThreadLock, ThreadType> synchronizerOwners = new HashMap<ThreadLock, ThreadType>();
+    // Threads blocked acquiring the monitor
+    private final @Nonnull Map<ThreadLock, List<ThreadType>> waitingTo = new HashMap<ThreadLock, List<ThreadType>>();
+    /*
+     * Parked threads waiting on the synchronizer.
+     *
+     * Some threads are blocked by other particular ones when parking, but not all parking threads are blocked by a
+     * thread (we can identify). This naive implementation seems to work reasonably well. These notes might be of value:
+     *
+     * Not detectable:
+     *
+     * com.google.common.util.concurrent.AbstractFuture$Sync
+     * java.util.concurrent.CountDownLatch$Sync
+     * java.util.concurrent.FutureTask
+     * java.util.concurrent.FutureTask$Sync
+     * java.util.concurrent.locks.AbstractQueuedSynchronizer$ConditionObject
+     * java.util.concurrent.Semaphore$NonfairSync
+     * java.util.concurrent.SynchronousQueue$TransferStack (Idle ThreadPoolExecutor$Worker)
+     *
+     * Detectable in certain situations:
+     *
+     * java.util.concurrent.locks.ReentrantLock$NonfairSync
+     * java.util.concurrent.locks.ReentrantReadWriteLock$NonfairSync (both write lock or write/read lock blockage)
+     */
+    private final @Nonnull Map<ThreadLock, List<ThreadType>> parkedOn = new HashMap<ThreadLock, List<ThreadType>>();
+    private final @Nonnull List<ThreadType> threads;
+
+    /**
+     * @param threads All threads of the runtime, indexed by {@link ProcessThread#getIndex()}.
+     * @throws IllegalRuntimeStateException When several threads own the same lock.
+     */
+    /*package*/ LockIndex(@Nonnull List<ThreadType> threads) {
+        this.threads = threads;
+        for (ThreadType thread: threads) {
+            for (ThreadLock lock: thread.getMonitorLocks()) {
+                // The same monitor is listed for every frame that acquired it
+                ThreadType existing = monitorOwners.put(lock, thread);
+                if (existing != null && existing != thread) throw new IllegalRuntimeStateException(
+                        "Multiple threads own the same monitor '%s':%n%s%n%nAND%n%n%s%n",
+                        lock, existing, thread
+                );
+            }
+
+            for (ThreadLock lock: thread.getSynchronizerLocks()) {
+                ThreadType existing = synchronizerOwners.put(lock, thread);
+                if (existing != null && existing != thread) throw new IllegalRuntimeStateException(
+                        "Multiple threads own the same synchronizer '%s':%n%s%n%nAND%n%n%s%n",
+                        lock, existing, thread
+                );
+            }
+
+            ThreadLock lock = thread.getWaitingToLock();
+            if (lock != null) {
+                add(waitingTo, lock, thread);
+            }
+
+            lock = thread.getWaitingOnLock();
+            if (lock != null && thread.getStatus().isParked()) {
+                add(parkedOn, lock, thread);
+            }
+        }
+    }
+
+    private static <K, V> void add(@Nonnull Map<K, List<V>> index, @Nonnull K key, @Nonnull V value) {
+        List<V> values = index.get(key);
+        if (values == null) {
+            values = new ArrayList<V>(2);
+            index.put(key, values);
+        }
+        values.add(value);
+    }
+
+    /**
+     * @see ProcessThread#getBlockingThread()
+     */
+    /*package*/ @CheckForNull ThreadType getBlockingThread(@Nonnull ProcessThread<?, ?, ?> thread) {
+        ThreadLock lock = thread.getWaitingToLock();
+        ThreadType monitorOwner = lock == null ? null : monitorOwners.get(lock);
+        if (monitorOwner == thread) monitorOwner = null;
+
+        lock = thread.getWaitingOnLock();
+        ThreadType synchronizerOwner = lock == null || !thread.getStatus().isParked() ? null : synchronizerOwners.get(lock);
+        if (synchronizerOwner == thread) synchronizerOwner = null;
+
+        if (monitorOwner == null) return synchronizerOwner;
+        if (synchronizerOwner == null) return monitorOwner;
+
+        // Both blocking, report the first one
+        return monitorOwner.getIndex() < synchronizerOwner.getIndex() ? monitorOwner : synchronizerOwner;
+    }
+
+    /**
+     * @see ProcessThread#getBlockedThreads()
+     */
+    /*package*/ @Nonnull Set<ThreadType> getBlockedThreads(@Nonnull ProcessThread<?, ?, ?> thread) {
+        List<ThreadType> blocked = new ArrayList<ThreadType>();
+        for (ThreadLock lock: thread.getMonitorLocks()) {
+            addAll(blocked, waitingTo.get(lock), thread);
+        }
+        for (ThreadLock lock: thread.getSynchronizerLocks()) {
+            addAll(blocked, parkedOn.get(lock), thread);
+        }
+        return inOrder(blocked);
+    }
+
+    /**
+     * Threads blocked acquiring any of the locks held by the threads.
+     *
+     * @see ThreadSet#getBlockedThreads()
+     */
+    /*package*/ @Nonnull Set<ThreadType> getBlockedThreads(@Nonnull Iterable<? extends ProcessThread<?, ?, ?>> threads) {
+        List<ThreadType> blocked = new ArrayList<ThreadType>();
+        for (ProcessThread<?, ?, ?> thread: threads) {
+            for (ThreadLock lock: thread.getMonitorLocks()) {
+                addAll(blocked, waitingTo.get(lock), null);
+            }
+            for (ThreadLock lock: thread.getSynchronizerLocks()) {
+                addAll(blocked, waitingTo.get(lock), null);
+            }
+        }
+        return inOrder(blocked);
+    }
+
+    /**
+     * Threads holding any of the locks the threads are blocked acquiring.
+     *
+     * @see ThreadSet#getBlockingThreads()
+     */
+    /*package*/ @Nonnull Set<ThreadType> getBlockingThreads(@Nonnull Iterable<? extends ProcessThread<?, ?, ?>> threads) {
+        List<ThreadType> blocking = new ArrayList<ThreadType>();
+        for (ProcessThread<?, ?, ?> thread: threads) {
+            ThreadLock lock = thread.getWaitingToLock();
+            if (lock == null) continue;
+
+            ThreadType owner = monitorOwners.get(lock);
+            if (owner != null) blocking.add(owner);
+            owner = synchronizerOwners.get(lock);
+            if (owner != null) blocking.add(owner);
+        }
+        return inOrder(blocking);
+    }
+
+    private static <T> void addAll(@Nonnull List<T> target, @CheckForNull List<T> source, @CheckForNull Object except) {
+        if (source == null) return;
+
+        for (T item: source) {
+            if (item != except) target.add(item);
+        }
+    }
+
+    private @Nonnull Set<ThreadType> inOrder(@Nonnull List<ThreadType> threads) {
+        return ThreadBitSet.of(this.threads, threads);
+    }
+}
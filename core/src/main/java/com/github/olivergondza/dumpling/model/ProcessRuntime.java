@@ -24,12 +24,16 @@
 package com.github.olivergondza.dumpling.model;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedHashSet;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
 import com.github.olivergondza.dumpling.factory.IllegalRuntimeStateException;
@@ -46,59 +50,40 @@ public abstract class ProcessRuntime<
         ThreadType extends ProcessThread<ThreadType, SetType, RuntimeType>
 > extends ModelObject {
 
+    // Threads indexed by ProcessThread#getIndex()
+    private final @Nonnull List<ThreadType> threadList;
     private final @Nonnull SetType threads;
     private final @Nonnull SetType emptySet;
+    private final @Nonnull LockIndex<ThreadType> lockIndex;
+    // Built on first lookup as most runtimes are never queried by identifier
+    private volatile ThreadIdIndex<ThreadType> idIndex;
+    private volatile ThreadIdIndex<ThreadType> nidIndex;
+    private volatile ThreadIdIndex<ThreadType> tidIndex;
+    private volatile FrameIndex<ThreadType> frameIndex;
+    // 0 until computed
+    private volatile long fingerprint;
 
     public ProcessRuntime(@Nonnull Set<? extends ProcessThread.Builder<?>> builders) {
-        this.threads = createThreads(builders);
-        this.emptySet = createSet(Collections.<ThreadType>emptySet());
-        checkSanity();
+        this.threadList = createThreads(builders);
+        this.threads = createSet(ThreadBitSet.all(threadList));
+        this.emptySet = createSet(ThreadBitSet.none(threadList));
+        // At most one thread should own the monitor/synchronizer, verified while indexing
+        this.lockIndex = new LockIndex<ThreadType>(threadList);
     }
 
-    private @Nonnull SetType createThreads(@Nonnull Set<? extends ProcessThread.Builder<?>> builders) {
-        Set<ThreadType> threads = new LinkedHashSet<ThreadType>(builders.size());
+    private @Nonnull List<ThreadType> createThreads(@Nonnull Set<? extends ProcessThread.Builder<?>> builders) {
+        List<ThreadType> threads = new ArrayList<ThreadType>(builders.size());
+        Set<ThreadType> unique = new HashSet<ThreadType>(builders.size());
         for (ProcessThread.Builder<?> builder: builders) {
             ThreadType thread = createThread(builder);
-            if (threads.contains(thread)) {
+            if (!unique.add(thread)) {
                 throw new IllegalRuntimeStateException("duplicate thread: " + thread);
             }
+            thread.setIndex(threads.size());
             threads.add(thread);
         }
 
-        int buildersSize = builders.size();
-        int threadsSize = threads.size();
-        if (buildersSize != threadsSize) throw new IllegalRuntimeStateException(
-                "%d builders produced %d threads", buildersSize, threadsSize
-        );
-
-        return createSet(Collections.unmodifiableSet(threads));
-    }
-
-    private void checkSanity() {
-        // At most one thread should own the monitor/synchronizer
-        HashMap<ThreadLock, ThreadType> monitors = new HashMap<ThreadLock, ThreadType>();
-        HashMap<ThreadLock, ThreadType> synchronizers = new HashMap<ThreadLock, ThreadType>();
-        for (ThreadType t: threads) {
-            for (ThreadLock lock: t.getAcquiredMonitors()) {
-                ThreadType existing = monitors.put(lock, t);
-                if (existing != null) {
-                    throw new IllegalRuntimeStateException(
-                            "Multiple threads own the same monitor '%s':%n%s%n%nAND%n%n%s%n",
-                            lock, existing, t
-                    );
-                }
-            }
-
-            for (ThreadLock lock: t.getAcquiredSynchronizers()) {
-                ThreadType existing = synchronizers.put(lock, t);
-                if (existing != null) {
-                    throw new IllegalRuntimeStateException(
-                            "Multiple threads own the same synchronizer '%s':%n%s%n%nAND%n%n%s%n",
-                            lock, existing, t
-                    );
-                }
-            }
-        }
+        return Collections.unmodifiableList(threads);
     }
 
     protected abstract @Nonnull SetType createSet(@Nonnull Set<ThreadType> threads);
@@ -112,21 +97,127 @@ public abstract class ProcessRuntime<
         return threads;
     }
 
+    /*package*/ @Nonnull LockIndex<ThreadType> getLockIndex() {
+        return lockIndex;
+    }
+
+    // Built on first stack query, racing threads might build the index twice
+    /*package*/ @Nonnull FrameIndex<ThreadType> getFrameIndex() {
+        FrameIndex<ThreadType> index = frameIndex;
+        if (index == null) {
+            frameIndex = index = new FrameIndex<ThreadType>(threadList);
+        }
+        return index;
+    }
+
     public @Nonnull SetType getEmptyThreadSet() {
         return emptySet;
     }
 
+    /**
+     * Find thread by Java thread id.
+     *
+     * @return First such thread in the runtime or <tt>null</tt> when there is none.
+     * @see ProcessThread#getId()
+     */
+    public @CheckForNull ThreadType getThreadById(long id) {
+        return getIdIndex(ThreadIdIndex.Key.ID).get(id, null);
+    }
+
+    /**
+     * Find thread by native thread id.
+     *
+     * @return First such thread in the runtime or <tt>null</tt> when there is none.
+     * @see ProcessThread#getNid()
+     */
+    public @CheckForNull ThreadType getThreadByNid(long nid) {
+        return getIdIndex(ThreadIdIndex.Key.NID).get(nid, null);
+    }
+
+    /**
+     * Find thread by thread id.
+     *
+     * @return First such thread in the runtime or <tt>null</tt> when there is none.
+     * @see ProcessThread#getTid()
+     */
+    public @CheckForNull ThreadType getThreadByTid(long tid) {
+        return getIdIndex(ThreadIdIndex.Key.TID).get(tid, null);
+    }
+
+    // Racing threads might build the index twice, the outcome is the same
+    /*package*/ @Nonnull ThreadIdIndex<ThreadType> getIdIndex(@Nonnull ThreadIdIndex.Key key) {
+        ThreadIdIndex<ThreadType> index;
+        switch (key) {
+            case ID:
+                index = idIndex;
+                if (index == null) idIndex = index = new ThreadIdIndex<ThreadType>(threadList, key);
+                return index;
+            case NID:
+                index = nidIndex;
+                if (index == null) nidIndex = index = new ThreadIdIndex<ThreadType>(threadList, key);
+                return index;
+            case TID:
+                index = tidIndex;
+                if (index == null) tidIndex = index = new ThreadIdIndex<ThreadType>(threadList, key);
+                return index;
+        }
+        throw new AssertionError(key);
+    }
+
+    /**
+     * Content hash of the threads in the runtime.
+     *
+     * Runtimes capturing the same threads in the same order have the same fingerprint, regardless of the time or the
+     * way they were captured. Stable across processes so it can be stored.
+     *
+     * @see ProcessThread#getFingerprint()
+     */
+    public long getFingerprint() {
+        long fingerprint = this.fingerprint;
+        if (fingerprint != 0) return fingerprint;
+
+        long hash = Fingerprints.add(Fingerprints.SEED, threadList.size());
+        for (ThreadType thread: threadList) {
+            hash = Fingerprints.add(hash, thread.getFingerprint());
+        }
+        return this.fingerprint = Fingerprints.finish(hash);
+    }
+
     /**
      * Instantiate {@link ThreadSet} scoped to this runtime.
+     *
+     * The set iterates in the order of the runtime, the order of the collection is not preserved.
+     *
+     * @throws IllegalArgumentException When some of the threads does not belong to this runtime.
      */
     public @Nonnull SetType getThreadSet(@Nonnull Collection<ThreadType> threads) {
         if (threads.isEmpty()) return emptySet;
 
-        Set<ThreadType> threadSet = threads instanceof Set
-                ? (Set<ThreadType>) threads
-                : new LinkedHashSet<ThreadType>(threads)
-        ;
-        return createSet(threadSet);
+        return createSet(ThreadBitSet.of(threadList, threads));
+    }
+
+    /**
+     * Collect threads of this runtime into {@link ThreadSet}.
+     *
+     * Usable with parallel streams, the resulting set is in the order of the runtime regardless of the encounter order.
+     *
+     * <pre>
+     * runtime.getThreads().parallelStream().filter(...).collect(runtime.toThreadSet());
+     * </pre>
+     *
+     * @throws IllegalArgumentException When some of the threads does not belong to this runtime.
+     */
+    public @Nonnull Collector<ThreadType, ?, SetType> toThreadSet() {
+        return Collectors.collectingAndThen(ThreadBitSet.collector(threadList), this::createSet);
+    }
+
+    /**
+     * Index the threads as a subset of this runtime.
+     *
+     * @throws IllegalArgumentException When some of the threads does not belong to this runtime.
+     */
+    /*package*/ @Nonnull ThreadBitSet<ThreadType> bitSet(@Nonnull Collection<?> threads) {
+        return ThreadBitSet.of(threadList, threads);
     }
 
     /**
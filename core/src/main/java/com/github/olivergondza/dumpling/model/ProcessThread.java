@@ -30,11 +30,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Objects;
 import java.util.Set;
 import java.util.regex.Pattern;
 
 import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 
 import com.github.olivergondza.dumpling.factory.IllegalRuntimeStateException;
@@ -55,12 +55,14 @@ public class ProcessThread<
     private final @Nonnull
     RuntimeType runtime;
     private final @Nonnull
-    Builder<?> state;
+    Record state;
+    // Position in the runtime, assigned once by the runtime when created
+    private int index = -1;
 
     protected ProcessThread(@Nonnull RuntimeType runtime, @Nonnull Builder<?> builder) {
         checkSanity(builder);
         this.runtime = runtime;
-        this.state = builder.clone();
+        this.state = new Record(builder);
     }
 
     protected void checkSanity(Builder<?> state) {
@@ -99,7 +101,7 @@ public class ProcessThread<
      */
     public @CheckForNull
     Long getId() {
-        return state.id;
+        return state.has(Record.HAS_ID) ? state.id : null;
     }
 
     /**
@@ -109,7 +111,7 @@ public class ProcessThread<
      */
     public @CheckForNull
     Long getNid() {
-        return state.nid;
+        return state.has(Record.HAS_NID) ? state.nid : null;
     }
 
     /**
@@ -117,12 +119,31 @@ public class ProcessThread<
      */
     public @CheckForNull
     Long getTid() {
-        return state.tid;
+        return state.has(Record.HAS_TID) ? state.tid : null;
+    }
+
+    /*package*/ boolean hasIdentifier(@Nonnull ThreadIdIndex.Key key) {
+        switch (key) {
+            case ID: return state.has(Record.HAS_ID);
+            case NID: return state.has(Record.HAS_NID);
+            case TID: return state.has(Record.HAS_TID);
+        }
+        throw new AssertionError(key);
+    }
+
+    // Identifier without boxing, see hasIdentifier()
+    /*package*/ long getIdentifier(@Nonnull ThreadIdIndex.Key key) {
+        switch (key) {
+            case ID: return state.id;
+            case NID: return state.nid;
+            case TID: return state.tid;
+        }
+        throw new AssertionError(key);
     }
 
     public @Nonnull
     ThreadStatus getStatus() {
-        return state.status;
+        return state.status();
     }
 
     /**
@@ -132,11 +153,11 @@ public class ProcessThread<
      */
     public @CheckForNull
     Thread.State getState() {
-        return state.status.getState();
+        return state.status().getState();
     }
 
     public Integer getPriority() {
-        return state.priority;
+        return state.has(Record.HAS_PRIORITY) ? state.priority : null;
     }
 
     public boolean isDaemon() {
@@ -148,6 +169,18 @@ public class ProcessThread<
         return state.stackTrace;
     }
 
+    /**
+     * Content hash of the thread.
+     *
+     * Covers name, identifiers, priority, status, stack trace and locks so threads with the same fingerprint in
+     * different runtimes are almost certainly unchanged. Stable across processes so it can be stored.
+     *
+     * @see StackTrace#getFingerprint()
+     */
+    public long getFingerprint() {
+        return state.fingerprint();
+    }
+
     /**
      * Monitor thread is waiting to be notified.
      *
@@ -172,74 +205,73 @@ public class ProcessThread<
     Set<ThreadLock> getAcquiredLocks() {
         // Convert to Set not to expose duplicates
         LinkedHashSet<ThreadLock> locks = new LinkedHashSet<ThreadLock>(
-                state.acquiredMonitors.size() + state.acquiredSynchronizers.size()
+                state.monitors.length + state.synchronizers.length
         );
-        for (Monitor m : state.acquiredMonitors) {
-            locks.add(m.getLock());
-        }
-        locks.addAll(state.acquiredSynchronizers);
+        Collections.addAll(locks, state.monitors);
+        Collections.addAll(locks, state.synchronizers);
         return locks;
     }
 
     public @Nonnull
     Set<ThreadLock> getAcquiredMonitors() {
-        LinkedHashSet<ThreadLock> locks = new LinkedHashSet<ThreadLock>(state.acquiredMonitors.size());
-        for (Monitor m : state.acquiredMonitors) {
-            locks.add(m.getLock());
-        }
+        LinkedHashSet<ThreadLock> locks = new LinkedHashSet<ThreadLock>(state.monitors.length);
+        Collections.addAll(locks, state.monitors);
         return locks;
     }
 
     public @Nonnull
     Set<ThreadLock> getAcquiredSynchronizers() {
-        return new LinkedHashSet<ThreadLock>(state.acquiredSynchronizers);
+        LinkedHashSet<ThreadLock> locks = new LinkedHashSet<ThreadLock>(state.synchronizers.length);
+        Collections.addAll(locks, state.synchronizers);
+        return locks;
+    }
+
+    /*package*/ int getIndex() {
+        return index;
+    }
+
+    /*package*/ void setIndex(int index) {
+        assert this.index == -1: "Index already assigned";
+        this.index = index;
     }
 
     /**
-     * Get threads that are waiting for lock held by this thread.
+     * Acquired monitors along with the depth of the frame they were acquired in.
+     *
+     * Unlike {@link #getAcquiredMonitors()}, monitor acquired in several frames is listed for each of them.
      */
     public @Nonnull
-    SetType getBlockedThreads() {
-        Set<ThreadLock> acquiredMonitors = getAcquiredMonitors();
-
-        Set<ThreadType> blocked = new LinkedHashSet<ThreadType>();
-        for (ThreadType thread : runtime.getThreads()) {
-            if (thread == this) {
-                continue;
-            }
-            if (acquiredMonitors.contains(thread.getWaitingToLock()) || isParkingBlocking(this, thread)) {
-                blocked.add(thread);
-                assert thread.getBlockingThread() == this; // Verify consistency of back references
-            } else {
-                assert thread.getBlockingThread() != this; // Verify consistency of back references
-            }
+    List<Monitor> getMonitors() {
+        List<Monitor> monitors = new ArrayList<Monitor>(state.monitors.length);
+        for (int i = 0; i < state.monitors.length; i++) {
+            monitors.add(new Monitor(state.monitors[i], state.monitorDepths[i]));
         }
+        return monitors;
+    }
 
-        return runtime.getThreadSet(blocked);
+    // Acquired monitors without copying, possibly with duplicates. Not to be modified
+    /*package*/ @Nonnull
+    ThreadLock[] getMonitorLocks() {
+        return state.monitors;
+    }
+
+    // Acquired synchronizers without copying. Not to be modified
+    /*package*/ @Nonnull
+    ThreadLock[] getSynchronizerLocks() {
+        return state.synchronizers;
     }
 
     /**
-     * Some threads are blocked by other particular ones when parking, but not all parking threads are blocked by a
-     * thread (we can identify). This naive implementation seems to work reasonably well. These notes might be of value:
-     * <p>
-     * Not detectable:
-     * <p>
-     * com.google.common.util.concurrent.AbstractFuture$Sync
-     * java.util.concurrent.CountDownLatch$Sync
-     * java.util.concurrent.FutureTask
-     * java.util.concurrent.FutureTask$Sync
-     * java.util.concurrent.locks.AbstractQueuedSynchronizer$ConditionObject
-     * java.util.concurrent.Semaphore$NonfairSync
-     * java.util.concurrent.SynchronousQueue$TransferStack (Idle ThreadPoolExecutor$Worker)
-     * <p>
-     * Detectable in certain situations:
-     * <p>
-     * java.util.concurrent.locks.ReentrantLock$NonfairSync
-     * java.util.concurrent.locks.ReentrantReadWriteLock$NonfairSync (both write lock or write/read lock blockage)
+     * Get threads that are waiting for lock held by this thread.
      */
-    // Cannot be a private instance method since ths and tht are statically distinct types javac fail to permit private access on - strange
-    private static boolean isParkingBlocking(ProcessThread<?, ?, ?> ths, ProcessThread<?, ?, ?> tht) {
-        return tht.getStatus().isParked() && ths.getAcquiredSynchronizers().contains(tht.getWaitingOnLock());
+    public @Nonnull
+    SetType getBlockedThreads() {
+        Set<ThreadType> blocked = runtime.getLockIndex().getBlockedThreads(this);
+        for (ThreadType thread : blocked) {
+            assert thread.getBlockingThread() == this; // Verify consistency of back references
+        }
+
+        return runtime.getThreadSet(blocked);
     }
 
     /**
@@ -268,20 +300,7 @@ public class ProcessThread<
             return null;
         }
 
-        for (ThreadType thread : runtime.getThreads()) {
-            if (thread == this) {
-                continue;
-            }
-            Set<ThreadLock> acquired = thread.getAcquiredMonitors();
-            if (acquired.contains(state.waitingToLock)) {
-                return thread;
-            }
-            if (isParkingBlocking(thread, this)) {
-                return thread;
-            }
-        }
-
-        return null;
+        return runtime.getLockIndex().getBlockingThread(this);
     }
 
     /**
@@ -303,12 +322,25 @@ public class ProcessThread<
      * @param mode   Output mode.
      */
     public void printHeader(PrintStream stream, Mode mode) {
-        state.printHeader(stream, mode);
+        DumpWriter writer = new DumpWriter(stream, mode);
+        state.writeHeader(writer);
+        writer.flush();
     }
 
     @Override
     public void toString(PrintStream stream, Mode mode) {
-        state.toString(stream, mode);
+        DumpWriter writer = new DumpWriter(stream, mode);
+        writer.thread(this);
+        writer.flush();
+    }
+
+    // Header as printed by ProcessThread, see DumpWriter#thread(ProcessThread)
+    /*package*/ void writeHeader(@Nonnull DumpWriter writer) {
+        state.writeHeader(writer);
+    }
+
+    /*package*/ void writeBody(@Nonnull DumpWriter writer) {
+        state.writeBody(writer);
     }
 
     @Override
@@ -322,14 +354,227 @@ public class ProcessThread<
 
         ProcessThread<?, ?, ?> other = (ProcessThread<?, ?, ?>) rhs;
 
-        return Objects.equals(state.tid, other.state.tid)
-                && Objects.equals(state.nid, other.state.nid)
-                && Objects.equals(state.id, other.state.id);
+        return state.present == other.state.present
+                && state.tid == other.state.tid && state.nid == other.state.nid && state.id == other.state.id
+        ;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(state.id, state.nid, state.id);
+        int hash = Long.hashCode(state.id);
+        hash = 31 * hash + Long.hashCode(state.nid);
+        return 31 * hash + Long.hashCode(state.tid);
+    }
+
+    /**
+     * Immutable state of the thread.
+     *
+     * Kept compact as there are lots of threads in memory when analyzing series of threaddumps: identifiers and priority
+     * are primitive with their presence tracked in flags, as any value of them is valid, monitors are stored as flat
+     * arrays of locks and depths and the status as its ordinal.
+     */
+    private static final class Record {
+        private static final int HAS_ID = 1;
+        private static final int HAS_NID = 2;
+        private static final int HAS_TID = 4;
+        private static final int HAS_PRIORITY = 8;
+        private static final ThreadLock[] NO_LOCKS = new ThreadLock[0];
+        private static final int[] NO_DEPTHS = new int[0];
+        private static final ThreadStatus[] STATUSES = ThreadStatus.values();
+
+        private final @Nonnull String name;
+        // Fields present, HAS_* flags
+        private final byte present;
+        // 0 when not present
+        private final long id, nid, tid;
+        private final int priority;
+        private final byte status;
+        private final boolean daemon;
+        private final @Nonnull StackTrace stackTrace;
+        private final @CheckForNull ThreadLock waitingToLock;
+        private final @CheckForNull ThreadLock waitingOnLock;
+        // Lock of each acquired monitor and the depth of the frame it was acquired in
+        private final @Nonnull ThreadLock[] monitors;
+        private final @Nonnull int[] monitorDepths;
+        private final @Nonnull ThreadLock[] synchronizers;
+        // 0 until computed, not computed eagerly not to resolve lazy stack traces
+        private volatile long fingerprint;
+
+        private Record(@Nonnull Builder<?> builder) {
+            name = builder.name;
+            id = builder.id == null ? 0 : builder.id;
+            nid = builder.nid == null ? 0 : builder.nid;
+            tid = builder.tid == null ? 0 : builder.tid;
+            priority = builder.priority == null ? 0 : builder.priority;
+
+            int present = 0;
+            if (builder.id != null) present |= HAS_ID;
+            if (builder.nid != null) present |= HAS_NID;
+            if (builder.tid != null) present |= HAS_TID;
+            if (builder.priority != null) present |= HAS_PRIORITY;
+            this.present = (byte) present;
+            status = (byte) builder.status.ordinal();
+            daemon = builder.daemon;
+            stackTrace = builder.stackTrace;
+            waitingToLock = builder.waitingToLock;
+            waitingOnLock = builder.waitingOnLock;
+
+            int size = builder.acquiredMonitors.size();
+            if (size == 0) {
+                monitors = NO_LOCKS;
+                monitorDepths = NO_DEPTHS;
+            } else {
+                monitors = new ThreadLock[size];
+                monitorDepths = new int[size];
+                for (int i = 0; i < size; i++) {
+                    Monitor monitor = builder.acquiredMonitors.get(i);
+                    monitors[i] = monitor.getLock();
+                    monitorDepths[i] = monitor.getDepth();
+                }
+            }
+
+            synchronizers = builder.acquiredSynchronizers.isEmpty()
+                    ? NO_LOCKS
+                    : builder.acquiredSynchronizers.toArray(new ThreadLock[builder.acquiredSynchronizers.size()])
+            ;
+        }
+
+        private boolean has(int field) {
+            return (present & field) != 0;
+        }
+
+        private @Nonnull ThreadStatus status() {
+            return STATUSES[status];
+        }
+
+        private long fingerprint() {
+            long fingerprint = this.fingerprint;
+            if (fingerprint != 0) return fingerprint;
+
+            long hash = Fingerprints.add(Fingerprints.SEED, name);
+            hash = Fingerprints.add(hash, present);
+            hash = Fingerprints.add(hash, id);
+            hash = Fingerprints.add(hash, nid);
+            hash = Fingerprints.add(hash, tid);
+            hash = Fingerprints.add(hash, priority);
+            hash = Fingerprints.add(hash, status().name());
+            hash = Fingerprints.add(hash, daemon ? 1 : 0);
+            hash = Fingerprints.add(hash, stackTrace.getFingerprint());
+            hash = Fingerprints.add(hash, waitingToLock);
+            hash = Fingerprints.add(hash, waitingOnLock);
+            hash = Fingerprints.add(hash, monitors.length);
+            for (int i = 0; i < monitors.length; i++) {
+                hash = Fingerprints.add(hash, monitors[i]);
+                hash = Fingerprints.add(hash, monitorDepths[i]);
+            }
+            hash = Fingerprints.add(hash, synchronizers.length);
+            for (ThreadLock synchronizer: synchronizers) {
+                hash = Fingerprints.add(hash, synchronizer);
+            }
+
+            return this.fingerprint = Fingerprints.finish(hash);
+        }
+
+        private void writeHeader(@Nonnull DumpWriter writer) {
+            writer.append('"').append(name).append('"');
+            if (has(HAS_ID)) {
+                writer.append(" #").decimal(id);
+            }
+            if (daemon) {
+                writer.append(" daemon");
+            }
+            if (has(HAS_PRIORITY)) {
+                writer.append(" prio=").decimal(priority);
+            }
+
+            if (has(HAS_TID)) {
+                writer.append(" tid=0x").hex(tid, writer.mode().isHuman() ? 0 : 16);
+            }
+            if (has(HAS_NID)) {
+                writer.append(" nid=");
+                if (writer.mode().isHuman()) {
+                    writer.decimal(nid);
+                } else {
+                    writer.append("0x").hex(nid, 0);
+                }
+            }
+        }
+
+        private void writeBody(@Nonnull DumpWriter writer) {
+            ThreadStatus status = status();
+            writer.newLine().append("   java.lang.Thread.State: ").append(status.getTitle());
+
+            int[] byDepth = monitorsByDepth();
+            int next = 0;
+            int depth = 0;
+            for (StackTraceElement traceLine : stackTrace.getElements()) {
+                writer.newLine().frame(traceLine);
+
+                if (depth == 0) {
+                    if (waitingToLock != null) {
+                        writer.newLine().append("\t- ").append(waitingVerb(status)).append(' ').lock(waitingToLock);
+                    }
+                    if (waitingOnLock != null) {
+                        writer.newLine().append("\t- ").append(waitingVerb(status)).append(' ').lock(waitingOnLock);
+                    }
+                }
+
+                // Monitors of shallower frames are all printed by now
+                while (next < byDepth.length && monitorDepths[byDepth[next]] == depth) {
+                    writer.newLine().append("\t- locked ").lock(monitors[byDepth[next]]);
+                    next++;
+                }
+
+                depth++;
+            }
+
+            if (synchronizers.length != 0) {
+                writer.newLine().newLine().append("   Locked ownable synchronizers:").newLine();
+                for (ThreadLock synchronizer : synchronizers) {
+                    writer.append("\t- ").lock(synchronizer).newLine();
+                }
+            }
+        }
+
+        /**
+         * Indexes of monitors ordered by depth, preserving the order of monitors of the same frame.
+         */
+        private @Nonnull int[] monitorsByDepth() {
+            if (monitors.length == 0) return NO_DEPTHS;
+
+            int[] order = new int[monitors.length];
+            boolean sorted = true;
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+                if (i > 0 && monitorDepths[i - 1] > monitorDepths[i]) sorted = false;
+            }
+            if (sorted) return order;
+
+            // Few monitors per thread, insertion sort is stable and cheap
+            for (int i = 1; i < order.length; i++) {
+                int current = order[i];
+                int j = i - 1;
+                for (; j >= 0 && monitorDepths[order[j]] > monitorDepths[current]; j--) {
+                    order[j + 1] = order[j];
+                }
+                order[j + 1] = current;
+            }
+            return order;
+        }
+
+        private String waitingVerb(@Nonnull ThreadStatus status) {
+            if (status.isParked()) {
+                return "parking to wait for";
+            }
+            if (status.isWaiting()) {
+                return "waiting on";
+            }
+            if (status.isBlocked()) {
+                return "waiting to lock";
+            }
+
+            throw new AssertionError(status + " thread can not declare a lock: " + name);
+        }
     }
 
     public static class Builder<
@@ -479,83 +724,46 @@ public class ProcessThread<
             return new ArrayList<Monitor>(acquiredMonitors);
         }
 
-        private List<ThreadLock> getMonitorsByDepth(int depth) {
-            List<ThreadLock> monitors = new ArrayList<ThreadLock>();
-
-            for (Monitor monitor : acquiredMonitors) {
-                if (monitor.getDepth() == depth) {
-                    monitors.add(monitor.getLock());
-                }
-            }
-
-            return monitors;
+        public @Nonnull
+        List<ThreadLock> getAcquiredSynchronizers() {
+            return new ArrayList<ThreadLock>(acquiredSynchronizers);
         }
 
-        @Override
-        public void toString(@Nonnull PrintStream stream, @Nonnull Mode mode) {
-            printHeader(stream, mode);
-            stream.format("%n   java.lang.Thread.State: %s", status.getTitle());
-
-            int depth = 0;
-            for (StackTraceElement traceLine : stackTrace.getElements()) {
-                printTraceElement(stream, traceLine);
-
-                if (depth == 0) {
-                    if (waitingToLock != null) {
-                        stream.println();
-                        stream.append("\t- ").append(waitingVerb()).append(' ');
-                        waitingToLock.toString(stream, mode);
-                    }
-                    if (waitingOnLock != null) {
-                        stream.println();
-                        stream.append("\t- ").append(waitingVerb()).append(' ');
-                        waitingOnLock.toString(stream, mode);
-                    }
-                }
+        public @Nonnull
+        String getName() {
+            return name;
+        }
 
-                for (ThreadLock monitor : getMonitorsByDepth(depth)) {
-                    stream.println();
-                    stream.append("\t- locked ");
-                    monitor.toString(stream, mode);
-                }
+        public boolean isDaemon() {
+            return daemon;
+        }
 
-                depth++;
-            }
+        public @CheckForNull
+        Integer getPriority() {
+            return priority;
+        }
 
-            if (!acquiredSynchronizers.isEmpty()) {
-                stream.format("%n%n   Locked ownable synchronizers:%n");
-                for (ThreadLock synchronizer : acquiredSynchronizers) {
-                    stream.append("\t- ");
-                    synchronizer.toString(stream, mode);
-                    stream.println();
-                }
-            }
+        public @CheckForNull
+        Long getId() {
+            return id;
         }
 
-        private String waitingVerb() {
-            if (status.isParked()) {
-                return "parking to wait for";
-            }
-            if (status.isWaiting()) {
-                return "waiting on";
-            }
-            if (status.isBlocked()) {
-                return "waiting to lock";
-            }
+        public @CheckForNull
+        Long getTid() {
+            return tid;
+        }
 
-            throw new AssertionError(status + " thread can not declare a lock: " + name);
+        public @CheckForNull
+        Long getNid() {
+            return nid;
         }
 
-        // Stolen from StackTraceElement#toString() in Java 8 to prevent the new fields from Java 9+ to be printed
-        // as they can not be parsed correctly at the moment. Note this affect JMX/JVM factory reparsing only - threaddump is fine
-        private void printTraceElement(PrintStream stream, StackTraceElement traceLine) {
-            String fileName = traceLine.getFileName();
-            int lineNumber = traceLine.getLineNumber();
-            String source = traceLine.isNativeMethod() ? "(Native Method)" :
-                    (fileName != null && lineNumber >= 0 ?
-                            "(" + fileName + ":" + lineNumber + ")" :
-                            (fileName != null ? "(" + fileName + ")" : "(Unknown Source)"));
-            stream.format("%n\tat %s.%s%s", traceLine.getClassName(), traceLine.getMethodName(), source);
+        @Override
+        public void toString(@Nonnull PrintStream stream, @Nonnull Mode mode) {
+            printHeader(stream, mode);
+            DumpWriter writer = new DumpWriter(stream, mode);
+            new Record(this).writeBody(writer);
+            writer.flush();
         }
 
         /**
@@ -567,25 +775,9 @@ public class ProcessThread<
          * @param mode   Output mode.
          */
         protected void printHeader(PrintStream stream, Mode mode) {
-            stream.append('"').append(name).append('"');
-            if (id != null) {
-                stream.append(" #").append(id.toString());
-            }
-            if (daemon) {
-                stream.append(" daemon");
-            }
-            if (priority != null) {
-                stream.append(" prio=").append(priority.toString());
-            }
-
-            if (tid != null) {
-                String format = !mode.isHuman() ? "0x%016x" : "0x%x";
-                stream.append(" tid=").format(format, tid);
-            }
-            if (nid != null) {
-                String format = mode.isHuman() ? "%d" : "0x%x";
-                stream.append(" nid=").format(format, nid);
-            }
+            DumpWriter writer = new DumpWriter(stream, mode);
+            new Record(this).writeHeader(writer);
+            writer.flush();
         }
     }
 
@@ -599,6 +791,13 @@ public class ProcessThread<
         boolean isValid(@Nonnull ProcessThread<?, ?, ?> thread);
     }
 
+    /**
+     * Stack content predicate answered from {@link FrameIndex} when filtering {@link ThreadSet}.
+     */
+    /*package*/ static abstract class FramePredicate implements Predicate {
+        /*package*/ abstract @Nonnull <T extends ProcessThread<?, ?, ?>> ThreadBitSet<T> select(@Nonnull FrameIndex<T> index);
+    }
+
     /**
      * Match thread by name.
      */
@@ -691,16 +890,67 @@ public class ProcessThread<
      */
     public static @Nonnull
     Predicate evaluating(final @Nonnull String pattern) {
-        return new Predicate() {
+        return evaluating(pattern, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Match thread its stacktrace contains frame that exactly matches pattern in its top frames.
+     *
+     * @param pattern Fully qualified method name like "com.github.olivergondza.dumpling.model.ProcessThread.evaluating".
+     * @param maxDepth Depth of the deepest frame to consider, 0 to match the innermost frame only.
+     */
+    public static @Nonnull
+    Predicate evaluating(final @Nonnull String pattern, final @Nonnegative int maxDepth) {
+        return new FramePredicate() {
             @Override
             public boolean isValid(@Nonnull ProcessThread<?, ?, ?> thread) {
+                int depth = 0;
                 for (StackTraceElement element : thread.getStackTrace().getElements()) {
-                    if ((element.getClassName() + "." + element.getMethodName()).equals(pattern)) {
+                    if (depth++ > maxDepth) break;
+
+                    String className = element.getClassName();
+                    String methodName = element.getMethodName();
+                    // Compare in place not to concatenate the names for every frame
+                    if (pattern.length() == className.length() + 1 + methodName.length()
+                            && pattern.startsWith(className)
+                            && pattern.charAt(className.length()) == '.'
+                            && pattern.endsWith(methodName)
+                    ) {
                         return true;
                     }
                 }
                 return false;
             }
+
+            @Override
+            /*package*/ @Nonnull <T extends ProcessThread<?, ?, ?>> ThreadBitSet<T> select(@Nonnull FrameIndex<T> index) {
+                return index.evaluating(pattern, maxDepth);
+            }
+        };
+    }
+
+    /**
+     * Match thread its stacktrace contains frame of class its name starts with prefix.
+     *
+     * @param prefix Class name prefix like "java.net.SocketInputStream" or "org.apache.http.".
+     */
+    public static @Nonnull
+    Predicate evaluatingClass(final @Nonnull String prefix) {
+        return new FramePredicate() {
+            @Override
+            public boolean isValid(@Nonnull ProcessThread<?, ?, ?> thread) {
+                for (StackTraceElement element : thread.getStackTrace().getElements()) {
+                    if (element.getClassName().startsWith(prefix)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            /*package*/ @Nonnull <T extends ProcessThread<?, ?, ?>> ThreadBitSet<T> select(@Nonnull FrameIndex<T> index) {
+                return index.evaluatingClass(prefix);
+            }
         };
     }
 }
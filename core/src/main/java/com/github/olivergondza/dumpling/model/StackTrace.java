@@ -72,18 +72,93 @@ public class StackTrace extends ModelObject {
         return new StackTraceElement(declaringClass, methodName, fileName, -2);
     }
 
-    private @Nonnull StackTraceElement[] elements;
+    /**
+     * Create stack trace its elements are resolved on first access.
+     *
+     * Size and the innermost frame are known upfront so they can be queried without resolving the rest of the trace.
+     *
+     * @param size Number of elements resolver produces.
+     * @param head Innermost element, null for empty trace.
+     * @see StackTrie#lazy(int, StackTraceElement, Resolver)
+     */
+    public static @Nonnull StackTrace lazy(
+            @Nonnegative int size, @CheckForNull StackTraceElement head, @Nonnull Resolver resolver
+    ) {
+        return lazy(size, head, resolver, null);
+    }
+
+    /*package*/ static @Nonnull StackTrace lazy(
+            @Nonnegative int size, @CheckForNull StackTraceElement head, @Nonnull Resolver resolver, @CheckForNull StackTrie trie
+    ) {
+        if (size < 0) throw new IllegalArgumentException("Negative size: " + size);
+        if ((size == 0) != (head == null)) throw new IllegalArgumentException("Head must be provided for nonempty trace");
+
+        return new StackTrace(size, head, resolver, trie);
+    }
+
+    // Either StackTraceElement[] or StackTrie.Node of the innermost frame, null until resolved
+    private volatile Object frames;
+    // Guarded by this, null once resolved
+    private @CheckForNull Resolver resolver;
+    // Trie to store resolved elements in, if any
+    private final @CheckForNull StackTrie trie;
+    private final int size;
+    private final @CheckForNull StackTraceElement head;
+    // 0 until computed
+    private volatile long fingerprint;
 
     public StackTrace(@Nonnull StackTraceElement... elements) {
-        this.elements = elements.clone(); // Shallow copy is ok here as StackTraceElement is immutable
+        this.frames = elements.clone(); // Shallow copy is ok here as StackTraceElement is immutable
+        this.resolver = null;
+        this.trie = null;
+        this.size = elements.length;
+        this.head = size == 0 ? null : elements[0];
     }
 
     public StackTrace(@Nonnull List<StackTraceElement> elements) {
-        this.elements = elements.toArray(new StackTraceElement[elements.size()]);
+        this(elements.toArray(new StackTraceElement[elements.size()]));
+    }
+
+    /*package*/ StackTrace(@Nonnull StackTrie.Node node) {
+        this.frames = node;
+        this.resolver = null;
+        this.trie = null;
+        this.size = node.size();
+        this.head = node.element(0);
+    }
+
+    private StackTrace(
+            int size, @CheckForNull StackTraceElement head, @Nonnull Resolver resolver, @CheckForNull StackTrie trie
+    ) {
+        this.frames = null;
+        this.resolver = resolver;
+        this.trie = trie;
+        this.size = size;
+        this.head = head;
+    }
+
+    private @Nonnull Object frames() {
+        Object frames = this.frames;
+        if (frames != null) return frames;
+
+        synchronized (this) {
+            if (this.frames == null) {
+                assert resolver != null;
+                StackTraceElement[] resolved = resolver.resolve();
+                if (resolved.length != size) throw new IllegalStateException(
+                        "Expected " + size + " elements, " + resolved.length + " resolved"
+                );
+
+                StackTrie.Node node = trie == null ? null : trie.node(resolved);
+                this.frames = node == null ? resolved : node;
+                resolver = null;
+            }
+            return this.frames;
+        }
     }
 
     public int size() {
-        return elements.length;
+        return size;
     }
 
     /**
@@ -94,9 +169,13 @@ public class StackTrace extends ModelObject {
     public @CheckForNull StackTraceElement getElement(@Nonnegative int depth) {
         if (depth < 0) throw new ArrayIndexOutOfBoundsException(depth);
 
-        return elements.length > depth
-                ? elements[depth]
-                : null
+        if (depth >= size) return null;
+        if (depth == 0) return head;
+
+        Object frames = frames();
+        return frames instanceof StackTrie.Node
+                ? ((StackTrie.Node) frames).element(depth)
+                : ((StackTraceElement[]) frames)[depth]
         ;
     }
 
@@ -115,12 +194,42 @@ public class StackTrace extends ModelObject {
      * Get all the stack trace elements.
      */
     public @Nonnull List<StackTraceElement> getElements() {
-        return Arrays.asList(elements);
+        Object frames = frames();
+        return frames instanceof StackTrie.Node
+                ? ((StackTrie.Node) frames).elements()
+                : Arrays.asList((StackTraceElement[]) frames)
+        ;
+    }
+
+    /**
+     * Content hash of the stack trace.
+     *
+     * Computed from class, method, file name and line number of the elements once the trace is resolved so it is
+     * stable across processes and can be stored. Traces with different fingerprints are never equal, equal ones are
+     * almost certainly equal.
+     */
+    public long getFingerprint() {
+        long fingerprint = this.fingerprint;
+        if (fingerprint != 0) return fingerprint;
+
+        Object frames = frames();
+        long chain;
+        if (frames instanceof StackTrie.Node) {
+            chain = ((StackTrie.Node) frames).chain();
+        } else {
+            StackTraceElement[] elements = (StackTraceElement[]) frames;
+            chain = Fingerprints.SEED;
+            for (int i = elements.length - 1; i >= 0; i--) {
+                chain = Fingerprints.add(chain, elements[i]);
+            }
+        }
+
+        return this.fingerprint = Fingerprints.finish(Fingerprints.add(chain, size));
     }
 
     @Override
     public void toString(PrintStream stream, Mode mode) {
-        for (StackTraceElement e: elements) {
+        for (StackTraceElement e: getElements()) {
             stream.println();
             stream.append("\tat ").append(e.toString());
         }
@@ -130,7 +239,7 @@ public class StackTrace extends ModelObject {
 
     @Override
     public int hashCode() {
-        return 31 * Arrays.hashCode(elements);
+        return Long.hashCode(getFingerprint());
     }
 
     @Override
@@ -140,7 +249,26 @@ public class StackTrace extends ModelObject {
         if (getClass() != rhs.getClass()) return false;
 
         StackTrace other = (StackTrace) rhs;
-        if (!Arrays.equals(elements, other.elements)) return false;
-        return true;
+        if (size != other.size) return false;
+
+        Object frames = frames();
+        Object otherFrames = other.frames();
+        // Identical traces of the same trie share the node
+        if (frames == otherFrames) return true;
+        if (frames instanceof StackTrie.Node && otherFrames instanceof StackTrie.Node) {
+            if (((StackTrie.Node) frames).elementsHash() != ((StackTrie.Node) otherFrames).elementsHash()) return false;
+        }
+        if (getFingerprint() != other.getFingerprint()) return false;
+
+        return getElements().equals(other.getElements());
+    }
+
+    /**
+     * Produce elements of lazily resolved {@link StackTrace}.
+     *
+     * Invoked at most once, possibly from a different thread than the one that created the trace.
+     */
+    public interface Resolver {
+        @Nonnull StackTraceElement[] resolve();
     }
 }
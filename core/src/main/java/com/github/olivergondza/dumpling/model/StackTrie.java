@@ -0,0 +1,250 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Trie of stack frames shared by {@link StackTrace}s.
+ *
+ * Traces are stored as paths starting with the outermost frame so threads running the same code share the nodes of
+ * their common outer frames, like <tt>Thread.run</tt> and <tt>ThreadPoolExecutor.runWorker</tt> of pool threads. Trace
+ * is represented by a pointer to the node of its innermost frame. Identical traces created by the same trie point to the
+ * same node so they are compared by identity.
+ *
+ * The trie is safe to be used concurrently. Nodes are never removed so it is meant to be scoped to a runtime or a series
+ * of runtimes.
+ *
+ * @author ogondza
+ */
+public final class StackTrie {
+
+    private final @Nonnull ConcurrentMap<Node, Node> nodes = new ConcurrentHashMap<Node, Node>();
+
+    /**
+     * Create trace sharing frames with the other traces of the trie.
+     *
+     * @param elements Elements starting with the innermost frame.
+     */
+    public @Nonnull StackTrace trace(@Nonnull StackTraceElement... elements) {
+        Node node = node(elements);
+        return node == null ? new StackTrace() : new StackTrace(node);
+    }
+
+    /**
+     * Create trace sharing frames with the other traces of the trie.
+     *
+     * @param elements Elements starting with the innermost frame.
+     */
+    public @Nonnull StackTrace trace(@Nonnull List<StackTraceElement> elements) {
+        return trace(elements.toArray(new StackTraceElement[elements.size()]));
+    }
+
+    /**
+     * Create trace its elements are resolved on first access and stored in the trie.
+     *
+     * @see StackTrace#lazy(int, StackTraceElement, StackTrace.Resolver)
+     */
+    public @Nonnull StackTrace lazy(
+            @Nonnegative int size, @CheckForNull StackTraceElement head, @Nonnull StackTrace.Resolver resolver
+    ) {
+        return StackTrace.lazy(size, head, resolver, this);
+    }
+
+    /**
+     * Number of distinct frames stored, counting the frames shared by several traces once.
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Get node of the innermost frame, null for empty trace.
+     */
+    /*package*/ @CheckForNull Node node(@Nonnull StackTraceElement[] elements) {
+        Node node = null;
+        for (int i = elements.length - 1; i >= 0; i--) {
+            Node candidate = new Node(node, elements[i]);
+            Node existing = nodes.putIfAbsent(candidate, candidate);
+            node = existing == null ? candidate : existing;
+        }
+        return node;
+    }
+
+    /**
+     * Frame of a trace linked to the frame it was called from.
+     *
+     * Nodes are equal when they have the same element and the same parent instance.
+     */
+    /*package*/ static final class Node {
+        private final @CheckForNull Node parent;
+        private final @Nonnull StackTraceElement element;
+        // Number of frames from the outermost one
+        private final int size;
+        // Arrays.hashCode() of elements starting with this one and 31^size, maintained so it can be extended in O(1)
+        private final int hash;
+        private final int power;
+        // Fingerprints.add() of elements starting with the outermost one, 0 until computed
+        private volatile long chain;
+        // Elements starting with this one, materialized on first indexed access
+        private volatile StackTraceElement[] array;
+
+        private Node(@CheckForNull Node parent, @Nonnull StackTraceElement element) {
+            this.parent = parent;
+            this.element = element;
+            int parentHash = parent == null ? 1 : parent.hash;
+            int parentPower = parent == null ? 1 : parent.power;
+            this.size = parent == null ? 1 : parent.size + 1;
+            this.hash = parentHash + parentPower * (30 + element.hashCode());
+            this.power = parentPower * 31;
+        }
+
+        /*package*/ int size() {
+            return size;
+        }
+
+        /**
+         * Same as {@link java.util.Arrays#hashCode(Object[])} of the elements.
+         */
+        /*package*/ int elementsHash() {
+            return hash;
+        }
+
+        /**
+         * Content hash of the elements starting with the outermost one, extended from the parent.
+         */
+        /*package*/ long chain() {
+            long chain = this.chain;
+            if (chain != 0) return chain;
+
+            // Traces can be deep, collect the nodes not computed yet instead of recursing
+            List<Node> pending = new ArrayList<Node>();
+            Node node = this;
+            while (node != null && node.chain == 0) {
+                pending.add(node);
+                node = node.parent;
+            }
+
+            chain = node == null ? Fingerprints.SEED : node.chain;
+            for (int i = pending.size() - 1; i >= 0; i--) {
+                Node n = pending.get(i);
+                chain = Fingerprints.add(chain, n.element);
+                n.chain = chain;
+            }
+            return chain;
+        }
+
+        /*package*/ @Nonnull StackTraceElement element(@Nonnegative int depth) {
+            return depth == 0 ? element : array()[depth];
+        }
+
+        // Racing threads might materialize the array twice, the outcome is the same
+        private @Nonnull StackTraceElement[] array() {
+            StackTraceElement[] array = this.array;
+            if (array != null) return array;
+
+            array = new StackTraceElement[size];
+            Node node = this;
+            for (int i = 0; i < array.length; i++) {
+                array[i] = node.element;
+                node = node.parent;
+            }
+            return this.array = array;
+        }
+
+        /**
+         * Elements starting with this one.
+         *
+         * Iteration follows the parent links, indexed access materializes the elements of the node once.
+         */
+        /*package*/ @Nonnull List<StackTraceElement> elements() {
+            return new Elements();
+        }
+
+        private final class Elements extends AbstractList<StackTraceElement> implements RandomAccess {
+            @Override
+            public StackTraceElement get(int index) {
+                if (index < 0 || index >= size) throw new IndexOutOfBoundsException(
+                        "Index: " + index + ", Size: " + size
+                );
+                return element(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Iterator<StackTraceElement> iterator() {
+                return new Iterator<StackTraceElement>() {
+                    private @CheckForNull Node next = Node.this;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next != null;
+                    }
+
+                    @Override
+                    public StackTraceElement next() {
+                        Node node = next;
+                        if (node == null) throw new NoSuchElementException();
+                        next = node.parent;
+                        return node.element;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Node)) return false;
+
+            Node other = (Node) o;
+            return parent == other.parent && element.equals(other.element);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.model;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Collector;
+import java.util.stream.StreamSupport;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Immutable set of threads of a runtime represented as a bitmap over thread indices.
+ *
+ * Bit <tt>i</tt> is set when the <tt>i</tt>-th thread of the runtime is a member so set algebra is done one word (64
+ * threads) at a time. Members are iterated in the order of the runtime.
+ *
+ * @author ogondza
+ */
+/*package*/ final class ThreadBitSet<ThreadType extends ProcessThread<?, ?, ?>> extends AbstractSet<ThreadType> {
+
+    // All threads of the runtime, indexed by ProcessThread#getIndex()
+    private final @Nonnull List<ThreadType> universe;
+    private final @Nonnull long[] words;
+    private final int size;
+
+    private ThreadBitSet(@Nonnull List<ThreadType> universe, @Nonnull long[] words) {
+        this.universe = universe;
+        this.words = words;
+
+        int size = 0;
+        for (long word: words) {
+            size += Long.bitCount(word);
+        }
+        this.size = size;
+    }
+
+    /*package*/ static @Nonnull <ThreadType extends ProcessThread<?, ?, ?>> ThreadBitSet<ThreadType> all(
+            @Nonnull List<ThreadType> universe
+    ) {
+        long[] words = new long[wordCount(universe)];
+        Arrays.fill(words, -1L);
+        int tail = universe.size() % 64;
+        if (tail != 0) {
+            words[words.length - 1] = (1L << tail) - 1;
+        }
+        return new ThreadBitSet<ThreadType>(universe, words);
+    }
+
+    /*package*/ static @Nonnull <ThreadType extends ProcessThread<?, ?, ?>> ThreadBitSet<ThreadType> none(
+            @Nonnull List<ThreadType> universe
+    ) {
+        return new ThreadBitSet<ThreadType>(universe, new long[wordCount(universe)]);
+    }
+
+    /**
+     * @throws IllegalArgumentException When some of the threads is not part of the universe.
+     */
+    /*package*/ static @Nonnull <ThreadType extends ProcessThread<?, ?, ?>> ThreadBitSet<ThreadType> of(
+            @Nonnull List<ThreadType> universe, @Nonnull Collection<?> threads
+    ) {
+        if (threads instanceof ThreadBitSet && ((ThreadBitSet<?>) threads).universe == universe) {
+            @SuppressWarnings("unchecked")
+            ThreadBitSet<ThreadType> same = (ThreadBitSet<ThreadType>) threads;
+            return same;
+        }
+
+        long[] words = new long[wordCount(universe)];
+        for (Object thread: threads) {
+            int index = indexOf(universe, thread);
+            if (index < 0) throw new IllegalArgumentException(
+                    "Thread is not part of the runtime: " + thread
+            );
+            words[index >>> 6] |= 1L << index;
+        }
+        return new ThreadBitSet<ThreadType>(universe, words);
+    }
+
+    /**
+     * @param words Bitmap of {@link #wordCount(List)} words, taken over by the set.
+     */
+    /*package*/ static @Nonnull <ThreadType extends ProcessThread<?, ?, ?>> ThreadBitSet<ThreadType> of(
+            @Nonnull List<ThreadType> universe, @Nonnull long[] words
+    ) {
+        assert words.length == wordCount(universe);
+        return new ThreadBitSet<ThreadType>(universe, words);
+    }
+
+    /*package*/ static int wordCount(@Nonnull List<?> universe) {
+        return (universe.size() + 63) >>> 6;
+    }
+
+    private static int indexOf(@Nonnull List<?> universe, Object thread) {
+        if (!(thread instanceof ProcessThread)) return -1;
+
+        int index = ((ProcessThread<?, ?, ?>) thread).getIndex();
+        if (index < 0 || index >= universe.size() || universe.get(index) != thread) return -1;
+
+        return index;
+    }
+
+    /*package*/ @Nonnull ThreadBitSet<ThreadType> union(@Nonnull ThreadBitSet<?> other) {
+        checkUniverse(other);
+        long[] words = this.words.clone();
+        for (int i = 0; i < words.length; i++) {
+            words[i] |= other.words[i];
+        }
+        return new ThreadBitSet<ThreadType>(universe, words);
+    }
+
+    /*package*/ @Nonnull ThreadBitSet<ThreadType> intersection(@Nonnull ThreadBitSet<?> other) {
+        checkUniverse(other);
+        long[] words = this.words.clone();
+        for (int i = 0; i < words.length; i++) {
+            words[i] &= other.words[i];
+        }
+        return new ThreadBitSet<ThreadType>(universe, words);
+    }
+
+    /*package*/ @Nonnull ThreadBitSet<ThreadType> difference(@Nonnull Collection<?> other) {
+        long[] words = this.words.clone();
+        if (other instanceof ThreadBitSet && ((ThreadBitSet<?>) other).universe == universe) {
+            long[] otherWords = ((ThreadBitSet<?>) other).words;
+            for (int i = 0; i < words.length; i++) {
+                words[i] &= ~otherWords[i];
+            }
+        } else {
+            for (Object thread: other) {
+                int index = indexOf(universe, thread);
+                if (index >= 0) {
+                    words[index >>> 6] &= ~(1L << index);
+                }
+            }
+        }
+        return new ThreadBitSet<ThreadType>(universe, words);
+    }
+
+    /*package*/ @Nonnull ThreadBitSet<ThreadType> where(@Nonnull ProcessThread.Predicate pred) {
+        long[] words = new long[this.words.length];
+        for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+            if (pred.isValid(universe.get(i))) {
+                words[i >>> 6] |= 1L << i;
+            }
+        }
+        return new ThreadBitSet<ThreadType>(universe, words);
+    }
+
+    /**
+     * Evaluate the predicate on all available cores.
+     *
+     * @see #where(ProcessThread.Predicate)
+     */
+    /*package*/ @Nonnull ThreadBitSet<ThreadType> parallelWhere(@Nonnull ProcessThread.Predicate pred) {
+        return StreamSupport.stream(spliterator(), true).filter(pred::isValid).collect(collector(universe));
+    }
+
+    /**
+     * Collect threads of the universe into a set.
+     *
+     * Threads are merged into per-thread bitmaps so the collector is usable in parallel streams and the encounter order
+     * is irrelevant as the set iterates in the order of the runtime anyway.
+     *
+     * @throws IllegalArgumentException When some of the threads is not part of the universe.
+     */
+    /*package*/ static @Nonnull <ThreadType extends ProcessThread<?, ?, ?>> Collector<ThreadType, long[], ThreadBitSet<ThreadType>> collector(
+            final @Nonnull List<ThreadType> universe
+    ) {
+        return Collector.of(
+                () -> new long[wordCount(universe)],
+                (words, thread) -> {
+                    int index = indexOf(universe, thread);
+                    if (index < 0) throw new IllegalArgumentException(
+                            "Thread is not part of the runtime: " + thread
+                    );
+                    words[index >>> 6] |= 1L << index;
+                },
+                (lhs, rhs) -> {
+                    for (int i = 0; i < lhs.length; i++) {
+                        lhs[i] |= rhs[i];
+                    }
+                    return lhs;
+                },
+                words -> new ThreadBitSet<ThreadType>(universe, words),
+                Collector.Characteristics.UNORDERED
+        );
+    }
+
+    private void checkUniverse(@Nonnull ThreadBitSet<?> other) {
+        if (other.universe != universe) throw new IllegalArgumentException(
+                "Thread sets of different runtimes"
+        );
+    }
+
+    private int nextSetBit(int from) {
+        int i = from >>> 6;
+        if (i >= words.length) return -1;
+
+        long word = words[i] & (-1L << from);
+        while (true) {
+            if (word != 0) return (i << 6) + Long.numberOfTrailingZeros(word);
+            if (++i == words.length) return -1;
+            word = words[i];
+        }
+    }
+
+    /*package*/ @Nonnull ThreadType first() {
+        int index = nextSetBit(0);
+        if (index < 0) throw new NoSuchElementException();
+        return universe.get(index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        int index = indexOf(universe, o);
+        return index >= 0 && (words[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /*package*/ boolean containsIndex(int index) {
+        return (words[index >>> 6] & (1L << index)) != 0;
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        if (c instanceof ThreadBitSet && ((ThreadBitSet<?>) c).universe == universe) {
+            long[] otherWords = ((ThreadBitSet<?>) c).words;
+            for (int i = 0; i < words.length; i++) {
+                if ((otherWords[i] & ~words[i]) != 0) return false;
+            }
+            return true;
+        }
+
+        return super.containsAll(c);
+    }
+
+    @Override
+    public @Nonnull Iterator<ThreadType> iterator() {
+        return new Iterator<ThreadType>() {
+            private int next = nextSetBit(0);
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public ThreadType next() {
+                if (next < 0) throw new NoSuchElementException();
+
+                ThreadType thread = universe.get(next);
+                next = nextSetBit(next + 1);
+                return thread;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public @Nonnull Spliterator<ThreadType> spliterator() {
+        return new Splitter(0, universe.size(), size);
+    }
+
+    /**
+     * Spliterator over members of index range, split in halves by the number of members.
+     */
+    private final class Splitter implements Spliterator<ThreadType> {
+        private int origin;
+        private final int fence;
+        // Number of members in [origin, fence)
+        private int size;
+
+        private Splitter(int origin, int fence, int size) {
+            this.origin = origin;
+            this.fence = fence;
+            this.size = size;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super ThreadType> action) {
+            if (size == 0) return false;
+
+            int index = nextSetBit(origin);
+            origin = index + 1;
+            size--;
+            action.accept(universe.get(index));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super ThreadType> action) {
+            for (; size > 0; size--) {
+                int index = nextSetBit(origin);
+                origin = index + 1;
+                action.accept(universe.get(index));
+            }
+        }
+
+        @Override
+        public Spliterator<ThreadType> trySplit() {
+            int half = size >>> 1;
+            if (half == 0) return null;
+
+            // Find the word with the first member of the suffix
+            int i = origin >>> 6;
+            long word = words[i] & (-1L << origin);
+            int count = Long.bitCount(word);
+            while (count < half) {
+                word = words[++i];
+                count += Long.bitCount(word);
+            }
+
+            // Drop the members of the prefix from the word, the lowest bit left (if any) is the first of the suffix
+            for (int drop = half - (count - Long.bitCount(word)); drop > 0; drop--) {
+                word &= word - 1;
+            }
+            int mid = word == 0 ? (i + 1) << 6 : (i << 6) + Long.numberOfTrailingZeros(word);
+
+            Splitter prefix = new Splitter(origin, mid, half);
+            origin = mid;
+            size -= half;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return size;
+        }
+
+        @Override
+        public int characteristics() {
+            return SIZED | SUBSIZED | DISTINCT | IMMUTABLE | ORDERED | NONNULL;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof ThreadBitSet && ((ThreadBitSet<?>) o).universe == universe) {
+            return Arrays.equals(words, ((ThreadBitSet<?>) o).words);
+        }
+
+        return super.equals(o);
+    }
+
+    // Set#hashCode() contract demands summing the member hashes so this is cheaper alternative for the same universe
+    /*package*/ int wordsHashCode() {
+        return Arrays.hashCode(words);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Threads of a runtime hashed by one of their numeric identifiers.
+ *
+ * Open addressing over primitive keys so the lookup neither boxes nor scans the threads. Threads sharing the identifier
+ * are chained in the order of the runtime, threads without the identifier are not indexed at all.
+ *
+ * @author ogondza
+ */
+/*package*/ final class ThreadIdIndex<ThreadType extends ProcessThread<?, ?, ?>> {
+
+    /*package*/ enum Key {
+        ID, NID, TID
+    }
+
+    private static final int EMPTY = -1;
+
+    // All threads of the runtime, indexed by ProcessThread#getIndex()
+    private final @Nonnull List<ThreadType> threads;
+    private final @Nonnull long[] keys;
+    // Index of the first thread with the key, EMPTY for free slot
+    private final @Nonnull int[] heads;
+    // Index of the next thread with the same key as the one on given index, EMPTY for last
+    private final @Nonnull int[] next;
+    private final int mask;
+
+    /*package*/ ThreadIdIndex(@Nonnull List<ThreadType> threads, @Nonnull Key key) {
+        this.threads = threads;
+
+        int capacity = Integer.highestOneBit(Math.max(threads.size(), 1) * 2 - 1) << 1;
+        this.keys = new long[capacity];
+        this.heads = new int[capacity];
+        this.next = new int[threads.size()];
+        this.mask = capacity - 1;
+        Arrays.fill(heads, EMPTY);
+        Arrays.fill(next, EMPTY);
+
+        int[] tails = new int[capacity];
+        for (int i = 0; i < threads.size(); i++) {
+            ProcessThread<?, ?, ?> thread = threads.get(i);
+            if (!thread.hasIdentifier(key)) continue;
+
+            long id = thread.getIdentifier(key);
+
+            int slot = slot(id);
+            if (heads[slot] == EMPTY) {
+                keys[slot] = id;
+                heads[slot] = i;
+            } else {
+                next[tails[slot]] = i;
+            }
+            tails[slot] = i;
+        }
+    }
+
+    // Slot holding the key or the free one it belongs to
+    private int slot(long id) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (heads[slot] != EMPTY && keys[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * First thread with the identifier in the order of the runtime.
+     *
+     * @param within Consider only threads of this set, all threads when <tt>null</tt>.
+     */
+    /*package*/ @CheckForNull ThreadType get(long id, @CheckForNull ThreadBitSet<?> within) {
+        for (int i = heads[slot(id)]; i != EMPTY; i = next[i]) {
+            if (within == null || within.containsIndex(i)) return threads.get(i);
+        }
+        return null;
+    }
+}
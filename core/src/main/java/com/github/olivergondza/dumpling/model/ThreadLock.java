@@ -74,9 +74,9 @@ public class ThreadLock extends ModelObject {
 
     @Override
     public void toString(PrintStream stream, Mode mode) {
-        String format = mode.isHuman() ? "<0x%x> (a %s)" : "<0x%016x> (a %s)";
-        stream.format(format, id, className);
-
+        DumpWriter writer = new DumpWriter(stream, mode);
+        writer.lock(this);
+        writer.flush();
     }
 
     /**
@@ -27,13 +27,15 @@ import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
 import com.github.olivergondza.dumpling.query.SingleThreadSetQuery;
@@ -41,7 +43,8 @@ import com.github.olivergondza.dumpling.query.SingleThreadSetQuery;
 /**
  * Collection of threads in certain {@link ProcessRuntime}.
  *
- * Potentially empty subset of all the threads.
+ * Potentially empty subset of all the threads. Threads are iterated in the order of the runtime no matter the order
+ * of the collection the set was created from, and only threads of the runtime can be members.
  *
  * @author ogondza
  * @see ProcessRuntime#getThreads()
@@ -54,10 +57,15 @@ public class ThreadSet<
 
     protected final @Nonnull RuntimeType runtime;
     protected final @Nonnull Set<ThreadType> threads;
+    private final @Nonnull ThreadBitSet<ThreadType> bits;
 
+    /**
+     * @throws IllegalArgumentException When some of the threads does not belong to the runtime.
+     */
     protected ThreadSet(@Nonnull RuntimeType runtime, @Nonnull Set<ThreadType> threads) {
         this.runtime = runtime;
-        this.threads = Collections.unmodifiableSet(threads);
+        this.bits = runtime.bitSet(threads);
+        this.threads = bits;
     }
 
     /**
@@ -77,57 +85,83 @@ public class ThreadSet<
                 "Exactly one thread expected in the set. Found " + size()
         );
 
-        return threads.iterator().next();
+        return bits.first();
     }
 
     /**
-     * Get threads blocked by any of current threads.
+     * Find thread by Java thread id.
+     *
+     * @return First such thread in the set or <tt>null</tt> when there is none.
+     * @see ProcessRuntime#getThreadById(long)
      */
-    public @Nonnull SetType getBlockedThreads() {
-        Set<ThreadLock> acquired = new HashSet<ThreadLock>();
-        for (ThreadType thread: threads) {
-            acquired.addAll(thread.getAcquiredLocks());
-        }
+    public @CheckForNull ThreadType getThreadById(long id) {
+        return runtime.getIdIndex(ThreadIdIndex.Key.ID).get(id, bits);
+    }
 
-        Set<ThreadType> blocked = new HashSet<ThreadType>();
-        for (ThreadType thread: runtime.getThreads()) {
-            if (acquired.contains(thread.getWaitingToLock())) {
-                blocked.add(thread);
-            }
-        }
+    /**
+     * Find thread by native thread id.
+     *
+     * @return First such thread in the set or <tt>null</tt> when there is none.
+     * @see ProcessRuntime#getThreadByNid(long)
+     */
+    public @CheckForNull ThreadType getThreadByNid(long nid) {
+        return runtime.getIdIndex(ThreadIdIndex.Key.NID).get(nid, bits);
+    }
 
-        return runtime.getThreadSet(blocked);
+    /**
+     * Find thread by thread id.
+     *
+     * @return First such thread in the set or <tt>null</tt> when there is none.
+     * @see ProcessRuntime#getThreadByTid(long)
+     */
+    public @CheckForNull ThreadType getThreadByTid(long tid) {
+        return runtime.getIdIndex(ThreadIdIndex.Key.TID).get(tid, bits);
+    }
+
+    /**
+     * Get threads blocked by any of current threads.
+     */
+    public @Nonnull SetType getBlockedThreads() {
+        return runtime.getThreadSet(runtime.getLockIndex().getBlockedThreads(threads));
     }
 
     /**
      * Get threads blocking any of current threads.
      */
     public @Nonnull SetType getBlockingThreads() {
-        Set<ThreadLock> waitingTo = new HashSet<ThreadLock>();
-        for (ThreadType thread: threads) {
-            if (thread.getWaitingToLock() != null) {
-                waitingTo.add(thread.getWaitingToLock());
-            }
-        }
-
-        Set<ThreadType> blocking = new HashSet<ThreadType>();
-        for (ThreadType thread: runtime.getThreads()) {
-            Set<ThreadLock> threadHolding = thread.getAcquiredLocks();
-            threadHolding.retainAll(waitingTo);
-            if (!threadHolding.isEmpty()) {
-                blocking.add(thread);
-            }
-        }
-
-        return runtime.getThreadSet(blocking);
+        return runtime.getThreadSet(runtime.getLockIndex().getBlockingThreads(threads));
     }
 
     public @Nonnull SetType ignoring(@Nonnull SetType ignoredThreads) {
         if (threads.isEmpty() || ignoredThreads.isEmpty()) return (SetType) this;
 
-        HashSet<ThreadType> newThreads = new HashSet<ThreadType>(threads);
-        newThreads.removeAll(ignoredThreads.threads);
-        return derive(newThreads);
+        return runtime.createSet(bits.difference(((ThreadSet<?, ?, ?>) ignoredThreads).bits));
+    }
+
+    /**
+     * Get threads present in this set or the other one.
+     *
+     * @param other Set of the same runtime.
+     * @throws IllegalArgumentException When the sets belong to different runtimes.
+     */
+    public @Nonnull SetType union(@Nonnull SetType other) {
+        if (other.isEmpty()) return runtime.createSet(bits);
+        if (threads.isEmpty()) return other;
+
+        return runtime.createSet(bits.union(((ThreadSet<?, ?, ?>) other).bits));
+    }
+
+    /**
+     * Get threads present in both this set and the other one.
+     *
+     * @param other Set of the same runtime.
+     * @throws IllegalArgumentException When the sets belong to different runtimes.
+     */
+    public @Nonnull SetType intersection(@Nonnull SetType other) {
+        if (threads.isEmpty()) return runtime.createSet(bits);
+        if (other.isEmpty()) return other;
+
+        return runtime.createSet(bits.intersection(((ThreadSet<?, ?, ?>) other).bits));
     }
 
     /**
@@ -137,12 +171,26 @@ public class ThreadSet<
      * @return {@link ThreadSet} scoped to current runtime containing subset of threads that match the predicate.
      */
     public @Nonnull SetType where(ProcessThread.Predicate pred) {
-        HashSet<ThreadType> subset = new HashSet<ThreadType>(size() / 2);
-        for (ThreadType thread: threads) {
-            if (pred.isValid(thread)) subset.add(thread);
+        if (pred instanceof ProcessThread.FramePredicate) {
+            ThreadBitSet<ThreadType> matching = ((ProcessThread.FramePredicate) pred).select(runtime.getFrameIndex());
+            return runtime.createSet(bits.intersection(matching));
         }
 
-        return runtime.getThreadSet(subset);
+        return runtime.createSet(bits.where(pred));
+    }
+
+    /**
+     * Get subset of current threads evaluating the predicate on all available cores.
+     *
+     * Worth it for expensive predicates like regular expression or stack trace matching on large sets. The predicate
+     * must be thread-safe.
+     *
+     * @see #where(ProcessThread.Predicate)
+     */
+    public @Nonnull SetType parallelWhere(ProcessThread.Predicate pred) {
+        if (pred instanceof ProcessThread.FramePredicate) return where(pred);
+
+        return runtime.createSet(bits.parallelWhere(pred));
     }
 
     /**
@@ -154,10 +202,11 @@ public class ThreadSet<
 
     @Override
     public void toString(@Nonnull PrintStream stream, @Nonnull Mode mode) {
+        DumpWriter writer = new DumpWriter(stream, mode);
         for (ThreadType thread : threads) {
-            thread.toString(stream, mode);
-            stream.format("%n%n");
+            writer.thread(thread).newLine().newLine();
         }
+        writer.flush();
     }
 
     @Override
@@ -170,44 +219,83 @@ public class ThreadSet<
 
         ThreadSet<?, ?, ?> other = (ThreadSet<?, ?, ?>) rhs;
 
-        return runtime.equals(other.runtime) && threads.equals(other.threads);
+        return runtime.equals(other.runtime) && bits.equals(other.bits);
     }
 
     @Override
     public int hashCode() {
-        return runtime.hashCode() + threads.hashCode() * 31;
+        return runtime.hashCode() + bits.wordsHashCode() * 31;
     }
 
     public int size() {
-        return threads.size();
+        return bits.size();
     }
 
     public boolean isEmpty() {
-        return threads.isEmpty();
+        return bits.isEmpty();
     }
 
     public boolean contains(Object o) {
-        return threads.contains(o);
+        return bits.contains(o);
     }
 
     public boolean containsAll(Collection<?> c) {
-        return threads.containsAll(c);
+        return bits.containsAll(c);
     }
 
+    /**
+     * Iterate threads in the order of the runtime.
+     */
     @Override
     public Iterator<ThreadType> iterator() {
-        return threads.iterator();
+        return bits.iterator();
+    }
+
+    /**
+     * Split threads in the order of the runtime.
+     *
+     * The spliterator is {@link Spliterator#SIZED}, {@link Spliterator#SUBSIZED}, {@link Spliterator#DISTINCT},
+     * {@link Spliterator#IMMUTABLE}, {@link Spliterator#ORDERED} and {@link Spliterator#NONNULL} and splits in halves.
+     */
+    @Override
+    public Spliterator<ThreadType> spliterator() {
+        return bits.spliterator();
+    }
+
+    /**
+     * Stream threads in the order of the runtime.
+     *
+     * @see ProcessRuntime#toThreadSet()
+     */
+    public @Nonnull Stream<ThreadType> stream() {
+        return StreamSupport.stream(bits.spliterator(), false);
+    }
+
+    /**
+     * Stream threads in parallel.
+     *
+     * @see ProcessRuntime#toThreadSet()
+     */
+    public @Nonnull Stream<ThreadType> parallelStream() {
+        return StreamSupport.stream(bits.spliterator(), true);
     }
 
     /**
      * Create derived set from this one.
      *
+     * The order of the collection is not preserved, the set iterates in the order of the runtime.
+     *
      * @return New thread collection bound to same runtime.
+     * @throws IllegalArgumentException When some of the threads does not belong to the runtime.
+     * @see ProcessRuntime#getThreadSet(Collection)
      */
     public @Nonnull SetType derive(@Nonnull Collection<ThreadType> threads) {
         return runtime.getThreadSet(threads);
     }
 
+    /**
+     * Unmodifiable view of the threads in the order of the runtime.
+     */
     public @Nonnull Set<ThreadType> getThreadsAsSet() {
         return threads;
     }
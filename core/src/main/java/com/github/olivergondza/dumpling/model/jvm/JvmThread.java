@@ -41,11 +41,14 @@ import com.github.olivergondza.dumpling.model.mxbean.MXBeanThread;
  */
 public final class JvmThread extends MXBeanThread<JvmThread, JvmThreadSet, JvmRuntime> {
 
-    final @Nonnull JvmThread.Builder state;
+    // Using weak reference not to keep the thread in memory once terminated
+    private final @Nonnull WeakReference<Thread> thread;
+    private final @CheckForNull String groupName;
 
     /*package*/ JvmThread(@Nonnull JvmRuntime runtime, @Nonnull JvmThread.Builder builder) {
         super(runtime, builder);
-        this.state = builder;
+        this.thread = builder.thread;
+        this.groupName = builder.groupName;
     }
 
     /**
@@ -54,7 +57,7 @@ public final class JvmThread extends MXBeanThread<JvmThread, JvmThreadSet, JvmRu
      * @return <tt>null</tt> in case the thread does not longer exist.
      */
     public @CheckForNull Thread getThread() {
-        return state.thread.get();
+        return thread.get();
     }
 
     /**
@@ -63,7 +66,19 @@ public final class JvmThread extends MXBeanThread<JvmThread, JvmThreadSet, JvmRu
      * @return Might be null in rare cases.
      */
     public @CheckForNull String getGroupName() {
-        return state.groupName;
+        return groupName;
+    }
+
+    @Override
+    public void printHeader(PrintStream stream, Mode mode) {
+        super.printHeader(stream, mode);
+        printGroupName(stream, groupName);
+    }
+
+    private static void printGroupName(@Nonnull PrintStream stream, @CheckForNull String groupName) {
+        if (groupName != null) {
+            stream.append(" groupName=\"").append(groupName).append('"');
+        }
     }
 
     public final static class Builder extends MXBeanThread.Builder<Builder> {
@@ -85,9 +100,7 @@ public final class JvmThread extends MXBeanThread<JvmThread, JvmThreadSet, JvmRu
 
         @Override protected void printHeader(PrintStream stream, Mode mode) {
             super.printHeader(stream, mode);
-            if (groupName != null) {
-                stream.append(" groupName=\"").append(groupName).append('"');
-            }
+            printGroupName(stream, groupName);
         }
     }
 }
@@ -26,7 +26,9 @@ package com.github.olivergondza.dumpling.model.mxbean;
 import java.io.PrintStream;
 import java.lang.management.ThreadMXBean;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
@@ -58,10 +60,18 @@ public abstract class MXBeanRuntime<
         this.jvmId = jvmId;
     }
 
+    /**
+     * Lines identifying the runtime, printed before the threads.
+     */
+    public @Nonnull List<String> getHeader() {
+        return Arrays.asList(FORMAT.format(captured), jvmId);
+    }
+
     @Override
     public void toString(PrintStream stream, Mode mode) {
-        stream.println(FORMAT.format(captured));
-        stream.println(jvmId);
+        for (String line: getHeader()) {
+            stream.println(line);
+        }
         stream.println();
         super.toString(stream, mode);
     }
@@ -24,10 +24,15 @@
 package com.github.olivergondza.dumpling.query;
 
 import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
@@ -89,24 +94,38 @@ public final class BlockingTree implements SingleThreadSetQuery<BlockingTree.Res
             deadlocks = DEADLOCKS.query(threads);
             deadlockedThreads = deadlocks.involvedThreads();
 
+            final SetType allThreads = threads.getProcessRuntime().getThreads();
+
+            // Invert the blocking relation in one pass: every thread is blocked by at most one other thread
+            final IdentityHashMap<ThreadType, List<ThreadType>> blocked = new IdentityHashMap<ThreadType, List<ThreadType>>();
+            for (ThreadType thread: allThreads) {
+                ThreadType blocking = thread.getBlockingThread();
+                if (blocking == null || deadlockedThreads.contains(thread)) continue;
+
+                List<ThreadType> waiters = blocked.get(blocking);
+                if (waiters == null) {
+                    waiters = new ArrayList<ThreadType>(2);
+                    blocked.put(blocking, waiters);
+                }
+                waiters.add(thread);
+            }
+
+            // Subtrees are immutable so the ones reachable from several roots are built once and shared
+            final IdentityHashMap<ThreadType, Tree<ThreadType>> subtrees = new IdentityHashMap<ThreadType, Tree<ThreadType>>();
             @Nonnull Set<Tree<ThreadType>> roots = new LinkedHashSet<Tree<ThreadType>>();
-            for (ThreadType thread: threads.getProcessRuntime().getThreads()) {
+            for (ThreadType thread: allThreads) {
                 // consider only unblocked threads or possibly deadlocked ones
                 if (thread.getWaitingToLock() != null && !deadlockedThreads.contains(thread)) continue;
-                // No thread can be blocked by this
-                if (thread.getAcquiredLocks().isEmpty()) continue;
                 // No blocked and not-deadlocked threads to report
-                if (thread.getBlockedThreads().ignoring(deadlockedThreads).isEmpty()) continue;
+                if (!blocked.containsKey(thread)) continue;
 
-                roots.add(new Tree<ThreadType>(thread, buildDown(thread)));
+                roots.add(buildDown(thread, blocked, subtrees));
             }
 
             this.trees = Collections.unmodifiableSet(filter(roots, threads));
 
             LinkedHashSet<ThreadType> involved = new LinkedHashSet<ThreadType>();
-            for (Tree<ThreadType> root: trees) {
-                flatten(root, involved);
-            }
+            flatten(trees, involved);
 
             for (SetType deadlock: deadlocks.getDeadlocks()) {
                 for (ThreadType deadlockedThread: deadlock) {
@@ -117,37 +136,131 @@ public final class BlockingTree implements SingleThreadSetQuery<BlockingTree.Res
             this.involved = threads.derive(involved);
         }
 
-        private @Nonnull Set<Tree<ThreadType>> buildDown(ThreadType thread) {
-            @Nonnull Set<Tree<ThreadType>> newTrees = new HashSet<Tree<ThreadType>>();
-            for(ThreadType t: thread.getBlockedThreads().ignoring(deadlockedThreads)) {
-                newTrees.add(new Tree<ThreadType>(t, buildDown(t)));
+        /*
+         * Build the tree bottom-up without recursion as blocking chains can be arbitrarily long. Threads waiting in a
+         * cycle outside of the analyzed set are not deadlocks to report, the cycle is cut where it closes.
+         */
+        private @Nonnull Tree<ThreadType> buildDown(
+                @Nonnull ThreadType root,
+                @Nonnull Map<ThreadType, List<ThreadType>> blocked,
+                @Nonnull Map<ThreadType, Tree<ThreadType>> subtrees
+        ) {
+            Set<ThreadType> open = Collections.newSetFromMap(new IdentityHashMap<ThreadType, Boolean>());
+            ArrayDeque<ThreadType> stack = new ArrayDeque<ThreadType>();
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                ThreadType thread = stack.peek();
+                List<ThreadType> waiters = blocked.get(thread);
+                if (waiters == null) waiters = Collections.emptyList();
+
+                if (!subtrees.containsKey(thread) && open.add(thread)) {
+                    for (ThreadType waiter: waiters) {
+                        if (!subtrees.containsKey(waiter) && !open.contains(waiter)) {
+                            stack.push(waiter);
+                        }
+                    }
+                    continue;
+                }
+
+                stack.pop();
+                if (subtrees.containsKey(thread)) continue;
+
+                @Nonnull Set<Tree<ThreadType>> leaves = new HashSet<Tree<ThreadType>>();
+                for (ThreadType waiter: waiters) {
+                    Tree<ThreadType> leaf = subtrees.get(waiter);
+                    if (leaf != null) leaves.add(leaf);
+                }
+                subtrees.put(thread, new Tree<ThreadType>(thread, leaves));
             }
 
-            return newTrees;
+            return subtrees.get(root);
         }
 
-        private @Nonnull Set<Tree<ThreadType>> filter(Set<Tree<ThreadType>> roots, SetType threads) {
+        private @Nonnull Set<Tree<ThreadType>> filter(@Nonnull Set<Tree<ThreadType>> roots, @Nonnull SetType threads) {
+            // Every branch contains whitelisted thread
+            if (threads.size() == threads.getProcessRuntime().getThreads().size()) return roots;
+
+            // Pruned version of every subtree, null when there are no whitelisted threads
+            final IdentityHashMap<Tree<ThreadType>, Tree<ThreadType>> pruned = new IdentityHashMap<Tree<ThreadType>, Tree<ThreadType>>();
+            for (Tree<ThreadType> root: roots) {
+                prune(root, threads, pruned);
+            }
+
             Set<Tree<ThreadType>> filtered = new LinkedHashSet<Tree<ThreadType>>();
             for (Tree<ThreadType> r: roots) {
-                // Add whitelisted items including their subtrees
-                if (threads.contains(r.getRoot())) {
-                    filtered.add(r);
+                addFiltered(filtered, r, threads, pruned);
+            }
+            return filtered;
+        }
+
+        private void prune(
+                @Nonnull Tree<ThreadType> root,
+                @Nonnull SetType threads,
+                @Nonnull Map<Tree<ThreadType>, Tree<ThreadType>> pruned
+        ) {
+            Set<Tree<ThreadType>> open = Collections.newSetFromMap(new IdentityHashMap<Tree<ThreadType>, Boolean>());
+            ArrayDeque<Tree<ThreadType>> stack = new ArrayDeque<Tree<ThreadType>>();
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                Tree<ThreadType> tree = stack.peek();
+                if (!pruned.containsKey(tree) && open.add(tree)) {
+                    for (Tree<ThreadType> leaf: tree.getLeaves()) {
+                        if (!pruned.containsKey(leaf)) stack.push(leaf);
+                    }
+                    continue;
                 }
 
+                stack.pop();
+                if (pruned.containsKey(tree)) continue;
+
                 // Remove nodes with all children filtered out
-                final Set<Tree<ThreadType>> filteredLeaves = filter(r.getLeaves(), threads);
-                if (filteredLeaves.isEmpty()) continue;
+                Set<Tree<ThreadType>> leaves = new LinkedHashSet<Tree<ThreadType>>();
+                boolean unchanged = true;
+                for (Tree<ThreadType> leaf: tree.getLeaves()) {
+                    unchanged &= addFiltered(leaves, leaf, threads, pruned);
+                }
 
-                filtered.add(new Tree<ThreadType>(r.getRoot(), filteredLeaves));
+                if (leaves.isEmpty()) {
+                    pruned.put(tree, null);
+                } else {
+                    pruned.put(tree, unchanged ? tree : new Tree<ThreadType>(tree.getRoot(), leaves));
+                }
             }
+        }
 
-            return filtered;
+        /**
+         * Add the tree if whitelisted, including its subtrees, and its pruned version.
+         *
+         * @return true if the tree was added unchanged and nothing else.
+         */
+        private boolean addFiltered(
+                @Nonnull Set<Tree<ThreadType>> filtered,
+                @Nonnull Tree<ThreadType> tree,
+                @Nonnull SetType threads,
+                @Nonnull Map<Tree<ThreadType>, Tree<ThreadType>> pruned
+        ) {
+            boolean whitelisted = threads.contains(tree.getRoot());
+            if (whitelisted) {
+                filtered.add(tree);
+            }
+
+            Tree<ThreadType> prunedTree = pruned.get(tree);
+            if (prunedTree != null) {
+                filtered.add(prunedTree);
+            }
+
+            return prunedTree == tree || (whitelisted && prunedTree == null);
         }
 
-        private void flatten(Tree<ThreadType> tree, Set<ThreadType> accumulator) {
-            accumulator.add(tree.getRoot());
-            for (Tree<ThreadType> leaf: tree.getLeaves()) {
-                flatten(leaf, accumulator);
+        private void flatten(@Nonnull Set<Tree<ThreadType>> trees, @Nonnull Set<ThreadType> accumulator) {
+            Set<Tree<ThreadType>> visited = Collections.newSetFromMap(new IdentityHashMap<Tree<ThreadType>, Boolean>());
+            ArrayDeque<Tree<ThreadType>> stack = new ArrayDeque<Tree<ThreadType>>(trees);
+            while (!stack.isEmpty()) {
+                Tree<ThreadType> tree = stack.pop();
+                if (!visited.add(tree)) continue;
+
+                accumulator.add(tree.getRoot());
+                stack.addAll(tree.getLeaves());
             }
         }
 
@@ -216,10 +329,18 @@ public final class BlockingTree implements SingleThreadSetQuery<BlockingTree.Res
 
         private final @Nonnull ThreadType root;
         private final @Nonnull Set<Tree<ThreadType>> leaves;
+        // Immutable, computed eagerly not to traverse the whole subtree when the node is added into a set
+        private final int hashCode;
 
         private Tree(@Nonnull ThreadType root, @Nonnull Set<Tree<ThreadType>> leaves) {
             this.root = root;
             this.leaves = Collections.unmodifiableSet(leaves);
+
+            int hashCode = 31 * root.hashCode();
+            for (Tree<ThreadType> l: leaves) {
+                hashCode += l.hashCode * 7;
+            }
+            this.hashCode = hashCode;
         }
 
         /*package*/ Tree(@Nonnull ThreadType root, @Nonnull Tree<ThreadType>... leaves) {
@@ -236,25 +357,29 @@ public final class BlockingTree implements SingleThreadSetQuery<BlockingTree.Res
 
         @Override
         public void toString(PrintStream stream, Mode mode) {
-            writeInto("", stream, mode);
-        }
-
-        private void writeInto(String prefix, PrintStream sb, Mode mode) {
-            sb.append(prefix);
-            root.printHeader(sb, mode);
-            sb.println();
-            for (Tree<ThreadType> l: leaves) {
-                l.writeInto(prefix + "\t", sb, mode);
+            // Depth-first without recursion, blocking chains can be arbitrarily long
+            ArrayDeque<Tree<ThreadType>> trees = new ArrayDeque<Tree<ThreadType>>();
+            ArrayDeque<String> prefixes = new ArrayDeque<String>();
+            trees.push(this);
+            prefixes.push("");
+            while (!trees.isEmpty()) {
+                Tree<ThreadType> tree = trees.pop();
+                String prefix = prefixes.pop();
+                stream.append(prefix);
+                tree.root.printHeader(stream, mode);
+                stream.println();
+
+                List<Tree<ThreadType>> leaves = new ArrayList<Tree<ThreadType>>(tree.leaves);
+                String leafPrefix = prefix + "\t";
+                for (int i = leaves.size() - 1; i >= 0; i--) {
+                    trees.push(leaves.get(i));
+                    prefixes.push(leafPrefix);
+                }
             }
         }
 
         @Override
         public int hashCode() {
-            int hashCode = 31 * root.hashCode();
-            for (Tree<ThreadType> l: leaves) {
-                hashCode += l.hashCode() * 7;
-            }
-
             return hashCode;
         }
 
@@ -267,7 +392,7 @@ public final class BlockingTree implements SingleThreadSetQuery<BlockingTree.Res
 
             @SuppressWarnings("unchecked")
             Tree<ThreadType> other = (Tree<ThreadType>) rhs;
-            return this.root.equals(other.root) && this.leaves.equals(other.leaves);
+            return this.hashCode == other.hashCode && this.root.equals(other.root) && this.leaves.equals(other.leaves);
         }
     }
 }
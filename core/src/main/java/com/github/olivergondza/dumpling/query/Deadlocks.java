@@ -25,8 +25,11 @@ package com.github.olivergondza.dumpling.query;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -79,39 +82,56 @@ public final class Deadlocks implements SingleThreadSetQuery<Deadlocks.Result<?,
     > extends SingleThreadSetQuery.Result<SetType, RuntimeType, ThreadType> {
 
         private final @Nonnull Set<SetType> deadlocks;
+        // Threads of every deadlock in the order they block each other
+        private final @Nonnull Collection<List<ThreadType>> cycles;
         private final @Nonnull SetType involved;
 
         /*package*/ Result(@Nonnull SetType input, boolean showStackTraces) {
             super(showStackTraces);
 
-            final HashSet<SetType> deadlocks = new HashSet<SetType>(1);
+            final LinkedHashMap<SetType, List<ThreadType>> deadlocks = new LinkedHashMap<SetType, List<ThreadType>>(1);
             final LinkedHashSet<ThreadType> involved = new LinkedHashSet<ThreadType>(2);
-            // No need to visit threads more than once
-            final Set<ThreadType> analyzed = new HashSet<ThreadType>(input.size());
 
+            /*
+             * Every thread is blocked by at most one thread so the strongly connected components of the wait-for graph
+             * are simple cycles. Blocking chains are followed from the input threads iteratively, visiting every thread
+             * once: the order it was visited in tells whether it is part of the chain being followed, or of a chain
+             * resolved earlier that can not produce a new cycle.
+             */
+            final IdentityHashMap<ThreadType, Integer> visited = new IdentityHashMap<ThreadType, Integer>();
+            final ArrayList<ThreadType> chain = new ArrayList<ThreadType>();
             for (ThreadType thread: input) {
+                if (visited.containsKey(thread)) continue;
+
+                final int chainStart = visited.size();
+                chain.clear();
+                ThreadType blocking = thread;
+                Integer order;
+                while ((order = visited.get(blocking)) == null) {
+                    visited.put(blocking, visited.size());
+                    chain.add(blocking);
+                    blocking = blocking.getBlockingThread();
+                    if (blocking == null) break;
+                }
 
-                ArrayList<ThreadType> cycleCandidate = new ArrayList<ThreadType>(2);
-                for (ThreadType blocking = thread.getBlockingThread(); blocking != null; blocking = blocking.getBlockingThread()) {
-                    if (analyzed.contains(thread)) break;
-
-                    int beginning = cycleCandidate.indexOf(blocking);
-                    if (beginning != -1) {
-                        @SuppressWarnings("null")
-                        @Nonnull List<ThreadType> cycle = cycleCandidate.subList(beginning, cycleCandidate.size());
-                        deadlocks.add(input.derive(cycle));
-                        involved.addAll(cycle);
-                        analyzed.addAll(cycleCandidate);
-                        break;
-                    }
+                if (order == null || order < chainStart) continue; // Chain ended or joined the one resolved before
 
-                    cycleCandidate.add(blocking);
+                int beginning = order - chainStart;
+                ArrayList<ThreadType> cycle = new ArrayList<ThreadType>(chain.size() - beginning);
+                if (beginning == 0) {
+                    // Report the cycle starting with the thread blocking the input thread
+                    cycle.addAll(chain.subList(1, chain.size()));
+                    cycle.add(thread);
+                } else {
+                    cycle.addAll(chain.subList(beginning, chain.size()));
                 }
 
-                analyzed.add(thread);
+                deadlocks.put(input.derive(cycle), cycle);
+                involved.addAll(cycle);
             }
 
-            this.deadlocks = Collections.unmodifiableSet(deadlocks);
+            this.deadlocks = Collections.unmodifiableSet(deadlocks.keySet());
+            this.cycles = deadlocks.values();
             this.involved = input.derive(involved);
         }
 
@@ -127,7 +147,7 @@ public final class Deadlocks implements SingleThreadSetQuery<Deadlocks.Result<?,
         @Override
         protected void printResult(@Nonnull PrintStream out) {
             int i = 1;
-            for(SetType deadlock: deadlocks) {
+            for(List<ThreadType> deadlock: cycles) {
                 HashSet<ThreadLock> involvedLocks = new HashSet<ThreadLock>(deadlock.size());
                 boolean allMonitors = true;
                 for(ThreadType thread: deadlock) {
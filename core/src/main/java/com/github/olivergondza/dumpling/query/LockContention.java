@@ -0,0 +1,407 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.query;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import com.github.olivergondza.dumpling.model.ModelObject.Mode;
+import com.github.olivergondza.dumpling.model.ProcessRuntime;
+import com.github.olivergondza.dumpling.model.ProcessThread;
+import com.github.olivergondza.dumpling.model.ThreadLock;
+import com.github.olivergondza.dumpling.model.ThreadSet;
+import com.github.olivergondza.dumpling.model.ThreadStatus;
+
+/**
+ * Group threads by the locks they wait for.
+ *
+ * Threads blocked acquiring a monitor, waiting in <tt>Object.wait()</tt> and parked on a synchronizer are reported
+ * for every lock along with its owner, and aggregated by lock class.
+ *
+ * @author ogondza
+ */
+public final class LockContention implements SingleThreadSetQuery<LockContention.Result<?, ?, ?>> {
+
+    private boolean showStackTraces = false;
+
+    public LockContention showStackTraces() {
+        this.showStackTraces = true;
+        return this;
+    }
+
+    /**
+     * @param threads Threads to group by the locks they wait for. All threads in runtime are considered as owners.
+     */
+    @Override
+    public @Nonnull <
+            SetType extends ThreadSet<SetType, RuntimeType, ThreadType>,
+            RuntimeType extends ProcessRuntime<RuntimeType, SetType, ThreadType>,
+            ThreadType extends ProcessThread<ThreadType, SetType, RuntimeType>
+    > Result<SetType, RuntimeType, ThreadType> query(@Nonnull SetType threads) {
+        return new Result<SetType, RuntimeType, ThreadType>(threads, showStackTraces);
+    }
+
+    /**
+     * Contended locks ordered from the one with the most waiters.
+     *
+     * Locks with the same number of waiters are in the order they are first waited for in the runtime.
+     *
+     * @author ogondza
+     */
+    public static final class Result<
+            SetType extends ThreadSet<SetType, RuntimeType, ThreadType>,
+            RuntimeType extends ProcessRuntime<RuntimeType, SetType, ThreadType>,
+            ThreadType extends ProcessThread<ThreadType, SetType, RuntimeType>
+    > extends SingleThreadSetQuery.Result<SetType, RuntimeType, ThreadType> {
+
+        private final @Nonnull List<Contention<SetType, ThreadType>> contentions;
+        private final @Nonnull List<LockClass> lockClasses;
+        private final @Nonnull SetType involved;
+
+        /*package*/ Result(@Nonnull SetType input, boolean showStackTraces) {
+            super(showStackTraces);
+
+            final Map<ThreadLock, ThreadType> owners = new HashMap<ThreadLock, ThreadType>();
+            final Map<ThreadLock, Waiters<ThreadType>> waiters = new LinkedHashMap<ThreadLock, Waiters<ThreadType>>();
+            for (ThreadType thread: input.getProcessRuntime().getThreads()) {
+                ThreadStatus status = thread.getStatus();
+                // Monitor is released while in Object.wait(), even though it is reported as locked by the outer frame
+                ThreadLock released = status.isWaiting() ? thread.getWaitingOnLock() : null;
+                for (ThreadLock lock: thread.getAcquiredLocks()) {
+                    if (!lock.equals(released)) owners.put(lock, thread);
+                }
+
+                if (!input.contains(thread)) continue;
+
+                ThreadLock lock = thread.getWaitingToLock();
+                if (lock != null) {
+                    waiters(waiters, lock).blocked.add(thread);
+                    continue;
+                }
+
+                lock = thread.getWaitingOnLock();
+                if (lock == null) continue;
+
+                if (status.isWaiting()) {
+                    waiters(waiters, lock).waiting.add(thread);
+                } else if (status.isParked()) {
+                    waiters(waiters, lock).parked.add(thread);
+                }
+            }
+
+            final List<Contention<SetType, ThreadType>> contentions = new ArrayList<Contention<SetType, ThreadType>>(waiters.size());
+            final Set<ThreadType> involved = new LinkedHashSet<ThreadType>();
+            for (Map.Entry<ThreadLock, Waiters<ThreadType>> entry: waiters.entrySet()) {
+                ThreadType owner = owners.get(entry.getKey());
+                Waiters<ThreadType> w = entry.getValue();
+                contentions.add(new Contention<SetType, ThreadType>(entry.getKey(), owner, input, w));
+
+                if (owner != null) involved.add(owner);
+                involved.addAll(w.blocked);
+                involved.addAll(w.waiting);
+                involved.addAll(w.parked);
+            }
+            // Stable, preserving the order of the runtime for the same number of waiters
+            Collections.sort(contentions, Contention.MOST_WAITERS_FIRST);
+
+            final Map<String, LockClass> lockClasses = new LinkedHashMap<String, LockClass>();
+            for (Contention<SetType, ThreadType> contention: contentions) {
+                String className = contention.lock.getClassName();
+                LockClass lockClass = lockClasses.get(className);
+                if (lockClass == null) {
+                    lockClass = new LockClass(className);
+                    lockClasses.put(className, lockClass);
+                }
+                lockClass.locks++;
+                lockClass.blocked += contention.blocked.size();
+                lockClass.waiting += contention.waiting.size();
+                lockClass.parked += contention.parked.size();
+            }
+            final List<LockClass> classes = new ArrayList<LockClass>(lockClasses.values());
+            Collections.sort(classes, LockClass.MOST_WAITERS_FIRST);
+
+            this.contentions = Collections.unmodifiableList(contentions);
+            this.lockClasses = Collections.unmodifiableList(classes);
+            this.involved = input.derive(involved);
+        }
+
+        private static @Nonnull <ThreadType> Waiters<ThreadType> waiters(
+                @Nonnull Map<ThreadLock, Waiters<ThreadType>> waiters, @Nonnull ThreadLock lock
+        ) {
+            Waiters<ThreadType> w = waiters.get(lock);
+            if (w == null) {
+                w = new Waiters<ThreadType>();
+                waiters.put(lock, w);
+            }
+            return w;
+        }
+
+        /**
+         * Locks with at least one waiter, from the most contended one.
+         */
+        public @Nonnull List<Contention<SetType, ThreadType>> getContentions() {
+            return contentions;
+        }
+
+        /**
+         * Contention aggregated by lock class, from the most contended one.
+         */
+        public @Nonnull List<LockClass> getLockClasses() {
+            return lockClasses;
+        }
+
+        /**
+         * Print the result.
+         *
+         * {@link Mode#MACHINE} prints tab separated records, one per lock and lock class, with no thread listing nor
+         * summary.
+         */
+        public void toString(@Nonnull PrintStream out, @Nonnull Mode mode) {
+            if (mode.isHuman()) {
+                printInto(out);
+                return;
+            }
+
+            for (Contention<SetType, ThreadType> contention: contentions) {
+                out.printf(
+                        "lock\t%s\t0x%x\t%d\t%d\t%d\t%d\t",
+                        contention.lock.getClassName(), contention.lock.getId(), contention.getWaiters(),
+                        contention.blocked.size(), contention.waiting.size(), contention.parked.size()
+                );
+                if (contention.owner != null) {
+                    contention.owner.printHeader(out, Mode.MACHINE);
+                }
+                out.println();
+            }
+            for (LockClass lockClass: lockClasses) {
+                out.printf(
+                        "class\t%s\t%d\t%d\t%d\t%d\t%d%n",
+                        lockClass.className, lockClass.locks, lockClass.getWaiters(),
+                        lockClass.blocked, lockClass.waiting, lockClass.parked
+                );
+            }
+        }
+
+        @Override
+        protected void printResult(@Nonnull PrintStream out) {
+            for (Contention<SetType, ThreadType> contention: contentions) {
+                out.printf("* %s: %d waiters%n", contention.lock, contention.getWaiters());
+                if (contention.owner != null) {
+                    out.print("  Owner: ");
+                    contention.owner.printHeader(out, Mode.HUMAN);
+                    out.println();
+                }
+                printWaiters(out, "Blocked", contention.blocked);
+                printWaiters(out, "Waiting", contention.waiting);
+                printWaiters(out, "Parked", contention.parked);
+            }
+
+            if (!lockClasses.isEmpty()) {
+                out.printf("%nLock classes:%n");
+                for (LockClass lockClass: lockClasses) {
+                    out.printf(
+                            "* %s: %d locks; Blocked: %d; Waiting: %d; Parked: %d%n",
+                            lockClass.className, lockClass.locks, lockClass.blocked, lockClass.waiting, lockClass.parked
+                    );
+                }
+            }
+        }
+
+        private void printWaiters(@Nonnull PrintStream out, @Nonnull String title, @Nonnull List<ThreadType> threads) {
+            if (threads.isEmpty()) return;
+
+            out.printf("  %s (%d):%n", title, threads.size());
+            for (ThreadType thread: threads) {
+                out.print("    ");
+                thread.printHeader(out, Mode.HUMAN);
+                out.println();
+            }
+        }
+
+        @Override
+        protected @Nonnull SetType involvedThreads() {
+            return involved;
+        }
+
+        @Override
+        protected void printSummary(@Nonnull PrintStream out) {
+            int waiters = 0;
+            for (Contention<SetType, ThreadType> contention: contentions) {
+                waiters += contention.getWaiters();
+            }
+            out.printf("Contended locks: %d; Waiting threads: %d%n", contentions.size(), waiters);
+        }
+
+        @Override
+        public int exitCode() {
+            return contentions.size();
+        }
+    }
+
+    // Waiters in the order of the runtime
+    private static final class Waiters<ThreadType> {
+        private final @Nonnull List<ThreadType> blocked = new ArrayList<ThreadType>();
+        private final @Nonnull List<ThreadType> waiting = new ArrayList<ThreadType>();
+        private final @Nonnull List<ThreadType> parked = new ArrayList<ThreadType>();
+    }
+
+    /**
+     * Threads waiting for a lock.
+     *
+     * @author ogondza
+     */
+    public static final class Contention<
+            SetType extends ThreadSet<SetType, ?, ThreadType>,
+            ThreadType extends ProcessThread<ThreadType, SetType, ?>
+    > {
+
+        private static final @Nonnull Comparator<Contention<?, ?>> MOST_WAITERS_FIRST = new Comparator<Contention<?, ?>>() {
+            @Override
+            public int compare(Contention<?, ?> lhs, Contention<?, ?> rhs) {
+                return Integer.compare(rhs.getWaiters(), lhs.getWaiters());
+            }
+        };
+
+        private final @Nonnull ThreadLock lock;
+        private final @CheckForNull ThreadType owner;
+        // Sets are created on demand not to allocate runtime-sized sets for every lock
+        private final @Nonnull SetType threads;
+        private final @Nonnull List<ThreadType> blocked;
+        private final @Nonnull List<ThreadType> waiting;
+        private final @Nonnull List<ThreadType> parked;
+
+        private Contention(
+                @Nonnull ThreadLock lock, @CheckForNull ThreadType owner, @Nonnull SetType threads, @Nonnull Waiters<ThreadType> waiters
+        ) {
+            this.lock = lock;
+            this.owner = owner;
+            this.threads = threads;
+            this.blocked = waiters.blocked;
+            this.waiting = waiters.waiting;
+            this.parked = waiters.parked;
+        }
+
+        public @Nonnull ThreadLock getLock() {
+            return lock;
+        }
+
+        /**
+         * Thread holding the lock.
+         *
+         * @return null when the lock is not held or the owner is not known.
+         */
+        public @CheckForNull ThreadType getOwner() {
+            return owner;
+        }
+
+        /**
+         * Threads blocked acquiring the monitor.
+         */
+        public @Nonnull SetType getBlocked() {
+            return threads.derive(blocked);
+        }
+
+        /**
+         * Threads waiting for the monitor to be notified in <tt>Object.wait()</tt>.
+         */
+        public @Nonnull SetType getWaiting() {
+            return threads.derive(waiting);
+        }
+
+        /**
+         * Threads parked on the synchronizer.
+         */
+        public @Nonnull SetType getParked() {
+            return threads.derive(parked);
+        }
+
+        public @Nonnegative int getWaiters() {
+            return blocked.size() + waiting.size() + parked.size();
+        }
+    }
+
+    /**
+     * Contention of all locks of a class.
+     *
+     * @author ogondza
+     */
+    public static final class LockClass {
+
+        private static final @Nonnull Comparator<LockClass> MOST_WAITERS_FIRST = new Comparator<LockClass>() {
+            @Override
+            public int compare(LockClass lhs, LockClass rhs) {
+                return Integer.compare(rhs.getWaiters(), lhs.getWaiters());
+            }
+        };
+
+        private final @Nonnull String className;
+        private int locks;
+        private int blocked;
+        private int waiting;
+        private int parked;
+
+        private LockClass(@Nonnull String className) {
+            this.className = className;
+        }
+
+        public @Nonnull String getClassName() {
+            return className;
+        }
+
+        /**
+         * Number of contended locks of the class.
+         */
+        public @Nonnegative int getLocks() {
+            return locks;
+        }
+
+        public @Nonnegative int getBlocked() {
+            return blocked;
+        }
+
+        public @Nonnegative int getWaiting() {
+            return waiting;
+        }
+
+        public @Nonnegative int getParked() {
+            return parked;
+        }
+
+        public @Nonnegative int getWaiters() {
+            return blocked + waiting + parked;
+        }
+    }
+}
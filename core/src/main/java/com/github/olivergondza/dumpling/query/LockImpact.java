@@ -0,0 +1,374 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.query;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import com.github.olivergondza.dumpling.model.ModelObject;
+import com.github.olivergondza.dumpling.model.ProcessRuntime;
+import com.github.olivergondza.dumpling.model.ProcessThread;
+import com.github.olivergondza.dumpling.model.ThreadLock;
+import com.github.olivergondza.dumpling.model.ThreadSet;
+
+/**
+ * Rank threads and locks by the number of threads they block, directly or transitively.
+ *
+ * Unlike {@link TopContenders}, threads waiting behind other blocked threads are attributed to every thread and lock
+ * down the wait chain, so the root of a convoy ranks above its few direct waiters.
+ *
+ * @author ogondza
+ */
+public final class LockImpact implements SingleThreadSetQuery<LockImpact.Result<?, ?, ?>> {
+
+    private boolean showStackTraces = false;
+    private int limit = Integer.MAX_VALUE;
+
+    public LockImpact showStackTraces() {
+        this.showStackTraces = true;
+        return this;
+    }
+
+    /**
+     * Report only given number of threads and locks with the largest impact.
+     *
+     * @throws IllegalArgumentException When the limit is not positive.
+     */
+    public LockImpact limit(@Nonnegative int limit) {
+        if (limit < 1) throw new IllegalArgumentException("Limit must be positive: " + limit);
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * @param threads Threads to be considered as offenders together with the locks they hold. All threads in runtime
+     * are considered as blocked threads.
+     */
+    @Override
+    public @Nonnull <
+            SetType extends ThreadSet<SetType, RuntimeType, ThreadType>,
+            RuntimeType extends ProcessRuntime<RuntimeType, SetType, ThreadType>,
+            ThreadType extends ProcessThread<ThreadType, SetType, RuntimeType>
+    > Result<SetType, RuntimeType, ThreadType> query(@Nonnull SetType threads) {
+        return new Result<SetType, RuntimeType, ThreadType>(threads, showStackTraces, limit);
+    }
+
+    /**
+     * Threads and locks ranked from the one blocking most threads.
+     *
+     * Ties are broken by the longest wait chain, number of directly blocked threads and the order of the runtime.
+     *
+     * @author ogondza
+     */
+    public static final class Result<
+            SetType extends ThreadSet<SetType, RuntimeType, ThreadType>,
+            RuntimeType extends ProcessRuntime<RuntimeType, SetType, ThreadType>,
+            ThreadType extends ProcessThread<ThreadType, SetType, RuntimeType>
+    > extends SingleThreadSetQuery.Result<SetType, RuntimeType, ThreadType> {
+
+        private final @Nonnull List<Impact<ThreadType>> threadImpacts;
+        private final @Nonnull List<Impact<ThreadType>> lockImpacts;
+        private final @Nonnull SetType involved;
+        private final @Nonnegative int blocked;
+
+        /*package*/ Result(@Nonnull SetType input, boolean showStackTraces, @Nonnegative int limit) {
+            super(showStackTraces);
+
+            final List<ThreadType> threads = new ArrayList<ThreadType>(input.getProcessRuntime().getThreads().getThreadsAsSet());
+            final int size = threads.size();
+            final IdentityHashMap<ThreadType, Integer> indices = new IdentityHashMap<ThreadType, Integer>(size);
+            for (int i = 0; i < size; i++) {
+                indices.put(threads.get(i), i);
+            }
+
+            // Every thread is blocked by at most one thread
+            final int[] blocking = new int[size];
+            final int[] pending = new int[size]; // Waiters not accumulated yet
+            final int[] direct = new int[size];
+            int blocked = 0;
+            for (int i = 0; i < size; i++) {
+                ThreadType blockingThread = threads.get(i).getBlockingThread();
+                blocking[i] = blockingThread == null ? -1 : indices.get(blockingThread);
+                if (blocking[i] < 0) continue;
+
+                pending[blocking[i]]++;
+                direct[blocking[i]]++;
+                blocked++;
+            }
+            this.blocked = blocked;
+
+            /*
+             * Accumulate blocked threads and chain lengths in topological order, starting with the threads no other
+             * thread waits for. Each thread is added to its blocking thread once all its own waiters are accounted for.
+             */
+            final int[] transitive = new int[size];
+            final int[] chain = new int[size];
+            final int[] queue = new int[size];
+            int head = 0, tail = 0;
+            for (int i = 0; i < size; i++) {
+                if (pending[i] == 0) queue[tail++] = i;
+            }
+            while (head < tail) {
+                int waiter = queue[head++];
+                int b = blocking[waiter];
+                if (b < 0) continue;
+
+                transitive[b] += 1 + transitive[waiter];
+                chain[b] = Math.max(chain[b], 1 + chain[waiter]);
+                if (--pending[b] == 0) queue[tail++] = b;
+            }
+
+            // Locks get threads waiting behind them before cycles are collapsed, so a cycle is not counted twice
+            final Map<ThreadLock, Impact<ThreadType>> locks = new LinkedHashMap<ThreadLock, Impact<ThreadType>>();
+            for (int i = 0; i < size; i++) {
+                int b = blocking[i];
+                if (b < 0 || !input.contains(threads.get(b))) continue;
+
+                ThreadLock lock = lockOf(threads.get(i), threads.get(b));
+                Impact<ThreadType> impact = locks.get(lock);
+                if (impact == null) {
+                    impact = new Impact<ThreadType>(threads.get(b), lock, locks.size());
+                    locks.put(lock, impact);
+                }
+                impact.directlyBlocked++;
+                impact.blocked += 1 + transitive[i];
+                impact.longestChain = Math.max(impact.longestChain, 1 + chain[i]);
+            }
+
+            /*
+             * Threads with pending waiters are deadlocked. Collapse each cycle into a single node: every thread of the
+             * cycle blocks the rest of the cycle and all threads waiting on any of them. The rest of the cycle counts as
+             * a single link of a wait chain.
+             */
+            for (int i = 0; i < size; i++) {
+                if (pending[i] == 0) continue;
+
+                int cycleSize = 0, cycleTransitive = 0, cycleChain = 0;
+                int member = i;
+                do {
+                    cycleSize++;
+                    cycleTransitive += transitive[member];
+                    cycleChain = Math.max(cycleChain, chain[member]);
+                    member = blocking[member];
+                } while (member != i);
+
+                do {
+                    pending[member] = 0;
+                    transitive[member] = cycleTransitive + cycleSize - 1;
+                    chain[member] = cycleChain + 1;
+                    member = blocking[member];
+                } while (member != i);
+            }
+
+            final List<Impact<ThreadType>> candidates = new ArrayList<Impact<ThreadType>>();
+            for (ThreadType thread: input) {
+                int i = indices.get(thread);
+                if (direct[i] == 0) continue;
+
+                Impact<ThreadType> impact = new Impact<ThreadType>(thread, null, i);
+                impact.directlyBlocked = direct[i];
+                impact.blocked = transitive[i];
+                impact.longestChain = chain[i];
+                candidates.add(impact);
+            }
+
+            this.threadImpacts = Collections.unmodifiableList(Ranking.top(candidates, Impact.WEAKEST_FIRST, limit));
+            this.lockImpacts = Collections.unmodifiableList(Ranking.top(locks.values(), Impact.WEAKEST_FIRST, limit));
+
+            final Set<ThreadType> involved = new LinkedHashSet<ThreadType>();
+            for (Impact<ThreadType> impact: threadImpacts) {
+                involved.add(impact.thread);
+            }
+            for (Impact<ThreadType> impact: lockImpacts) {
+                involved.add(impact.thread);
+            }
+            this.involved = input.derive(involved);
+        }
+
+        // Lock the thread is blocked on by the other one
+        private static @Nonnull ThreadLock lockOf(@Nonnull ProcessThread<?, ?, ?> waiter, @Nonnull ProcessThread<?, ?, ?> blocking) {
+            ThreadLock monitor = waiter.getWaitingToLock();
+            ThreadLock synchronizer = waiter.getWaitingOnLock();
+            if (monitor == null) return synchronizer;
+            if (synchronizer == null || blocking.getAcquiredMonitors().contains(monitor)) return monitor;
+            return synchronizer;
+        }
+
+        /**
+         * Threads blocking other threads, from the one with the largest impact.
+         */
+        public @Nonnull List<Impact<ThreadType>> getThreadImpacts() {
+            return threadImpacts;
+        }
+
+        /**
+         * Locks other threads are blocked on, from the one with the largest impact.
+         */
+        public @Nonnull List<Impact<ThreadType>> getLockImpacts() {
+            return lockImpacts;
+        }
+
+        /**
+         * Ranked blocking threads.
+         */
+        public @Nonnull SetType getBlockers() {
+            List<ThreadType> blockers = new ArrayList<ThreadType>(threadImpacts.size());
+            for (Impact<ThreadType> impact: threadImpacts) {
+                blockers.add(impact.thread);
+            }
+            return involved.derive(blockers);
+        }
+
+        @Override
+        protected void printResult(@Nonnull PrintStream out) {
+            if (!threadImpacts.isEmpty()) {
+                out.println("Threads:");
+                for (Impact<ThreadType> impact: threadImpacts) {
+                    out.print("* ");
+                    impact.thread.printHeader(out, ModelObject.Mode.HUMAN);
+                    out.println();
+                    impact.printCounts(out);
+                }
+            }
+
+            if (!lockImpacts.isEmpty()) {
+                if (!threadImpacts.isEmpty()) out.println();
+                out.println("Locks:");
+                for (Impact<ThreadType> impact: lockImpacts) {
+                    out.printf("* %s%n  Held by ", impact.lock);
+                    impact.thread.printHeader(out, ModelObject.Mode.HUMAN);
+                    out.println();
+                    impact.printCounts(out);
+                }
+            }
+        }
+
+        @Override
+        protected @Nonnull SetType involvedThreads() {
+            return involved;
+        }
+
+        @Override
+        protected void printSummary(@Nonnull PrintStream out) {
+            out.printf(
+                    "Blocking threads: %d; Blocking locks: %d; Blocked threads: %d%n",
+                    threadImpacts.size(), lockImpacts.size(), blocked
+            );
+        }
+
+        @Override
+        public int exitCode() {
+            return threadImpacts.size();
+        }
+    }
+
+    /**
+     * Threads blocked by a thread or by a lock.
+     *
+     * @author ogondza
+     */
+    public static final class Impact<ThreadType extends ProcessThread<ThreadType, ?, ?>> {
+
+        private static final @Nonnull Comparator<Impact<?>> WEAKEST_FIRST = new Comparator<Impact<?>>() {
+            @Override
+            public int compare(Impact<?> lhs, Impact<?> rhs) {
+                int diff = Integer.compare(lhs.blocked, rhs.blocked);
+                if (diff != 0) return diff;
+                diff = Integer.compare(lhs.longestChain, rhs.longestChain);
+                if (diff != 0) return diff;
+                diff = Integer.compare(lhs.directlyBlocked, rhs.directlyBlocked);
+                if (diff != 0) return diff;
+
+                return Integer.compare(rhs.order, lhs.order);
+            }
+        };
+
+        private final @Nonnull ThreadType thread;
+        private final @CheckForNull ThreadLock lock;
+        // Order of appearance in the runtime
+        private final int order;
+        private int directlyBlocked;
+        private int blocked;
+        private int longestChain;
+
+        private Impact(@Nonnull ThreadType thread, @CheckForNull ThreadLock lock, int order) {
+            this.thread = thread;
+            this.lock = lock;
+            this.order = order;
+        }
+
+        /**
+         * Blocking thread, or the thread holding the lock.
+         */
+        public @Nonnull ThreadType getThread() {
+            return thread;
+        }
+
+        /**
+         * Lock the threads are blocked on.
+         *
+         * @return null for the impact of a thread.
+         */
+        public @CheckForNull ThreadLock getLock() {
+            return lock;
+        }
+
+        /**
+         * Number of threads waiting directly.
+         */
+        public @Nonnegative int getDirectlyBlocked() {
+            return directlyBlocked;
+        }
+
+        /**
+         * Number of threads waiting directly or behind other blocked threads.
+         */
+        public @Nonnegative int getBlocked() {
+            return blocked;
+        }
+
+        /**
+         * Length of the longest chain of threads waiting one behind another.
+         */
+        public @Nonnegative int getLongestChain() {
+            return longestChain;
+        }
+
+        private void printCounts(@Nonnull PrintStream out) {
+            out.printf("  Blocked: %d; Directly: %d; Longest chain: %d%n", blocked, directlyBlocked, longestChain);
+        }
+    }
+}
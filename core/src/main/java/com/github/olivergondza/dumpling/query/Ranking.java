@@ -0,0 +1,71 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Pick the strongest few of candidates without sorting them all.
+ *
+ * @author ogondza
+ */
+/*package*/ final class Ranking {
+
+    private Ranking() {}
+
+    /**
+     * Get at most <tt>limit</tt> strongest candidates.
+     *
+     * @param weakestFirst Ordering of candidates, equal ones are not expected.
+     * @return Candidates from the strongest one.
+     */
+    /*package*/ static @Nonnull <T> List<T> top(
+            @Nonnull Iterable<T> candidates, @Nonnull Comparator<? super T> weakestFirst, @Nonnegative int limit
+    ) {
+        // Keep the top candidates only, the weakest one on top of the heap
+        final PriorityQueue<T> top = new PriorityQueue<T>(Math.max(1, Math.min(limit, 11)), weakestFirst);
+        for (T candidate: candidates) {
+            if (top.size() < limit) {
+                top.add(candidate);
+            } else if (!top.isEmpty() && weakestFirst.compare(candidate, top.peek()) > 0) {
+                top.poll();
+                top.add(candidate);
+            }
+        }
+
+        final List<T> ranked = new ArrayList<T>(top.size());
+        while (!top.isEmpty()) {
+            ranked.add(top.poll());
+        }
+        Collections.reverse(ranked);
+        return ranked;
+    }
+}
@@ -24,13 +24,16 @@
 package com.github.olivergondza.dumpling.query;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.TreeMap;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnegative;
@@ -49,12 +52,26 @@ import com.github.olivergondza.dumpling.model.ThreadSet;
 public final class TopContenders implements SingleThreadSetQuery<TopContenders.Result<?, ?, ?>> {
 
     private boolean showStackTraces = false;
+    private int limit = Integer.MAX_VALUE;
 
     public TopContenders showStackTraces() {
         this.showStackTraces = true;
         return this;
     }
 
+    /**
+     * Report only given number of threads blocking largest number of other threads.
+     *
+     * Contenders blocking the same number of threads are ranked in the order of the runtime.
+     *
+     * @throws IllegalArgumentException When the limit is not positive.
+     */
+    public TopContenders limit(@Nonnegative int limit) {
+        if (limit < 1) throw new IllegalArgumentException("Limit must be positive: " + limit);
+        this.limit = limit;
+        return this;
+    }
+
     /**
      * @param threads Thread subset to be considered as a potential contenders. All threads in runtime are considered as blocking threads.
      */
@@ -64,7 +81,7 @@ public final class TopContenders implements SingleThreadSetQuery<TopContenders.R
             RuntimeType extends ProcessRuntime<RuntimeType, SetType, ThreadType>,
             ThreadType extends ProcessThread<ThreadType, SetType, RuntimeType>
     > Result<SetType, RuntimeType, ThreadType> query(SetType threads) {
-        return new Result<SetType, RuntimeType, ThreadType>(threads, showStackTraces);
+        return new Result<SetType, RuntimeType, ThreadType>(threads, showStackTraces, limit);
     }
 
     public final static class Result<
@@ -73,35 +90,44 @@ public final class TopContenders implements SingleThreadSetQuery<TopContenders.R
             ThreadType extends ProcessThread<ThreadType, SetType, RuntimeType>
     > extends SingleThreadSetQuery.Result<SetType, RuntimeType, ThreadType> {
 
+        // Ordered from the thread blocking the most threads
         private final @Nonnull Map<ThreadType, SetType> contenders;
         private final @Nonnull SetType involved;
         private final @Nonnegative int blocked;
 
-        /*package*/ Result(SetType threads, boolean showStacktraces) {
+        /*package*/ Result(@Nonnull SetType threads, boolean showStacktraces, @Nonnegative int limit) {
             super(showStacktraces);
-            final Set<ThreadType> involved = new LinkedHashSet<ThreadType>();
-            final Map<ThreadType, SetType> contenders = new TreeMap<ThreadType, SetType>(new Comparator<ThreadType>() {
-                @Override
-                public int compare(ThreadType lhs, ThreadType rhs) {
-                    int lhsSize = lhs.getBlockedThreads().size();
-                    int rhsSize = rhs.getBlockedThreads().size();
 
-                    if (lhsSize > rhsSize) return -1;
-                    if (lhsSize < rhsSize) return 1;
+            // Invert the blocking relation in one pass: every thread is blocked by at most one other thread
+            final IdentityHashMap<ThreadType, Contention<ThreadType>> contentions = new IdentityHashMap<ThreadType, Contention<ThreadType>>();
+            for (ThreadType thread: threads.getProcessRuntime().getThreads()) {
+                ThreadType blocking = thread.getBlockingThread();
+                if (blocking == null || !threads.contains(blocking)) continue;
 
-                    return 0;
+                Contention<ThreadType> contention = contentions.get(blocking);
+                if (contention == null) {
+                    contention = new Contention<ThreadType>(blocking);
+                    contentions.put(blocking, contention);
                 }
-            });
+                contention.blocked.add(thread);
+            }
 
+            final List<Contention<ThreadType>> candidates = new ArrayList<Contention<ThreadType>>(contentions.size());
             for (ThreadType thread: threads) {
-                SetType blocked = thread.getBlockedThreads();
-                if (blocked.isEmpty()) continue;
+                Contention<ThreadType> contention = contentions.get(thread);
+                if (contention == null) continue;
 
-                contenders.put(thread, blocked);
-                involved.add(thread);
-                for (ThreadType b: blocked) {
-                    involved.add(b);
-                }
+                contention.order = candidates.size();
+                candidates.add(contention);
+            }
+            final List<Contention<ThreadType>> ranked = Ranking.top(candidates, Contention.WEAKEST_FIRST, limit);
+
+            final Map<ThreadType, SetType> contenders = new LinkedHashMap<ThreadType, SetType>(ranked.size());
+            final Set<ThreadType> involved = new LinkedHashSet<ThreadType>();
+            for (Contention<ThreadType> contention: ranked) {
+                contenders.put(contention.thread, threads.derive(contention.blocked));
+                involved.add(contention.thread);
+                involved.addAll(contention.blocked);
             }
 
             this.contenders = Collections.unmodifiableMap(contenders);
@@ -156,4 +182,26 @@ public final class TopContenders implements SingleThreadSetQuery<TopContenders.R
             return contenders.size();
         }
     }
+
+    private static final class Contention<ThreadType extends ProcessThread<ThreadType, ?, ?>> {
+
+        private static final @Nonnull Comparator<Contention<?>> WEAKEST_FIRST = new Comparator<Contention<?>>() {
+            @Override
+            public int compare(Contention<?> lhs, Contention<?> rhs) {
+                int diff = Integer.compare(lhs.blocked.size(), rhs.blocked.size());
+                if (diff != 0) return diff;
+
+                return Integer.compare(rhs.order, lhs.order);
+            }
+        };
+
+        private final @Nonnull ThreadType thread;
+        private final @Nonnull List<ThreadType> blocked = new ArrayList<ThreadType>(2);
+        // Order among the input threads
+        private int order;
+
+        private Contention(@Nonnull ThreadType thread) {
+            this.thread = thread;
+        }
+    }
 }
@@ -0,0 +1,104 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling;
+
+import static com.github.olivergondza.dumpling.model.ProcessThread.nameIs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import com.github.olivergondza.dumpling.model.StackTrace;
+import com.github.olivergondza.dumpling.model.ThreadLock;
+import com.github.olivergondza.dumpling.model.ThreadStatus;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThreadSet;
+
+/**
+ * Threads of synthetic threaddump runtimes for tests.
+ *
+ * Kept in core tests as test-utils module can not depend on the model it is a test dependency of.
+ *
+ * @author ogondza
+ */
+public final class ThreadDumpFixtures {
+
+    private ThreadDumpFixtures() {}
+
+    /**
+     * Thread <tt>t&lt;id&gt;</tt> holding monitor <tt>id</tt>, blocked on monitor <tt>blocking</tt> or runnable when negative.
+     */
+    public static @Nonnull ThreadDumpThread.Builder blockedOn(int id, int blocking) {
+        return thread(id, blocking, id);
+    }
+
+    /**
+     * Thread <tt>t&lt;id&gt;</tt> holding the monitors, blocked on monitor <tt>waitingTo</tt> or runnable when negative.
+     */
+    public static @Nonnull ThreadDumpThread.Builder thread(int id, int waitingTo, int... acquired) {
+        ThreadLock.Monitor[] monitors = new ThreadLock.Monitor[acquired.length];
+        for (int i = 0; i < acquired.length; i++) {
+            monitors[i] = new ThreadLock.Monitor(monitor(acquired[i]), 0);
+        }
+        ThreadDumpThread.Builder builder = new ThreadDumpThread.Builder().setName("t" + id).setId(id)
+                .setStacktrace(StackTrace.element("Worker", "run", "Worker.java", 42))
+                .setAcquiredMonitors(monitors)
+        ;
+        return waitingTo < 0
+                ? builder.setThreadStatus(ThreadStatus.RUNNABLE)
+                : builder.setThreadStatus(ThreadStatus.BLOCKED).setWaitingToLock(monitor(waitingTo))
+        ;
+    }
+
+    /**
+     * Monitor of <tt>java.lang.Object</tt> at given address.
+     */
+    public static @Nonnull ThreadLock monitor(long address) {
+        return new ThreadLock("java.lang.Object", address);
+    }
+
+    /**
+     * Threads of the runtime with given ids.
+     */
+    public static @Nonnull ThreadDumpThreadSet threads(@Nonnull ThreadDumpRuntime runtime, long... ids) {
+        List<ThreadDumpThread> threads = new ArrayList<ThreadDumpThread>(ids.length);
+        for (long id: ids) {
+            threads.add(runtime.getThreadById(id));
+        }
+        return runtime.getThreadSet(threads);
+    }
+
+    /**
+     * Threads of the runtime with given names.
+     */
+    public static @Nonnull ThreadDumpThreadSet threads(@Nonnull ThreadDumpRuntime runtime, String... names) {
+        List<ThreadDumpThread> threads = new ArrayList<ThreadDumpThread>(names.length);
+        for (String name: names) {
+            threads.add(runtime.getThreads().where(nameIs(name)).onlyThread());
+        }
+        return runtime.getThreadSet(threads);
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.factory;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.github.olivergondza.dumpling.Util;
+import com.github.olivergondza.dumpling.model.ModelObject.Mode;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+
+public class CompressionTest {
+
+    private static final int DEADLOCK_THREADS = new ThreadDumpFactory().fromStream(Util.resource("jstack/deadlock.log")).getThreads().size();
+    private static final String[] DUMPS = {"jstack/blocking-chain.log", "jstack/blocking-tree.log", "jstack/producer-consumer.log"};
+
+    @Test
+    public void detect() throws Exception {
+        assertSame(Compression.GZIP, Compression.detect(gzip("jstack/deadlock.log")));
+        assertSame(Compression.ZIP, Compression.detect(zip("jstack/deadlock.log")));
+        assertSame(Compression.NONE, Compression.detect(Util.asFile(Util.resource("jstack/deadlock.log"))));
+        assertSame(Compression.NONE, Compression.detect(Util.asFile(new ByteArrayInputStream(new byte[] {0x1f}))));
+
+        BufferedInputStream in = new BufferedInputStream(new FileInputStream(gzip("jstack/deadlock.log")));
+        assertSame(Compression.GZIP, Compression.detect(in));
+        assertEquals("Input not consumed", 0x1f, in.read());
+        in.close();
+    }
+
+    @Test
+    public void gzipFile() throws Exception {
+        File gzip = gzip("jstack/deadlock.log");
+        String expected = render(new ThreadDumpFactory().fromStream(Util.resource("jstack/deadlock.log")));
+
+        assertEquals(expected, render(new ThreadDumpFactory().fromFile(gzip)));
+        assertEquals(expected, render(new ThreadDumpFactory().fromMappedFile(gzip)));
+        assertEquals(expected, render(new ThreadDumpFactory().streamingParser(true).fromFile(gzip)));
+        assertEquals(expected, render(new ThreadDumpFactory().fromStream(new FileInputStream(gzip))));
+    }
+
+    @Test
+    public void xzFile() throws Exception {
+        File xz = xz("jstack/deadlock.log");
+        Assume.assumeTrue("xz binary available", xz != null);
+
+        String expected = render(new ThreadDumpFactory().fromStream(Util.resource("jstack/deadlock.log")));
+        assertEquals(expected, render(new ThreadDumpFactory().fromFile(xz)));
+        assertEquals(expected, render(new ThreadDumpFactory().streamingParser(true).fromMappedFile(xz)));
+    }
+
+    @Test
+    public void iterateCompressedLog() throws Exception {
+        File gzip = gzip("jstack/concatenated.log");
+        ThreadDumpIterator it = new ThreadDumpFactory().failOnErrors(true).iterate(gzip);
+        assertEquals(expectedDumps(), renderAll(it));
+    }
+
+    @Test
+    public void zipArchive() throws Exception {
+        File zip = zip(DUMPS);
+
+        assertEquals(expectedDumps(), renderAll(new ThreadDumpFactory().failOnErrors(true).fromArchive(zip)));
+        assertEquals(expectedDumps(), renderAll(new ThreadDumpFactory().fromArchive(new FileInputStream(zip))));
+        assertEquals(expectedDumps(), renderAll(new ThreadDumpFactory().iterate(zip)));
+
+        try {
+            new ThreadDumpFactory().fromFile(zip);
+            fail();
+        } catch (IllegalRuntimeStateException ex) {
+            assertThat(ex.getMessage(), containsString("several threaddumps"));
+        }
+    }
+
+    @Test
+    public void singleFileZipArchive() throws Exception {
+        File zip = zip("jstack/deadlock.log");
+        String expected = render(new ThreadDumpFactory().fromStream(Util.resource("jstack/deadlock.log")));
+
+        assertEquals(expected, render(new ThreadDumpFactory().fromFile(zip)));
+        assertEquals(expected, render(new ThreadDumpFactory().lazyStackTraces(true).fromMappedFile(zip)));
+    }
+
+    @Test
+    public void skipInvalidArchiveEntry() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ZipOutputStream out = new ZipOutputStream(baos);
+        out.putNextEntry(new ZipEntry("broken.log"));
+        out.write("No threads here\n".getBytes());
+        out.putNextEntry(new ZipEntry("valid.log"));
+        copy(Util.resource("jstack/deadlock.log"), out);
+        out.close();
+
+        ThreadDumpIterator it = new ThreadDumpFactory().fromArchive(new ByteArrayInputStream(baos.toByteArray()));
+        assertEquals(DEADLOCK_THREADS, it.next().getThreads().size());
+        assertFalse(it.hasNext());
+
+        it = new ThreadDumpFactory().failOnErrors(true).fromArchive(new ByteArrayInputStream(baos.toByteArray()));
+        try {
+            it.hasNext();
+            fail();
+        } catch (IllegalRuntimeStateException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void archiveOfSingleThreaddump() throws Exception {
+        File log = Util.asFile(Util.resource("jstack/deadlock.log"));
+        ThreadDumpIterator it = new ThreadDumpFactory().fromArchive(log);
+        assertEquals(DEADLOCK_THREADS, it.next().getThreads().size());
+        assertFalse(it.hasNext());
+
+        it = new ThreadDumpFactory().fromArchive(new ByteArrayInputStream("No threads here\n".getBytes()));
+        try {
+            it.hasNext();
+            fail();
+        } catch (IllegalRuntimeStateException ex) {
+            assertThat(ex.getMessage(), containsString("No threads found"));
+        }
+    }
+
+    @Test
+    public void truncatedInput() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        copy(new FileInputStream(gzip("jstack/deadlock.log")), baos);
+        byte[] gzip = baos.toByteArray();
+        byte[] truncated = Arrays.copyOf(gzip, gzip.length / 2);
+
+        for (ThreadDumpFactory factory: Arrays.asList(new ThreadDumpFactory(), new ThreadDumpFactory().streamingParser(true))) {
+            try {
+                factory.fromStream(new ByteArrayInputStream(truncated));
+                fail();
+            } catch (IllegalRuntimeStateException ex) {
+                assertThat(ex.getMessage(), containsString("Unable to read threaddump"));
+            }
+        }
+    }
+
+    @Test
+    public void decodeOnSeparateThread() throws Exception {
+        final List<Thread> readers = new ArrayList<Thread>();
+        final boolean[] closed = new boolean[1];
+        InputStream source = new FilterInputStream(Util.resource("jstack/deadlock.log")) {
+            @Override public int read(byte[] b, int off, int len) throws IOException {
+                readers.add(Thread.currentThread());
+                return super.read(b, off, len);
+            }
+
+            @Override public void close() throws IOException {
+                closed[0] = true;
+                super.close();
+            }
+        };
+
+        Compression.Decoder decoder = new Compression.Decoder(source);
+        assertEquals(Util.asString(Util.resource("jstack/deadlock.log")), Util.asString(decoder));
+        decoder.close();
+
+        assertTrue(closed[0]);
+        assertFalse(readers.isEmpty());
+        for (Thread reader: readers) {
+            assertNotSame(Thread.currentThread(), reader);
+        }
+    }
+
+    @Test
+    public void closeDecoderEarly() throws Exception {
+        final boolean[] closed = new boolean[1];
+        InputStream endless = new InputStream() {
+            @Override public int read() {
+                return 'x';
+            }
+
+            @Override public void close() {
+                closed[0] = true;
+            }
+        };
+
+        Compression.Decoder decoder = new Compression.Decoder(endless);
+        assertEquals('x', decoder.read());
+        decoder.close();
+
+        assertTrue(closed[0]);
+        try {
+            decoder.read();
+            fail();
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    private static List<String> expectedDumps() {
+        List<String> expected = new ArrayList<String>();
+        for (String dump: DUMPS) {
+            expected.add(render(new ThreadDumpFactory().fromStream(Util.resource(dump))));
+        }
+        return expected;
+    }
+
+    private static List<String> renderAll(ThreadDumpIterator it) {
+        List<String> actual = new ArrayList<String>();
+        while (it.hasNext()) {
+            actual.add(render(it.next()));
+        }
+        return actual;
+    }
+
+    private static String render(ThreadDumpRuntime runtime) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        runtime.toString(new PrintStream(baos), Mode.MACHINE);
+        return baos.toString();
+    }
+
+    private static File gzip(String resource) throws IOException {
+        File file = File.createTempFile("dumpling", ".log.gz");
+        file.deleteOnExit();
+        OutputStream out = new GZIPOutputStream(new FileOutputStream(file));
+        try {
+            copy(Util.resource(resource), out);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static File zip(String... resources) throws IOException {
+        File file = File.createTempFile("dumpling", ".zip");
+        file.deleteOnExit();
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            out.putNextEntry(new ZipEntry("dumps/"));
+            for (String resource: resources) {
+                out.putNextEntry(new ZipEntry(resource));
+                copy(Util.resource(resource), out);
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static File xz(String resource) throws IOException, InterruptedException {
+        File file = File.createTempFile("dumpling", ".log.xz");
+        file.deleteOnExit();
+        try {
+            Process process = new ProcessBuilder("xz", "--compress", "--stdout")
+                    .redirectOutput(file)
+                    .start()
+            ;
+            OutputStream in = process.getOutputStream();
+            copy(Util.resource(resource), in);
+            in.close();
+            return process.waitFor() == 0 ? file : null;
+        } catch (IOException ex) {
+            return null; // Not installed
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        try {
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                out.write(buffer, 0, length);
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.factory;
+
+import static com.github.olivergondza.dumpling.model.ProcessThread.nameIs;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.github.olivergondza.dumpling.Util;
+import com.github.olivergondza.dumpling.model.ModelObject.Mode;
+import com.github.olivergondza.dumpling.model.StackTrace;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
+
+public class FrameInternPoolTest {
+
+    private static final StackTraceElement RUN = StackTrace.element("java.lang.Thread", "run", "Thread.java", 745);
+
+    @Test
+    public void lookup() {
+        FrameInternPool pool = new FrameInternPool(10);
+        assertThat(pool.get("java.lang.Thread.run(Thread.java:745)"), nullValue());
+        assertThat(pool.put("java.lang.Thread.run(Thread.java:745)", RUN), sameInstance(RUN));
+        assertThat(pool.get(new String("java.lang.Thread.run(Thread.java:745)")), sameInstance(RUN));
+
+        // First one wins
+        StackTraceElement other = StackTrace.element("java.lang.Thread", "run", "Thread.java", 745);
+        assertThat(pool.put("java.lang.Thread.run(Thread.java:745)", other), sameInstance(RUN));
+
+        FrameInternPool.Stats stats = pool.getStats();
+        assertThat(stats.getHits(), equalTo(1L));
+        assertThat(stats.getMisses(), equalTo(1L));
+        assertThat(stats.getEvictions(), equalTo(0L));
+        assertThat(stats.getSize(), equalTo(1));
+        assertThat(stats.getHitRate(), equalTo(0.5));
+
+        pool.clear();
+        assertThat(pool.size(), equalTo(0));
+        assertThat(pool.get("java.lang.Thread.run(Thread.java:745)"), nullValue());
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() {
+        FrameInternPool pool = new FrameInternPool(1); // Single segment
+        pool.put("a.A.a(A.java)", StackTrace.element("a.A", "a", "A.java"));
+        pool.put("b.B.b(B.java)", StackTrace.element("b.B", "b", "B.java"));
+
+        assertThat(pool.get("a.A.a(A.java)"), nullValue());
+        assertThat(pool.get("b.B.b(B.java)"), equalTo(StackTrace.element("b.B", "b", "B.java")));
+        assertThat(pool.getStats().getEvictions(), equalTo(1L));
+
+        pool = new FrameInternPool(2);
+        pool.put("a.A.a(A.java)", StackTrace.element("a.A", "a", "A.java"));
+        pool.put("b.B.b(B.java)", StackTrace.element("b.B", "b", "B.java"));
+        for (int i = 0; i < 100; i++) {
+            pool.get("a.A.a(A.java)");
+            pool.put("c" + i + ".C.c(C.java)", StackTrace.element("c" + i + ".C", "c", "C.java"));
+        }
+        assertThat(pool.size(), lessThanOrEqualTo(2));
+        assertThat(pool.getStats().getEvictions(), greaterThan(90L));
+    }
+
+    @Test
+    public void zeroCapacity() {
+        FrameInternPool pool = new FrameInternPool(0);
+        assertThat(pool.put("java.lang.Thread.run(Thread.java:745)", RUN), sameInstance(RUN));
+        assertThat(pool.get("java.lang.Thread.run(Thread.java:745)"), nullValue());
+        assertThat(pool.size(), equalTo(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeCapacity() {
+        new FrameInternPool(-1);
+    }
+
+    @Test
+    public void shareFramesAcrossThreaddumps() throws Exception {
+        File log = Util.asFile(Util.resource("jstack/producer-consumer.log"));
+        for (boolean streaming: new boolean[] {true, false}) {
+            FrameInternPool pool = new FrameInternPool(1000);
+            ThreadDumpFactory factory = new ThreadDumpFactory().framePool(pool).streamingParser(streaming);
+
+            ThreadDumpRuntime first = factory.fromFile(log);
+            FrameInternPool.Stats stats = pool.getStats();
+            assertThat(stats.getMisses(), greaterThan(0L));
+            assertThat(stats.getMisses(), equalTo((long) stats.getSize()));
+
+            ThreadDumpRuntime second = factory.fromFile(log);
+            assertThat(pool.getStats().getMisses(), equalTo(stats.getMisses()));
+            assertThat(pool.getStats().getHits(), greaterThan(stats.getHits()));
+
+            ThreadDumpThread thread = first.getThreads().where(nameIs("owning_thread")).onlyThread();
+            ThreadDumpThread same = second.getThreads().where(nameIs("owning_thread")).onlyThread();
+            assertThat(same.getStackTrace().getElement(1), sameInstance(thread.getStackTrace().getElement(1)));
+        }
+    }
+
+    @Test
+    public void tabAndSpaceIndentedFramesShareEntry() throws Exception {
+        FrameInternPool pool = new FrameInternPool(10);
+        String dump = "\"main\" prio=5 tid=0x1 nid=0x2 runnable%n   java.lang.Thread.State: RUNNABLE%n%sat java.lang.Thread.run(Thread.java:745)%n";
+        StackTraceElement tab = new ThreadDumpFactory().framePool(pool).streamingParser(true)
+                .fromString(String.format(dump, "\t")).getThreads().onlyThread().getStackTrace().getHead();
+        StackTraceElement spaces = new ThreadDumpFactory().framePool(pool).streamingParser(true)
+                .fromString(String.format(dump, "    ")).getThreads().onlyThread().getStackTrace().getHead();
+
+        assertThat(spaces, sameInstance(tab));
+        assertThat(pool.size(), equalTo(1));
+    }
+
+    @Test
+    public void concurrentParsers() throws Exception {
+        final File log = Util.asFile(Util.resource("jstack/producer-consumer.log"));
+        final String expected = new ThreadDumpFactory().framePool(new FrameInternPool(0)).fromFile(log).toString(Mode.MACHINE);
+
+        // Small enough to keep evicting
+        final FrameInternPool pool = new FrameInternPool(5);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 64; i++) {
+                final boolean streaming = i % 2 == 0;
+                final boolean lazy = i % 3 == 0;
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        ThreadDumpFactory factory = new ThreadDumpFactory().framePool(pool).streamingParser(streaming).lazyStackTraces(lazy);
+                        return factory.fromFile(log).toString(Mode.MACHINE);
+                    }
+                }));
+            }
+            for (Future<String> result: results) {
+                assertEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(pool.size(), lessThanOrEqualTo(5));
+        assertThat(pool.getStats().getEvictions(), greaterThan(0L));
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.factory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Compare hexadecimal identifier decoding with the original {@link BigInteger} based one on a lock-heavy threaddump.
+ *
+ * Skipped unless <tt>DUMPLING_BENCHMARK</tt> environment variable is set.
+ */
+public class HexParsingBenchmark {
+
+    private static final int THREADS = 2000;
+    private static final int LOCKS_PER_THREAD = 32;
+    private static final int ROUNDS = 10;
+
+    @Test
+    public void benchmark() {
+        assumeTrue(System.getenv("DUMPLING_BENCHMARK") != null);
+
+        String dump = lockHeavyDump();
+        List<String> ids = identifiers(dump);
+
+        long expected = 0;
+        for (String id: ids) {
+            expected += bigInteger(id);
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            long sum = 0;
+            for (String id: ids) {
+                sum += bigInteger(id);
+            }
+            long bigInteger = System.nanoTime() - start;
+            assertEquals(expected, sum);
+
+            start = System.nanoTime();
+            sum = 0;
+            for (String id: ids) {
+                sum += ThreadDumpFactory.parseLong(id, 0, id.length());
+            }
+            long parseHex = System.nanoTime() - start;
+            assertEquals(expected, sum);
+
+            start = System.nanoTime();
+            new ThreadDumpFactory().streamingParser(true).framePool(new FrameInternPool(0)).fromString(dump);
+            long parse = System.nanoTime() - start;
+
+            System.out.printf(
+                    "%d identifiers: BigInteger %d ns/op, parseHex %d ns/op; whole threaddump parsed in %d ms%n",
+                    ids.size(), bigInteger / ids.size(), parseHex / ids.size(), parse / 1000000
+            );
+        }
+    }
+
+    private static long bigInteger(String value) {
+        if (value.startsWith("0x")) {
+            value = value.substring(2);
+        }
+        return new BigInteger(value, 16).longValue();
+    }
+
+    private static String lockHeavyDump() {
+        StringBuilder sb = new StringBuilder("Full thread dump Synthetic VM:\n");
+        for (int i = 0; i < THREADS; i++) {
+            sb.append(String.format(
+                    "%n\"thread-%d\" prio=5 tid=0x00007f%010x nid=0x%x runnable%n   java.lang.Thread.State: RUNNABLE%n",
+                    i, 0x1000L * i, 0x2000 + i
+            ));
+            for (int j = 0; j < LOCKS_PER_THREAD; j++) {
+                sb.append(String.format("\tat com.example.Lock%d.lock(Lock.java:%d)%n", j, j));
+                sb.append(String.format("\t- locked <0x00000007%08x> (a java.lang.Object)%n", i * LOCKS_PER_THREAD + j));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static List<String> identifiers(String dump) {
+        List<String> ids = new ArrayList<String>();
+        for (String line: dump.split("\n")) {
+            int tid = line.indexOf("tid=");
+            if (tid != -1) {
+                ids.add(line.substring(tid + 4, line.indexOf(' ', tid)));
+                ids.add(line.substring(line.indexOf("nid=") + 4, line.indexOf(" runnable")));
+            }
+            int lock = line.indexOf("<0x");
+            if (lock != -1) {
+                ids.add(line.substring(lock + 1, line.indexOf('>')));
+            }
+        }
+        return ids;
+    }
+}
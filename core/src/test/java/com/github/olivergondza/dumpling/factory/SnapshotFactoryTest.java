@@ -0,0 +1,131 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.factory;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.olivergondza.dumpling.Util;
+import com.github.olivergondza.dumpling.model.ModelObject.Mode;
+import com.github.olivergondza.dumpling.model.ProcessRuntime;
+import com.github.olivergondza.dumpling.model.ProcessThread;
+import com.github.olivergondza.dumpling.model.StackTrace;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+import com.github.olivergondza.dumpling.model.jvm.JvmRuntime;
+import com.github.olivergondza.dumpling.model.jvm.JvmThread;
+
+public class SnapshotFactoryTest {
+
+    @Test
+    public void roundtripThreaddumps() throws Exception {
+        for (String log: Arrays.asList(
+                "deadlock.log", "deadlock-and-friends.log", "producer-consumer.log", "blocking-tree.log",
+                "ReentrantLock-parking-blockage.log", "ReentrantReadWriteLock-parking-blockage-write.log"
+        )) {
+            File file = Util.asFile(Util.resource("jstack/" + log));
+            ThreadDumpRuntime expected = new ThreadDumpFactory().fromFile(file);
+            ThreadDumpRuntime actual = roundtrip(expected);
+
+            assertThat(log, actual.getHeader(), equalTo(expected.getHeader()));
+            assertThat(log, actual.toString(Mode.MACHINE), equalTo(expected.toString(Mode.MACHINE)));
+            assertThat(log, actual.toString(Mode.HUMAN), equalTo(expected.toString(Mode.HUMAN)));
+            assertThat(log, actual.getFingerprint(), equalTo(expected.getFingerprint()));
+            assertThat(log, actual.getThreads().getBlockedThreads().size(), equalTo(expected.getThreads().getBlockedThreads().size()));
+        }
+    }
+
+    @Test
+    public void roundtripFile() throws Exception {
+        ThreadDumpRuntime expected = new ThreadDumpFactory().fromStream(Util.resource("jstack/deadlock.log"));
+        File snapshot = File.createTempFile("dumpling", ".snap");
+        snapshot.deleteOnExit();
+        new SnapshotFactory().write(expected, snapshot);
+
+        assertThat(snapshot.length(), lessThan(Util.asFile(Util.resource("jstack/deadlock.log")).length()));
+        assertThat(new SnapshotFactory().fromFile(snapshot).toString(), equalTo(expected.toString()));
+    }
+
+    @Test
+    public void roundtripJvmRuntime() throws Exception {
+        JvmRuntime expected = new JvmRuntimeFactory().currentRuntime();
+        ThreadDumpRuntime actual = roundtrip(expected);
+
+        assertThat(actual.getThreads().size(), equalTo(expected.getThreads().size()));
+        for (JvmThread thread: expected.getThreads()) {
+            ProcessThread<?, ?, ?> loaded = actual.getThreadById(thread.getId());
+            assertThat(loaded.getName(), equalTo(thread.getName()));
+            assertThat(loaded.getStatus(), equalTo(thread.getStatus()));
+            // Module and class loader of the frames are not preserved
+            assertThat(frames(loaded.getStackTrace()), equalTo(frames(thread.getStackTrace())));
+            assertThat(loaded.getAcquiredMonitors(), equalTo(thread.getAcquiredMonitors()));
+        }
+    }
+
+    @Test
+    public void rejectInvalidSnapshot() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SnapshotFactory().write(new ThreadDumpFactory().fromStream(Util.resource("jstack/deadlock.log")), out);
+        byte[] snapshot = out.toByteArray();
+
+        assertInvalid(Arrays.copyOf(snapshot, snapshot.length / 2), "Truncated snapshot");
+        assertInvalid(Arrays.copyOf(snapshot, snapshot.length + 1), "Trailing data in snapshot");
+        assertInvalid("\"main\" prio=10 tid=0x1 nid=0x2 runnable".getBytes(), "Not a dumpling snapshot");
+    }
+
+    private void assertInvalid(byte[] snapshot, String message) {
+        try {
+            new SnapshotFactory().fromStream(new ByteArrayInputStream(snapshot));
+            fail("Invalid snapshot loaded");
+        } catch (IllegalRuntimeStateException ex) {
+            assertThat(ex.getMessage(), containsString(message));
+        }
+    }
+
+    private List<StackTraceElement> frames(StackTrace trace) {
+        List<StackTraceElement> frames = new ArrayList<StackTraceElement>();
+        for (StackTraceElement e: trace.getElements()) {
+            frames.add(new StackTraceElement(e.getClassName(), e.getMethodName(), e.getFileName(), e.getLineNumber()));
+        }
+        return frames;
+    }
+
+    private ThreadDumpRuntime roundtrip(ProcessRuntime<?, ?, ?> runtime) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SnapshotFactory().write(runtime, out);
+        return new SnapshotFactory().fromStream(new ByteArrayInputStream(out.toByteArray()));
+    }
+}
@@ -25,6 +25,7 @@ package com.github.olivergondza.dumpling.factory;
 
 import static com.github.olivergondza.dumpling.Util.only;
 import static com.github.olivergondza.dumpling.Util.pause;
+import static com.github.olivergondza.dumpling.model.ProcessThread.evaluating;
 import static com.github.olivergondza.dumpling.model.ProcessThread.nameIs;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
@@ -33,22 +34,31 @@ import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 import static org.mockito.Mockito.spy;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.math.BigInteger;
 import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
@@ -64,21 +74,36 @@ import org.hamcrest.collection.IsEmptyCollection;
 import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
 import org.mockito.Mockito;
 
 import com.github.olivergondza.dumpling.Util;
 import com.github.olivergondza.dumpling.model.ModelObject.Mode;
 import com.github.olivergondza.dumpling.model.ProcessRuntime;
 import com.github.olivergondza.dumpling.model.StackTrace;
+import com.github.olivergondza.dumpling.model.StackTrie;
 import com.github.olivergondza.dumpling.model.ThreadLock;
 import com.github.olivergondza.dumpling.model.ThreadStatus;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpThreadSet;
 
+@RunWith(Parameterized.class)
 public class ThreadDumpFactoryTest {
 
-    private static final ThreadDumpFactory FACTORY = new ThreadDumpFactory().failOnErrors(true);
+    @Parameterized.Parameters(name = "streamingParser={0}")
+    public static Collection<Object[]> parsers() {
+        return Arrays.asList(new Object[][] {{false}, {true}});
+    }
+
+    private final boolean streamingParser;
+    private final ThreadDumpFactory factory;
+
+    public ThreadDumpFactoryTest(boolean streamingParser) {
+        this.streamingParser = streamingParser;
+        this.factory = new ThreadDumpFactory().failOnErrors(true).streamingParser(streamingParser);
+    }
 
     public @Rule DisposeRule cleaner = new DisposeRule();
 
@@ -701,7 +726,7 @@ public class ThreadDumpFactoryTest {
     @Test
     public void preserveThreadOrder() throws Exception {
 
-        ThreadDumpThreadSet threads = FACTORY.fromStream(Util.resource(getClass(), "self-lock.log")).getThreads();
+        ThreadDumpThreadSet threads = factory.fromStream(Util.resource(getClass(), "self-lock.log")).getThreads();
 
         List<String> expectedNames = Arrays.asList(
                 "Service Thread",
@@ -949,7 +974,7 @@ public class ThreadDumpFactoryTest {
         InputStream stream = Util.resource(getClass(), "in-object-wait.log");
         InputStream mock = spy(stream);
 
-        FACTORY.fromStream(mock);
+        factory.fromStream(mock);
 
         Mockito.verify(mock).close();
     }
@@ -1007,7 +1032,7 @@ public class ThreadDumpFactoryTest {
         }
 
         // Should work if we ignore failures
-        new ThreadDumpFactory().fromStream(Util.resource(getClass(), "unknown-chunks.log"));
+        new ThreadDumpFactory().streamingParser(streamingParser).fromStream(Util.resource(getClass(), "unknown-chunks.log"));
     }
 
     @Test
@@ -1022,8 +1047,16 @@ public class ThreadDumpFactoryTest {
         // Decadic NID
         String human = new JvmThread.Builder(Thread.currentThread()).setName("Fake").setId(42).setTid(42).setNid(Short.MIN_VALUE).toString();
         assertThat(human, containsString("nid=-32768"));
-        sut = FACTORY.fromString(human).getThreads().where(nameIs("Fake")).onlyThread();
+        sut = factory.fromString(human).getThreads().where(nameIs("Fake")).onlyThread();
         assertEquals(Short.MIN_VALUE, (long) sut.getNid());
+
+        // Lowest value is an identifier like any other
+        String lowest = new JvmThread.Builder(Thread.currentThread()).setName("Lowest").setId(42).setTid(Long.MIN_VALUE).setNid(0).toString();
+        assertThat(lowest, containsString("tid=0x8000000000000000"));
+        runtime = factory.fromString(lowest);
+        sut = runtime.getThreads().where(nameIs("Lowest")).onlyThread();
+        assertEquals(Long.MIN_VALUE, (long) sut.getTid());
+        assertSame(sut, runtime.getThreadByTid(Long.MIN_VALUE));
     }
 
     @Test
@@ -1053,8 +1086,224 @@ public class ThreadDumpFactoryTest {
         assertEquals(Long.toHexString(ThreadDumpFactory.parseLong(top)), -494445558, ThreadDumpFactory.parseLong(top));
     }
 
+    @Test
+    public void parseLongIsConsistentWithBigInteger() throws Exception {
+        Random random = new Random(42);
+        String alphabet = "0123456789abcdefABCDEFx+-g ";
+        for (int i = 0; i < 100000; i++) {
+            StringBuilder sb = new StringBuilder(random.nextInt(5) == 0 ? "0x" : "");
+            int length = random.nextInt(40);
+            for (int j = 0; j < length; j++) {
+                sb.append(random.nextInt(10) == 0
+                        ? alphabet.charAt(random.nextInt(alphabet.length()))
+                        : alphabet.charAt(random.nextInt(16))
+                );
+            }
+            String value = sb.toString();
+
+            String hex = value.startsWith("0x") ? value.substring(2) : value;
+            Long expected;
+            try {
+                expected = new BigInteger(hex, 16).longValue();
+            } catch (NumberFormatException ex) {
+                expected = null;
+            }
+
+            Long actual;
+            try {
+                actual = ThreadDumpFactory.parseLong("[" + value + "]", 1, value.length() + 1);
+            } catch (NumberFormatException ex) {
+                actual = null;
+            }
+            assertEquals(value, expected, actual);
+        }
+    }
+
+    @Test
+    public void parsersProduceSameRuntime() throws Exception {
+        for (File log: resourceLogs()) {
+            for (boolean failOnErrors: new boolean[] {true, false}) {
+                String regex = render(new ThreadDumpFactory().failOnErrors(failOnErrors), log);
+                String streaming = render(new ThreadDumpFactory().failOnErrors(failOnErrors).streamingParser(true), log);
+                assertEquals(log.getName(), regex, streaming);
+            }
+        }
+    }
+
+    @Test
+    public void mappedFileProducesSameRuntime() throws Exception {
+        for (File log: resourceLogs()) {
+            for (boolean failOnErrors: new boolean[] {true, false}) {
+                ThreadDumpFactory factory = new ThreadDumpFactory().failOnErrors(failOnErrors);
+
+                String expected = render(factory, log);
+                assertEquals(log.getName(), expected, render(new ThreadDumpParser(failOnErrors, false, FrameInternPool.shared(), new StackTrie()), log, 1 << 20));
+                assertEquals(log.getName(), expected, render(new ThreadDumpParser(failOnErrors, false, FrameInternPool.shared(), new StackTrie()), log, 1 << 10));
+
+                try {
+                    ThreadDumpRuntime runtime = factory.fromMappedFile(log);
+                    assertEquals(log.getName(), expected, render(runtime));
+                } catch (IllegalRuntimeStateException ex) {
+                    assertEquals(log.getName(), expected, ex.getMessage());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void mappedFileWithNonAsciiName() throws Exception {
+        String dump = "\"Vl\u00e1kno\" prio=10 tid=0x00007f1234567800 nid=0x1234 runnable [0x00007f1234567000]\n"
+                + "   java.lang.Thread.State: RUNNABLE\n"
+                + "\tat java.lang.Thread.run(Thread.java:745)\n"
+        ;
+        assumeTrue(Charset.defaultCharset().newEncoder().canEncode(dump));
+        File file = Util.asFile(new ByteArrayInputStream(dump.getBytes()));
+
+        ThreadDumpThread thread = factory.fromMappedFile(file).getThreads().onlyThread();
+        assertThat(thread.getName(), equalTo("Vl\u00e1kno"));
+        assertThat(thread.getStackTrace().getElement(0).getMethodName(), equalTo("run"));
+    }
+
+    @Test
+    public void parallelParsingProducesSameRuntime() throws Exception {
+        for (File log: resourceLogs()) {
+            for (boolean failOnErrors: new boolean[] {true, false}) {
+                String expected = render(new ThreadDumpFactory().failOnErrors(failOnErrors), log);
+                for (int parallelism: new int[] {2, 7}) {
+                    String actual = render(new ThreadDumpFactory().failOnErrors(failOnErrors).parallelism(parallelism), log);
+                    assertEquals(log.getName(), expected, actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void parallelParsingIsDeterministic() throws Exception {
+        String dump = syntheticDump(5000, null);
+        ThreadDumpRuntime expected = new ThreadDumpFactory().failOnErrors(true).fromString(dump);
+        assertEquals(5000, expected.getThreads().size());
+
+        for (int i = 0; i < 5; i++) {
+            ThreadDumpRuntime actual = new ThreadDumpFactory().failOnErrors(true).parallelism(4).fromString(dump);
+            assertEquals(render(expected), render(actual));
+            assertThat(new ArrayList<ThreadDumpThread>(actual.getThreads().getThreadsAsSet()), equalTo(new ArrayList<ThreadDumpThread>(expected.getThreads().getThreadsAsSet())));
+        }
+    }
+
+    @Test
+    public void parallelParsingReportsFirstFailure() throws Exception {
+        String dump = syntheticDump(3000, "Unknown chunk");
+        ThreadDumpFactory sequential = new ThreadDumpFactory().failOnErrors(true);
+        ThreadDumpFactory parallel = new ThreadDumpFactory().failOnErrors(true).parallelism(4);
+
+        try {
+            sequential.fromString(dump);
+            fail();
+        } catch (IllegalRuntimeStateException expected) {
+            try {
+                parallel.fromString(dump);
+                fail();
+            } catch (IllegalRuntimeStateException actual) {
+                assertEquals(expected.getMessage(), actual.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void lazyStackTracesProduceSameRuntime() throws Exception {
+        for (File log: resourceLogs()) {
+            for (boolean failOnErrors: new boolean[] {true, false}) {
+                String expected = render(new ThreadDumpFactory().failOnErrors(failOnErrors), log);
+                String lazy = render(new ThreadDumpFactory().failOnErrors(failOnErrors).lazyStackTraces(true), log);
+                assertEquals(log.getName(), expected, lazy);
+                String parallel = render(new ThreadDumpFactory().failOnErrors(failOnErrors).lazyStackTraces(true).parallelism(3), log);
+                assertEquals(log.getName(), expected, parallel);
+            }
+        }
+    }
+
+    @Test
+    public void lazyStackTraces() throws Exception {
+        String dump = syntheticDump(100, null);
+        ThreadDumpRuntime eager = new ThreadDumpFactory().failOnErrors(true).fromString(dump);
+        ThreadDumpRuntime lazy = new ThreadDumpFactory().failOnErrors(true).lazyStackTraces(true).fromString(dump);
+
+        ThreadDumpThread thread = lazy.getThreads().where(nameIs("thread-42")).onlyThread();
+        StackTrace trace = thread.getStackTrace();
+        assertThat(trace.size(), equalTo(3));
+        assertThat(trace.getHead(), equalTo(StackTrace.element("com.example.Worker3", "work", "Worker.java", 42)));
+        assertThat(only(thread.getAcquiredMonitors()).getId(), equalTo(0x3002aL));
+        assertThat(thread.getWaitingToLock().getId(), equalTo(0x30029L));
+
+        assertThat(lazy.getThreads().where(evaluating("com.example.Pool.run")).size(), equalTo(100));
+        assertThat(lazy.getThreads().where(evaluating("com.example.Worker3.work")).size(), equalTo(8));
+        for (ThreadDumpThread t: eager.getThreads()) {
+            assertThat(lazy.getThreads().where(nameIs(t.getName())).onlyThread().getStackTrace(), equalTo(t.getStackTrace()));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parallelismMustBePositive() {
+        new ThreadDumpFactory().parallelism(0);
+    }
+
+    // Generate dump with blocking chain optionally interrupted by unparsable chunk in the middle
+    private String syntheticDump(int threads, String garbage) {
+        StringBuilder sb = new StringBuilder("Full thread dump Synthetic VM:\n");
+        for (int i = 0; i < threads; i++) {
+            if (garbage != null && i == threads / 2) {
+                sb.append('\n').append(garbage).append('\n');
+            }
+            sb.append(String.format("%n\"thread-%d\" prio=5 tid=0x%x nid=0x%x ", i, 0x10000 + i, 0x20000 + i));
+            if (i == 0) {
+                sb.append("runnable\n   java.lang.Thread.State: RUNNABLE\n");
+            } else {
+                sb.append("waiting for monitor entry\n   java.lang.Thread.State: BLOCKED (on object monitor)\n");
+            }
+            sb.append(String.format("\tat com.example.Worker%d.work(Worker.java:%d)%n", i % 13, i % 100));
+            if (i != 0) {
+                sb.append(String.format("\t- waiting to lock <0x%x> (a java.lang.Object)%n", 0x30000 + i - 1));
+            }
+            sb.append(String.format("\tat com.example.Pool.run(Pool.java:42)%n"));
+            sb.append(String.format("\t- locked <0x%x> (a java.lang.Object)%n", 0x30000 + i));
+            sb.append("\tat java.lang.Thread.run(Thread.java:745)\n");
+        }
+        return sb.toString();
+    }
+
+    private List<File> resourceLogs() throws URISyntaxException {
+        File[] logs = new File(getClass().getResource(getClass().getSimpleName()).toURI()).listFiles();
+        assertThat(logs.length, Matchers.greaterThan(1));
+        return Arrays.asList(logs);
+    }
+
+    private String render(ThreadDumpParser parser, File log, int window) throws IOException {
+        FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.READ);
+        try {
+            return render(parser.parse(new ThreadDumpParser.MappedSource(channel, Charset.defaultCharset(), window)));
+        } catch (IllegalRuntimeStateException ex) {
+            return ex.getMessage();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private String render(ThreadDumpFactory factory, File log) throws IOException {
+        try {
+            return render(factory.fromFile(log));
+        } catch (IllegalRuntimeStateException ex) {
+            return ex.getMessage();
+        }
+    }
+
+    private String render(ThreadDumpRuntime runtime) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        runtime.toString(new PrintStream(baos), Mode.MACHINE);
+        return baos.toString();
+    }
+
     private ThreadDumpRuntime runtimeFrom(String resource) throws IOException, URISyntaxException {
-        return FACTORY.fromStream(Util.resource(getClass(), resource));
+        return factory.fromStream(Util.resource(getClass(), resource));
     }
 
     private ThreadDumpRuntime runtime(ThreadDumpThread.Builder... builders) {
@@ -1218,7 +1467,7 @@ public class ThreadDumpFactoryTest {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         actual.getThreads().toString(new PrintStream(baos), mode);
         ByteArrayInputStream stream = new ByteArrayInputStream(baos.toByteArray());
-        return FACTORY.fromStream(stream);
+        return factory.fromStream(stream);
     }
 
     // Deep equality for test purposes
@@ -0,0 +1,226 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.factory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.github.olivergondza.dumpling.Util;
+import com.github.olivergondza.dumpling.model.ModelObject.Mode;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+
+public class ThreadDumpFollowerTest {
+
+    @Test
+    public void followFromStart() throws Exception {
+        File log = log();
+        append(log, resource("jstack/concatenated.log"));
+
+        ThreadDumpFollower follower = new ThreadDumpFactory().failOnErrors(true).follow(log, true);
+        List<String> expected = new ArrayList<String>();
+        ThreadDumpIterator it = new ThreadDumpFactory().iterate(log);
+        while (it.hasNext()) {
+            expected.add(render(it.next()));
+        }
+
+        assertEquals(expected, renderAll(follower.poll()));
+        assertEquals("Nothing appended", 0, follower.poll().size());
+        follower.close();
+    }
+
+    @Test
+    public void followAppended() throws Exception {
+        File log = log();
+        append(log, resource("jstack/deadlock.log"));
+
+        ThreadDumpFollower follower = new ThreadDumpFactory().failOnErrors(true).follow(log, false);
+        assertEquals("Existing threaddump ignored", 0, follower.poll().size());
+
+        String dump = resource("jstack/blocking-chain.log") + "Heap\n def new generation\n";
+        int split = dump.indexOf("\tat ") + 5; // In the middle of a line
+        append(log, "INFO: Unrelated\n" + dump.substring(0, split));
+        assertEquals("Incomplete threaddump", 0, follower.poll().size());
+
+        append(log, dump.substring(split));
+        List<ThreadDumpRuntime> runtimes = follower.poll();
+        assertEquals(1, runtimes.size());
+        assertEquals(expected("jstack/blocking-chain.log"), render(runtimes.get(0)));
+        assertEquals("2014-08-23 21:40:03", runtimes.get(0).getHeader().get(0));
+
+        append(log, dump + dump);
+        assertEquals(2, follower.poll().size());
+        follower.close();
+    }
+
+    @Test
+    public void threaddumpCompletedByNextOne() throws Exception {
+        File log = log();
+        ThreadDumpFollower follower = new ThreadDumpFactory().failOnErrors(true).follow(log, false);
+
+        String dump = resource("jstack/producer-consumer.log");
+        String untrailed = dump.substring(0, dump.indexOf("JNI global"));
+        append(log, untrailed);
+        assertEquals(0, follower.poll().size());
+
+        append(log, untrailed);
+        List<ThreadDumpRuntime> runtimes = follower.poll();
+        assertEquals(1, runtimes.size());
+        // Timestamp preceding the next threaddump is not part of this one, it would fail the parser otherwise
+        assertEquals(expected("jstack/producer-consumer.log"), render(runtimes.get(0)));
+        follower.close();
+    }
+
+    @Test
+    public void rotation() throws Exception {
+        File log = log();
+        ThreadDumpFollower follower = new ThreadDumpFactory().failOnErrors(true).follow(log, false);
+
+        String dump = resource("jstack/producer-consumer.log");
+        append(log, dump.substring(0, dump.indexOf("JNI global")));
+        assertEquals(0, follower.poll().size());
+
+        File rotated = new File(log.getPath() + ".1");
+        rotated.deleteOnExit();
+        assertTrue(log.renameTo(rotated));
+        assertEquals("Not recreated yet", 0, follower.poll().size());
+
+        append(log, resource("jstack/blocking-chain.log"));
+        List<ThreadDumpRuntime> runtimes = follower.poll();
+        assertEquals(Arrays.asList(expected("jstack/producer-consumer.log"), expected("jstack/blocking-chain.log")), renderAll(runtimes));
+        follower.close();
+    }
+
+    @Test
+    public void truncation() throws Exception {
+        File log = log();
+        append(log, resource("jstack/deadlock.log"));
+        ThreadDumpFollower follower = new ThreadDumpFactory().failOnErrors(true).follow(log, true);
+        assertEquals(1, follower.poll().size());
+
+        RandomAccessFile file = new RandomAccessFile(log, "rw");
+        file.setLength(0);
+        file.close();
+        append(log, resource("jstack/blocking-chain.log"));
+
+        assertEquals(Arrays.asList(expected("jstack/blocking-chain.log")), renderAll(follower.poll()));
+        follower.close();
+    }
+
+    @Test
+    public void skipInvalidThreaddump() throws Exception {
+        File log = log();
+        append(log, "Full thread dump Truncated:\n\nJNI global references: 0\n" + resource("jstack/blocking-chain.log"));
+
+        assertEquals(1, new ThreadDumpFactory().follow(log, true).poll().size());
+
+        try {
+            new ThreadDumpFactory().failOnErrors(true).follow(log, true).poll();
+            fail();
+        } catch (IllegalRuntimeStateException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void follow() throws Exception {
+        File log = log();
+        final ThreadDumpFollower follower = new ThreadDumpFactory().follow(log, false).pollInterval(10);
+        final List<ThreadDumpRuntime> runtimes = new ArrayList<ThreadDumpRuntime>();
+        final CountDownLatch reported = new CountDownLatch(2);
+        Thread thread = new Thread("follower") {
+            @Override public void run() {
+                try {
+                    follower.follow(runtime -> {
+                        runtimes.add(runtime);
+                        reported.countDown();
+                    });
+                } catch (Exception ex) {
+                    throw new AssertionError(ex);
+                }
+            }
+        };
+        thread.start();
+
+        append(log, resource("jstack/blocking-chain.log"));
+        append(log, resource("jstack/producer-consumer.log"));
+        assertTrue(reported.await(10, TimeUnit.SECONDS));
+
+        follower.close();
+        thread.join(10000);
+        assertEquals(false, thread.isAlive());
+        assertEquals(Arrays.asList(expected("jstack/blocking-chain.log"), expected("jstack/producer-consumer.log")), renderAll(runtimes));
+    }
+
+    private static File log() throws IOException {
+        File log = File.createTempFile("dumpling", ".log");
+        log.deleteOnExit();
+        return log;
+    }
+
+    private static void append(File log, String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(log, true);
+        try {
+            out.write(content.getBytes());
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String resource(String name) {
+        return Util.asString(Util.resource(name));
+    }
+
+    private static String expected(String resource) {
+        return render(new ThreadDumpFactory().fromStream(Util.resource(resource)));
+    }
+
+    private static List<String> renderAll(List<ThreadDumpRuntime> runtimes) {
+        List<String> rendered = new ArrayList<String>();
+        for (ThreadDumpRuntime runtime: runtimes) {
+            rendered.add(render(runtime));
+        }
+        return rendered;
+    }
+
+    private static String render(ThreadDumpRuntime runtime) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        runtime.toString(new PrintStream(baos), Mode.MACHINE);
+        return baos.toString();
+    }
+}
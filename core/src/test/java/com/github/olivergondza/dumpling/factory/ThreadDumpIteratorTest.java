@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.factory;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.spy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.github.olivergondza.dumpling.Util;
+import com.github.olivergondza.dumpling.model.ModelObject.Mode;
+import com.github.olivergondza.dumpling.model.StackTrie;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+
+public class ThreadDumpIteratorTest {
+
+    private static final String[] DUMPS = {"jstack/blocking-chain.log", "jstack/blocking-tree.log", "jstack/producer-consumer.log"};
+
+    @Test
+    public void iterateFile() throws Exception {
+        File log = Util.asFile(Util.resource("jstack/concatenated.log"));
+        assertDumps(new ThreadDumpFactory().failOnErrors(true).iterate(log));
+    }
+
+    @Test
+    public void iterateStream() throws Exception {
+        assertDumps(new ThreadDumpFactory().failOnErrors(true).iterate(Util.resource("jstack/concatenated.log")));
+    }
+
+    @Test
+    public void stream() throws Exception {
+        InputStream log = spy(Util.resource("jstack/concatenated.log"));
+
+        List<String> timestamps = new ThreadDumpFactory().iterate(log).stream()
+                .map(runtime -> runtime.getHeader().get(0))
+                .collect(Collectors.toList())
+        ;
+        assertThat(timestamps, contains("2014-08-23 21:40:03", "2014-08-24 09:36:21", "2014-06-30 20:54:52"));
+
+        Mockito.verify(log).close();
+    }
+
+    @Test
+    public void closeStreamEarly() throws Exception {
+        InputStream log = spy(Util.resource("jstack/concatenated.log"));
+
+        ThreadDumpIterator it = new ThreadDumpFactory().iterate(log);
+        assertEquals(5, it.next().getThreads().size());
+        it.close();
+
+        Mockito.verify(log).close();
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void noThreaddumps() throws Exception {
+        ThreadDumpIterator it = new ThreadDumpFactory().iterate(new ByteArrayInputStream("No dump\nhere\n".getBytes()));
+        assertFalse(it.hasNext());
+        try {
+            it.next();
+            fail();
+        } catch (NoSuchElementException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void skipUnparsableThreaddump() throws Exception {
+        String log = "2014-08-23 21:40:01\nFull thread dump Truncated:\n\nINFO: Something else\n"
+                + Util.asString(Util.resource("jstack/blocking-chain.log"))
+        ;
+
+        ThreadDumpIterator it = new ThreadDumpFactory().iterate(new ByteArrayInputStream(log.getBytes()));
+        assertTrue(it.hasNext());
+        assertThat(it.next().getHeader().get(0), equalTo("2014-08-23 21:40:03"));
+        assertFalse(it.hasNext());
+
+        it = new ThreadDumpFactory().failOnErrors(true).iterate(new ByteArrayInputStream(log.getBytes()));
+        try {
+            it.hasNext();
+            fail();
+        } catch (IllegalRuntimeStateException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void shareConfiguredStackTrie() throws Exception {
+        String dump = Util.asString(Util.resource("jstack/blocking-chain.log"));
+
+        StackTrie single = new StackTrie();
+        new ThreadDumpFactory().stackTrie(single).fromStream(new ByteArrayInputStream(dump.getBytes()));
+
+        StackTrie shared = new StackTrie();
+        ThreadDumpIterator it = new ThreadDumpFactory().stackTrie(shared).iterate(new ByteArrayInputStream((dump + dump).getBytes()));
+        assertThat(it.stream().count(), equalTo(2L));
+        assertThat(shared.size(), equalTo(single.size()));
+    }
+
+    private void assertDumps(ThreadDumpIterator it) {
+        List<String> actual = new ArrayList<String>();
+        while (it.hasNext()) {
+            actual.add(render(it.next()));
+        }
+
+        List<String> expected = new ArrayList<String>();
+        for (String dump: DUMPS) {
+            expected.add(render(new ThreadDumpFactory().fromStream(Util.resource(dump))));
+        }
+
+        assertThat(actual, equalTo(expected));
+    }
+
+    private String render(ThreadDumpRuntime runtime) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        runtime.toString(new PrintStream(baos), Mode.MACHINE);
+        return baos.toString();
+    }
+}
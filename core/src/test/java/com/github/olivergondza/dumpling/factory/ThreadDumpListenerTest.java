@@ -0,0 +1,248 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.factory;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import com.github.olivergondza.dumpling.Util;
+import com.github.olivergondza.dumpling.model.StackTrace;
+import com.github.olivergondza.dumpling.model.ThreadLock;
+import com.github.olivergondza.dumpling.model.ThreadStatus;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
+
+public class ThreadDumpListenerTest {
+
+    private static final String[] DUMPS = {
+            "jstack/blocking-chain.log", "jstack/blocking-tree.log", "jstack/producer-consumer.log",
+            "jstack/deadlock-and-friends.log", "jstack/ReentrantReadWriteLock-parking-blockage-read.log"
+    };
+
+    @Test
+    public void countStates() throws Exception {
+        File log = Util.asFile(Util.resource("jstack/producer-consumer.log"));
+        final Map<ThreadStatus, Integer> states = new EnumMap<ThreadStatus, Integer>(ThreadStatus.class);
+        new ThreadDumpFactory().parse(log, new ThreadDumpListener() {
+            @Override
+            public void thread(
+                    @Nonnull String name, @CheckForNull Long id, @CheckForNull Long tid, @CheckForNull Long nid,
+                    @CheckForNull Integer priority, boolean daemon, @Nonnull ThreadStatus status
+            ) {
+                Integer count = states.get(status);
+                states.put(status, count == null ? 1 : count + 1);
+            }
+        });
+
+        Map<ThreadStatus, Integer> expected = new EnumMap<ThreadStatus, Integer>(ThreadStatus.class);
+        for (ThreadDumpThread thread: new ThreadDumpFactory().fromFile(log).getThreads()) {
+            Integer count = expected.get(thread.getStatus());
+            expected.put(thread.getStatus(), count == null ? 1 : count + 1);
+        }
+        assertThat(states, equalTo(expected));
+    }
+
+    @Test
+    public void eventOrder() {
+        String dump = "Full thread dump Synthetic VM:\n\n"
+                + "\"main\" daemon prio=5 tid=0x1 nid=0x2 in Object.wait()\n"
+                + "   java.lang.Thread.State: WAITING (on object monitor)\n"
+                + "\tat java.lang.Object.wait(Native Method)\n"
+                + "\t- waiting on <0x10> (a java.lang.Object)\n"
+                + "\tat a.B.c(B.java:1)\n"
+                + "\t- locked <0x11> (a java.lang.Object)\n"
+                + "\n"
+                + "   Locked ownable synchronizers:\n"
+                + "\t- <0x12> (a java.util.concurrent.locks.ReentrantLock$NonfairSync)\n"
+        ;
+
+        EventLog log = new EventLog();
+        new ThreadDumpFactory().failOnErrors(true).parse(new ByteArrayInputStream(dump.getBytes()), log);
+        assertThat(log.events, contains(
+                "header [Full thread dump Synthetic VM:]",
+                "thread main null 1 2 5 true IN_OBJECT_WAIT",
+                "frame 0 java.lang.Object.wait(Native Method)",
+                "frame 1 a.B.c(B.java:1)",
+                "acquiredLock 1 <0x11> (a java.lang.Object)",
+                "waitingOnLock <0x10> (a java.lang.Object)",
+                "ownableSynchronizer <0x12> (a java.util.concurrent.locks.ReentrantLock$NonfairSync)",
+                "threadEnd"
+        ));
+    }
+
+    @Test
+    public void eventsMatchRuntime() throws Exception {
+        for (String dump: DUMPS) {
+            File log = Util.asFile(Util.resource(dump));
+            EventLog expected = new EventLog();
+            ThreadDumpRuntime runtime = new ThreadDumpFactory().fromFile(log);
+            expected.header(runtime.getHeader());
+            for (ThreadDumpThread thread: runtime.getThreads()) {
+                expected.thread(thread);
+            }
+
+            EventLog actual = new EventLog(true);
+            new ThreadDumpFactory().parse(log, actual);
+            assertEquals(dump, expected.events, actual.events);
+        }
+    }
+
+    @Test
+    public void parallelReportsSameEvents() throws Exception {
+        for (String dump: DUMPS) {
+            File log = Util.asFile(Util.resource(dump));
+            EventLog sequential = new EventLog();
+            new ThreadDumpFactory().parse(log, sequential);
+
+            EventLog parallel = new EventLog();
+            new ThreadDumpFactory().parallelism(3).parse(log, parallel);
+            assertEquals(dump, sequential.events, parallel.events);
+
+            EventLog lazy = new EventLog();
+            new ThreadDumpFactory().lazyStackTraces(true).parse(log, lazy);
+            assertEquals(dump, sequential.events, lazy.events);
+        }
+    }
+
+    @Test(expected = IllegalRuntimeStateException.class)
+    public void noThreads() {
+        new ThreadDumpFactory().parse(new ByteArrayInputStream("Not a threaddump\n".getBytes()), new EventLog());
+    }
+
+    /**
+     * Record events as strings.
+     *
+     * Locks are reported in the order of acquisition, the set semantics of the model is applied when normalizing.
+     */
+    private static final class EventLog implements ThreadDumpListener {
+        private final List<String> events = new ArrayList<String>();
+        private final boolean normalize;
+
+        private final LinkedHashSet<ThreadLock> monitors = new LinkedHashSet<ThreadLock>();
+
+        private EventLog() {
+            this(false);
+        }
+
+        private EventLog(boolean normalize) {
+            this.normalize = normalize;
+        }
+
+        @Override
+        public void header(@Nonnull List<String> lines) {
+            events.add("header " + lines);
+        }
+
+        @Override
+        public void thread(
+                @Nonnull String name, @CheckForNull Long id, @CheckForNull Long tid, @CheckForNull Long nid,
+                @CheckForNull Integer priority, boolean daemon, @Nonnull ThreadStatus status
+        ) {
+            events.add(String.format("thread %s %s %s %s %s %s %s", name, id, tid, nid, priority, daemon, status.name()));
+        }
+
+        @Override
+        public void frame(@Nonnull StackTraceElement element, int depth) {
+            events.add("frame " + depth + " " + element);
+        }
+
+        @Override
+        public void acquiredLock(@Nonnull ThreadLock lock, int depth) {
+            if (normalize) {
+                monitors.add(lock);
+            } else {
+                events.add("acquiredLock " + depth + " " + lock);
+            }
+        }
+
+        @Override
+        public void waitingToLock(@Nonnull ThreadLock lock) {
+            flushMonitors();
+            events.add("waitingToLock " + lock);
+        }
+
+        @Override
+        public void waitingOnLock(@Nonnull ThreadLock lock) {
+            flushMonitors();
+            events.add("waitingOnLock " + lock);
+        }
+
+        @Override
+        public void ownableSynchronizer(@Nonnull ThreadLock lock) {
+            flushMonitors();
+            events.add("ownableSynchronizer " + lock);
+        }
+
+        @Override
+        public void threadEnd() {
+            flushMonitors();
+            events.add("threadEnd");
+        }
+
+        private void flushMonitors() {
+            for (ThreadLock monitor: monitors) {
+                events.add("acquiredLock " + monitor);
+            }
+            monitors.clear();
+        }
+
+        // Report thread from the model
+        private void thread(ThreadDumpThread thread) {
+            thread(
+                    thread.getName(), thread.getId(), thread.getTid(), thread.getNid(),
+                    thread.getPriority(), thread.isDaemon(), thread.getStatus()
+            );
+            StackTrace trace = thread.getStackTrace();
+            stackTrace(trace);
+            for (ThreadLock monitor: thread.getAcquiredMonitors()) {
+                events.add("acquiredLock " + monitor);
+            }
+            if (thread.getWaitingToLock() != null) {
+                waitingToLock(thread.getWaitingToLock());
+            }
+            if (thread.getWaitingOnLock() != null) {
+                waitingOnLock(thread.getWaitingOnLock());
+            }
+            for (ThreadLock synchronizer: thread.getAcquiredSynchronizers()) {
+                ownableSynchronizer(synchronizer);
+            }
+            threadEnd();
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package com.github.olivergondza.dumpling.model;
 
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 
 import org.junit.Test;
 
@@ -14,6 +19,7 @@ import com.github.olivergondza.dumpling.model.ThreadLock.Monitor;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread.Builder;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThreadSet;
 
 public class ProcessRuntimeTest {
 
@@ -53,4 +59,77 @@ public class ProcessRuntimeTest {
             ));
         }
     }
+
+    @Test
+    public void lookupByIdentifiers() {
+        LinkedHashSet<Builder> set = new LinkedHashSet<ThreadDumpThread.Builder>();
+        set.add(new ThreadDumpThread.Builder().setId(1).setNid(10).setTid(100).setName("a"));
+        set.add(new ThreadDumpThread.Builder().setId(2).setNid(10).setName("b"));
+        set.add(new ThreadDumpThread.Builder().setNid(30).setName("c"));
+        set.add(new ThreadDumpThread.Builder().setId(Long.MIN_VALUE).setNid(0).setName("d"));
+        ThreadDumpRuntime runtime = new ThreadDumpRuntime(set, Arrays.asList("Fake"));
+        ThreadDumpThreadSet threads = runtime.getThreads();
+        ThreadDumpThread a = threads.where(ProcessThread.nameIs("a")).onlyThread();
+        ThreadDumpThread b = threads.where(ProcessThread.nameIs("b")).onlyThread();
+        ThreadDumpThread c = threads.where(ProcessThread.nameIs("c")).onlyThread();
+
+        assertSame(a, runtime.getThreadById(1));
+        assertSame(b, runtime.getThreadById(2));
+        assertSame(a, runtime.getThreadByTid(100));
+        assertSame(c, runtime.getThreadByNid(30));
+        assertEquals(null, runtime.getThreadById(3));
+        assertEquals(null, runtime.getThreadByTid(10));
+        assertSame(threads.where(ProcessThread.nameIs("d")).onlyThread(), runtime.getThreadById(Long.MIN_VALUE));
+        assertSame(threads.where(ProcessThread.nameIs("d")).onlyThread(), runtime.getThreadByNid(0));
+        assertEquals(null, runtime.getThreadByTid(0));
+
+        // First in runtime order, unless not part of the set
+        assertSame(a, runtime.getThreadByNid(10));
+        assertSame(a, threads.getThreadByNid(10));
+        assertSame(b, threads.ignoring(threads.where(ProcessThread.nameIs("a"))).getThreadByNid(10));
+        assertEquals(null, threads.where(ProcessThread.nameIs("c")).getThreadByNid(10));
+        assertEquals(null, runtime.getEmptyThreadSet().getThreadById(1));
+    }
+
+    @Test
+    public void lookupCollidingIdentifiers() {
+        LinkedHashSet<Builder> set = new LinkedHashSet<ThreadDumpThread.Builder>();
+        for (int i = 0; i < 1000; i++) {
+            set.add(new ThreadDumpThread.Builder().setNid(i * 1024L).setName("t" + i));
+        }
+        ThreadDumpRuntime runtime = new ThreadDumpRuntime(set, Arrays.asList("Fake"));
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("t" + i, runtime.getThreadByNid(i * 1024L).getName());
+            assertEquals(null, runtime.getThreadByNid(i * 1024L + 1));
+        }
+    }
+
+    @Test
+    public void fingerprint() {
+        ThreadDumpRuntime runtime = fingerprintRuntime(5, "Captured now");
+        ThreadDumpRuntime same = fingerprintRuntime(5, "Captured later");
+        ThreadDumpRuntime changed = fingerprintRuntime(10, "Captured now");
+
+        assertEquals(runtime.getFingerprint(), same.getFingerprint());
+        assertThat(changed.getFingerprint(), not(equalTo(runtime.getFingerprint())));
+
+        ThreadDumpThread a = runtime.getThreadById(1);
+        ThreadDumpThread b = runtime.getThreadById(2);
+        assertEquals(a.getFingerprint(), same.getThreadById(1).getFingerprint());
+        assertEquals(a.getFingerprint(), changed.getThreadById(1).getFingerprint());
+        assertThat(b.getFingerprint(), not(equalTo(changed.getThreadById(2).getFingerprint())));
+        // Same stack and state, different thread
+        assertThat(b.getFingerprint(), not(equalTo(a.getFingerprint())));
+    }
+
+    private ThreadDumpRuntime fingerprintRuntime(int priority, String header) {
+        StackTraceElement ste = new StackTraceElement("java.lang.Object", "wait", "Object.java", 42);
+        LinkedHashSet<Builder> set = new LinkedHashSet<ThreadDumpThread.Builder>();
+        set.add(new ThreadDumpThread.Builder().setId(1).setName("a").setStacktrace(ste)
+                .setAcquiredMonitors(new Monitor(new ThreadLock("java.lang.Object", 42), 0))
+        );
+        set.add(new ThreadDumpThread.Builder().setId(2).setName("b").setStacktrace(ste).setPriority(priority));
+        return new ThreadDumpRuntime(set, Arrays.asList(header));
+    }
 }
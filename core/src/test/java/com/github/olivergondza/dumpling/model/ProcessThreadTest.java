@@ -24,6 +24,8 @@
 package com.github.olivergondza.dumpling.model;
 
 import static com.github.olivergondza.dumpling.model.ProcessThread.acquiredLock;
+import static com.github.olivergondza.dumpling.model.ProcessThread.evaluating;
+import static com.github.olivergondza.dumpling.model.ProcessThread.evaluatingClass;
 import static com.github.olivergondza.dumpling.model.ProcessThread.nameIs;
 import static com.github.olivergondza.dumpling.model.ProcessThread.waitingToLock;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -33,6 +35,7 @@ import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashSet;
@@ -43,6 +46,7 @@ import com.github.olivergondza.dumpling.Util;
 import com.github.olivergondza.dumpling.factory.IllegalRuntimeStateException;
 import com.github.olivergondza.dumpling.factory.ThreadDumpFactory;
 import com.github.olivergondza.dumpling.factory.ThreadDumpFactoryTest;
+import com.github.olivergondza.dumpling.model.ModelObject.Mode;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpThreadSet;
@@ -92,6 +96,31 @@ public class ProcessThreadTest {
         assertThat(threads.where(nameIs("owning_thread")), equalTo(threads.where(acquiredLock("hudson.model.Queue"))));
     }
 
+    @Test
+    public void filterByStackContent() {
+        ThreadDumpThreadSet threads = factory.fromStream(Util.resource("jstack/producer-consumer.log")).getThreads();
+        ThreadDumpThreadSet blocked = threads.where(nameIs("blocked_thread"));
+        ThreadDumpThreadSet owning = threads.where(nameIs("owning_thread"));
+
+        assertThat(threads.where(evaluating("hudson.model.Queue.getItem")), equalTo(blocked));
+        assertThat(threads.where(evaluating("hudson.model.Queue.getItem", 0)), equalTo(blocked));
+        assertThat(threads.where(evaluating("hudson.model.AbstractProject.getQueueItem", 0)), equalTo(threads.getProcessRuntime().getEmptyThreadSet()));
+        assertThat(threads.where(evaluating("hudson.model.AbstractProject.getQueueItem", 1)), equalTo(blocked));
+        assertThat(threads.where(evaluating("hudson.model.Queue.maintain", 5)), equalTo(owning));
+        assertThat(threads.where(evaluating("hudson.model.Queue.maintain", 4)), equalTo(threads.getProcessRuntime().getEmptyThreadSet()));
+        assertThat(threads.where(evaluating("hudson.model.Queue")), equalTo(threads.getProcessRuntime().getEmptyThreadSet()));
+
+        assertThat(threads.where(evaluatingClass("org.jvnet.localizer.")), equalTo(owning));
+        assertThat(threads.where(evaluatingClass("hudson.matrix.DefaultMatrix")), equalTo(blocked));
+        assertThat(threads.where(evaluatingClass("hudson.model.Queue")).size(), equalTo(2));
+        assertThat(blocked.where(evaluatingClass("org.jvnet")), equalTo(threads.getProcessRuntime().getEmptyThreadSet()));
+
+        // Same outcome thread by thread
+        assertThat(evaluating("hudson.model.Queue.maintain", 5).isValid(owning.onlyThread()), equalTo(true));
+        assertThat(evaluating("hudson.model.Queue.maintain", 4).isValid(owning.onlyThread()), equalTo(false));
+        assertThat(evaluatingClass("org.jvnet.localizer.").isValid(blocked.onlyThread()), equalTo(false));
+    }
+
     @Test
     public void parkingBlockage() {
         ThreadDumpRuntime rl = factory.fromStream(Util.resource("jstack/ReentrantLock-parking-blockage.log"));
@@ -109,6 +138,97 @@ public class ProcessThreadTest {
         assertEquals("Thread-1", rlb.onlyThread().getBlockingThread().getName());
     }
 
+    @Test
+    public void blockingRelations() {
+        ThreadLock monitor = new ThreadLock("java.lang.Object", 1);
+        ThreadLock synchronizer = new ThreadLock("java.util.concurrent.locks.ReentrantLock$NonfairSync", 2);
+        ThreadDumpThreadSet threads = runtime(
+                new ThreadDumpThread.Builder().setName("parked").setId(1).setThreadStatus(ThreadStatus.PARKED).setWaitingOnLock(synchronizer),
+                new ThreadDumpThread.Builder().setName("owner").setId(2).setThreadStatus(ThreadStatus.RUNNABLE)
+                        .setStacktrace(StackTrace.element("Owner", "a"), StackTrace.element("Owner", "b"))
+                        .setAcquiredMonitors(new ThreadLock.Monitor(monitor, 0), new ThreadLock.Monitor(monitor, 1))
+                        .setAcquiredSynchronizers(synchronizer),
+                new ThreadDumpThread.Builder().setName("blocked").setId(3).setThreadStatus(ThreadStatus.BLOCKED).setWaitingToLock(monitor),
+                new ThreadDumpThread.Builder().setName("idle").setId(4).setThreadStatus(ThreadStatus.RUNNABLE)
+        ).getThreads();
+
+        ThreadDumpThread owner = threads.where(nameIs("owner")).onlyThread();
+        ThreadDumpThread parked = threads.where(nameIs("parked")).onlyThread();
+        ThreadDumpThread blocked = threads.where(nameIs("blocked")).onlyThread();
+        ThreadDumpThread idle = threads.where(nameIs("idle")).onlyThread();
+
+        assertEquals(owner, parked.getBlockingThread());
+        assertEquals(owner, blocked.getBlockingThread());
+        assertEquals(null, owner.getBlockingThread());
+        assertEquals(null, idle.getBlockingThread());
+
+        // In runtime order
+        assertEquals(Arrays.asList(parked, blocked), new ArrayList<ThreadDumpThread>(owner.getBlockedThreads().getThreadsAsSet()));
+        assertEquals(threads.getProcessRuntime().getEmptyThreadSet(), idle.getBlockedThreads());
+
+        // Only threads blocked acquiring monitors
+        assertEquals(threads.where(nameIs("blocked")), threads.where(nameIs("owner")).getBlockedThreads());
+        assertEquals(threads.where(nameIs("owner")), threads.where(nameIs("blocked")).getBlockingThreads());
+        assertEquals(threads.getProcessRuntime().getEmptyThreadSet(), threads.where(nameIs("parked")).getBlockingThreads());
+    }
+
+    @Test
+    public void detachedFromBuilder() {
+        ThreadLock lock = new ThreadLock("java.lang.Object", 1);
+        ThreadDumpThread.Builder builder = new ThreadDumpThread.Builder().setName("t").setNid(42).setThreadStatus(ThreadStatus.RUNNABLE)
+                .setStacktrace(StackTrace.element("Owner", "a"))
+                .setAcquiredMonitors(new ThreadLock.Monitor(lock, 0))
+        ;
+        ThreadDumpThread thread = runtime(builder).getThreads().onlyThread();
+        builder.setName("other").setId(1).setTid(2).setPriority(3).setThreadStatus(ThreadStatus.BLOCKED).setAcquiredMonitors();
+
+        assertEquals("t", thread.getName());
+        assertEquals(Long.valueOf(42), thread.getNid());
+        assertEquals(null, thread.getId());
+        assertEquals(null, thread.getTid());
+        assertEquals(null, thread.getPriority());
+        assertEquals(ThreadStatus.RUNNABLE, thread.getStatus());
+        assertEquals(Collections.singleton(lock), thread.getAcquiredMonitors());
+        assertEquals(Collections.emptySet(), thread.getAcquiredSynchronizers());
+
+        assertThat(thread.toString(), equalTo(String.format(
+                "\"t\" nid=42%n   java.lang.Thread.State: RUNNABLE%n\tat Owner.a(Unknown Source)%n\t- locked <0x1> (a java.lang.Object)"
+        )));
+    }
+
+    @Test
+    public void printMonitorsAcquiredOutOfOrder() {
+        ThreadLock outer = new ThreadLock("java.lang.Object", 1);
+        ThreadLock inner = new ThreadLock("java.lang.Object", 2);
+        ThreadLock sync = new ThreadLock("java.util.concurrent.locks.ReentrantLock$NonfairSync", 0xabcdef);
+        ThreadDumpThread.Builder builder = new ThreadDumpThread.Builder().setName("t").setId(7).setTid(-1).setNid(255)
+                .setDaemon(true).setPriority(5).setThreadStatus(ThreadStatus.RUNNABLE)
+                .setStacktrace(
+                        StackTrace.nativeElement("Inner", "n"),
+                        StackTrace.element("Middle", "m", "Middle.java"),
+                        StackTrace.element("Outer", "o", "Outer.java", 42)
+                )
+                .setAcquiredMonitors(new ThreadLock.Monitor(outer, 2), new ThreadLock.Monitor(inner, 0))
+                .setAcquiredSynchronizers(sync)
+        ;
+        ThreadDumpThread thread = runtime(builder).getThreads().onlyThread();
+
+        String body = "%n   java.lang.Thread.State: RUNNABLE"
+                + "%n\tat Inner.n(Native Method)%n\t- locked <0x%s> (a java.lang.Object)"
+                + "%n\tat Middle.m(Middle.java)"
+                + "%n\tat Outer.o(Outer.java:42)%n\t- locked <0x%s> (a java.lang.Object)"
+                + "%n%n   Locked ownable synchronizers:%n\t- <0x%s> (a java.util.concurrent.locks.ReentrantLock$NonfairSync)%n"
+        ;
+        assertThat(thread.toString(), equalTo(String.format(
+                "\"t\" #7 daemon prio=5 tid=0xffffffffffffffff nid=255" + body, "2", "1", "abcdef"
+        )));
+        assertThat(thread.toString(Mode.MACHINE), equalTo(String.format(
+                "\"t\" #7 daemon prio=5 tid=0xffffffffffffffff nid=0xff" + body,
+                "0000000000000002", "0000000000000001", "0000000000abcdef"
+        )));
+        assertThat(builder.toString(), equalTo(thread.toString()));
+    }
+
     @Test @SuppressWarnings("null")
     public void failSanityCheck() {
         try {
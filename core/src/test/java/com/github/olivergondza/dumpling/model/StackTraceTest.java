@@ -25,10 +25,14 @@ package com.github.olivergondza.dumpling.model;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.nullValue;
 
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
 
 import org.junit.Test;
 
@@ -64,4 +68,68 @@ public class StackTraceTest {
 
         assertThat(st.toString(), equalTo(String.format("%n\tat Yyy.xxx(Yyy.java:42)%n\tat Yyy.xxx(Yyy.java)%n")));
     }
+
+    @Test
+    public void lazy() {
+        final StackTraceElement[] elements = new StackTraceElement[] {
+                ELEMENT, StackTrace.element("Yyy", "yyy"), StackTrace.element("Yyy", "zzz")
+        };
+        final AtomicInteger resolved = new AtomicInteger();
+        StackTrace lazy = StackTrace.lazy(3, ELEMENT, new StackTrace.Resolver() {
+            @Override
+            public @Nonnull StackTraceElement[] resolve() {
+                resolved.incrementAndGet();
+                return elements;
+            }
+        });
+
+        assertThat(lazy.size(), equalTo(3));
+        assertThat(lazy.getHead(), sameInstance(ELEMENT));
+        assertThat(lazy.getElement(3), nullValue());
+        assertThat(resolved.get(), equalTo(0));
+
+        assertThat(lazy.getElement(2), equalTo(elements[2]));
+        assertThat(lazy, equalTo(new StackTrace(elements)));
+        assertThat(lazy.toString(), equalTo(new StackTrace(elements).toString()));
+        assertThat(resolved.get(), equalTo(1));
+    }
+
+    @Test
+    public void fingerprint() {
+        final StackTraceElement[] elements = new StackTraceElement[] {
+                StackTrace.element("Yyy", "xxx", "Yyy.java", 42), StackTrace.element("Yyy", "xxx")
+        };
+        StackTrace plain = new StackTrace(elements);
+        StackTrace shared = new StackTrie().trace(elements);
+        StackTrace lazy = StackTrace.lazy(2, elements[0], new StackTrace.Resolver() {
+            @Override
+            public @Nonnull StackTraceElement[] resolve() {
+                return elements;
+            }
+        });
+
+        // Stored fingerprints must not change between processes or versions
+        assertThat(plain.getFingerprint(), equalTo(0xcc8f56c4d84e362bL));
+        assertThat(shared.getFingerprint(), equalTo(plain.getFingerprint()));
+        assertThat(lazy.getFingerprint(), equalTo(plain.getFingerprint()));
+        assertThat(new StackTrace().getFingerprint(), equalTo(0xb992b056e7d8a844L));
+
+        StackTrace otherLine = new StackTrace(StackTrace.element("Yyy", "xxx", "Yyy.java", 43), elements[1]);
+        StackTrace reversed = new StackTrace(elements[1], elements[0]);
+        StackTrace suffix = new StackTrace(elements[1]);
+        assertThat(otherLine.getFingerprint(), not(equalTo(plain.getFingerprint())));
+        assertThat(reversed.getFingerprint(), not(equalTo(plain.getFingerprint())));
+        assertThat(suffix.getFingerprint(), not(equalTo(plain.getFingerprint())));
+        assertThat(otherLine, not(equalTo(plain)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void lazySizeMismatch() {
+        StackTrace.lazy(2, ELEMENT, new StackTrace.Resolver() {
+            @Override
+            public @Nonnull StackTraceElement[] resolve() {
+                return new StackTraceElement[] { ELEMENT };
+            }
+        }).getElements();
+    }
 }
@@ -0,0 +1,163 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.model;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import com.github.olivergondza.dumpling.Util;
+import com.github.olivergondza.dumpling.factory.ThreadDumpFactory;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
+
+public class StackTrieTest {
+
+    private static final StackTraceElement RUN = StackTrace.element("java.lang.Thread", "run", "Thread.java", 745);
+    private static final StackTraceElement WORKER = StackTrace.element("java.util.concurrent.ThreadPoolExecutor", "runWorker");
+    private static final StackTraceElement TAKE = StackTrace.element("java.util.concurrent.LinkedBlockingQueue", "take");
+    private static final StackTraceElement POLL = StackTrace.element("java.util.concurrent.LinkedBlockingQueue", "poll");
+
+    @Test
+    public void shareOuterFrames() {
+        StackTrie trie = new StackTrie();
+        StackTrace taking = trie.trace(TAKE, WORKER, RUN);
+        StackTrace polling = trie.trace(POLL, WORKER, RUN);
+        StackTrace running = trie.trace(RUN);
+
+        assertThat(trie.size(), equalTo(4));
+        assertThat(taking, not(equalTo(polling)));
+        assertThat(trie.trace(TAKE, WORKER, RUN), equalTo(taking));
+        assertThat(trie.size(), equalTo(4));
+
+        assertThat(taking.size(), equalTo(3));
+        assertThat(taking.getHead(), equalTo(TAKE));
+        assertThat(taking.getElement(1), equalTo(WORKER));
+        assertThat(taking.getElement(2), equalTo(RUN));
+        assertThat(taking.getElement(3), nullValue());
+        assertThat(taking.getElements(), equalTo(Arrays.asList(TAKE, WORKER, RUN)));
+        assertThat(new ArrayList<StackTraceElement>(polling.getElements()), equalTo(Arrays.asList(POLL, WORKER, RUN)));
+        assertThat(running.getElements(), equalTo(Arrays.asList(RUN)));
+
+        assertThat(trie.trace(), equalTo(new StackTrace()));
+        assertThat(trie.size(), equalTo(4));
+    }
+
+    @Test
+    public void indexedAccess() {
+        StackTraceElement[] elements = new StackTraceElement[5000];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = StackTrace.element("Deep", "call" + i);
+        }
+        StackTrie trie = new StackTrie();
+        StackTrace deep = trie.trace(elements);
+        StackTrace shallow = trie.trace(Arrays.copyOfRange(elements, 4990, 5000));
+
+        List<StackTraceElement> deepElements = deep.getElements();
+        assertThat(deepElements instanceof RandomAccess, equalTo(true));
+        for (int i = 0; i < elements.length; i++) {
+            assertThat(deep.getElement(i), sameInstance(elements[i]));
+            assertThat(deepElements.get(i), sameInstance(elements[i]));
+        }
+        assertThat(deep.getElement(elements.length), nullValue());
+
+        // Shares the outer frames with the deep trace
+        assertThat(trie.size(), equalTo(5000));
+        assertThat(shallow.getElement(0), sameInstance(elements[4990]));
+        assertThat(shallow.getElement(9), sameInstance(elements[4999]));
+        assertThat(shallow.getElements(), equalTo(Arrays.asList(elements).subList(4990, 5000)));
+    }
+
+    @Test
+    public void consistentWithPlainTraces() {
+        StackTrace shared = new StackTrie().trace(TAKE, WORKER, RUN);
+        StackTrace plain = new StackTrace(TAKE, WORKER, RUN);
+        StackTrace otherTrie = new StackTrie().trace(Arrays.asList(TAKE, WORKER, RUN));
+
+        assertThat(shared, equalTo(plain));
+        assertThat(plain, equalTo(shared));
+        assertThat(shared.hashCode(), equalTo(plain.hashCode()));
+        assertThat(shared, equalTo(otherTrie));
+        assertThat(shared.hashCode(), equalTo(otherTrie.hashCode()));
+        assertThat(shared.toString(), equalTo(plain.toString()));
+
+        assertThat(shared, not(equalTo(new StackTrace(WORKER, TAKE, RUN))));
+        assertThat(shared, not(equalTo(new StackTrie().trace(POLL, WORKER, RUN))));
+    }
+
+    @Test
+    public void lazy() {
+        StackTrie trie = new StackTrie();
+        StackTrace eager = trie.trace(TAKE, WORKER, RUN);
+        StackTrace lazy = trie.lazy(3, TAKE, new StackTrace.Resolver() {
+            @Override
+            public @Nonnull StackTraceElement[] resolve() {
+                return new StackTraceElement[] { TAKE, WORKER, RUN };
+            }
+        });
+
+        assertThat(lazy.getHead(), equalTo(TAKE));
+        assertThat(lazy, equalTo(eager));
+        assertThat(trie.size(), equalTo(3));
+
+        Iterator<StackTraceElement> it = lazy.getElements().iterator();
+        assertThat(it.next(), sameInstance(TAKE));
+        assertThat(it.next(), sameInstance(WORKER));
+        assertThat(it.next(), sameInstance(RUN));
+    }
+
+    @Test
+    public void shareAcrossRuntimes() throws Exception {
+        StackTrie trie = new StackTrie();
+        ThreadDumpFactory factory = new ThreadDumpFactory().stackTrie(trie);
+        ThreadDumpRuntime runtime = factory.fromStream(Util.resource("jstack/deadlock.log"));
+
+        int frames = 0;
+        for (ThreadDumpThread thread: runtime.getThreads()) {
+            frames += thread.getStackTrace().size();
+        }
+        int shared = trie.size();
+        assertThat(shared, lessThan(frames));
+
+        ThreadDumpRuntime again = factory.streamingParser(true).lazyStackTraces(true).fromStream(Util.resource("jstack/deadlock.log"));
+        for (ThreadDumpThread thread: again.getThreads()) {
+            thread.getStackTrace().getElements();
+        }
+        assertThat(trie.size(), equalTo(shared));
+        assertThat(again.getThreads().toString(), equalTo(runtime.getThreads().toString()));
+    }
+}
@@ -26,15 +26,28 @@ package com.github.olivergondza.dumpling.model;
 import static com.github.olivergondza.dumpling.model.ProcessThread.nameContains;
 import static com.github.olivergondza.dumpling.model.ProcessThread.nameIs;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.startsWith;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 
 import com.github.olivergondza.dumpling.Util;
 import com.github.olivergondza.dumpling.factory.ThreadDumpFactory;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpThreadSet;
 
 public class ThreadSetTest {
@@ -50,4 +63,141 @@ public class ThreadSetTest {
         assertThat(root.getBlockedThreads(), equalTo(blocked));
         assertThat(root.getBlockingThreads(), equalTo(blocking));
     }
+
+    @Test
+    public void setAlgebra() throws Exception {
+        ThreadDumpThreadSet all = runtime(150).getThreads();
+        ThreadDumpThreadSet even = all.where(idDivisibleBy(2));
+        ThreadDumpThreadSet third = all.where(idDivisibleBy(3));
+
+        assertThat(even.size(), equalTo(75));
+        assertThat(third.size(), equalTo(50));
+        assertThat(even.union(third).size(), equalTo(100));
+        assertThat(even.intersection(third), equalTo(all.where(idDivisibleBy(6))));
+        assertThat(even.ignoring(third).size(), equalTo(50));
+        assertThat(all.ignoring(even), equalTo(all.where(new ProcessThread.Predicate() {
+            @Override public boolean isValid(ProcessThread<?, ?, ?> thread) {
+                return thread.getId() % 2 != 0;
+            }
+        })));
+
+        assertTrue(all.containsAll(third.getThreadsAsSet()));
+        assertTrue(even.containsAll(even.intersection(third).getThreadsAsSet()));
+        assertFalse(even.containsAll(third.getThreadsAsSet()));
+        assertTrue(third.contains(all.where(nameIs("t147")).onlyThread()));
+        assertFalse(third.contains(all.where(nameIs("t148")).onlyThread()));
+        assertFalse(third.contains("t147"));
+
+        assertThat(all.getProcessRuntime().getEmptyThreadSet(), equalTo(even.intersection(all.ignoring(even))));
+        assertThat(even.union(all.ignoring(even)), equalTo(all));
+    }
+
+    @Test
+    public void runtimeOrder() throws Exception {
+        ThreadDumpThreadSet all = runtime(130).getThreads();
+        List<ThreadDumpThread> reversed = new ArrayList<ThreadDumpThread>(all.getThreadsAsSet());
+        Collections.reverse(reversed);
+
+        ThreadDumpThreadSet derived = all.derive(reversed);
+        assertThat(derived, equalTo(all));
+        assertThat(derived.hashCode(), equalTo(all.hashCode()));
+        assertThat(new ArrayList<ThreadDumpThread>(derived.getThreadsAsSet()), equalTo(new ArrayList<ThreadDumpThread>(all.getThreadsAsSet())));
+
+        ThreadDumpThreadSet last = all.derive(reversed.subList(0, 3));
+        assertThat(last.iterator().next().getName(), equalTo("t127"));
+        assertThat(last.where(nameIs("t129")).onlyThread().getName(), equalTo("t129"));
+
+        // Insertion order is not preserved either
+        LinkedHashSet<ThreadDumpThread> inserted = new LinkedHashSet<ThreadDumpThread>(reversed.subList(0, 2));
+        List<String> names = new ArrayList<String>();
+        for (ThreadDumpThread thread: all.getProcessRuntime().getThreadSet(inserted)) {
+            names.add(thread.getName());
+        }
+        assertThat(names, equalTo(Arrays.asList("t128", "t129")));
+    }
+
+    @Test
+    public void rejectThreadsOfOtherRuntime() throws Exception {
+        ThreadDumpThreadSet threads = runtime(3).getThreads();
+        ThreadDumpThreadSet other = runtime(3).getThreads();
+
+        assertFalse(threads.contains(other.iterator().next()));
+        assertFalse(threads.equals(other));
+        try {
+            threads.derive(other.getThreadsAsSet());
+            fail();
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), startsWith("Thread is not part of the runtime: "));
+        }
+        try {
+            threads.getProcessRuntime().getThreadSet(Collections.singleton(other.iterator().next()));
+            fail();
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), startsWith("Thread is not part of the runtime: "));
+        }
+    }
+
+    @Test
+    public void streams() throws Exception {
+        ThreadDumpRuntime runtime = runtime(1000);
+        ThreadDumpThreadSet all = runtime.getThreads();
+        ThreadDumpThreadSet sparse = all.where(idDivisibleBy(7)).union(all.where(nameIs("t999")));
+
+        assertThat(all.stream().count(), equalTo(1000L));
+        assertThat(sparse.parallelStream().count(), equalTo((long) sparse.size()));
+        assertThat(all.parallelStream().mapToLong(ProcessThread::getId).sum(), equalTo(999L * 1000 / 2));
+        assertThat(sparse.stream().collect(Collectors.toList()), equalTo(new ArrayList<ThreadDumpThread>(sparse.getThreadsAsSet())));
+        assertThat(sparse.parallelStream().collect(Collectors.toList()), equalTo(new ArrayList<ThreadDumpThread>(sparse.getThreadsAsSet())));
+
+        assertThat(all.parallelStream().filter(t -> t.getId() % 3 == 0).collect(runtime.toThreadSet()), equalTo(all.where(idDivisibleBy(3))));
+        assertThat(sparse.stream().collect(runtime.toThreadSet()), equalTo(sparse));
+        assertThat(all.parallelWhere(idDivisibleBy(5)), equalTo(all.where(idDivisibleBy(5))));
+        assertThat(sparse.parallelWhere(idDivisibleBy(2)), equalTo(sparse.where(idDivisibleBy(2))));
+
+        try {
+            runtime(3).getThreads().stream().collect(runtime.toThreadSet());
+            fail();
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), startsWith("Thread is not part of the runtime: "));
+        }
+    }
+
+    @Test
+    public void splitEvenly() throws Exception {
+        ThreadDumpThreadSet all = runtime(1000).getThreads();
+        for (ThreadDumpThreadSet set: Arrays.asList(all, all.where(idDivisibleBy(7)), all.where(idDivisibleBy(500)), all.where(nameIs("t999")))) {
+            Spliterator<ThreadDumpThread> suffix = set.spliterator();
+            assertTrue(suffix.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.DISTINCT | Spliterator.IMMUTABLE | Spliterator.ORDERED));
+            assertThat(suffix.getExactSizeIfKnown(), equalTo((long) set.size()));
+
+            List<ThreadDumpThread> threads = new ArrayList<ThreadDumpThread>();
+            Spliterator<ThreadDumpThread> prefix = suffix.trySplit();
+            if (set.size() < 2) {
+                assertThat(prefix, equalTo(null));
+            } else {
+                assertThat(prefix.getExactSizeIfKnown(), equalTo((long) set.size() / 2));
+                assertThat(suffix.getExactSizeIfKnown(), equalTo((long) set.size() - set.size() / 2));
+                prefix.forEachRemaining(threads::add);
+            }
+            while (suffix.tryAdvance(threads::add));
+
+            assertThat(threads, equalTo(new ArrayList<ThreadDumpThread>(set.getThreadsAsSet())));
+        }
+    }
+
+    private ProcessThread.Predicate idDivisibleBy(final long divisor) {
+        return new ProcessThread.Predicate() {
+            @Override public boolean isValid(ProcessThread<?, ?, ?> thread) {
+                return thread.getId() % divisor == 0;
+            }
+        };
+    }
+
+    private ThreadDumpRuntime runtime(int size) {
+        Set<ThreadDumpThread.Builder> builders = new LinkedHashSet<ThreadDumpThread.Builder>(size);
+        for (int i = 0; i < size; i++) {
+            builders.add(new ThreadDumpThread.Builder().setName("t" + i).setId(i).setThreadStatus(ThreadStatus.RUNNABLE));
+        }
+        return new ThreadDumpRuntime(builders, Collections.singletonList("A Header"));
+    }
 }
@@ -0,0 +1,127 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.query;
+
+import static com.github.olivergondza.dumpling.ThreadDumpFixtures.blockedOn;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import org.junit.Test;
+
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThreadSet;
+
+/**
+ * Time blocking relation queries on a runtime with long blocking chains.
+ *
+ * Skipped unless <tt>DUMPLING_BENCHMARK</tt> environment variable is set.
+ */
+public class BlockingQueryBenchmark {
+
+    private static final int CHAIN = 49000;
+    private static final int PAIRS = 1000;
+    private static final int ROUNDS = 10;
+
+    @Test
+    public void deadlocks() {
+        assumeTrue(System.getenv("DUMPLING_BENCHMARK") != null);
+
+        ThreadDumpRuntime runtime = longChains();
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            int deadlocks = new Deadlocks().query(runtime.getThreads()).getDeadlocks().size();
+            long duration = System.nanoTime() - start;
+            assertEquals(PAIRS + 1, deadlocks);
+
+            System.out.printf(
+                    "%d threads: %d deadlocks detected in %d ms%n",
+                    runtime.getThreads().size(), deadlocks, duration / 1000000
+            );
+        }
+    }
+
+    @Test
+    public void blockingTree() {
+        assumeTrue(System.getenv("DUMPLING_BENCHMARK") != null);
+
+        ThreadDumpRuntime runtime = longChains();
+        // Deepest thread of the chain ending with a runnable thread
+        ThreadDumpThreadSet deepest = runtime.getThreadSet(Collections.singleton(runtime.getThreadById(0)));
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            int trees = new BlockingTree().query(runtime.getThreads()).getTrees().size();
+            long full = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int involved = new BlockingTree().query(deepest).involvedThreads().size();
+            long filtered = System.nanoTime() - start;
+            assertEquals(CHAIN, involved);
+
+            System.out.printf(
+                    "%d threads: %d trees built in %d ms, tree of the deepest thread in %d ms%n",
+                    runtime.getThreads().size(), trees, full / 1000000, filtered / 1000000
+            );
+        }
+    }
+
+    @Test
+    public void lockImpact() {
+        assumeTrue(System.getenv("DUMPLING_BENCHMARK") != null);
+
+        ThreadDumpRuntime runtime = longChains();
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            int blocked = new LockImpact().limit(1).query(runtime.getThreads()).getThreadImpacts().get(0).getBlocked();
+            long duration = System.nanoTime() - start;
+            assertEquals(CHAIN - 1, blocked);
+
+            System.out.printf(
+                    "%d threads: lock impact ranked in %d ms%n",
+                    runtime.getThreads().size(), duration / 1000000
+            );
+        }
+    }
+
+    /**
+     * Chain ending with a runnable thread, chain ending with a deadlock and deadlocked pairs.
+     */
+    private static ThreadDumpRuntime longChains() {
+        LinkedHashSet<ThreadDumpThread.Builder> builders = new LinkedHashSet<ThreadDumpThread.Builder>();
+        for (int i = 0; i < CHAIN; i++) {
+            builders.add(blockedOn(i, i == CHAIN - 1 ? -1 : i + 1));
+        }
+        for (int i = CHAIN; i < 2 * CHAIN; i++) {
+            builders.add(blockedOn(i, i == 2 * CHAIN - 1 ? i - 1 : i + 1));
+        }
+        for (int i = 2 * CHAIN; i < 2 * CHAIN + 2 * PAIRS; i += 2) {
+            builders.add(blockedOn(i, i + 1));
+            builders.add(blockedOn(i + 1, i));
+        }
+        return new ThreadDumpRuntime(builders, Collections.<String>emptyList());
+    }
+}
@@ -23,6 +23,7 @@
  */
 package com.github.olivergondza.dumpling.query;
 
+import static com.github.olivergondza.dumpling.ThreadDumpFixtures.blockedOn;
 import static com.github.olivergondza.dumpling.Util.resource;
 import static com.github.olivergondza.dumpling.model.ProcessThread.nameContains;
 import static com.github.olivergondza.dumpling.model.ProcessThread.nameIs;
@@ -34,6 +35,7 @@ import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.regex.Pattern;
 
@@ -193,6 +195,43 @@ public class BlockingTreeTest {
         verifyParkingBlockage("jstack/ReentrantReadWriteLock-parking-blockage-write.log");
     }
 
+    @Test
+    public void longBlockingChain() {
+        final int chain = 20000;
+        final int convoy = 10000;
+        LinkedHashSet<ThreadDumpThread.Builder> builders = new LinkedHashSet<ThreadDumpThread.Builder>();
+        for (int i = 0; i < chain; i++) {
+            builders.add(blockedOn(i, i - 1));
+        }
+        for (int i = chain; i < chain + convoy; i++) {
+            builders.add(blockedOn(i, 0));
+        }
+        ThreadDumpRuntime runtime = new ThreadDumpRuntime(builders, Collections.<String>emptyList());
+        ThreadDumpThread first = runtime.getThreadById(0);
+        ThreadDumpThread last = runtime.getThreadById(chain - 1);
+
+        BlockingTree.Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> full = new BlockingTree().query(runtime.getThreads());
+        BlockingTree.Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> bottom = new BlockingTree().query(
+                runtime.getThreadSet(Collections.singleton(last))
+        );
+
+        Tree<ThreadDumpThread> root = Util.only(full.getTrees());
+        assertThat(root.getRoot(), equalTo(first));
+        assertThat(root.getLeaves().size(), equalTo(convoy + 1));
+        assertThat(full.involvedThreads().size(), equalTo(chain + convoy));
+
+        Tree<ThreadDumpThread> tree = Util.only(bottom.getTrees());
+        assertThat(bottom.getRoots().onlyThread(), equalTo(first));
+        assertThat(bottom.involvedThreads().size(), equalTo(chain));
+        int depth = 1;
+        while (!tree.getLeaves().isEmpty()) {
+            tree = Util.only(tree.getLeaves());
+            depth++;
+        }
+        assertThat(tree.getRoot(), equalTo(last));
+        assertThat(depth, equalTo(chain));
+    }
+
     private void verifyParkingBlockage(String resource) {
         ThreadDumpRuntime rl = factory.fromStream(resource(resource));
         Tree<ThreadDumpThread> rlt = Util.only(new BlockingTree().query(rl.getThreads()).getTrees());
@@ -23,6 +23,7 @@
  */
 package com.github.olivergondza.dumpling.query;
 
+import static com.github.olivergondza.dumpling.ThreadDumpFixtures.blockedOn;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
@@ -30,6 +31,10 @@ import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import org.junit.Test;
@@ -162,6 +167,36 @@ public class DeadlocksTest {
         )));
     }
 
+    @Test
+    public void longBlockingChains() {
+        final int pairs = 1000;
+        final int chain = 49000;
+        LinkedHashSet<ThreadDumpThread.Builder> builders = new LinkedHashSet<ThreadDumpThread.Builder>();
+        // Chain ending with runnable thread
+        for (int i = 0; i < chain; i++) {
+            builders.add(blockedOn(i, i == chain - 1 ? -1 : i + 1));
+        }
+        // Chain ending with a deadlock
+        for (int i = chain; i < 2 * chain; i++) {
+            builders.add(blockedOn(i, i == 2 * chain - 1 ? i - 1 : i + 1));
+        }
+        for (int i = 2 * chain; i < 2 * chain + 2 * pairs; i += 2) {
+            builders.add(blockedOn(i, i + 1));
+            builders.add(blockedOn(i + 1, i));
+        }
+        ThreadDumpRuntime runtime = new ThreadDumpRuntime(builders, Collections.<String>emptyList());
+        assertThat(runtime.getThreads().size(), equalTo(100000));
+
+        Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> result = new Deadlocks().query(runtime.getThreads());
+
+        assertThat(result.getDeadlocks().size(), equalTo(pairs + 1));
+        assertThat(result.involvedThreads().size(), equalTo(2 * pairs + 2));
+        Iterator<ThreadDumpThreadSet> deadlocks = result.getDeadlocks().iterator();
+        assertThat(deadlocks.next(), equalTo(runtime.getThreadSet(Arrays.asList(
+                runtime.getThreadById(2 * chain - 2), runtime.getThreadById(2 * chain - 1)
+        ))));
+    }
+
     private Set<JvmThreadSet> deadlocks(JvmRuntime runtime) {
         return new Deadlocks().query(runtime.getThreads()).getDeadlocks();
     }
@@ -0,0 +1,205 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.query;
+
+import static com.github.olivergondza.dumpling.ThreadDumpFixtures.threads;
+import static com.github.olivergondza.dumpling.model.ProcessThread.nameIs;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.olivergondza.dumpling.Util;
+import com.github.olivergondza.dumpling.factory.ThreadDumpFactory;
+import com.github.olivergondza.dumpling.model.ModelObject.Mode;
+import com.github.olivergondza.dumpling.model.StackTrace;
+import com.github.olivergondza.dumpling.model.ThreadLock;
+import com.github.olivergondza.dumpling.model.ThreadStatus;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThreadSet;
+import com.github.olivergondza.dumpling.query.LockContention.Contention;
+import com.github.olivergondza.dumpling.query.LockContention.LockClass;
+import com.github.olivergondza.dumpling.query.LockContention.Result;
+
+public class LockContentionTest {
+
+    private final ThreadLock monitor = new ThreadLock("java.lang.Object", 1);
+    private final ThreadLock synchronizer = new ThreadLock("java.util.concurrent.locks.ReentrantLock$NonfairSync", 2);
+    private final ThreadLock queue = new ThreadLock("java.util.LinkedList", 3);
+    private final ThreadLock other = new ThreadLock("java.lang.Object", 4);
+
+    @Test
+    public void groupByLock() {
+        ThreadDumpRuntime runtime = runtime();
+
+        Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> result = new LockContention().query(runtime.getThreads());
+
+        List<Contention<ThreadDumpThreadSet, ThreadDumpThread>> contentions = result.getContentions();
+        assertThat(contentions.size(), equalTo(4));
+
+        Contention<ThreadDumpThreadSet, ThreadDumpThread> contention = contentions.get(0);
+        assertThat(contention.getLock(), equalTo(monitor));
+        assertThat(contention.getOwner(), equalTo(thread(runtime, "owner")));
+        assertThat(contention.getBlocked(), equalTo(threads(runtime, "blocked1", "blocked2")));
+        assertThat(contention.getWaiting().isEmpty(), equalTo(true));
+        assertThat(contention.getParked().isEmpty(), equalTo(true));
+        assertThat(contention.getWaiters(), equalTo(2));
+
+        // Monitor is released when waiting on it
+        contention = contentions.get(1);
+        assertThat(contention.getLock(), equalTo(queue));
+        assertThat(contention.getOwner(), nullValue());
+        assertThat(contention.getWaiting(), equalTo(threads(runtime, "waiting1", "waiting2")));
+        assertThat(contention.getWaiters(), equalTo(2));
+
+        contention = contentions.get(2);
+        assertThat(contention.getLock(), equalTo(synchronizer));
+        assertThat(contention.getOwner(), equalTo(thread(runtime, "owner")));
+        assertThat(contention.getParked(), equalTo(threads(runtime, "parked")));
+
+        contention = contentions.get(3);
+        assertThat(contention.getLock(), equalTo(other));
+        assertThat(contention.getOwner(), equalTo(thread(runtime, "idle")));
+        assertThat(contention.getBlocked(), equalTo(threads(runtime, "blocked3")));
+
+        List<LockClass> classes = result.getLockClasses();
+        assertThat(classes.size(), equalTo(3));
+        assertLockClass(classes.get(0), "java.lang.Object", 2, 3, 0, 0);
+        assertLockClass(classes.get(1), "java.util.LinkedList", 1, 0, 2, 0);
+        assertLockClass(classes.get(2), "java.util.concurrent.locks.ReentrantLock$NonfairSync", 1, 0, 0, 1);
+
+        assertThat(result.exitCode(), equalTo(4));
+        assertThat(result.involvedThreads().size(), equalTo(8));
+        assertThat(result.toString(), containsString(String.format("%nContended locks: 4; Waiting threads: 6%n")));
+    }
+
+    @Test
+    public void considerInputThreadsAsWaitersOnly() {
+        ThreadDumpRuntime runtime = runtime();
+
+        Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> result = new LockContention().query(
+                threads(runtime, "blocked2", "parked")
+        );
+
+        List<Contention<ThreadDumpThreadSet, ThreadDumpThread>> contentions = result.getContentions();
+        assertThat(contentions.size(), equalTo(2));
+        assertThat(contentions.get(0).getLock(), equalTo(monitor));
+        assertThat(contentions.get(0).getOwner(), equalTo(thread(runtime, "owner")));
+        assertThat(contentions.get(0).getBlocked(), equalTo(threads(runtime, "blocked2")));
+        assertThat(contentions.get(1).getLock(), equalTo(synchronizer));
+    }
+
+    @Test
+    public void porcelain() {
+        ThreadDumpRuntime runtime = runtime();
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        new LockContention().query(runtime.getThreads()).toString(new PrintStream(buffer), Mode.MACHINE);
+        String[] lines = buffer.toString().split(String.format("%n"));
+
+        assertThat(lines.length, equalTo(7));
+        assertThat(lines[0], equalTo("lock\tjava.lang.Object\t0x1\t2\t2\t0\t0\t" + header(thread(runtime, "owner"))));
+        assertThat(lines[1], equalTo("lock\tjava.util.LinkedList\t0x3\t2\t0\t2\t0\t"));
+        assertThat(lines[4], equalTo("class\tjava.lang.Object\t2\t3\t3\t0\t0"));
+        assertThat(lines[6], equalTo("class\tjava.util.concurrent.locks.ReentrantLock$NonfairSync\t1\t1\t0\t0\t1"));
+    }
+
+    @Test
+    public void threaddump() throws Exception {
+        ThreadDumpRuntime runtime = new ThreadDumpFactory().fromStream(Util.resource("jstack/ReentrantLock-parking-blockage.log"));
+
+        Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> result = new LockContention().query(runtime.getThreads());
+
+        assertThat(result.getContentions().size(), equalTo(3));
+        for (Contention<ThreadDumpThreadSet, ThreadDumpThread> contention: result.getContentions()) {
+            if (contention.getLock().getClassName().equals("java.util.concurrent.locks.ReentrantLock$NonfairSync")) {
+                assertThat(contention.getOwner().getName(), equalTo("Thread-1"));
+                assertThat(contention.getParked().onlyThread().getName(), equalTo("main"));
+            } else {
+                // Finalizer and Reference Handler in Object.wait()
+                assertThat(contention.getOwner(), nullValue());
+                assertThat(contention.getWaiting().size(), equalTo(1));
+            }
+        }
+    }
+
+    private void assertLockClass(LockClass lockClass, String className, int locks, int blocked, int waiting, int parked) {
+        assertThat(lockClass.getClassName(), equalTo(className));
+        assertThat(lockClass.getLocks(), equalTo(locks));
+        assertThat(lockClass.getBlocked(), equalTo(blocked));
+        assertThat(lockClass.getWaiting(), equalTo(waiting));
+        assertThat(lockClass.getParked(), equalTo(parked));
+        assertThat(lockClass.getWaiters(), equalTo(blocked + waiting + parked));
+    }
+
+    private ThreadDumpRuntime runtime() {
+        StackTraceElement[] trace = new StackTraceElement[] {
+                StackTrace.element("Worker", "a", "Worker.java", 1), StackTrace.element("Worker", "b", "Worker.java", 2)
+        };
+        LinkedHashSet<ThreadDumpThread.Builder> builders = new LinkedHashSet<ThreadDumpThread.Builder>(Arrays.asList(
+                new ThreadDumpThread.Builder().setName("owner").setId(0).setThreadStatus(ThreadStatus.RUNNABLE).setStacktrace(trace)
+                        .setAcquiredMonitors(new ThreadLock.Monitor(monitor, 1))
+                        .setAcquiredSynchronizers(synchronizer),
+                new ThreadDumpThread.Builder().setName("blocked1").setId(1).setThreadStatus(ThreadStatus.BLOCKED).setStacktrace(trace)
+                        .setWaitingToLock(monitor),
+                new ThreadDumpThread.Builder().setName("blocked2").setId(2).setThreadStatus(ThreadStatus.BLOCKED).setStacktrace(trace)
+                        .setWaitingToLock(monitor),
+                // Reported as locked in the outer frame
+                new ThreadDumpThread.Builder().setName("waiting1").setId(3).setThreadStatus(ThreadStatus.IN_OBJECT_WAIT).setStacktrace(trace)
+                        .setAcquiredMonitors(new ThreadLock.Monitor(queue, 1))
+                        .setWaitingOnLock(queue),
+                new ThreadDumpThread.Builder().setName("waiting2").setId(4).setThreadStatus(ThreadStatus.IN_OBJECT_WAIT_TIMED).setStacktrace(trace)
+                        .setWaitingOnLock(queue),
+                new ThreadDumpThread.Builder().setName("parked").setId(5).setThreadStatus(ThreadStatus.PARKED).setStacktrace(trace)
+                        .setWaitingOnLock(synchronizer),
+                new ThreadDumpThread.Builder().setName("idle").setId(6).setThreadStatus(ThreadStatus.RUNNABLE).setStacktrace(trace)
+                        .setAcquiredMonitors(new ThreadLock.Monitor(other, 0)),
+                new ThreadDumpThread.Builder().setName("blocked3").setId(7).setThreadStatus(ThreadStatus.BLOCKED).setStacktrace(trace)
+                        .setWaitingToLock(other),
+                new ThreadDumpThread.Builder().setName("sleeping").setId(8).setThreadStatus(ThreadStatus.SLEEPING).setStacktrace(trace)
+        ));
+        return new ThreadDumpRuntime(builders, Arrays.asList("header"));
+    }
+
+    private ThreadDumpThread thread(ThreadDumpRuntime runtime, String name) {
+        return runtime.getThreads().where(nameIs(name)).onlyThread();
+    }
+
+    private String header(ThreadDumpThread thread) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream stream = new PrintStream(buffer);
+        thread.printHeader(stream, Mode.MACHINE);
+        stream.flush();
+        return buffer.toString();
+    }
+}
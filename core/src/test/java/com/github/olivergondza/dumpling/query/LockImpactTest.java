@@ -0,0 +1,184 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.olivergondza.dumpling.query;
+
+import static com.github.olivergondza.dumpling.ThreadDumpFixtures.monitor;
+import static com.github.olivergondza.dumpling.ThreadDumpFixtures.thread;
+import static com.github.olivergondza.dumpling.ThreadDumpFixtures.threads;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.olivergondza.dumpling.model.ThreadLock;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThread;
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpThreadSet;
+import com.github.olivergondza.dumpling.query.LockImpact.Impact;
+import com.github.olivergondza.dumpling.query.LockImpact.Result;
+
+public class LockImpactTest {
+
+    @Test
+    public void rankConvoyRootFirst() {
+        ThreadDumpRuntime runtime = convoy();
+
+        Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> result = new LockImpact().query(runtime.getThreads());
+
+        List<Impact<ThreadDumpThread>> threads = result.getThreadImpacts();
+        assertThat(threads.size(), equalTo(4));
+        assertImpact(threads.get(0), runtime.getThreadById(0), null, 43, 3, 3);
+        assertImpact(threads.get(1), runtime.getThreadById(1), null, 40, 20, 2);
+        assertImpact(threads.get(2), runtime.getThreadById(43), null, 30, 30, 1);
+        assertImpact(threads.get(3), runtime.getThreadById(3), null, 20, 20, 1);
+
+        List<Impact<ThreadDumpThread>> locks = result.getLockImpacts();
+        assertThat(locks.size(), equalTo(5));
+        assertImpact(locks.get(0), runtime.getThreadById(0), monitor(100), 42, 2, 3);
+        assertImpact(locks.get(1), runtime.getThreadById(1), monitor(101), 40, 20, 2);
+        assertImpact(locks.get(2), runtime.getThreadById(43), monitor(143), 30, 30, 1);
+        assertImpact(locks.get(3), runtime.getThreadById(3), monitor(203), 20, 20, 1);
+        assertImpact(locks.get(4), runtime.getThreadById(0), monitor(99), 1, 1, 1);
+
+        assertThat(result.exitCode(), equalTo(4));
+        assertThat(result.getBlockers(), equalTo(threads(runtime, 0, 1, 3, 43)));
+
+        String out = result.toString();
+        assertThat(out, containsString(String.format("* \"t0\" #0%n  Blocked: 43; Directly: 3; Longest chain: 3%n")));
+        assertThat(out, containsString(String.format("* %s%n  Held by \"t1\" #1%n  Blocked: 40; Directly: 20; Longest chain: 2%n", monitor(101))));
+        assertThat(out, containsString(String.format("Blocking threads: 4; Blocking locks: 5; Blocked threads: 73%n")));
+    }
+
+    @Test
+    public void limit() {
+        ThreadDumpRuntime runtime = convoy();
+
+        Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> result = new LockImpact().limit(2).query(runtime.getThreads());
+
+        assertThat(result.getBlockers(), equalTo(threads(runtime, 0, 1)));
+        assertThat(result.getLockImpacts().size(), equalTo(2));
+        assertThat(result.getLockImpacts().get(1).getLock(), equalTo(monitor(101)));
+        assertThat(result.involvedThreads(), equalTo(threads(runtime, 0, 1)));
+        assertThat(result.exitCode(), equalTo(2));
+    }
+
+    @Test
+    public void considerInputThreadsAsOffendersOnly() {
+        ThreadDumpRuntime runtime = convoy();
+
+        Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> result = new LockImpact().query(threads(runtime, 3, 50));
+
+        assertThat(result.getThreadImpacts().size(), equalTo(1));
+        assertImpact(result.getThreadImpacts().get(0), runtime.getThreadById(3), null, 20, 20, 1);
+        assertThat(result.getLockImpacts().size(), equalTo(1));
+        assertImpact(result.getLockImpacts().get(0), runtime.getThreadById(3), monitor(203), 20, 20, 1);
+    }
+
+    @Test
+    public void collapseDeadlocks() {
+        LinkedHashSet<ThreadDumpThread.Builder> builders = new LinkedHashSet<ThreadDumpThread.Builder>();
+        builders.add(thread(0, 11, 10));
+        builders.add(thread(1, 10, 11));
+        builders.add(thread(2, 10));
+        ThreadDumpRuntime runtime = new ThreadDumpRuntime(builders, Collections.<String>emptyList());
+
+        Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> result = new LockImpact().query(runtime.getThreads());
+
+        List<Impact<ThreadDumpThread>> threads = result.getThreadImpacts();
+        assertThat(threads.size(), equalTo(2));
+        assertImpact(threads.get(0), runtime.getThreadById(0), null, 2, 2, 2);
+        assertImpact(threads.get(1), runtime.getThreadById(1), null, 2, 1, 2);
+
+        List<Impact<ThreadDumpThread>> locks = result.getLockImpacts();
+        assertThat(locks.size(), equalTo(2));
+        assertImpact(locks.get(0), runtime.getThreadById(1), monitor(11), 2, 1, 2);
+        assertImpact(locks.get(1), runtime.getThreadById(0), monitor(10), 2, 2, 1);
+    }
+
+    @Test
+    public void longChain() {
+        final int chain = 50000;
+        LinkedHashSet<ThreadDumpThread.Builder> builders = new LinkedHashSet<ThreadDumpThread.Builder>();
+        for (int i = 0; i < chain; i++) {
+            builders.add(thread(i, i - 1, i));
+        }
+        ThreadDumpRuntime runtime = new ThreadDumpRuntime(builders, Collections.<String>emptyList());
+
+        Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> result = new LockImpact().limit(1).query(runtime.getThreads());
+
+        assertImpact(result.getThreadImpacts().get(0), runtime.getThreadById(0), null, chain - 1, 1, chain - 1);
+        assertImpact(result.getLockImpacts().get(0), runtime.getThreadById(0), monitor(0), chain - 1, 1, chain - 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidLimit() {
+        new LockImpact().limit(0);
+    }
+
+    private void assertImpact(
+            Impact<ThreadDumpThread> impact, ThreadDumpThread thread, ThreadLock lock, int blocked, int directly, int chain
+    ) {
+        assertThat(impact.getThread(), equalTo(thread));
+        if (lock == null) {
+            assertThat(impact.getLock(), nullValue());
+        } else {
+            assertThat(impact.getLock(), equalTo(lock));
+        }
+        assertThat(impact.getBlocked(), equalTo(blocked));
+        assertThat(impact.getDirectlyBlocked(), equalTo(directly));
+        assertThat(impact.getLongestChain(), equalTo(chain));
+    }
+
+    /*
+     * 0 <- 1 <- 3 <- 23..42
+     *   |    <- 4..22
+     *   <- 2
+     *   <- 74 (on other lock)
+     * 43 <- 44..73
+     */
+    private ThreadDumpRuntime convoy() {
+        LinkedHashSet<ThreadDumpThread.Builder> builders = new LinkedHashSet<ThreadDumpThread.Builder>();
+        builders.add(thread(0, -1, 100, 99));
+        builders.add(thread(1, 100, 101));
+        builders.add(thread(2, 100, 102));
+        for (int i = 3; i < 23; i++) {
+            builders.add(thread(i, 101, 200 + i));
+        }
+        for (int i = 23; i < 43; i++) {
+            builders.add(thread(i, 203));
+        }
+        builders.add(thread(43, -1, 143));
+        for (int i = 44; i < 74; i++) {
+            builders.add(thread(i, 143));
+        }
+        builders.add(thread(74, 99));
+        return new ThreadDumpRuntime(builders, Collections.<String>emptyList());
+    }
+}
@@ -23,10 +23,18 @@
  */
 package com.github.olivergondza.dumpling.query;
 
+import static com.github.olivergondza.dumpling.ThreadDumpFixtures.blockedOn;
+import static com.github.olivergondza.dumpling.ThreadDumpFixtures.threads;
 import static com.github.olivergondza.dumpling.model.ProcessThread.nameIs;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.MatcherAssert.assertThat;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
 import org.junit.Test;
 
 import com.github.olivergondza.dumpling.Util;
@@ -61,4 +69,48 @@ public class TopContendersTest {
         assertThat(contenders.getBlockers().size(), equalTo(1));
         assertThat(contenders.blockedBy(producerProcessThread).size(), equalTo(3));
     }
+
+    @Test
+    public void rankContendersBlockingSameNumberOfThreads() throws Exception {
+        LinkedHashSet<ThreadDumpThread.Builder> builders = new LinkedHashSet<ThreadDumpThread.Builder>();
+        builders.add(blockedOn(0, -1));
+        builders.add(blockedOn(1, -1));
+        builders.add(blockedOn(2, -1));
+        builders.add(blockedOn(3, 0));
+        builders.add(blockedOn(4, 0));
+        builders.add(blockedOn(5, 1));
+        builders.add(blockedOn(6, 1));
+        builders.add(blockedOn(7, 1));
+        builders.add(blockedOn(8, 2));
+        builders.add(blockedOn(9, 2));
+        ThreadDumpRuntime runtime = new ThreadDumpRuntime(builders, Collections.<String>emptyList());
+
+        TopContenders.Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> all = new TopContenders().query(runtime.getThreads());
+        assertThat(all.getBlockers(), equalTo(threads(runtime, 0, 1, 2)));
+        assertThat(all.blockedBy(runtime.getThreadById(0)), equalTo(threads(runtime, 3, 4)));
+        assertThat(all.blockedBy(runtime.getThreadById(1)), equalTo(threads(runtime, 5, 6, 7)));
+        assertThat(all.blockedBy(runtime.getThreadById(2)), equalTo(threads(runtime, 8, 9)));
+        assertThat(all.blockedBy(runtime.getThreadById(3)), equalTo(null));
+        assertThat(all.exitCode(), equalTo(3));
+
+        String out = all.toString();
+        assertThat(out.indexOf("* \"t1\""), lessThan(out.indexOf("* \"t0\"")));
+        assertThat(out.indexOf("* \"t0\""), lessThan(out.indexOf("* \"t2\"")));
+        assertThat(out, containsString(String.format("Blocking threads: 3; Blocked threads: 7%n")));
+
+        TopContenders.Result<ThreadDumpThreadSet, ThreadDumpRuntime, ThreadDumpThread> top = new TopContenders().limit(2).query(runtime.getThreads());
+        assertThat(top.getBlockers(), equalTo(threads(runtime, 0, 1)));
+        assertThat(top.blockedBy(runtime.getThreadById(2)), equalTo(null));
+        assertThat(top.involvedThreads(), equalTo(threads(runtime, 0, 1, 3, 4, 5, 6, 7)));
+        assertThat(top.exitCode(), equalTo(2));
+
+        top = new TopContenders().limit(1).query(runtime.getThreadSet(Arrays.asList(runtime.getThreadById(0), runtime.getThreadById(2))));
+        assertThat(top.getBlockers(), equalTo(threads(runtime, 0)));
+        assertThat(top.blockedBy(runtime.getThreadById(0)), equalTo(threads(runtime, 3, 4)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidLimit() {
+        new TopContenders().limit(0);
+    }
 }
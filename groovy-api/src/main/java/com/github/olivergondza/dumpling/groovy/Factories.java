@@ -25,6 +25,8 @@ package com.github.olivergondza.dumpling.groovy;
 
 import com.github.olivergondza.dumpling.query.BlockingTree;
 import com.github.olivergondza.dumpling.query.Deadlocks;
+import com.github.olivergondza.dumpling.query.LockContention;
+import com.github.olivergondza.dumpling.query.LockImpact;
 import com.github.olivergondza.dumpling.query.TopContenders;
 
 /**
@@ -47,4 +49,12 @@ public class Factories {
     public static TopContenders topContenders() {
         return new TopContenders();
     }
+
+    public static LockImpact lockImpact() {
+        return new LockImpact();
+    }
+
+    public static LockContention lockContention() {
+        return new LockContention();
+    }
 }
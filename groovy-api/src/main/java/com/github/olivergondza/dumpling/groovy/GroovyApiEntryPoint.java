@@ -26,6 +26,7 @@ package com.github.olivergondza.dumpling.groovy;
 import com.github.olivergondza.dumpling.factory.JmxRuntimeFactory;
 import com.github.olivergondza.dumpling.factory.JvmRuntimeFactory;
 import com.github.olivergondza.dumpling.factory.PidRuntimeFactory;
+import com.github.olivergondza.dumpling.factory.SnapshotFactory;
 import com.github.olivergondza.dumpling.factory.ThreadDumpFactory;
 import com.github.olivergondza.dumpling.model.ProcessRuntime;
 
@@ -81,6 +82,11 @@ public class GroovyApiEntryPoint extends GroovyApi {
             return new ThreadDumpFactory().fromFile(new File(filename));
         }
 
+        @ApiDoc(text = "Load runtime from binary snapshot.")
+        public ProcessRuntime<?, ?, ?> snapshot(@Nonnull String filename) throws IOException {
+            return new SnapshotFactory().fromFile(new File(filename));
+        }
+
         @ApiDoc(text = "Load runtime from process identified by PID.")
         public ProcessRuntime<?, ?, ?> process(int pid) throws IOException, InterruptedException {
             return new PidRuntimeFactory().fromProcess(pid);
@@ -23,13 +23,16 @@
  */
 package com.github.olivergondza.dumpling.groovy
 
+import com.github.olivergondza.dumpling.model.ProcessRuntime
+import com.github.olivergondza.dumpling.model.ProcessThread
 import com.github.olivergondza.dumpling.model.ThreadSet
+import com.github.olivergondza.dumpling.model.dump.ThreadDumpRuntime
 import com.github.olivergondza.dumpling.model.dump.ThreadDumpThreadSet
+import com.github.olivergondza.dumpling.model.jmx.JmxRuntime
 import com.github.olivergondza.dumpling.model.jmx.JmxThreadSet
+import com.github.olivergondza.dumpling.model.jvm.JvmRuntime
 import com.github.olivergondza.dumpling.model.jvm.JvmThreadSet
 
-import org.codehaus.groovy.runtime.DefaultGroovyMethods
-
 class ThreadSetExtensions extends DelegatingMetaClass {
 
     ThreadSetExtensions(Class theClass) {
@@ -47,19 +50,31 @@ class ThreadSetExtensions extends DelegatingMetaClass {
             case "grep":
                 if (arguments.size() > 1) break
                 if (arguments.size() == 0) return lhs.derive(lhs.threadsAsSet.grep())
-                return lhs.derive(DefaultGroovyMethods.grep(lhs.threadsAsSet, arguments[0]))
+                def filter = arguments[0]
+                // Let indexed predicates like evaluating() be answered by the runtime
+                if (filter instanceof ProcessThread.Predicate) return lhs.where(filter)
+                return lhs.where({ thread -> filter.isCase(thread) } as ProcessThread.Predicate)
             case "findAll":
                 if (arguments.size() > 1) break
                 if (arguments.size() == 0) return lhs.derive(lhs.threadsAsSet.findAll())
-                return lhs.derive(DefaultGroovyMethods.findAll((Object) lhs.threadsAsSet, arguments[0]))
+                Closure closure = (Closure) arguments[0]
+                return lhs.where({ thread -> closure.call(thread) as boolean } as ProcessThread.Predicate)
             case "intersect":
                 if (arguments.size() != 1) break
                 ThreadSet rhs = assertSetsCompatible(lhs, arguments[0])
-                return lhs.derive(DefaultGroovyMethods.intersect((Collection) lhs.threadsAsSet, (Collection) rhs.threadsAsSet))
+                return lhs.intersection(rhs)
             case "plus":
                 if (arguments.size() != 1) break
                 ThreadSet rhs = assertSetsCompatible(lhs, arguments[0])
-                return lhs.derive(DefaultGroovyMethods.plus(lhs.threadsAsSet, rhs.threadsAsSet))
+                return lhs.union(rhs)
+            case "byId":
+            case "byNid":
+            case "byTid":
+                if (arguments.size() != 1) break
+                long id = arguments[0] as long
+                if (methodName == "byId") return lhs.getThreadById(id)
+                if (methodName == "byNid") return lhs.getThreadByNid(id)
+                return lhs.getThreadByTid(id)
         }
 
         return super.invokeMethod(object, methodName, arguments)
@@ -79,7 +94,35 @@ class ThreadSetExtensions extends DelegatingMetaClass {
     }
 }
 
+class ProcessRuntimeExtensions extends DelegatingMetaClass {
+
+    ProcessRuntimeExtensions(Class theClass) {
+        super(theClass)
+    }
+
+    @Override
+    Object invokeMethod(Object object, String methodName, Object[] arguments) {
+        ProcessRuntime runtime = (ProcessRuntime) object
+        switch (methodName) {
+            case "byId":
+            case "byNid":
+            case "byTid":
+                if (arguments.size() != 1) break
+                long id = arguments[0] as long
+                if (methodName == "byId") return runtime.getThreadById(id)
+                if (methodName == "byNid") return runtime.getThreadByNid(id)
+                return runtime.getThreadByTid(id)
+        }
+
+        return super.invokeMethod(object, methodName, arguments)
+    }
+}
+
 ThreadSet.metaClass = new ThreadSetExtensions(ThreadSet.class)
 JvmThreadSet.metaClass = new ThreadSetExtensions(JvmThreadSet.class)
 JmxThreadSet.metaClass = new ThreadSetExtensions(JmxThreadSet.class)
 ThreadDumpThreadSet.metaClass = new ThreadSetExtensions(ThreadDumpThreadSet.class)
+
+JvmRuntime.metaClass = new ProcessRuntimeExtensions(JvmRuntime.class)
+JmxRuntime.metaClass = new ProcessRuntimeExtensions(JmxRuntime.class)
+ThreadDumpRuntime.metaClass = new ProcessRuntimeExtensions(ThreadDumpRuntime.class)
@@ -58,5 +58,7 @@ class GroovyRuntimeTest {
         runScript("rt.threads.query(blockingTree()) instanceof BlockingTree.Result")
         runScript("rt.threads.query(deadlocks()) instanceof Deadlocks.Result")
         runScript("rt.threads.query(topContenders()) instanceof TopContenders.Result")
+        runScript("rt.threads.query(lockImpact().limit(5)) instanceof LockImpact.Result")
+        runScript("rt.threads.query(lockContention()) instanceof LockContention.Result")
     }
 }